@@ -0,0 +1,134 @@
+/* -*- mode: java; c-basic-offset: 2; indent-tabs-mode: nil -*- */
+
+/*
+  Part of the Processing project - http://processing.org
+
+  Copyright (c) 2012-16 The Processing Foundation
+
+  This library is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License as published by the Free Software Foundation, version 2.1.
+
+  This library is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General
+  Public License along with this library; if not, write to the
+  Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+  Boston, MA  02111-1307  USA
+*/
+
+package processing.core;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Glyph lookups for every character of a paragraph, as done each time
+ * text() or textWidth() goes through a string. The font has the ASCII,
+ * Cyrillic and CJK_GLYPHS of the CJK Unified Ideographs, and is read from a
+ * .vlw stream, so the glyphs have no bitmaps and nothing needs Android.
+ * The paragraph has PARAGRAPH_LENGTH characters of the given script, with
+ * spaces and punctuation in between words.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PFontBenchmark {
+  @Param({"latin", "cyrillic", "cjk"})
+  String script;
+
+  static final int CJK_GLYPHS = 3000;
+  static final int PARAGRAPH_LENGTH = 1000;
+
+  PFont font;
+  char[] paragraph;
+
+
+  @Setup
+  public void setup() throws IOException {
+    StringBuilder charset = new StringBuilder();
+    for (char c = 32; c < 127; c++) charset.append(c);
+    for (char c = 0x0400; c < 0x0500; c++) charset.append(c);
+    for (int i = 0; i < CJK_GLYPHS; i++) charset.append((char)(0x4E00 + i));
+    font = new PFont(new ByteArrayInputStream(vlw(charset.toString())));
+
+    char first, count;
+    if (script.equals("latin")) {
+      first = 'a';
+      count = 26;
+    } else if (script.equals("cyrillic")) {
+      first = 0x0430;
+      count = 32;
+    } else {
+      first = 0x4E00;
+      count = CJK_GLYPHS;
+    }
+    Random random = new Random(1234);
+    paragraph = new char[PARAGRAPH_LENGTH];
+    for (int i = 0; i < PARAGRAPH_LENGTH; i++) {
+      int r = random.nextInt(8);
+      paragraph[i] = r == 0 ? ' ' : r == 1 && 0 < i ? ',' :
+                     (char)(first + random.nextInt(count));
+    }
+  }
+
+
+  // Font file with empty glyphs for the characters in charset
+  static byte[] vlw(String charset) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream os = new DataOutputStream(bytes);
+    os.writeInt(charset.length());
+    os.writeInt(11);  // version
+    os.writeInt(24);  // size
+    os.writeInt(0);
+    os.writeInt(18);  // ascent
+    os.writeInt(6);   // descent
+    for (int i = 0; i < charset.length(); i++) {
+      os.writeInt(charset.charAt(i));  // value
+      os.writeInt(0);                  // height
+      os.writeInt(0);                  // width
+      os.writeInt(12);                 // setWidth
+      os.writeInt(0);                  // topExtent
+      os.writeInt(0);                  // leftExtent
+      os.writeInt(0);
+    }
+    os.writeUTF("Benchmark");
+    os.writeUTF("Benchmark");
+    os.writeBoolean(true);
+    os.flush();
+    return bytes.toByteArray();
+  }
+
+
+  @Benchmark
+  public int lookup() {
+    int sum = 0;
+    for (char c: paragraph) {
+      PFont.Glyph glyph = font.getGlyph(c);
+      if (glyph != null) sum += glyph.setWidth;
+    }
+    return sum;
+  }
+}
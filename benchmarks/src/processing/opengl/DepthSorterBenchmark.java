@@ -0,0 +1,140 @@
+/* -*- mode: java; c-basic-offset: 2; indent-tabs-mode: nil -*- */
+
+/*
+  Part of the Processing project - http://processing.org
+
+  Copyright (c) 2012-16 The Processing Foundation
+
+  This library is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License as published by the Free Software Foundation, version 2.1.
+
+  This library is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General
+  Public License along with this library; if not, write to the
+  Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+  Boston, MA  02111-1307  USA
+*/
+
+package processing.opengl;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import processing.core.PConstants;
+import processing.opengl.PGraphicsOpenGL.DepthSorter;
+import processing.opengl.PGraphicsOpenGL.InGeometry;
+import processing.opengl.PGraphicsOpenGL.TessGeometry;
+import processing.opengl.PGraphicsOpenGL.Tessellator;
+
+/**
+ * Depth sorting of count random overlapping triangles, as done when
+ * flushing with hint(ENABLE_DEPTH_SORT). Each invocation sorts the
+ * triangles in the order they were tessellated, as in a new frame. When
+ * coherent is true the order of the previous frame is available to the
+ * sorter, as with a static scene; otherwise every sort starts from scratch.
+ * When parallel is false, the stages that can be split in ranges run on
+ * the calling thread regardless of the triangle count.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DepthSorterBenchmark implements PConstants {
+  @Param({"1000", "10000", "100000"})
+  int count;
+
+  @Param({"false", "true"})
+  boolean coherent;
+
+  @Param({"false", "true"})
+  boolean parallel;
+
+  PGraphicsOpenGL pg;
+  DepthSorter sorter;
+  TessGeometry tessGeo;
+
+  // Triangle indices as tessellated, restored before each sort
+  short[] polyIndices;
+
+
+  @Setup
+  public void setup() {
+    pg = HeadlessRenderer.create3D();
+
+    // Each trial runs in its own fork, so the default can be overridden
+    if (!parallel) PGL.MIN_PARALLEL_SORT_TRIANGLES = Integer.MAX_VALUE;
+
+    Random random = HeadlessRenderer.random();
+    InGeometry in = PGraphicsOpenGL.newInGeometry(pg, pg.polyAttribs,
+                                                  PGraphicsOpenGL.IMMEDIATE);
+    in.setMaterial(pg.fillColor, pg.strokeColor, pg.strokeWeight,
+                   pg.ambientColor, pg.specularColor, pg.emissiveColor,
+                   pg.shininess);
+    for (int i = 0; i < count; i++) {
+      float x = (random.nextFloat() - 0.5f) * HeadlessRenderer.WIDTH;
+      float y = (random.nextFloat() - 0.5f) * HeadlessRenderer.HEIGHT;
+      float z = -500 - 1000 * random.nextFloat();
+      float s = 20 + 40 * random.nextFloat();
+      in.addVertex(x, y, z, true);
+      in.addVertex(x + s, y, z - s * random.nextFloat(), false);
+      in.addVertex(x, y + s, z + s * random.nextFloat(), false);
+    }
+
+    tessGeo = pg.tessGeo;
+    tessGeo.clear();
+    pg.texCache.clear();
+
+    Tessellator tessellator = pg.tessellator;
+    tessellator.setInGeometry(in);
+    tessellator.setTessGeometry(tessGeo);
+    tessellator.setFill(true);
+    tessellator.setTexCache(pg.texCache, null);
+    tessellator.setStroke(false);
+    tessellator.setRenderer(pg);
+    tessellator.setTransform(pg.modelview);
+    tessellator.set3D(true);
+    tessellator.tessellateTriangles();
+
+    polyIndices = new short[tessGeo.polyIndexCount];
+    System.arraycopy(tessGeo.polyIndices, 0, polyIndices, 0,
+                     polyIndices.length);
+
+    sorter = new DepthSorter(pg);
+  }
+
+
+  @Setup(Level.Invocation)
+  public void newFrame() {
+    System.arraycopy(polyIndices, 0, tessGeo.polyIndices, 0,
+                     polyIndices.length);
+    pg.parent.frameCount++;
+    if (!coherent) sorter.savedOrders.clear();
+  }
+
+
+  @Benchmark
+  public DepthSorter sort() {
+    sorter.sort(tessGeo);
+    return sorter;
+  }
+}
@@ -0,0 +1,122 @@
+/* -*- mode: java; c-basic-offset: 2; indent-tabs-mode: nil -*- */
+
+/*
+  Part of the Processing project - http://processing.org
+
+  Copyright (c) 2012-16 The Processing Foundation
+
+  This library is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License as published by the Free Software Foundation, version 2.1.
+
+  This library is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General
+  Public License along with this library; if not, write to the
+  Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+  Boston, MA  02111-1307  USA
+*/
+
+package processing.opengl;
+
+import java.util.Random;
+
+import processing.core.PApplet;
+import processing.core.PConstants;
+
+/**
+ * Creates primary renderers that record their GL calls with a PGLRecorder,
+ * so the benchmarks can run the CPU side of the renderer without a GPU.
+ * The renderers are set up as beginDraw() would leave them, except for the
+ * parts that need a surface.
+ */
+class HeadlessRenderer {
+  static final int WIDTH = 1280;
+  static final int HEIGHT = 720;
+
+  // Fixed seed, so all the runs of a benchmark use the same geometry
+  static final long SEED = 1234;
+
+
+  static PGraphicsOpenGL create(PGraphicsOpenGL pg) {
+    // The constructor only creates the PGLES, without calling GL, so it can
+    // be swapped for the recorder before anything uses it
+    PGLRecorder pgl = new PGLRecorder(pg);
+    // Only keep the counters, the log would grow with every invocation and
+    // its allocations would show up in the gc profile of the benchmark
+    pgl.setLogging(false);
+    pg.pgl = pgl;
+
+    PApplet sketch = new PApplet();
+    sketch.g = pg;
+
+    pg.setParent(sketch);
+    pg.setPrimary(true);
+    pg.setSize(WIDTH, HEIGHT);
+    pg.setCurrentPG();
+
+    pg.fill(0xFFCC6633);
+    pg.stroke(0xFF3366CC);
+    pg.strokeWeight(4);
+    pg.strokeCap(PConstants.ROUND);
+    pg.strokeJoin(PConstants.MITER);
+
+    if (pg.is3D()) {
+      setPerspective(pg);
+    } else {
+      setOrtho(pg);
+    }
+    pg.updateProjmodelview();
+    return pg;
+  }
+
+
+  static PGraphicsOpenGL create3D() {
+    return create(new PGraphics3D());
+  }
+
+
+  static PGraphicsOpenGL create2D() {
+    return create(new PGraphics2D());
+  }
+
+
+  static PGraphics2DX create2DX() {
+    return (PGraphics2DX) create(new PGraphics2DX());
+  }
+
+
+  static Random random() {
+    return new Random(SEED);
+  }
+
+
+  // Same frustum as the default perspective, looking down the -Z axis from
+  // the origin, so the geometry should be placed at negative Z.
+  static void setPerspective(PGraphicsOpenGL pg) {
+    float fov = PConstants.PI / 3;
+    float near = HEIGHT / 2f / (float) Math.tan(fov / 2) / 10;
+    float far = near * 1000;
+    float top = near * (float) Math.tan(fov / 2);
+    float right = top * WIDTH / HEIGHT;
+
+    float n2 = 2 * near;
+    float d = far - near;
+    pg.projection.set(n2 / (2 * right), 0, 0, 0,
+                      0, -n2 / (2 * top), 0, 0,
+                      0, 0, -(far + near) / d, -(n2 * far) / d,
+                      0, 0, -1, 0);
+  }
+
+
+  // Maps the screen rectangle to the clip volume, as in the 2D renderers.
+  static void setOrtho(PGraphicsOpenGL pg) {
+    pg.projection.set(2f / WIDTH, 0, 0, -1,
+                      0, -2f / HEIGHT, 0, 1,
+                      0, 0, -1, 0,
+                      0, 0, 0, 1);
+  }
+}
@@ -0,0 +1,86 @@
+/* -*- mode: java; c-basic-offset: 2; indent-tabs-mode: nil -*- */
+
+/*
+  Part of the Processing project - http://processing.org
+
+  Copyright (c) 2012-16 The Processing Foundation
+
+  This library is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License as published by the Free Software Foundation, version 2.1.
+
+  This library is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General
+  Public License along with this library; if not, write to the
+  Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+  Boston, MA  02111-1307  USA
+*/
+
+package processing.opengl;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Stroking of a random polyline with count segments with the LineStroker,
+ * as done for the accurate 2D strokes.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LineStrokerBenchmark {
+  @Param({"100", "1000", "10000"})
+  int count;
+
+  @Param({"MITER", "ROUND", "BEVEL"})
+  String join;
+
+  @Param({"false", "true"})
+  boolean closed;
+
+  LinePath path;
+  int joinStyle;
+
+
+  @Setup
+  public void setup() {
+    Random random = HeadlessRenderer.random();
+    path = new LinePath();
+    path.moveTo(random.nextFloat() * HeadlessRenderer.WIDTH,
+                random.nextFloat() * HeadlessRenderer.HEIGHT, 0xFF3366CC);
+    for (int i = 0; i < count; i++) {
+      path.lineTo(random.nextFloat() * HeadlessRenderer.WIDTH,
+                  random.nextFloat() * HeadlessRenderer.HEIGHT, 0xFF3366CC);
+    }
+    if (closed) path.closePath();
+
+    joinStyle = join.equals("ROUND") ? LinePath.JOIN_ROUND :
+                join.equals("BEVEL") ? LinePath.JOIN_BEVEL :
+                LinePath.JOIN_MITER;
+  }
+
+
+  @Benchmark
+  public LinePath stroke() {
+    return LinePath.createStrokedPath(path, 4, LinePath.CAP_ROUND, joinStyle);
+  }
+}
@@ -0,0 +1,152 @@
+/* -*- mode: java; c-basic-offset: 2; indent-tabs-mode: nil -*- */
+
+/*
+  Part of the Processing project - http://processing.org
+
+  Copyright (c) 2012-16 The Processing Foundation
+
+  This library is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License as published by the Free Software Foundation, version 2.1.
+
+  This library is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General
+  Public License along with this library; if not, write to the
+  Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+  Boston, MA  02111-1307  USA
+*/
+
+package processing.opengl;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import processing.core.PConstants;
+
+/**
+ * Vertex submission through the PGraphics2DX renderer: count shapes are
+ * drawn and then flushed, so the time includes filling the vertex buffer
+ * and the (recorded) uploads of its contents.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PGraphics2DXBenchmark implements PConstants {
+  @Param({"100", "1000", "10000"})
+  int count;
+
+  @Param({"false", "true"})
+  boolean stroke;
+
+  // Vertices of each polygon in the polygons benchmark
+  static final int POLYGON_VERTICES = 12;
+
+  PGraphics2DX pg;
+  float[] x;
+  float[] y;
+  float[] size;
+
+
+  @Setup
+  public void setup() {
+    pg = HeadlessRenderer.create2DX();
+    if (!stroke) pg.noStroke();
+
+    Random random = HeadlessRenderer.random();
+    x = new float[count];
+    y = new float[count];
+    size = new float[count];
+    for (int i = 0; i < count; i++) {
+      x[i] = random.nextFloat() * HeadlessRenderer.WIDTH;
+      y[i] = random.nextFloat() * HeadlessRenderer.HEIGHT;
+      size[i] = 5 + 45 * random.nextFloat();
+    }
+  }
+
+
+  @Benchmark
+  public void rects() {
+    for (int i = 0; i < count; i++) {
+      pg.rect(x[i], y[i], size[i], size[i]);
+    }
+    pg.flush();
+  }
+
+
+  @Benchmark
+  public void ellipses() {
+    for (int i = 0; i < count; i++) {
+      pg.ellipse(x[i], y[i], size[i], size[i]);
+    }
+    pg.flush();
+  }
+
+
+  @Benchmark
+  public void triangles() {
+    for (int i = 0; i < count; i++) {
+      pg.triangle(x[i], y[i], x[i] + size[i], y[i], x[i], y[i] + size[i]);
+    }
+    pg.flush();
+  }
+
+
+  @Benchmark
+  public void lines() {
+    for (int i = 0; i < count; i++) {
+      pg.line(x[i], y[i], x[(i + 1) % count], y[(i + 1) % count]);
+    }
+    pg.flush();
+  }
+
+
+  // Concave polygons, which go through the GLU tessellator.
+  @Benchmark
+  public void polygons() {
+    for (int i = 0; i < count; i++) {
+      pg.beginShape();
+      for (int j = 0; j < POLYGON_VERTICES; j++) {
+        float a = TWO_PI * j / POLYGON_VERTICES;
+        float r = j % 2 == 0 ? size[i] : size[i] / 2;
+        pg.vertex(x[i] + r * (float) Math.cos(a), y[i] + r * (float) Math.sin(a));
+      }
+      pg.endShape(CLOSE);
+    }
+    pg.flush();
+  }
+
+
+  // A single polygon with count vertices along its top edge, like a
+  // waveform or a map outline, which stresses the per-shape work that
+  // depends on the number of vertices.
+  @Benchmark
+  public void largePolygon() {
+    pg.beginShape();
+    for (int i = 0; i < count; i++) {
+      pg.vertex((float) i * HeadlessRenderer.WIDTH / count, y[i]);
+    }
+    pg.vertex(HeadlessRenderer.WIDTH, HeadlessRenderer.HEIGHT);
+    pg.vertex(0, HeadlessRenderer.HEIGHT);
+    pg.endShape(CLOSE);
+    pg.flush();
+  }
+}
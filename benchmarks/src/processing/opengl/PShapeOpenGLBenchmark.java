@@ -0,0 +1,138 @@
+/* -*- mode: java; c-basic-offset: 2; indent-tabs-mode: nil -*- */
+
+/*
+  Part of the Processing project - http://processing.org
+
+  Copyright (c) 2012-16 The Processing Foundation
+
+  This library is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License as published by the Free Software Foundation, version 2.1.
+
+  This library is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General
+  Public License along with this library; if not, write to the
+  Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+  Boston, MA  02111-1307  USA
+*/
+
+package processing.opengl;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import processing.core.PConstants;
+import processing.core.PShape;
+
+/**
+ * Retained-mode tessellation and aggregation of a group with count child
+ * shapes, which is what the first draw of a PShape (and the first draw
+ * after modifying it) costs on the CPU.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PShapeOpenGLBenchmark implements PConstants {
+  @Param({"100", "1000", "10000"})
+  int count;
+
+  @Param({"P2D", "P3D"})
+  String renderer;
+
+  // Vertices of the star of each child
+  static final int STAR_VERTICES = 12;
+
+  PGraphicsOpenGL pg;
+  PShapeOpenGL group;
+
+
+  // Tessellates the group before each call to aggregate(), since the
+  // aggregation adds to the index caches of the tessellated geometry.
+  @State(Scope.Thread)
+  public static class Tessellated {
+    @Setup(Level.Invocation)
+    public void setup(PShapeOpenGLBenchmark benchmark) {
+      benchmark.group.markForTessellation();
+      benchmark.group.tessellate();
+    }
+  }
+
+
+  @Setup
+  public void setup() {
+    pg = renderer.equals("P3D") ? HeadlessRenderer.create3D() :
+                                  HeadlessRenderer.create2D();
+
+    Random random = HeadlessRenderer.random();
+    group = (PShapeOpenGL) pg.createShape(GROUP);
+    for (int i = 0; i < count; i++) {
+      PShape child = pg.createShape();
+      child.beginShape();
+      float size = 5 + 45 * random.nextFloat();
+      for (int j = 0; j < STAR_VERTICES; j++) {
+        float a = TWO_PI * j / STAR_VERTICES;
+        float r = j % 2 == 0 ? size : size / 2;
+        if (pg.is3D()) {
+          child.vertex(r * (float) Math.cos(a), r * (float) Math.sin(a), 0);
+        } else {
+          child.vertex(r * (float) Math.cos(a), r * (float) Math.sin(a));
+        }
+      }
+      child.endShape(CLOSE);
+
+      float x = random.nextFloat() * HeadlessRenderer.WIDTH;
+      float y = random.nextFloat() * HeadlessRenderer.HEIGHT;
+      if (pg.is3D()) {
+        child.translate(x, y, -1000 * random.nextFloat());
+      } else {
+        child.translate(x, y);
+      }
+      group.addChild(child);
+    }
+  }
+
+
+  @Benchmark
+  public PShapeOpenGL tessellate() {
+    group.markForTessellation();
+    group.tessellate();
+    return group;
+  }
+
+
+  @Benchmark
+  public PShapeOpenGL aggregate(Tessellated tessellated) {
+    group.aggregate();
+    return group;
+  }
+
+
+  // Both steps, as done by updateTessellation() on the first draw.
+  @Benchmark
+  public PShapeOpenGL tessellateAndAggregate() {
+    group.markForTessellation();
+    group.tessellate();
+    group.aggregate();
+    return group;
+  }
+}
@@ -0,0 +1,215 @@
+/* -*- mode: java; c-basic-offset: 2; indent-tabs-mode: nil -*- */
+
+/*
+  Part of the Processing project - http://processing.org
+
+  Copyright (c) 2012-16 The Processing Foundation
+
+  This library is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License as published by the Free Software Foundation, version 2.1.
+
+  This library is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General
+  Public License along with this library; if not, write to the
+  Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+  Boston, MA  02111-1307  USA
+*/
+
+package processing.opengl;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Triangulation of typical outlines through the PGL.Tessellator interface,
+ * with the GLU tessellator alone or behind the ear clipping one. The svg
+ * outline is a closed path of cubic Bezier segments flattened as with the
+ * default bezierDetail(), the glyph outline is a letter C, and the ring is
+ * a letter O, whose two contours always go through GLU. The comb has
+ * COMB_TEETH long teeth, so the sweep line of GLU crosses hundreds of edges
+ * at once.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PolygonTessellatorBenchmark {
+  @Param({"svg", "glyph", "ring", "comb"})
+  String outline;
+
+  @Param({"false", "true"})
+  boolean earClipping;
+
+  // Segments and vertices per segment of the svg outline
+  static final int BEZIER_SEGMENTS = 8;
+  static final int BEZIER_DETAIL = 20;
+
+  // Vertices of each arc of the glyph outlines
+  static final int ARC_VERTICES = 24;
+
+  // Teeth of the comb outline
+  static final int COMB_TEETH = 250;
+
+  PGL.Tessellator tess;
+  Callback callback;
+
+  // Coordinates of the vertices of each contour
+  double[][][] contours;
+
+
+  static class Callback implements PGL.TessellatorCallback {
+    int vertexCount;
+
+    @Override
+    public void begin(int type) {
+    }
+
+    @Override
+    public void end() {
+    }
+
+    @Override
+    public void vertex(Object data) {
+      vertexCount++;
+    }
+
+    @Override
+    public void combine(double[] coords, Object[] data,
+                        float[] weight, Object[] outData) {
+      outData[0] = new double[] { coords[0], coords[1], coords[2] };
+    }
+
+    @Override
+    public void error(int errnum) {
+      throw new RuntimeException("Tessellation error " + errnum);
+    }
+  }
+
+
+  @Setup
+  public void setup() {
+    PGLES pgl = (PGLES) HeadlessRenderer.create2D().pgl;
+    callback = new Callback();
+    tess = pgl.new Tessellator(callback);
+    if (earClipping) tess = new EarClippingTessellator(tess, callback);
+    // Same rule as the polygons with contours in PGraphicsOpenGL
+    tess.setWindingRule(PGL.TESS_WINDING_ODD);
+
+    if (outline.equals("svg")) {
+      contours = new double[][][] { bezierBlob(HeadlessRenderer.random()) };
+    } else if (outline.equals("glyph")) {
+      contours = new double[][][] { letterC() };
+    } else if (outline.equals("comb")) {
+      contours = new double[][][] { comb() };
+    } else {
+      contours = new double[][][] { arc(1, 0, 2 * Math.PI, ARC_VERTICES),
+                                    arc(0.6, 0, 2 * Math.PI, ARC_VERTICES) };
+    }
+  }
+
+
+  // Closed path of cubic Bezier segments whose ends are around a circle,
+  // flattened into BEZIER_DETAIL vertices each.
+  static double[][] bezierBlob(Random random) {
+    double[][] ends = new double[BEZIER_SEGMENTS][];
+    for (int i = 0; i < BEZIER_SEGMENTS; i++) {
+      double a = 2 * Math.PI * i / BEZIER_SEGMENTS;
+      double r = 0.6 + 0.4 * random.nextDouble();
+      ends[i] = new double[] { r * Math.cos(a), r * Math.sin(a) };
+    }
+    double[][] vertices = new double[BEZIER_SEGMENTS * BEZIER_DETAIL][];
+    for (int i = 0; i < BEZIER_SEGMENTS; i++) {
+      double[] p0 = ends[i];
+      double[] p3 = ends[(i + 1) % BEZIER_SEGMENTS];
+      // Control points pulled towards the center, so the path is concave
+      double[] p1 = { 0.6 * p0[0] + 0.2 * p3[0], 0.6 * p0[1] + 0.2 * p3[1] };
+      double[] p2 = { 0.2 * p0[0] + 0.6 * p3[0], 0.2 * p0[1] + 0.6 * p3[1] };
+      for (int j = 0; j < BEZIER_DETAIL; j++) {
+        double t = (double) j / BEZIER_DETAIL;
+        double u = 1 - t;
+        double b0 = u * u * u, b1 = 3 * u * u * t, b2 = 3 * u * t * t, b3 = t * t * t;
+        vertices[i * BEZIER_DETAIL + j] = new double[] {
+          b0 * p0[0] + b1 * p1[0] + b2 * p2[0] + b3 * p3[0],
+          b0 * p0[1] + b1 * p1[1] + b2 * p2[1] + b3 * p3[1], 0 };
+      }
+    }
+    return vertices;
+  }
+
+
+  // Outer arc counter-clockwise and inner arc back, leaving a gap on the
+  // right side.
+  static double[][] letterC() {
+    double gap = Math.PI / 4;
+    double[][] outer = arc(1, gap, 2 * Math.PI - gap, ARC_VERTICES);
+    double[][] inner = arc(0.6, gap, 2 * Math.PI - gap, ARC_VERTICES);
+    double[][] vertices = new double[2 * ARC_VERTICES][];
+    for (int i = 0; i < ARC_VERTICES; i++) {
+      vertices[i] = outer[i];
+      vertices[ARC_VERTICES + i] = inner[ARC_VERTICES - 1 - i];
+    }
+    return vertices;
+  }
+
+
+  // Teeth along the y axis pointing right, joined by a spine on the left.
+  static double[][] comb() {
+    double[][] vertices = new double[4 * COMB_TEETH + 2][];
+    int k = 0;
+    for (int i = 0; i < COMB_TEETH; i++) {
+      vertices[k++] = new double[] { 0, i, 0 };
+      vertices[k++] = new double[] { 5, i, 0 };
+      vertices[k++] = new double[] { 5, i + 0.5, 0 };
+      vertices[k++] = new double[] { 0.5, i + 0.5, 0 };
+    }
+    vertices[k++] = new double[] { -1, COMB_TEETH, 0 };
+    vertices[k++] = new double[] { -1, 0, 0 };
+    return vertices;
+  }
+
+
+  static double[][] arc(double r, double start, double stop, int n) {
+    double[][] vertices = new double[n][];
+    boolean closed = stop - start == 2 * Math.PI;
+    for (int i = 0; i < n; i++) {
+      double a = start + (stop - start) * i / (closed ? n : n - 1);
+      vertices[i] = new double[] { r * Math.cos(a), r * Math.sin(a), 0 };
+    }
+    return vertices;
+  }
+
+
+  @Benchmark
+  public int tessellate() {
+    callback.vertexCount = 0;
+    tess.beginPolygon();
+    for (double[][] contour: contours) {
+      tess.beginContour();
+      for (double[] v: contour) {
+        tess.addVertex(v);
+      }
+      tess.endContour();
+    }
+    tess.endPolygon();
+    return callback.vertexCount;
+  }
+}
@@ -0,0 +1,214 @@
+/* -*- mode: java; c-basic-offset: 2; indent-tabs-mode: nil -*- */
+
+/*
+  Part of the Processing project - http://processing.org
+
+  Copyright (c) 2012-16 The Processing Foundation
+
+  This library is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License as published by the Free Software Foundation, version 2.1.
+
+  This library is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General
+  Public License along with this library; if not, write to the
+  Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+  Boston, MA  02111-1307  USA
+*/
+
+package processing.opengl;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import processing.core.PConstants;
+import processing.opengl.PGraphicsOpenGL.InGeometry;
+import processing.opengl.PGraphicsOpenGL.TessGeometry;
+import processing.opengl.PGraphicsOpenGL.Tessellator;
+
+/**
+ * Immediate-mode tessellation of the input geometry of count primitives,
+ * as done by endShape(). Each invocation starts from empty tessellated
+ * geometry, so the time includes growing its arrays.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TessellatorBenchmark implements PConstants {
+  @Param({"1000", "10000", "100000"})
+  int count;
+
+  @Param({"P2D", "P3D"})
+  String renderer;
+
+  @Param({"false", "true"})
+  boolean parallel;
+
+  PGraphicsOpenGL pg;
+  Tessellator tessellator;
+  TessGeometry tessGeo;
+
+  InGeometry lines;
+  InGeometry polygon;
+  InGeometry points;
+  InGeometry triangles;
+
+
+  @Setup
+  public void setup() {
+    pg = renderer.equals("P3D") ? HeadlessRenderer.create3D() :
+                                  HeadlessRenderer.create2D();
+    pg.hint(parallel ? ENABLE_PARALLEL_TESSELLATION :
+                       DISABLE_PARALLEL_TESSELLATION);
+
+    tessellator = pg.tessellator;
+    tessGeo = PGraphicsOpenGL.newTessGeometry(pg, pg.polyAttribs,
+                                              PGraphicsOpenGL.IMMEDIATE);
+
+    Random random = HeadlessRenderer.random();
+
+    lines = newInGeometry();
+    for (int i = 0; i < count; i++) {
+      lines.addLine(x(random), y(random), z(random),
+                    x(random), y(random), z(random), false, true);
+    }
+
+    // A star with count tips, which is not convex, so it goes through the
+    // GLU tessellator.
+    polygon = newInGeometry();
+    float cx = pg.is3D() ? 0 : HeadlessRenderer.WIDTH / 2;
+    float cy = pg.is3D() ? 0 : HeadlessRenderer.HEIGHT / 2;
+    float cz = pg.is3D() ? -1000 : 0;
+    for (int i = 0; i < count; i++) {
+      float a = TWO_PI * i / count;
+      float r = i % 2 == 0 ? HeadlessRenderer.HEIGHT / 2 :
+                             HeadlessRenderer.HEIGHT / 4;
+      polygon.addVertex(cx + r * (float) Math.cos(a),
+                        cy + r * (float) Math.sin(a), cz, i == 0);
+    }
+
+    points = newInGeometry();
+    for (int i = 0; i < count; i++) {
+      points.addPoint(x(random), y(random), z(random), false, true);
+    }
+
+    triangles = newInGeometry();
+    for (int i = 0; i < count; i++) {
+      float x = x(random);
+      float y = y(random);
+      float z = z(random);
+      triangles.addVertex(x, y, z, true);
+      triangles.addVertex(x + 20, y, z, false);
+      triangles.addVertex(x, y + 20, z, false);
+    }
+    triangles.addTrianglesEdges();
+    triangles.calcTrianglesNormals();
+  }
+
+
+  @Benchmark
+  public TessGeometry lines() {
+    begin(lines, false, true);
+    tessellator.tessellateLines();
+    return tessGeo;
+  }
+
+
+  @Benchmark
+  public TessGeometry polygon() {
+    begin(polygon, true, true);
+    tessellator.tessellatePolygon(true, true, true);
+    return tessGeo;
+  }
+
+
+  @Benchmark
+  public TessGeometry roundPoints() {
+    begin(points, false, true);
+    tessellator.setStrokeCap(ROUND);
+    tessellator.setStrokeWeight(8);
+    tessellator.tessellatePoints();
+    return tessGeo;
+  }
+
+
+  @Benchmark
+  public TessGeometry edges() {
+    begin(triangles, false, true);
+    tessellator.tessellateEdges();
+    return tessGeo;
+  }
+
+
+  @Benchmark
+  public TessGeometry triangles() {
+    begin(triangles, true, false);
+    tessellator.tessellateTriangles();
+    return tessGeo;
+  }
+
+
+  InGeometry newInGeometry() {
+    InGeometry in = PGraphicsOpenGL.newInGeometry(pg, pg.polyAttribs,
+                                                  PGraphicsOpenGL.IMMEDIATE);
+    in.setMaterial(pg.fillColor, pg.strokeColor, pg.strokeWeight,
+                   pg.ambientColor, pg.specularColor, pg.emissiveColor,
+                   pg.shininess);
+    return in;
+  }
+
+
+  void begin(InGeometry in, boolean fill, boolean stroke) {
+    tessGeo.clear();
+    pg.texCache.clear();
+
+    tessellator.setInGeometry(in);
+    tessellator.setTessGeometry(tessGeo);
+    tessellator.setFill(fill);
+    tessellator.setTexCache(pg.texCache, null);
+    tessellator.setStroke(stroke);
+    tessellator.setStrokeColor(pg.strokeColor);
+    tessellator.setStrokeWeight(pg.strokeWeight);
+    tessellator.setStrokeCap(pg.strokeCap);
+    tessellator.setStrokeJoin(pg.strokeJoin);
+    tessellator.setRenderer(pg);
+    tessellator.setTransform(pg.modelview);
+    tessellator.set3D(pg.is3D());
+  }
+
+
+  float x(Random random) {
+    float w = HeadlessRenderer.WIDTH;
+    return pg.is3D() ? (random.nextFloat() - 0.5f) * w : random.nextFloat() * w;
+  }
+
+
+  float y(Random random) {
+    float h = HeadlessRenderer.HEIGHT;
+    return pg.is3D() ? (random.nextFloat() - 0.5f) * h : random.nextFloat() * h;
+  }
+
+
+  float z(Random random) {
+    return pg.is3D() ? -500 - 1000 * random.nextFloat() : 0;
+  }
+}
@@ -0,0 +1,163 @@
+/* -*- mode: java; c-basic-offset: 2; indent-tabs-mode: nil -*- */
+
+/*
+  Part of the Processing project - http://processing.org
+
+  Copyright (c) 2012-16 The Processing Foundation
+
+  This library is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License as published by the Free Software Foundation, version 2.1.
+
+  This library is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General
+  Public License along with this library; if not, write to the
+  Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+  Boston, MA  02111-1307  USA
+*/
+
+package processing.opengl.tess;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Triangulation of polygons with count vertices with the GLU tessellator,
+ * configured as PGLES does it: edge flags on, so only triangles come out.
+ * The star polygons are concave, the random ones are stars with jittered
+ * vertices, whose nearby edges cross and need the combine callback, and the
+ * holes ones have one contour per hole.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GLUTessellatorBenchmark {
+  @Param({"64", "1024", "16384"})
+  int count;
+
+  @Param({"star", "random", "holes"})
+  String polygon;
+
+  // Vertices of each hole in the holes polygon
+  static final int HOLE_VERTICES = 16;
+
+  PGLUtessellator tess;
+  Callback callback;
+
+  // Coordinates of the vertices of each contour
+  double[][][] contours;
+
+
+  static class Callback extends PGLUtessellatorCallbackAdapter {
+    int vertexCount;
+
+    @Override
+    public void begin(int type) {
+    }
+
+    @Override
+    public void edgeFlag(boolean boundaryEdge) {
+    }
+
+    @Override
+    public void vertex(Object data) {
+      vertexCount++;
+    }
+
+    @Override
+    public void combine(double[] coords, Object[] data,
+                        float[] weight, Object[] outData) {
+      outData[0] = new double[] { coords[0], coords[1], coords[2] };
+    }
+
+    @Override
+    public void error(int errnum) {
+      throw new RuntimeException("GLU error: " + PGLU.gluErrorString(errnum));
+    }
+  }
+
+
+  @Setup
+  public void setup() {
+    callback = new Callback();
+    tess = PGLU.gluNewTess();
+    PGLU.gluTessCallback(tess, PGLU.GLU_TESS_BEGIN, callback);
+    PGLU.gluTessCallback(tess, PGLU.GLU_TESS_END, callback);
+    PGLU.gluTessCallback(tess, PGLU.GLU_TESS_VERTEX, callback);
+    PGLU.gluTessCallback(tess, PGLU.GLU_TESS_COMBINE, callback);
+    PGLU.gluTessCallback(tess, PGLU.GLU_TESS_ERROR, callback);
+    PGLU.gluTessCallback(tess, PGLU.GLU_TESS_EDGE_FLAG, callback);
+
+    if (polygon.equals("holes")) {
+      // A square with a grid of round holes
+      int holes = Math.max(1, count / HOLE_VERTICES);
+      int side = (int) Math.ceil(Math.sqrt(holes));
+      contours = new double[holes + 1][][];
+      contours[0] = circle(side / 2.0, side / 2.0, side, 4);
+      for (int i = 0; i < holes; i++) {
+        double cx = i % side + 0.5;
+        double cy = i / side + 0.5;
+        contours[i + 1] = circle(cx, cy, 0.3, HOLE_VERTICES);
+      }
+    } else {
+      Random random = new Random(1234);
+      boolean jitter = polygon.equals("random");
+      contours = new double[1][count][];
+      for (int i = 0; i < count; i++) {
+        double j = jitter ? 4 * random.nextDouble() - 2 : 0;
+        double a = 2 * Math.PI * (i + j) / count;
+        double r = i % 2 == 0 ? 1 : 0.5;
+        contours[0][i] = new double[] { r * Math.cos(a), r * Math.sin(a), 0 };
+      }
+    }
+  }
+
+
+  // Regular polygon with n vertices, starting at 45 degrees so that the
+  // 4-vertex one is an axis-aligned square.
+  static double[][] circle(double cx, double cy, double r, int n) {
+    double[][] vertices = new double[n][];
+    for (int i = 0; i < n; i++) {
+      double a = 2 * Math.PI * i / n + Math.PI / 4;
+      vertices[i] = new double[] { cx + r * Math.cos(a), cy + r * Math.sin(a), 0 };
+    }
+    return vertices;
+  }
+
+
+  @Benchmark
+  public int tessellate() {
+    callback.vertexCount = 0;
+    PGLU.gluTessProperty(tess, PGLU.GLU_TESS_WINDING_RULE,
+                         PGLU.GLU_TESS_WINDING_ODD);
+    PGLU.gluTessBeginPolygon(tess, null);
+    for (double[][] contour: contours) {
+      PGLU.gluTessBeginContour(tess);
+      for (double[] v: contour) {
+        PGLU.gluTessVertex(tess, v, 0, v);
+      }
+      PGLU.gluTessEndContour(tess);
+    }
+    PGLU.gluTessEndPolygon(tess);
+    return callback.vertexCount;
+  }
+}
@@ -0,0 +1,40 @@
+/*
+  Part of the Processing project - http://processing.org
+
+  Copyright (c) 2012-16 The Processing Foundation
+  Copyright (c) 2004-12 Ben Fry and Casey Reas
+  Copyright (c) 2001-04 Massachusetts Institute of Technology
+
+  This library is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License as published by the Free Software Foundation, version 2.1.
+
+  This library is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General
+  Public License along with this library; if not, write to the
+  Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+  Boston, MA  02111-1307  USA
+*/
+
+#ifdef GL_ES
+precision mediump float;
+precision mediump int;
+#endif
+
+uniform sampler2D texture;
+
+// Half the width of the transition at the outline, in field units
+uniform float smoothing;
+
+varying vec4 vertColor;
+varying vec4 vertTexCoord;
+
+void main() {
+  float dist = texture2D(texture, vertTexCoord.st).a;
+  float alpha = smoothstep(0.5 - smoothing, 0.5 + smoothing, dist);
+  gl_FragColor = vec4(vertColor.rgb, vertColor.a * alpha);
+}
@@ -4260,13 +4260,20 @@ public class PApplet extends Object implements ActivityAPI, PConstants {
     try {
       String ext = checkExtension(filename);
       if (ext != null) {
-        if (ext.equals("csv") || ext.equals("tsv")) {
+        if (ext.equals("csv") || ext.equals("tsv") || ext.equals("col")) {
           if (options == null) {
             options = ext;
           } else {
             options = ext + "," + options;
           }
         }
+        if (ext.equals("col")) {
+          // column files that are not assets are mapped rather than read
+          File file = sketchFile(filename);
+          if (file.exists()) {
+            return new Table(file, options);
+          }
+        }
       }
       return new Table(createInput(filename), options);
 
@@ -9680,6 +9687,11 @@ public class PApplet extends Object implements ActivityAPI, PConstants {
   }
 
 
+  public void shape(PShape shape, int count) {
+    g.shape(shape, count);
+  }
+
+
   public void textAlign(int alignX) {
     g.textAlign(alignX);
   }
@@ -439,7 +439,31 @@ public interface PConstants {
   static final int DISABLE_ASYNC_SAVEFRAME    =  12;
   static final int ENABLE_ASYNC_SAVEFRAME     = -12;
 
-  static final int HINT_COUNT                 =  13;
+  static final int ENABLE_BUFFER_STREAMING    =  13;
+  static final int DISABLE_BUFFER_STREAMING   = -13;
+
+  static final int ENABLE_INTERLEAVED_VERTICES  =  14;
+  static final int DISABLE_INTERLEAVED_VERTICES = -14;
+
+  static final int ENABLE_PARALLEL_TESSELLATION  =  15;
+  static final int DISABLE_PARALLEL_TESSELLATION = -15;
+
+  static final int ENABLE_RENDER_STATS        =  16;
+  static final int DISABLE_RENDER_STATS       = -16;
+
+  static final int ENABLE_TEXTURE_ATLAS       =  17;
+  static final int DISABLE_TEXTURE_ATLAS      = -17;
+
+  static final int ENABLE_TESSELLATION_CACHE  =  18;
+  static final int DISABLE_TESSELLATION_CACHE = -18;
+
+  static final int ENABLE_DISTANCE_FIELD_TEXT  =  19;
+  static final int DISABLE_DISTANCE_FIELD_TEXT = -19;
+
+  static final int ENABLE_TEXT_LAYOUT_CACHE   =  20;
+  static final int DISABLE_TEXT_LAYOUT_CACHE  = -20;
+
+  static final int HINT_COUNT                 =  21;
 
 
   // error messages
@@ -97,10 +97,24 @@ public class PFont implements PConstants {
   protected int descent;
 
   /**
-   * A more efficient array lookup for straight ASCII characters. For Unicode
-   * characters, a QuickSort-style search is used.
+   * Index of the glyph of each character, or -1 if there is none. The table
+   * is split in pages of 256 characters, which are only allocated if the
+   * font has a glyph in them.
    */
-  protected int[] ascii;
+  protected int[][] indexPages = new int[256][];
+
+  /**
+   * First page of indexPages, always allocated, for a quicker lookup of the
+   * Latin-1 characters.
+   */
+  protected int[] latinIndex = indexPages[0] = newIndexPage();
+
+  /**
+   * Index of the glyph of each ASCII character, the same as the first 128
+   * entries of latinIndex. No longer used by the lookups, but kept up to
+   * date for subclasses that read it.
+   */
+  protected int[] ascii = Arrays.copyOf(latinIndex, 128);
 
   /**
    * True if this font is set to load dynamically. This is the default when
@@ -180,9 +194,6 @@ public class PFont implements PConstants {
     int initialCount = 10;
     glyphs = new Glyph[initialCount];
 
-    ascii = new int[128];
-    Arrays.fill(ascii, -1);
-
     int mbox3 = size * 3;
 
 //    lazyImage = new BufferedImage(mbox3, mbox3, BufferedImage.TYPE_INT_RGB);
@@ -224,9 +235,7 @@ public class PFont implements PConstants {
       glyphCount = 0;
       for (char c : charset) {
         Glyph glyf = new Glyph(c);
-        if (glyf.value < 128) {
-          ascii[glyf.value] = glyphCount;
-        }
+        setIndex(glyf.value, glyphCount);
         glyf.index = glyphCount;
         glyphs[glyphCount++] = glyf;
       }
@@ -284,16 +293,10 @@ public class PFont implements PConstants {
     // allocate enough space for the character info
     glyphs = new Glyph[glyphCount];
 
-    ascii = new int[128];
-    Arrays.fill(ascii, -1);
-
     // read the information about the individual characters
     for (int i = 0; i < glyphCount; i++) {
       Glyph glyph = new Glyph(is);
-      // cache locations of the ascii charset
-      if (glyph.value < 128) {
-        ascii[glyph.value] = i;
-      }
+      setIndex(glyph.value, i);
       glyph.index = i;
       glyphs[i] = glyph;
     }
@@ -344,12 +347,22 @@ public class PFont implements PConstants {
     os.writeInt(ascent);  // formerly baseHt (was ignored)
     os.writeInt(descent); // formerly struct padding for c version
 
+    // The glyphs created lazily are not sorted, but the fonts are read
+    // with a binary search by older versions
+    Glyph[] sorted = Arrays.copyOf(glyphs, glyphCount);
+    Arrays.sort(sorted, new Comparator<Glyph>() {
+      @Override
+      public int compare(Glyph a, Glyph b) {
+        return a.value - b.value;
+      }
+    });
+
     for (int i = 0; i < glyphCount; i++) {
-      glyphs[i].writeHeader(os);
+      sorted[i].writeHeader(os);
     }
 
     for (int i = 0; i < glyphCount; i++) {
-      glyphs[i].writeBitmap(os);
+      sorted[i].writeBitmap(os);
     }
 
     // version 11
@@ -371,37 +384,29 @@ public class PFont implements PConstants {
     if (glyphCount == glyphs.length) {
       glyphs = (Glyph[]) PApplet.expand(glyphs);
     }
-    if (glyphCount == 0) {
-      glyph.index = 0;
-      glyphs[glyphCount] = glyph;
-      if (glyph.value < 128) {
-        ascii[glyph.value] = 0;
-      }
+    glyph.index = glyphCount;
+    glyphs[glyphCount] = glyph;
+    setIndex(glyph.value, glyphCount);
+    glyphCount++;
+  }
 
-    } else if (glyphs[glyphCount-1].value < glyph.value) {
-      glyphs[glyphCount] = glyph;
-      if (glyph.value < 128) {
-        ascii[glyph.value] = glyphCount;
-      }
 
-    } else {
-      for (int i = 0; i < glyphCount; i++) {
-        if (glyphs[i].value > c) {
-          for (int j = glyphCount; j > i; --j) {
-            glyphs[j] = glyphs[j-1];
-            if (glyphs[j].value < 128) {
-              ascii[glyphs[j].value] = j;
-            }
-          }
-          glyph.index = i;
-          glyphs[i] = glyph;
-          // cache locations of the ascii charset
-          if (c < 128) ascii[c] = i;
-          break;
-        }
-      }
+  protected void setIndex(int c, int index) {
+    if (c < 0 || 0xFFFF < c) return;
+    int[] page = indexPages[c >> 8];
+    if (page == null) {
+      page = newIndexPage();
+      indexPages[c >> 8] = page;
     }
-    glyphCount++;
+    page[c & 0xFF] = index;
+    if (c < 128) ascii[c] = index;
+  }
+
+
+  static protected int[] newIndexPage() {
+    int[] page = new int[256];
+    Arrays.fill(page, -1);
+    return page;
   }
 
 
@@ -470,17 +475,19 @@ public class PFont implements PConstants {
   }
 
 
-  public Glyph getGlyph(char c) {
+  public synchronized Glyph getGlyph(char c) {
     int index = index(c);
     return (index == -1) ? null : glyphs[index];
   }
 
 
   /**
-   * Get index for the character.
+   * Get index for the character. Synchronized, along with getGlyph() and
+   * width(), since lazy fonts may also create glyphs on the thread started
+   * by PGraphicsOpenGL.textPrewarm().
    * @return index into arrays or -1 if not found
    */
-  protected int index(char c) {
+  protected synchronized int index(char c) {
     if (lazy) {
       int index = indexActual(c);
       if (index != -1) {
@@ -503,35 +510,22 @@ public class PFont implements PConstants {
 
 
   protected int indexActual(char c) {
-    // degenerate case, but the find function will have trouble
-    // if there are somehow zero chars in the lookup
-    //if (value.length == 0) return -1;
-    if (glyphCount == 0) return -1;
-
-    // quicker lookup for the ascii fellers
-    if (c < 128) return ascii[c];
-
-    // some other unicode char, hunt it out
-    //return index_hunt(c, 0, value.length-1);
-    return indexHunt(c, 0, glyphCount-1);
+    if (c < 256) return latinIndex[c];
+    int[] page = indexPages[c >> 8];
+    return page == null ? -1 : page[c & 0xFF];
   }
 
 
+  /**
+   * Index of the glyph for c if it's between start and stop, or -1. The
+   * glyphs used to be sorted, and this searched them.
+   * @deprecated the glyphs are no longer sorted, use index() instead.
+   */
+  @Deprecated
   protected int indexHunt(int c, int start, int stop) {
-    int pivot = (start + stop) / 2;
-
-    // if this is the char, then return it
-    if (c == glyphs[pivot].value) return pivot;
-
-    // char doesn't exist, otherwise would have been the pivot
-    //if (start == stop) return -1;
-    if (start >= stop) return -1;
-
-    // if it's in the lower half, continue searching that
-    if (c < glyphs[pivot].value) return indexHunt(c, start, pivot-1);
-
-    // if it's in the upper half, continue there
-    return indexHunt(c, pivot+1, stop);
+    if (c < 0 || 0xFFFF < c) return -1;
+    int index = indexActual((char) c);
+    return (start <= index && index <= stop) ? index : -1;
   }
 
 
@@ -565,7 +559,7 @@ public class PFont implements PConstants {
   /**
    * Width of this character for a font of size 1.
    */
-  public float width(char c) {
+  public synchronized float width(char c) {
     if (c == 32) return width('i');
 
     int cc = index(c);
@@ -624,6 +618,11 @@ public class PFont implements PConstants {
     return glyphCount;
   }
 
+  /**
+   * Glyphs are in the order they were added to the font: by character for
+   * the ones that were loaded or created from a charset, followed by the
+   * ones created lazily since then. The index of a glyph doesn't change.
+   */
   public Glyph getGlyph(int i)  {
     return glyphs[i];
   }
@@ -3099,6 +3099,16 @@ public class PGraphics extends PImage implements PConstants {
   }
 
 
+  /**
+   * Draws count instances of the shape in a single batch, using the
+   * per-instance data set with PShape.setInstanceTransform(),
+   * setInstanceColor() and setInstanceAttrib().
+   */
+  public void shape(PShape shape, int count) {
+    showMissingWarning("shape");
+  }
+
+
   // TODO unapproved
   protected void shape(PShape shape, float x, float y, float z) {
     showMissingWarning("shape");
@@ -749,6 +749,34 @@ public class PShape implements PConstants {
   }
 
 
+  /**
+   * Sets the transformation of one instance of this shape, to be used when
+   * drawing it with shape(PShape, int). Only supported by the OpenGL
+   * renderers.
+   */
+  public void setInstanceTransform(int index, PMatrix matrix) {
+  }
+
+
+  /**
+   * Sets the color of one instance of this shape, which tints the fill of
+   * that instance when drawing it with shape(PShape, int). Only supported by
+   * the OpenGL renderers.
+   */
+  public void setInstanceColor(int index, int color) {
+  }
+
+
+  /**
+   * Sets the value of the custom attribute called name for one instance of
+   * this shape, with 1 to 4 components. A shader set with shader() reads it
+   * as a per-instance vertex attribute when drawing the shape with
+   * shape(PShape, int). Only supported by the OpenGL renderers.
+   */
+  public void setInstanceAttrib(String name, int index, float... values) {
+  }
+
+
   /**
    * @webref pshape:method
    * @brief Starts the creation of a new PShape
@@ -33,6 +33,8 @@ import java.sql.Types;
 import java.util.*;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.regex.Pattern;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 import java.util.zip.ZipOutputStream;
@@ -82,6 +84,7 @@ public class Table {
   HashMap<String, Integer> columnIndices;
 
   protected Object[] columns;  // [column]
+  protected TableIndex[] indexes;  // [column], null if none were created
 
   // accessible for advanced users
   static public final int STRING = 0;
@@ -98,6 +101,8 @@ public class Table {
   // each expansion.
   protected int expandIncrement;
 
+  static ExecutorService sharedPool;  // see getSharedPool()
+
 
   /**
    * Creates a new, empty table. Use addRow() to add additional rows.
@@ -123,8 +128,14 @@ public class Table {
   public Table(File file, String options) throws IOException {
     // uses createInput() to handle .gz (and eventually .bz2) files
     init();
-    parse(PApplet.createInput(file),
-          extensionOptions(true, file.getName(), options));
+    options = extensionOptions(true, file.getName(), options);
+    if (!file.getName().toLowerCase().endsWith(".gz") && options != null &&
+        Arrays.asList(PApplet.trim(PApplet.split(options, ','))).contains("col")) {
+      // mapped, so that the columns are only read where they're used
+      TableColumnFile.open(this, file);
+    } else {
+      parse(PApplet.createInput(file), options);
+    }
   }
 
   /**
@@ -142,6 +153,11 @@ public class Table {
    * <li>tsv - parse the table as tab-separated values
    * <li>newlines - this CSV file contains newlines inside individual cells
    * <li>header - this table has a header (title) row
+   * <li>col - a column file, see saveTable(), read into memory when not
+   * loaded from a File, which maps it instead
+   * <li>parallel - read CSV or TSV in chunks parsed on all the cores
+   * <li>infer - choose the column types from the first 1000 rows, or
+   * infer=n for the first n, instead of reading every column as STRING
    * </ul>
    *
    * @nowebref
@@ -302,8 +318,8 @@ public class Table {
   */
 
 
-  static final String[] loadExtensions = { "csv", "tsv", "ods", "bin" };
-  static final String[] saveExtensions = { "csv", "tsv", "ods", "bin", "html" };
+  static final String[] loadExtensions = { "csv", "tsv", "ods", "bin", "col" };
+  static final String[] saveExtensions = { "csv", "tsv", "ods", "bin", "col", "html" };
 
   static public String extensionOptions(boolean loading, String filename, String options) {
     String extension = PApplet.checkExtension(filename);
@@ -329,6 +345,8 @@ public class Table {
     boolean header = false;
     String extension = null;
     boolean binary = false;
+    boolean parallel = false;
+    int inferRows = 0;
     String encoding = "UTF-8";
 
     String worksheet = null;
@@ -351,8 +369,19 @@ public class Table {
         } else if (opt.equals("bin")) {
           binary = true;
           extension = "bin";
+        } else if (opt.equals("col")) {
+          extension = "col";
         } else if (opt.equals("header")) {
           header = true;
+        } else if (opt.equals("parallel")) {
+          parallel = true;
+        } else if (opt.equals("infer")) {
+          inferRows = TableParser.INFER_ROWS;
+        } else if (opt.startsWith("infer=")) {
+          inferRows = PApplet.parseInt(opt.substring(6), 0);
+          if (inferRows < 1) {
+            throw new IllegalArgumentException("'" + opt + "' is not a valid option for loading a Table");
+          }
         } else if (opt.startsWith(sheetParam)) {
           worksheet = opt.substring(sheetParam.length());
         } else if (opt.startsWith("dictionary=")) {
@@ -372,10 +401,20 @@ public class Table {
     if (binary) {
       loadBinary(input);
 
+    } else if (extension.equals("col")) {
+      TableColumnFile.read(this, input);
+
     } else if (extension.equals("ods")) {
       odsParse(input, worksheet, header);
 
+    } else if ((parallel || 0 < inferRows) &&
+               TableParser.supports(Charset.forName(encoding))) {
+      int threads = parallel ? Runtime.getRuntime().availableProcessors() : 1;
+      new TableParser(this, header, "tsv".equals(extension),
+                      Charset.forName(encoding), threads, inferRows).parse(input);
+
     } else {
+      int inferFrom = getColumnCount();
       InputStreamReader isr = new InputStreamReader(input, encoding);
       BufferedReader reader = new BufferedReader(isr);
 
@@ -397,10 +436,35 @@ public class Table {
       }
       */
       parseBasic(reader, header, "tsv".equals(extension));
+      if (0 < inferRows) {
+        TableParser.inferTypes(this, inferFrom, inferRows);
+      }
     }
   }
 
 
+  /**
+   * Pool of daemon threads, one for each core, shared by everything that
+   * splits the work on a table across threads, so that doing it doesn't
+   * start new threads each time. Made on first use, null on a single core.
+   */
+  static synchronized ExecutorService getSharedPool() {
+    if (sharedPool == null) {
+      int threads = Runtime.getRuntime().availableProcessors();
+      if (threads == 1) return null;
+      sharedPool = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+          Thread thread = new Thread(r, "Table pool");
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+    }
+    return sharedPool;
+  }
+
+
   protected void parseBasic(BufferedReader reader,
                             boolean header, boolean tsv) throws IOException {
     String line = null;
@@ -408,7 +472,6 @@ public class Table {
     if (rowCount == 0) {
       setRowCount(10);
     }
-    //int prev = 0;  //-1;
     try {
       while ((line = reader.readLine()) != null) {
         if (row == getRowCount()) {
@@ -421,25 +484,6 @@ public class Table {
           setRow(row, tsv ? PApplet.split(line, '\t') : splitLineCSV(line, reader));
           row++;
         }
-
-        if (row % 10000 == 0) {
-        /*
-        // this is problematic unless we're going to calculate rowCount first
-        if (row < rowCount) {
-          int pct = (100 * row) / rowCount;
-          if (pct != prev) {  // also prevents "0%" from showing up
-            System.out.println(pct + "%");
-            prev = pct;
-          }
-        }
-         */
-          try {
-            // Sleep this thread so that the GC can catch up
-            Thread.sleep(10);
-          } catch (InterruptedException e) {
-            e.printStackTrace();
-          }
-        }
       }
     } catch (Exception e) {
       throw new RuntimeException("Error reading table on line " + row, e);
@@ -1172,6 +1216,13 @@ public class Table {
 
 
   public boolean save(File file, String options) throws IOException {
+    // columns mapped from the file are read before it's overwritten
+    for (int col = 0; col < columns.length; col++) {
+      if (columns[col] instanceof TableColumnFile.Column &&
+          ((TableColumnFile.Column) columns[col]).isMappedFrom(file)) {
+        loadColumn(col);
+      }
+    }
     return save(PApplet.createOutput(file),
                 Table.extensionOptions(false, file.getName(), options));
   }
@@ -1219,6 +1270,13 @@ public class Table {
         e.printStackTrace();
         return false;
       }
+    } else if (extension.equals("col")) {
+      try {
+        TableColumnFile.write(this, output);
+      } catch (IOException e) {
+        e.printStackTrace();
+        return false;
+      }
     }
     writer.flush();
     writer.close();
@@ -1858,6 +1916,7 @@ public class Table {
       case STRING: columns[index] = new String[rowCount]; break;
       case CATEGORY: columns[index] = new int[rowCount]; break;
     }
+    moveIndexes(index, 1);
   }
 
  /**
@@ -1902,6 +1961,7 @@ public class Table {
       columnTitles = titlesTemp;
       columnIndices = null;
     }
+    moveIndexes(column, -1);
   }
 
 
@@ -1936,6 +1996,7 @@ public class Table {
       columnTypes = PApplet.expand(columnTypes, newCount);
       columnCategories = (HashMapBlows[])
         PApplet.expand(columnCategories, newCount);
+      moveIndexes(newCount, 0);
     }
   }
 
@@ -2061,6 +2122,7 @@ public class Table {
     }
 //    System.out.println("new type is " + newType);
     columnTypes[column] = newType;
+    invalidateIndex(column);
   }
 
 
@@ -2281,6 +2343,7 @@ public class Table {
 
   public void setRowCount(int newCount) {
     if (newCount != rowCount) {
+      loadColumns();
       if (newCount > 1000000) {
         System.out.print("Note: setting maximum row count to " + PApplet.nfc(newCount));
       }
@@ -2307,7 +2370,21 @@ public class Table {
         System.out.println(" (resize took " + PApplet.nfc(ms) + " ms)");
       }
     }
+    int oldCount = rowCount;
     rowCount = newCount;
+    if (indexes != null) {
+      for (TableIndex index : indexes) {
+        if (index != null) {
+          if (newCount < oldCount) {
+            index.truncate(newCount);
+          } else {
+            for (int row = oldCount; row < newCount; row++) {
+              index.update(row);
+            }
+          }
+        }
+      }
+    }
   }
 
 
@@ -2355,10 +2432,10 @@ public class Table {
         break;
       case CATEGORY:
         int index = source.getInt(col);
-        setInt(row, col, index);
         if (!columnCategories[col].hasCategory(index)) {
           columnCategories[col].setCategory(index, source.getString(col));
         }
+        setInt(row, col, index);
         break;
 
       default:
@@ -2388,6 +2465,7 @@ public class Table {
 
 
   public void insertRow(int insert, Object[] columnData) {
+    loadColumns();
     for (int col = 0; col < columns.length; col++) {
       switch (columnTypes[col]) {
         case CATEGORY:
@@ -2431,6 +2509,7 @@ public class Table {
     // Need to increment before setRow(), because it calls ensureBounds()
     // https://github.com/processing/processing/issues/5406
     ++rowCount;
+    invalidateIndexes();
     setRow(insert, columnData);
   }
 
@@ -2443,6 +2522,7 @@ public class Table {
    * @see Table#clearRows()
    */
   public void removeRow(int row) {
+    loadColumns();
     for (int col = 0; col < columns.length; col++) {
       switch (columnTypes[col]) {
         case CATEGORY:
@@ -2495,6 +2575,7 @@ public class Table {
       }
     }
     rowCount--;
+    invalidateIndexes();
   }
 
 
@@ -2559,6 +2640,7 @@ public class Table {
 
 
   protected void setRowCol(int row, int col, Object piece) {
+    loadColumn(col);
     switch (columnTypes[col]) {
       case STRING:
         String[] stringData = (String[]) columns[col];
@@ -2636,6 +2718,7 @@ public class Table {
       default:
         throw new IllegalArgumentException("That's not a valid column type.");
     }
+    updateIndex(row, col);
   }
 
 
@@ -3064,6 +3147,9 @@ public class Table {
     checkBounds(row, column);
     if (columnTypes[column] == INT ||
         columnTypes[column] == CATEGORY) {
+      if (columns[column] instanceof TableColumnFile.Column) {
+        return ((TableColumnFile.Column) columns[column]).getInt(row);
+      }
       int[] intData = (int[]) columns[column];
       return intData[row];
     }
@@ -3108,8 +3194,10 @@ public class Table {
           columnTypes[column] != CATEGORY) {
         throw new IllegalArgumentException("Column " + column + " is not an int column.");
       }
+      loadColumn(column);
       int[] intData = (int[]) columns[column];
       intData[row] = value;
+      updateIndex(row, column);
     }
   }
 
@@ -3152,6 +3240,9 @@ public class Table {
   public long getLong(int row, int column) {
     checkBounds(row, column);
     if (columnTypes[column] == LONG) {
+      if (columns[column] instanceof TableColumnFile.Column) {
+        return ((TableColumnFile.Column) columns[column]).getLong(row);
+      }
       long[] longData = (long[]) columns[column];
       return longData[row];
     }
@@ -3186,8 +3277,10 @@ public class Table {
       if (columnTypes[column] != LONG) {
         throw new IllegalArgumentException("Column " + column + " is not a 'long' column.");
       }
+      loadColumn(column);
       long[] longData = (long[]) columns[column];
       longData[row] = value;
+      updateIndex(row, column);
     }
   }
 
@@ -3243,6 +3336,9 @@ public class Table {
   public float getFloat(int row, int column) {
     checkBounds(row, column);
     if (columnTypes[column] == FLOAT) {
+      if (columns[column] instanceof TableColumnFile.Column) {
+        return ((TableColumnFile.Column) columns[column]).getFloat(row);
+      }
       float[] floatData = (float[]) columns[column];
       return floatData[row];
     }
@@ -3288,8 +3384,10 @@ public class Table {
       if (columnTypes[column] != FLOAT) {
         throw new IllegalArgumentException("Column " + column + " is not a float column.");
       }
+      loadColumn(column);
       float[] longData = (float[]) columns[column];
       longData[row] = value;
+      updateIndex(row, column);
     }
   }
 
@@ -3331,6 +3429,9 @@ public class Table {
   public double getDouble(int row, int column) {
     checkBounds(row, column);
     if (columnTypes[column] == DOUBLE) {
+      if (columns[column] instanceof TableColumnFile.Column) {
+        return ((TableColumnFile.Column) columns[column]).getDouble(row);
+      }
       double[] doubleData = (double[]) columns[column];
       return doubleData[row];
     }
@@ -3365,8 +3466,10 @@ public class Table {
       if (columnTypes[column] != DOUBLE) {
         throw new IllegalArgumentException("Column " + column + " is not a 'double' column.");
       }
+      loadColumn(column);
       double[] doubleData = (double[]) columns[column];
       doubleData[row] = value;
+      updateIndex(row, column);
     }
   }
 
@@ -3476,6 +3579,9 @@ public class Table {
   public String getString(int row, int column) {
     checkBounds(row, column);
     if (columnTypes[column] == STRING) {
+      if (columns[column] instanceof TableColumnFile.Column) {
+        return ((TableColumnFile.Column) columns[column]).getString(row);
+      }
       String[] stringData = (String[]) columns[column];
       return stringData[row];
     } else if (columnTypes[column] == CATEGORY) {
@@ -3489,10 +3595,13 @@ public class Table {
         return null;
       }
     } else if (columnTypes[column] == DOUBLE) {
-      if (Double.isNaN(getFloat(row, column))) {
+      if (Double.isNaN(getDouble(row, column))) {
         return null;
       }
     }
+    if (columns[column] instanceof TableColumnFile.Column) {
+      return ((TableColumnFile.Column) columns[column]).getString(row);
+    }
     return String.valueOf(Array.get(columns[column], row));
   }
 
@@ -3510,6 +3619,7 @@ public class Table {
    */
   public void setMissingString(String value) {
     missingString = value;
+    invalidateIndexes();  // categories use it for missing entries
   }
 
 
@@ -3531,8 +3641,10 @@ public class Table {
     if (columnTypes[column] != STRING) {
       throw new IllegalArgumentException("Column " + column + " is not a String column.");
     }
+    loadColumn(column);
     String[] stringData = (String[]) columns[column];
     stringData[row] = value;
+    updateIndex(row, column);
   }
 
   /**
@@ -3584,6 +3696,117 @@ public class Table {
   // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
 
 
+  /**
+   * Index a column, so that findRowIndex(), findRowIndices(), findRow(),
+   * findRows() and getRowMap() look up its values instead of reading every
+   * row. The index is kept up to date as the table changes, and is worth it
+   * when the same column is searched many times (e.g. by id, every frame).
+   * @param column ID number of the column to index
+   */
+  public void createIndex(int column) {
+    createIndex(column, false);
+  }
+
+
+  /**
+   * @param columnName title of the column to index
+   */
+  public void createIndex(String columnName) {
+    createIndex(getColumnIndex(columnName), false);
+  }
+
+
+  /**
+   * @param sorted also keep the rows in order of their values, to speed up
+   *               findRowIndices(min, max, column) on this column
+   */
+  public void createIndex(int column, boolean sorted) {
+    checkColumn(column);
+    if (indexes == null) {
+      indexes = new TableIndex[columns.length];
+    }
+    indexes[column] = new TableIndex(this, column, sorted);
+  }
+
+
+  public void createIndex(String columnName, boolean sorted) {
+    createIndex(getColumnIndex(columnName), sorted);
+  }
+
+
+  public void removeIndex(int column) {
+    checkColumn(column);
+    if (indexes != null) {
+      indexes[column] = null;
+    }
+  }
+
+
+  public void removeIndex(String columnName) {
+    removeIndex(getColumnIndex(columnName));
+  }
+
+
+  protected TableIndex getIndex(int column) {
+    return (indexes == null) ? null : indexes[column];
+  }
+
+
+  /** File a row under its new value after setting a cell. */
+  protected void updateIndex(int row, int column) {
+    if (indexes != null && indexes[column] != null) {
+      indexes[column].update(row);
+    }
+  }
+
+
+  /** Rebuild the index of a column on its next lookup. */
+  protected void invalidateIndex(int column) {
+    if (indexes != null && indexes[column] != null) {
+      indexes[column].invalidate();
+    }
+  }
+
+
+  /** Rebuild all indexes on their next lookup, after rows have moved. */
+  protected void invalidateIndexes() {
+    if (indexes != null) {
+      for (TableIndex index : indexes) {
+        if (index != null) {
+          index.invalidate();
+        }
+      }
+    }
+  }
+
+
+  /**
+   * Keep the indexes with their columns after a column is inserted (change
+   * is 1) or removed (change is -1) at this position, or the number of
+   * columns is set (change is 0).
+   */
+  protected void moveIndexes(int column, int change) {
+    if (indexes != null) {
+      TableIndex[] temp = new TableIndex[columns.length];
+      for (TableIndex index : indexes) {
+        if (index != null) {
+          if (index.column >= column) {
+            if (change < 0 && index.column == column) continue;
+            index.column += change;
+          }
+          if (index.column < temp.length) {
+            temp[index.column] = index;
+          }
+        }
+      }
+      indexes = temp;
+    }
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
   /**
    * Return the row that contains the first String that matches.
    * @param value the String to match
@@ -3591,7 +3814,13 @@ public class Table {
    */
   public int findRowIndex(String value, int column) {
     checkColumn(column);
+    TableIndex index = getIndex(column);
+    if (index != null) {
+      IntList list = index.get(value);
+      return (list == null) ? -1 : list.get(0);
+    }
     if (columnTypes[column] == STRING) {
+      loadColumn(column);
       String[] stringData = (String[]) columns[column];
       if (value == null) {
         for (int row = 0; row < rowCount; row++) {
@@ -3637,11 +3866,18 @@ public class Table {
    * @param column ID number of the column to search
    */
   public int[] findRowIndices(String value, int column) {
+    checkColumn(column);
+    TableIndex index = getIndex(column);
+    if (index != null) {
+      IntList list = index.get(value);
+      return (list == null) ? new int[0] : list.array();
+    }
+
     int[] outgoing = new int[rowCount];
     int count = 0;
 
-    checkColumn(column);
     if (columnTypes[column] == STRING) {
+      loadColumn(column);
       String[] stringData = (String[]) columns[column];
       if (value == null) {
         for (int row = 0; row < rowCount; row++) {
@@ -3756,6 +3992,65 @@ public class Table {
   }
 
 
+  /**
+   * Return the rows with a value from min to max (inclusive) in a numeric
+   * column, in order. Missing (NaN) entries are never included. This uses
+   * the column's index if it was created with createIndex(column, true).
+   * @param min the lowest value to match
+   * @param max the highest value to match
+   * @param column ID number of the column to search
+   */
+  public int[] findRowIndices(double min, double max, int column) {
+    checkColumn(column);
+    TableIndex index = getIndex(column);
+    if (index != null && index.sorted) {
+      return index.range(min, max);
+    }
+
+    int[] outgoing = new int[rowCount];
+    int count = 0;
+    for (int row = 0; row < rowCount; row++) {
+      double value = getDouble(row, column);
+      if (value >= min && value <= max) {
+        outgoing[count++] = row;
+      }
+    }
+    return PApplet.subset(outgoing, 0, count);
+  }
+
+
+  /**
+   * @param columnName title of the column to search
+   */
+  public int[] findRowIndices(double min, double max, String columnName) {
+    return findRowIndices(min, max, getColumnIndex(columnName));
+  }
+
+
+  /**
+   * Return the rows with a value from min to max (inclusive).
+   * @param min the lowest value to match
+   * @param max the highest value to match
+   * @param column ID number of the column to search
+   */
+  public Iterable<TableRow> findRows(final double min, final double max,
+                                     final int column) {
+    return new Iterable<TableRow>() {
+      public Iterator<TableRow> iterator() {
+        return new RowIndexIterator(Table.this, findRowIndices(min, max, column));
+      }
+    };
+  }
+
+
+  /**
+   * @param columnName title of the column to search
+   */
+  public Iterable<TableRow> findRows(double min, double max, String columnName) {
+    return findRows(min, max, getColumnIndex(columnName));
+  }
+
+
   // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
 
 
@@ -3766,11 +4061,29 @@ public class Table {
    */
   public int matchRowIndex(String regexp, int column) {
     checkColumn(column);
+    // same flags as PApplet.match()
+    Pattern pattern = Pattern.compile(regexp, Pattern.MULTILINE | Pattern.DOTALL);
+    TableIndex index = getIndex(column);
+    if (index != null) {
+      // only need to try each distinct value once
+      int first = -1;
+      for (Map.Entry<String, IntList> entry : index.map().entrySet()) {
+        String key = entry.getKey();
+        if (key != null && pattern.matcher(key).find()) {
+          int row = entry.getValue().get(0);
+          if (first == -1 || row < first) {
+            first = row;
+          }
+        }
+      }
+      return first;
+    }
     if (columnTypes[column] == STRING) {
+      loadColumn(column);
       String[] stringData = (String[]) columns[column];
       for (int row = 0; row < rowCount; row++) {
         if (stringData[row] != null &&
-            PApplet.match(stringData[row], regexp) != null) {
+            pattern.matcher(stringData[row]).find()) {
           return row;
         }
       }
@@ -3778,7 +4091,7 @@ public class Table {
       for (int row = 0; row < rowCount; row++) {
         String str = getString(row, column);
         if (str != null &&
-            PApplet.match(str, regexp) != null) {
+            pattern.matcher(str).find()) {
           return row;
         }
       }
@@ -3804,15 +4117,31 @@ public class Table {
    * @param column ID number of the column to search
    */
   public int[] matchRowIndices(String regexp, int column) {
+    checkColumn(column);
+    // same flags as PApplet.match()
+    Pattern pattern = Pattern.compile(regexp, Pattern.MULTILINE | Pattern.DOTALL);
+    TableIndex index = getIndex(column);
+    if (index != null) {
+      IntList list = new IntList();
+      for (Map.Entry<String, IntList> entry : index.map().entrySet()) {
+        String key = entry.getKey();
+        if (key != null && pattern.matcher(key).find()) {
+          list.append(entry.getValue());
+        }
+      }
+      list.sort();
+      return list.array();
+    }
+
     int[] outgoing = new int[rowCount];
     int count = 0;
 
-    checkColumn(column);
     if (columnTypes[column] == STRING) {
+      loadColumn(column);
       String[] stringData = (String[]) columns[column];
       for (int row = 0; row < rowCount; row++) {
         if (stringData[row] != null &&
-            PApplet.match(stringData[row], regexp) != null) {
+            pattern.matcher(stringData[row]).find()) {
           outgoing[count++] = row;
         }
       }
@@ -3820,7 +4149,7 @@ public class Table {
       for (int row = 0; row < rowCount; row++) {
         String str = getString(row, column);
         if (str != null &&
-            PApplet.match(str, regexp) != null) {
+            pattern.matcher(str).find()) {
           outgoing[count++] = row;
         }
       }
@@ -3933,6 +4262,7 @@ public class Table {
 
   public void replace(String orig, String replacement, int col) {
     if (columnTypes[col] == STRING) {
+      loadColumn(col);
       String[] stringData = (String[]) columns[col];
 
       if (orig != null) {
@@ -3948,6 +4278,7 @@ public class Table {
           }
         }
       }
+      invalidateIndex(col);
     }
   }
 
@@ -3970,12 +4301,14 @@ public class Table {
   public void replaceAll(String regex, String replacement, int column) {
     checkColumn(column);
     if (columnTypes[column] == STRING) {
+      loadColumn(column);
       String[] stringData = (String[]) columns[column];
       for (int row = 0; row < rowCount; row++) {
         if (stringData[row] != null) {
           stringData[row] = stringData[row].replaceAll(regex, replacement);
         }
       }
+      invalidateIndex(column);
     } else {
       throw new IllegalArgumentException("replaceAll() can only be used on String columns");
     }
@@ -4058,7 +4391,9 @@ public class Table {
    * @see Table#removeTokens(String)
    */
   public void trim() {
-    columnTitles = PApplet.trim(columnTitles);
+    if (columnTitles != null) {
+      columnTitles = PApplet.trim(columnTitles);
+    }
     for (int col = 0; col < getColumnCount(); col++) {
       trim(col);
     }
@@ -4128,12 +4463,14 @@ public class Table {
    */
   public void trim(int column) {
     if (columnTypes[column] == STRING) {
+      loadColumn(column);
       String[] stringData = (String[]) columns[column];
       for (int row = 0; row < rowCount; row++) {
         if (stringData[row] != null) {
           stringData[row] = PApplet.trim(stringData[row]);
         }
       }
+      invalidateIndex(column);
     }
   }
 
@@ -4171,6 +4508,25 @@ public class Table {
   }
 
 
+  /**
+   * Copy a column mapped from a column file into an array, before it's
+   * changed or used as an array.
+   */
+  protected void loadColumn(int column) {
+    if (columns[column] instanceof TableColumnFile.Column) {
+      columns[column] = ((TableColumnFile.Column) columns[column]).load();
+    }
+  }
+
+
+  /** Copy all the columns mapped from a column file into arrays. */
+  protected void loadColumns() {
+    for (int col = 0; col < columns.length; col++) {
+      loadColumn(col);
+    }
+  }
+
+
   /** Throw an error if this row doesn't exist. */
   protected void checkRow(int row) {
     if (row < 0 || row >= rowCount) {
@@ -4324,6 +4680,7 @@ public class Table {
 
 
   protected void sort(final int column, final boolean reverse) {
+    loadColumns();
     final int[] order = IntList.fromRange(getRowCount()).array();
     Sort s = new Sort() {
 
@@ -4422,6 +4779,7 @@ public class Table {
         break;
       }
     }
+    invalidateIndexes();
   }
 
 
@@ -4461,6 +4819,18 @@ public class Table {
   }
 
 
+  /**
+   * Start a query that filters, groups and summarizes the rows of this
+   * table, working a column at a time. See TableQuery for more.
+   * <pre>
+   * Table adults = table.query().where("age", "&gt;=", 18).table();
+   * </pre>
+   */
+  public TableQuery query() {
+    return new TableQuery(this);
+  }
+
+
   // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
 
 
@@ -4554,6 +4924,15 @@ public class Table {
    */
   public Map<String, TableRow> getRowMap(int column) {
     Map<String, TableRow> outgoing = new HashMap<>();
+    TableIndex index = getIndex(column);
+    if (index != null) {
+      // the last row with each value, same as overwriting them in order
+      for (Map.Entry<String, IntList> entry : index.map().entrySet()) {
+        IntList list = entry.getValue();
+        outgoing.put(entry.getKey(), new RowPointer(this, list.get(list.size() - 1)));
+      }
+      return outgoing;
+    }
     for (int row = 0; row < getRowCount(); row++) {
       String id = getString(row, column);
       outgoing.put(id, new RowPointer(this, row));
@@ -0,0 +1,561 @@
+/* -*- mode: java; c-basic-offset: 2; indent-tabs-mode: nil -*- */
+
+/*
+  Part of the Processing project - http://processing.org
+
+  Copyright (c) 2011-13 Ben Fry and Casey Reas
+  Copyright (c) 2006-11 Ben Fry
+
+  This library is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License version 2.1 as published by the Free Software Foundation.
+
+  This library is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General
+  Public License along with this library; if not, write to the
+  Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+  Boston, MA  02111-1307  USA
+ */
+
+package processing.data;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+import processing.android.CompatUtils;
+import processing.core.PApplet;
+
+
+/**
+ * Columnar binary format of Table, for the "col" extension. Each column is
+ * a block of little-endian values, and opening a file maps it, so that the
+ * values are only read from the pages used when getting them. A column is
+ * copied into an array when it is first changed.
+ *
+ * The file starts with MAGIC and VERSION, followed by the blocks, each
+ * starting at a multiple of 8 bytes:
+ * <ul>
+ * <li>INT, LONG, FLOAT and DOUBLE columns are the values of the rows.
+ * <li>CATEGORY columns are the int indices of the rows, and a dictionary
+ * with the categories.
+ * <li>STRING columns are the int indices of the rows in a dictionary with
+ * each distinct value, or -1 for null.
+ * </ul>
+ * A dictionary has its count of values, then count + 1 int offsets of their
+ * UTF-8 bytes, which follow. A null category (which has no bytes) has the
+ * complement (~) of its offset, so it's negative like a null STRING.
+ * After the blocks, the footer has the row and column counts, the titles,
+ * the type and block offsets of each column, and the missing values. The
+ * file ends with the offset of the footer and MAGIC again.
+ */
+class TableColumnFile {
+  static final int MAGIC = 0x9007C015;
+  static final int VERSION = 1;
+
+  // Offset of the footer and MAGIC
+  static final int TRAILER_SIZE = 12;
+
+  static final int NULL_STRING = -1;
+
+  // StandardCharsets needs API 19
+  static final Charset UTF8 = CompatUtils.getCharsetUTF8();
+
+  // Source of the blocks, either mapped from channel or in buffer
+  FileChannel channel;
+  ByteBuffer buffer;
+  File file;  // when mapped
+
+
+  /** Maps the file into the table. */
+  static void open(Table table, File file) throws IOException {
+    RandomAccessFile raf = new RandomAccessFile(file, "r");
+    try {
+      TableColumnFile columnFile = new TableColumnFile();
+      columnFile.channel = raf.getChannel();
+      columnFile.file = file;
+      columnFile.read(table, raf.length());
+    } finally {
+      // the mapped buffers stay valid
+      raf.close();
+    }
+  }
+
+
+  /** Reads the stream into memory, for files that can't be mapped. */
+  static void read(Table table, InputStream input) throws IOException {
+    byte[] data = new byte[1 << 16];
+    int length = 0;
+    int count;
+    while ((count = input.read(data, length, data.length - length)) != -1) {
+      length += count;
+      if (length == data.length) {
+        data = PApplet.expand(data);
+      }
+    }
+    input.close();
+
+    TableColumnFile columnFile = new TableColumnFile();
+    columnFile.buffer = ByteBuffer.wrap(data, 0, length);
+    columnFile.read(table, length);
+  }
+
+
+  ByteBuffer region(long offset, long length) throws IOException {
+    if (Integer.MAX_VALUE < length) {
+      throw new IOException("A block of this table is too large to be read");
+    }
+    ByteBuffer region;
+    if (channel != null) {
+      region = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+    } else {
+      ByteBuffer dup = buffer.duplicate();
+      dup.position((int) offset);
+      dup.limit((int) (offset + length));
+      region = dup.slice();
+    }
+    return region.order(ByteOrder.LITTLE_ENDIAN);
+  }
+
+
+  void read(Table table, long fileLength) throws IOException {
+    if (fileLength < 8 + TRAILER_SIZE) {
+      throw new IOException("Not a column table, the file is too short");
+    }
+    ByteBuffer header = region(0, 8);
+    int magic = header.getInt();
+    if (magic != MAGIC) {
+      throw new IOException("Not a column table (magic was " + PApplet.hex(magic) + ")");
+    }
+    int version = header.getInt();
+    if (version != VERSION) {
+      throw new IOException("Column table version " + version + " is not supported");
+    }
+    ByteBuffer trailer = region(fileLength - TRAILER_SIZE, TRAILER_SIZE);
+    long footerOffset = trailer.getLong();
+    if (trailer.getInt() != MAGIC) {
+      throw new IOException("This column table is incomplete");
+    }
+    ByteBuffer footer = region(footerOffset,
+                               fileLength - TRAILER_SIZE - footerOffset);
+
+    int rowCount = footer.getInt();
+    int columnCount = footer.getInt();
+    String[] titles = null;
+    if (footer.get() != 0) {
+      titles = new String[columnCount];
+      for (int col = 0; col < columnCount; col++) {
+        titles[col] = getString(footer);
+      }
+    }
+    int[] types = new int[columnCount];
+    long[] offsets = new long[columnCount];
+    long[] dictionaryOffsets = new long[columnCount];
+    for (int col = 0; col < columnCount; col++) {
+      types[col] = footer.getInt();
+      offsets[col] = footer.getLong();
+      dictionaryOffsets[col] = footer.getLong();
+    }
+    table.missingString = getString(footer);
+    table.missingInt = footer.getInt();
+    table.missingLong = footer.getLong();
+    table.missingFloat = footer.getFloat();
+    table.missingDouble = footer.getDouble();
+    table.missingCategory = footer.getInt();
+
+    table.setColumnCount(columnCount);
+    table.setColumnTitles(titles);
+    for (int col = 0; col < columnCount; col++) {
+      int type = types[col];
+      table.setColumnType(col, type);
+      Dictionary dictionary = null;
+      if (type == Table.STRING || type == Table.CATEGORY) {
+        dictionary = readDictionary(dictionaryOffsets[col]);
+      }
+      if (type == Table.CATEGORY) {
+        for (int i = 0; i < dictionary.count; i++) {
+          table.columnCategories[col].setCategory(i, dictionary.get(i));
+        }
+      }
+      long size = (long) rowCount * (type == Table.LONG ||
+                                     type == Table.DOUBLE ? 8 : 4);
+      Column column = new Column(type, region(offsets[col], size), dictionary);
+      column.file = file;
+      table.columns[col] = column;
+    }
+    table.rowCount = rowCount;
+  }
+
+
+  Dictionary readDictionary(long offset) throws IOException {
+    int count = region(offset, 4).getInt();
+    IntBuffer offsets = region(offset + 4, 4L * (count + 1)).asIntBuffer();
+    long start = offset + 4 + 4L * (count + 1);
+    return new Dictionary(count, offsets, region(start, offsets.get(count)));
+  }
+
+
+  static String getString(ByteBuffer buffer) {
+    int length = buffer.getInt();
+    if (length == NULL_STRING) return null;
+    byte[] bytes = new byte[length];
+    buffer.get(bytes);
+    return new String(bytes, UTF8);
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /**
+   * Column of a mapped file, in place of the array in Table.columns.
+   */
+  static class Column {
+    int type;
+    // Values, or indices into the dictionary for STRING and CATEGORY
+    IntBuffer ints;
+    LongBuffer longs;
+    FloatBuffer floats;
+    DoubleBuffer doubles;
+    Dictionary dictionary;
+    File file;  // mapped from, or null when read into memory
+
+
+    Column(int type, ByteBuffer data, Dictionary dictionary) {
+      this.type = type;
+      this.dictionary = dictionary;
+      switch (type) {
+        case Table.LONG: longs = data.asLongBuffer(); break;
+        case Table.FLOAT: floats = data.asFloatBuffer(); break;
+        case Table.DOUBLE: doubles = data.asDoubleBuffer(); break;
+        default: ints = data.asIntBuffer(); break;
+      }
+    }
+
+
+    /** True if the values are still mapped from this file. */
+    boolean isMappedFrom(File target) throws IOException {
+      return file != null &&
+        file.getCanonicalFile().equals(target.getCanonicalFile());
+    }
+
+
+    int getInt(int row) {
+      return ints.get(row);
+    }
+
+
+    long getLong(int row) {
+      return longs.get(row);
+    }
+
+
+    float getFloat(int row) {
+      return floats.get(row);
+    }
+
+
+    double getDouble(int row) {
+      return doubles.get(row);
+    }
+
+
+    // Returns the value of a STRING column, or of a number as text.
+    String getString(int row) {
+      switch (type) {
+        case Table.INT: return String.valueOf(getInt(row));
+        case Table.LONG: return String.valueOf(getLong(row));
+        case Table.FLOAT: return String.valueOf(getFloat(row));
+        case Table.DOUBLE: return String.valueOf(getDouble(row));
+      }
+      int index = getInt(row);
+      return index == NULL_STRING ? null : dictionary.get(index);
+    }
+
+
+    /** Copies the values into an array for Table.columns. */
+    Object load() {
+      int rowCount = (type == Table.LONG) ? longs.capacity() :
+        (type == Table.FLOAT) ? floats.capacity() :
+        (type == Table.DOUBLE) ? doubles.capacity() : ints.capacity();
+      switch (type) {
+        case Table.LONG: {
+          long[] longData = new long[rowCount];
+          longs.duplicate().get(longData);
+          return longData;
+        }
+        case Table.FLOAT: {
+          float[] floatData = new float[rowCount];
+          floats.duplicate().get(floatData);
+          return floatData;
+        }
+        case Table.DOUBLE: {
+          double[] doubleData = new double[rowCount];
+          doubles.duplicate().get(doubleData);
+          return doubleData;
+        }
+        case Table.STRING: {
+          // each distinct value is made into a String once
+          String[] values = new String[dictionary.count];
+          String[] stringData = new String[rowCount];
+          for (int row = 0; row < rowCount; row++) {
+            int index = ints.get(row);
+            if (index != NULL_STRING) {
+              if (values[index] == null) {
+                values[index] = dictionary.get(index);
+              }
+              stringData[row] = values[index];
+            }
+          }
+          return stringData;
+        }
+        default: {
+          int[] intData = new int[rowCount];
+          ints.duplicate().get(intData);
+          return intData;
+        }
+      }
+    }
+  }
+
+
+  /**
+   * Distinct values of a STRING or CATEGORY column, decoded when used.
+   */
+  static class Dictionary {
+    int count;
+    IntBuffer offsets;
+    ByteBuffer bytes;
+
+
+    Dictionary(int count, IntBuffer offsets, ByteBuffer bytes) {
+      this.count = count;
+      this.offsets = offsets;
+      this.bytes = bytes;
+    }
+
+
+    String get(int index) {
+      int start = offsets.get(index);
+      if (start < 0) return null;
+      int stop = offsets.get(index + 1);
+      byte[] value = new byte[(stop < 0 ? ~stop : stop) - start];
+      ByteBuffer dup = bytes.duplicate();
+      dup.position(start);
+      dup.get(value);
+      return new String(value, UTF8);
+    }
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /**
+   * Writes the table, which may itself be mapped from a file.
+   */
+  static void write(Table table, OutputStream output) throws IOException {
+    Writer writer = new Writer(output);
+    writer.putInt(MAGIC);
+    writer.putInt(VERSION);
+
+    int rowCount = table.getRowCount();
+    int columnCount = table.getColumnCount();
+    long[] offsets = new long[columnCount];
+    long[] dictionaryOffsets = new long[columnCount];
+    for (int col = 0; col < columnCount; col++) {
+      writer.align();
+      offsets[col] = writer.position;
+      dictionaryOffsets[col] = -1;
+      switch (table.getColumnType(col)) {
+        case Table.INT:
+        case Table.CATEGORY:
+          for (int row = 0; row < rowCount; row++) {
+            writer.putInt(table.getInt(row, col));
+          }
+          break;
+        case Table.LONG:
+          for (int row = 0; row < rowCount; row++) {
+            writer.putLong(table.getLong(row, col));
+          }
+          break;
+        case Table.FLOAT:
+          for (int row = 0; row < rowCount; row++) {
+            writer.putFloat(table.getFloat(row, col));
+          }
+          break;
+        case Table.DOUBLE:
+          for (int row = 0; row < rowCount; row++) {
+            writer.putDouble(table.getDouble(row, col));
+          }
+          break;
+        case Table.STRING: {
+          Table.HashMapBlows values = new Table.HashMapBlows();
+          for (int row = 0; row < rowCount; row++) {
+            String value = table.getString(row, col);
+            writer.putInt(value == null ? NULL_STRING : values.index(value));
+          }
+          writer.align();
+          dictionaryOffsets[col] = writer.position;
+          writeDictionary(writer, values);
+          break;
+        }
+      }
+      if (table.getColumnType(col) == Table.CATEGORY) {
+        writer.align();
+        dictionaryOffsets[col] = writer.position;
+        writeDictionary(writer, table.columnCategories[col]);
+      }
+    }
+
+    writer.align();
+    long footerOffset = writer.position;
+    writer.putInt(rowCount);
+    writer.putInt(columnCount);
+    String[] titles = table.getColumnTitles();
+    writer.put((byte) (titles != null ? 1 : 0));
+    if (titles != null) {
+      for (String title : titles) {
+        writer.putString(title);
+      }
+    }
+    for (int col = 0; col < columnCount; col++) {
+      writer.putInt(table.getColumnType(col));
+      writer.putLong(offsets[col]);
+      writer.putLong(dictionaryOffsets[col]);
+    }
+    writer.putString(table.missingString);
+    writer.putInt(table.missingInt);
+    writer.putLong(table.missingLong);
+    writer.putFloat(table.missingFloat);
+    writer.putDouble(table.missingDouble);
+    writer.putInt(table.missingCategory);
+
+    writer.putLong(footerOffset);
+    writer.putInt(MAGIC);
+    writer.flush();
+    output.close();
+  }
+
+
+  static void writeDictionary(Writer writer,
+                              Table.HashMapBlows values) throws IOException {
+    int count = values.size();
+    byte[][] bytes = new byte[count][];
+    writer.putInt(count);
+    int offset = 0;
+    for (int i = 0; i < count; i++) {
+      String key = values.key(i);
+      if (key == null) {  // a category made from null
+        writer.putInt(~offset);
+        bytes[i] = new byte[0];
+      } else {
+        writer.putInt(offset);
+        bytes[i] = key.getBytes(UTF8);
+        offset += bytes[i].length;
+      }
+    }
+    writer.putInt(offset);
+    for (byte[] value : bytes) {
+      writer.put(value);
+    }
+  }
+
+
+  /**
+   * Little-endian values written through a buffer, counting their bytes.
+   */
+  static class Writer {
+    OutputStream output;
+    ByteBuffer buffer;
+    long position;
+
+
+    Writer(OutputStream output) {
+      this.output = output;
+      buffer = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+
+    void room(int bytes) throws IOException {
+      if (buffer.remaining() < bytes) flush();
+      position += bytes;
+    }
+
+
+    void put(byte value) throws IOException {
+      room(1);
+      buffer.put(value);
+    }
+
+
+    void put(byte[] values) throws IOException {
+      flush();
+      output.write(values);
+      position += values.length;
+    }
+
+
+    void putInt(int value) throws IOException {
+      room(4);
+      buffer.putInt(value);
+    }
+
+
+    void putLong(long value) throws IOException {
+      room(8);
+      buffer.putLong(value);
+    }
+
+
+    void putFloat(float value) throws IOException {
+      room(4);
+      buffer.putFloat(value);
+    }
+
+
+    void putDouble(double value) throws IOException {
+      room(8);
+      buffer.putDouble(value);
+    }
+
+
+    void putString(String value) throws IOException {
+      if (value == null) {
+        putInt(NULL_STRING);
+      } else {
+        byte[] bytes = value.getBytes(UTF8);
+        putInt(bytes.length);
+        put(bytes);
+      }
+    }
+
+
+    // Pads with zeros to the next multiple of 8 bytes.
+    void align() throws IOException {
+      while (position % 8 != 0) {
+        put((byte) 0);
+      }
+    }
+
+
+    void flush() throws IOException {
+      output.write(buffer.array(), 0, buffer.position());
+      buffer.clear();
+    }
+  }
+}
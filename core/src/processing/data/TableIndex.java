@@ -0,0 +1,241 @@
+/* -*- mode: java; c-basic-offset: 2; indent-tabs-mode: nil -*- */
+
+/*
+  Part of the Processing project - http://processing.org
+
+  Copyright (c) 2011-13 Ben Fry and Casey Reas
+  Copyright (c) 2006-11 Ben Fry
+
+  This library is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License version 2.1 as published by the Free Software Foundation.
+
+  This library is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General
+  Public License along with this library; if not, write to the
+  Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+  Boston, MA  02111-1307  USA
+ */
+
+package processing.data;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+
+/**
+ * Index of a Table column, made by Table.createIndex(). Rows are filed under
+ * the same String returned by getString(), so a lookup finds the same rows
+ * as a scan of the column, and the rows for each key are kept in order.
+ *
+ * Setting a cell moves its row to the new key, and adding rows at the end
+ * files them as well. Anything that moves rows around (inserting, removing,
+ * sorting) only marks the index stale, and it's rebuilt on the next lookup.
+ *
+ * A sorted index also keeps the rows ordered by getDouble(), for finding
+ * the rows in a range of values. That order is rebuilt on the next range
+ * lookup after any change to the column.
+ */
+class TableIndex {
+  Table table;
+  int column;
+  boolean sorted;
+
+  HashMap<String, IntList> rows;  // null when stale
+  String[] keys;  // the key each row is filed under
+  int count;
+
+  int[] order;  // rows that have a value, by value; null when stale
+  double[] values;  // the value of each entry in order
+
+
+  TableIndex(Table table, int column, boolean sorted) {
+    this.table = table;
+    this.column = column;
+    this.sorted = sorted;
+  }
+
+
+  void invalidate() {
+    rows = null;
+    keys = null;
+    count = 0;
+    order = null;
+    values = null;
+  }
+
+
+  protected void build() {
+    int rowCount = table.getRowCount();
+    rows = new HashMap<>();
+    keys = new String[Math.max(rowCount, 16)];
+    count = 0;
+    for (int row = 0; row < rowCount; row++) {
+      append(table.getString(row, column));
+    }
+  }
+
+
+  protected void append(String key) {
+    if (count == keys.length) {
+      keys = Arrays.copyOf(keys, count << 1);
+    }
+    IntList list = rows.get(key);
+    if (list == null) {
+      list = new IntList(1);
+      rows.put(key, list);
+    }
+    list.append(count);
+    keys[count++] = key;
+  }
+
+
+  /** Re-file a row after its cell was set, or a new row at the end. */
+  void update(int row) {
+    order = null;
+    if (rows == null) return;
+
+    if (row > count || !named(row)) {  // start over on the next lookup
+      invalidate();
+
+    } else if (row == count) {
+      append(table.getString(row, column));
+
+    } else {
+      String key = table.getString(row, column);
+      String old = keys[row];
+      if (old == null ? key == null : old.equals(key)) return;
+
+      IntList list = rows.get(old);
+      list.remove(Arrays.binarySearch(list.data, 0, list.count, row));
+      if (list.count == 0) {
+        rows.remove(old);
+      }
+      list = rows.get(key);
+      if (list == null) {
+        list = new IntList(1);
+        rows.put(key, list);
+      }
+      int pos = -(Arrays.binarySearch(list.data, 0, list.count, row) + 1);
+      if (pos == list.count) {
+        list.append(row);
+      } else {
+        list.insert(pos, row);
+      }
+      keys[row] = key;
+    }
+  }
+
+
+  /** False for a category that doesn't have a name yet, as in a new row. */
+  protected boolean named(int row) {
+    if (table.columnTypes[column] != Table.CATEGORY) return true;
+    int index = table.getInt(row, column);
+    return index == table.missingCategory ||
+      (index >= 0 && table.columnCategories[column].hasCategory(index));
+  }
+
+
+  /** Drop the rows past newCount, which are the last in each list. */
+  void truncate(int newCount) {
+    order = null;
+    if (rows == null) return;
+
+    for (int row = count - 1; row >= newCount; --row) {
+      IntList list = rows.get(keys[row]);
+      if (--list.count == 0) {
+        rows.remove(keys[row]);
+      }
+      keys[row] = null;
+    }
+    count = Math.min(count, newCount);
+  }
+
+
+  /** The rows filed under value, in order, or null if there are none. */
+  IntList get(String value) {
+    if (rows == null) build();
+    return rows.get(value);
+  }
+
+
+  HashMap<String, IntList> map() {
+    if (rows == null) build();
+    return rows;
+  }
+
+
+  /** Rows with min <= getDouble() <= max, in order. */
+  int[] range(double min, double max) {
+    if (order == null) {
+      buildOrder();
+    }
+    int start = search(min, false);
+    int stop = search(max, true);
+    if (stop <= start) {
+      return new int[0];
+    }
+    int[] outgoing = Arrays.copyOfRange(order, start, stop);
+    Arrays.sort(outgoing);
+    return outgoing;
+  }
+
+
+  /** First entry above value if after is set, or else not below it. */
+  protected int search(double value, boolean after) {
+    int lo = 0;
+    int hi = order.length;
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      if (values[mid] < value || (after && values[mid] == value)) {
+        lo = mid + 1;
+      } else {
+        hi = mid;
+      }
+    }
+    return lo;
+  }
+
+
+  protected void buildOrder() {
+    int rowCount = table.getRowCount();
+    int[] outgoing = new int[rowCount];
+    double[] valueData = new double[rowCount];
+    int length = 0;
+    for (int row = 0; row < rowCount; row++) {
+      double value = table.getDouble(row, column);
+      if (!Double.isNaN(value)) {  // missing values aren't in any range
+        outgoing[length] = row;
+        valueData[length++] = value;
+      }
+    }
+    final int[] o = Arrays.copyOf(outgoing, length);
+    final double[] v = Arrays.copyOf(valueData, length);
+    new Sort() {
+      @Override
+      public int size() {
+        return o.length;
+      }
+
+      @Override
+      public int compare(int a, int b) {
+        if (v[a] != v[b]) {
+          return v[a] < v[b] ? -1 : 1;
+        }
+        return o[a] - o[b];
+      }
+
+      @Override
+      public void swap(int a, int b) {
+        int row = o[a]; o[a] = o[b]; o[b] = row;
+        double value = v[a]; v[a] = v[b]; v[b] = value;
+      }
+    }.run();
+    order = o;
+    values = v;
+  }
+}
@@ -0,0 +1,980 @@
+/* -*- mode: java; c-basic-offset: 2; indent-tabs-mode: nil -*- */
+
+/*
+  Part of the Processing project - http://processing.org
+
+  Copyright (c) 2011-13 Ben Fry and Casey Reas
+  Copyright (c) 2006-11 Ben Fry
+
+  This library is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License version 2.1 as published by the Free Software Foundation.
+
+  This library is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General
+  Public License along with this library; if not, write to the
+  Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+  Boston, MA  02111-1307  USA
+ */
+
+package processing.data;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import processing.core.PApplet;
+
+
+/**
+ * Loader for the "parallel" and "infer" options of Table. The input is read
+ * in chunks of CHUNK_SIZE bytes, cut at the end of the last complete record
+ * of each, and the chunks are parsed, on all the cores with "parallel", each
+ * directly into columns of the types already set for the table. The columns
+ * of the chunks are then copied in order into the table.
+ *
+ * With "infer", the types of the other columns are chosen from the first
+ * rows: INT, LONG, FLOAT or DOUBLE if that type holds every value exactly,
+ * otherwise CATEGORY if the values repeat enough, and STRING if not. A
+ * chunk with a value that doesn't fit is parsed again with a wider type,
+ * and so are the other chunks once all of them are done, from their bytes
+ * which are kept until then. Empty values fit any type.
+ *
+ * Records and fields are found in the bytes themselves, which is possible
+ * because commas, tabs, quotes and newlines are single bytes that cannot be
+ * part of other characters in UTF-8 or in the single byte encodings. Other
+ * encodings go through parseBasic(). The rules are the same as those of
+ * parseBasic(), including newlines inside quoted CSV fields, which become \n.
+ */
+class TableParser {
+  static final int CHUNK_SIZE = 1 << 22;
+
+  // Chunks being parsed for each thread, at most, so only a few chunks of
+  // the input are in memory at once
+  static final int CHUNKS_PER_THREAD = 2;
+
+  // States while going through a CSV record
+  static final int FIELD_START = 0;
+  static final int UNQUOTED = 1;
+  static final int QUOTED = 2;
+
+  // Rows looked at for the "infer" option without a number
+  static final int INFER_ROWS = 1000;
+
+  // Times each value of a column of text is found among the rows looked at,
+  // on average, for it to be a CATEGORY column
+  static final int CATEGORY_REPEATS = 4;
+
+  // StandardCharsets needs API 19
+  static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+
+  // Number types, as bits 1 << type, in the order they are preferred
+  static final int NUMBERS = 1 << Table.INT | 1 << Table.LONG |
+                             1 << Table.FLOAT | 1 << Table.DOUBLE;
+
+  Table table;
+  boolean header;
+  boolean tsv;
+  Charset charset;
+  int threads;
+
+  // Rows looked at to choose the column types, or 0 to keep them STRING
+  int inferRows;
+
+  // Types of the columns when starting, the ones after are STRING
+  int[] types;
+
+  // Columns whose types are inferred, from inferFrom to the end of types,
+  // and the number types that hold the values in the rows looked at
+  int inferFrom;
+  int[] masks;
+
+
+  TableParser(Table table, boolean header, boolean tsv, Charset charset,
+              int threads, int inferRows) {
+    this.table = table;
+    this.header = header;
+    this.tsv = tsv;
+    this.charset = charset;
+    this.threads = threads;
+    this.inferRows = inferRows;
+  }
+
+
+  /** Whether the records of text in the charset can be found in the bytes. */
+  static boolean supports(Charset charset) {
+    String name = charset.name();
+    return name.equals("UTF-8") || name.equals("US-ASCII") ||
+      name.equals("ISO-8859-1") || name.startsWith("windows-125");
+  }
+
+
+  void parse(InputStream input) throws IOException {
+    types = table.columnTypes.clone();
+    inferFrom = types.length;
+
+    ExecutorService pool = null;
+    ArrayList<Future<Chunk>> results = new ArrayList<>();
+
+    byte[] buffer = new byte[CHUNK_SIZE];
+    int length = 0;
+    int start = 0;
+    int firstRow = 0;
+    boolean eof = false;
+    boolean bom = true;
+    try {
+      while (!eof) {
+        int count = input.read(buffer, length, buffer.length - length);
+        if (count == -1) {
+          eof = true;
+        } else {
+          length += count;
+          if (length < buffer.length) continue;
+        }
+
+        if (bom) {
+          // skip the Unicode BOM, if present
+          if (3 <= length && (buffer[0] & 0xFF) == 0xEF &&
+              (buffer[1] & 0xFF) == 0xBB && (buffer[2] & 0xFF) == 0xBF) {
+            start = 3;
+          }
+          bom = false;
+        }
+
+        // Cut after the last complete record
+        int stop = start;
+        int records = 0;
+        int next;
+        while ((next = nextRecord(buffer, stop, length, eof, null, 0)) != -1) {
+          stop = next;
+          records++;
+        }
+        if (records == 0 && !eof) {
+          // A record longer than the buffer
+          buffer = PApplet.expand(buffer);
+          continue;
+        }
+
+        byte[] data = buffer;
+        if (results.isEmpty() && 0 < inferRows) {
+          infer(data, start, stop, records);
+        }
+        boolean titles = header && results.isEmpty();
+        Chunk chunk = new Chunk(data, start, stop, records, titles, firstRow);
+        firstRow += chunk.rows;
+        if (threads == 1 || (eof && results.isEmpty())) {
+          // A single chunk or thread, no need for a pool
+          FutureTask<Chunk> task = new FutureTask<>(chunk);
+          task.run();
+          task.get();
+          results.add(task);
+
+        } else {
+          if (pool == null) pool = Table.getSharedPool();
+          int waitFor = results.size() - threads * CHUNKS_PER_THREAD;
+          if (0 <= waitFor) results.get(waitFor).get();
+          results.add(pool.submit(chunk));
+        }
+
+        // Leftover of the incomplete record for the next chunk
+        buffer = new byte[Math.max(CHUNK_SIZE, 2 * (length - stop))];
+        System.arraycopy(data, stop, buffer, 0, length - stop);
+        length -= stop;
+        start = 0;
+      }
+
+      Chunk[] chunks = new Chunk[results.size()];
+      for (int i = 0; i < chunks.length; i++) {
+        chunks[i] = results.get(i).get();
+      }
+      if (masks != null) settle(chunks, pool);
+      merge(chunks);
+
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+      throw new RuntimeException(cause);
+    } finally {
+      // the pool is shared, so stop only the chunks still queued after a failure
+      for (Future<Chunk> result : results) {
+        result.cancel(true);
+      }
+    }
+  }
+
+
+  /**
+   * Finds the end of the record starting at pos, passing its fields to the
+   * chunk if not null. Returns the position after the record and its line
+   * break, or -1 if it is not complete before the end of the data.
+   */
+  int nextRecord(byte[] data, int pos, int end, boolean eof,
+                 Chunk chunk, int row) throws IOException {
+    if (pos == end) return -1;
+
+    int col = 0;
+    int fieldStart = pos;
+    int flags = 0;
+    int state = FIELD_START;
+    int i = pos;
+    while (i < end) {
+      byte b = data[i];
+      if (tsv) {
+        if (b == '\t') {
+          if (chunk != null) chunk.field(row, col, fieldStart, i, 0);
+          col++;
+          fieldStart = i + 1;
+          i++;
+          continue;
+        }
+      } else if (state == QUOTED) {
+        if (b == '\"') {
+          if (i + 1 == end) {
+            if (!eof) return -1;
+            // closing quote for field; last field in the data
+            if (chunk != null) chunk.field(row, col, fieldStart, i, flags);
+            return end;
+          }
+          byte after = data[i + 1];
+          if (after == '\"') {
+            // an escaped quote inside a quoted field, step over it
+            flags |= Chunk.ESCAPED_QUOTES;
+            i += 2;
+          } else if (after == ',') {
+            // that was our closing quote
+            if (chunk != null) chunk.field(row, col, fieldStart, i, flags);
+            col++;
+            flags = 0;
+            state = FIELD_START;
+            fieldStart = i + 2;
+            i += 2;
+          } else if (after == '\n' || after == '\r') {
+            // closing quote for field; last field on the line
+            if (chunk != null) chunk.field(row, col, fieldStart, i, flags);
+            return lineBreak(data, i + 1, end, eof);
+          } else {
+            // a lone-wolf quote in the middle of the text
+            i++;
+          }
+        } else {
+          // newlines inside quotes are part of the field
+          if (b == '\r') flags |= Chunk.CARRIAGE_RETURNS;
+          i++;
+        }
+        continue;
+      } else if (state == FIELD_START && b == '\"') {
+        state = QUOTED;
+        fieldStart = i + 1;
+        i++;
+        continue;
+      } else {
+        state = UNQUOTED;
+        if (b == ',') {
+          if (chunk != null) chunk.field(row, col, fieldStart, i, flags);
+          col++;
+          flags = 0;
+          state = FIELD_START;
+          fieldStart = i + 1;
+          i++;
+          continue;
+        } else if (b == '\"') {
+          if (i + 1 < end && data[i + 1] == '\"') {
+            // step over this crummy quote escape
+            flags |= Chunk.ESCAPED_QUOTES;
+            i += 2;
+            continue;
+          } else if (i + 1 == end && !eof) {
+            return -1;
+          } else if (chunk != null) {
+            boolean last = i + 1 == end || data[i + 1] == '\n' ||
+              data[i + 1] == '\r';
+            throw new RuntimeException(last ?
+                                       "Unterminated quote at end of line" :
+                                       "Unterminated quoted field mid-line");
+          }
+        }
+      }
+
+      if (b == '\n' || b == '\r') {
+        if (chunk != null) chunk.field(row, col, fieldStart, i, flags);
+        return lineBreak(data, i, end, eof);
+      }
+      i++;
+    }
+
+    // Reached the end of the data inside the record
+    if (!eof) return -1;
+    if (state == QUOTED && chunk != null) {
+      throw new IOException("Found a quoted line that wasn't terminated properly.");
+    }
+    if (chunk != null) chunk.field(row, col, fieldStart, end, flags);
+    return end;
+  }
+
+
+  // Returns the position after the line break at pos, or -1 if a \r could
+  // be followed by a \n that hasn't been read yet.
+  static int lineBreak(byte[] data, int pos, int end, boolean eof) {
+    if (data[pos] == '\r') {
+      if (pos + 1 == end) return eof ? end : -1;
+      if (data[pos + 1] == '\n') return pos + 2;
+    }
+    return pos + 1;
+  }
+
+
+  // Chooses the types of the columns after inferFrom from the first rows of
+  // the first chunk.
+  void infer(byte[] data, int start, int stop, int records) {
+    int sampled = Math.min(records, inferRows + (header ? 1 : 0));
+    Chunk sample = new Chunk(data, start, stop, sampled, header, 0);
+    sample.sampling = true;
+    sample.parse();
+
+    types = Arrays.copyOf(types, Math.max(types.length, sample.columnCount));
+    masks = Arrays.copyOf(sample.masks, types.length);
+    for (int col = inferFrom; col < sample.columnCount; col++) {
+      types[col] = choose(masks[col], sample.counts[col],
+                          sample.categories[col].size());
+    }
+  }
+
+
+  // Widens the inferred types to hold the values of all the chunks, and
+  // parses again the chunks that were parsed with narrower ones.
+  void settle(Chunk[] chunks, ExecutorService pool)
+    throws InterruptedException, ExecutionException {
+    for (int col = inferFrom; col < types.length; col++) {
+      if (isNumber(types[col])) {
+        int mask = masks[col];
+        for (Chunk chunk : chunks) {
+          if (col < chunk.masks.length) mask &= chunk.masks[col];
+        }
+        types[col] = pick(mask);
+      }
+    }
+
+    ArrayList<Future<Chunk>> again = new ArrayList<>();
+    for (Chunk chunk : chunks) {
+      boolean narrower = false;
+      for (int col = inferFrom; col < types.length; col++) {
+        if (col < chunk.types.length && chunk.types[col] != types[col]) {
+          chunk.types[col] = types[col];
+          narrower = true;
+        }
+      }
+      if (narrower) {
+        if (pool == null) {
+          chunk.parse();
+        } else {
+          again.add(pool.submit(chunk));
+        }
+      }
+    }
+    for (Future<Chunk> result : again) {
+      result.get();
+    }
+
+    // the columns are all replaced by merge()
+    table.rowCount = 0;
+    table.setColumnCount(Math.max(table.getColumnCount(), types.length));
+    for (int col = inferFrom; col < types.length; col++) {
+      table.setColumnType(col, types[col]);
+    }
+    for (Chunk chunk : chunks) {
+      chunk.data = null;
+      chunk.scratch = null;
+    }
+  }
+
+
+  static boolean isNumber(int type) {
+    return ((1 << type) & NUMBERS) != 0;
+  }
+
+
+  // Returns the first of the types in mask, or STRING if there are none.
+  static int pick(int mask) {
+    if ((mask & 1 << Table.INT) != 0) return Table.INT;
+    if ((mask & 1 << Table.LONG) != 0) return Table.LONG;
+    if ((mask & 1 << Table.FLOAT) != 0) return Table.FLOAT;
+    if ((mask & 1 << Table.DOUBLE) != 0) return Table.DOUBLE;
+    return Table.STRING;
+  }
+
+
+  // Returns the type for a column of count values that fit the types in
+  // mask, with a number of distinct ones.
+  static int choose(int mask, int count, int distinct) {
+    if (count == 0) return Table.STRING;
+    int type = pick(mask);
+    if (type == Table.STRING && distinct * CATEGORY_REPEATS <= count) {
+      return Table.CATEGORY;
+    }
+    return type;
+  }
+
+
+  /**
+   * Chooses the types of the STRING columns from inferFrom on of a table
+   * read with parseBasic(), for the encodings that are not parsed here.
+   * All the rows are looked at for the numbers, the first ones for the
+   * categories.
+   */
+  static void inferTypes(Table table, int inferFrom, int inferRows) {
+    NumberScan scan = new NumberScan();
+    for (int col = inferFrom; col < table.getColumnCount(); col++) {
+      if (table.getColumnType(col) != Table.STRING) continue;
+      int mask = NUMBERS;
+      int count = 0;
+      Table.HashMapBlows distinct = new Table.HashMapBlows();
+      for (int row = 0; row < table.getRowCount(); row++) {
+        String s = table.getString(row, col);
+        if (s != null && !s.equals(table.missingString)) {
+          // anything not in ISO-8859-1 becomes ? which is not a number
+          byte[] bytes = s.getBytes(ISO_8859_1);
+          mask &= scan.classify(bytes, 0, bytes.length);
+          if (row < inferRows && !s.isEmpty()) {
+            distinct.index(s);
+            count++;
+          }
+        }
+      }
+      table.setColumnType(col, choose(mask, count, distinct.size()));
+    }
+  }
+
+
+  // Copies the columns of the chunks into the table, in order.
+  void merge(Chunk[] chunks) {
+    int rowCount = 0;
+    int columnCount = table.getColumnCount();
+    for (Chunk chunk : chunks) {
+      if (chunk.titles != null) {
+        table.setColumnTitles(chunk.titles);
+        columnCount = Math.max(columnCount, chunk.titles.length);
+      }
+      rowCount += chunk.rows;
+      columnCount = Math.max(columnCount, chunk.columnCount);
+    }
+    table.setColumnCount(columnCount);
+
+    for (int col = 0; col < columnCount; col++) {
+      int type = table.columnTypes[col];
+      Object column = newColumn(type, rowCount);
+      int row = 0;
+      for (Chunk chunk : chunks) {
+        if (col < chunk.columnCount && chunk.columns[col] != null) {
+          if (type == Table.CATEGORY) {
+            // indices of the categories in the table, in order of appearance
+            Table.HashMapBlows local = chunk.categories[col];
+            int[] remap = new int[local.size()];
+            for (int i = 0; i < remap.length; i++) {
+              remap[i] = table.columnCategories[col].index(local.key(i));
+            }
+            int[] indices = (int[]) chunk.columns[col];
+            for (int i = 0; i < chunk.rows; i++) {
+              int index = indices[i];
+              indices[i] = index < 0 ? index : remap[index];
+            }
+          }
+          System.arraycopy(chunk.columns[col], 0, column, row, chunk.rows);
+        }
+        row += chunk.rows;
+      }
+      table.columns[col] = column;
+    }
+    table.rowCount = rowCount;
+  }
+
+
+  static Object newColumn(int type, int length) {
+    switch (type) {
+      case Table.INT:
+      case Table.CATEGORY: return new int[length];
+      case Table.LONG: return new long[length];
+      case Table.FLOAT: return new float[length];
+      case Table.DOUBLE: return new double[length];
+      default: return new String[length];
+    }
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /**
+   * Rows of one piece of the input, parsed into columns of their own.
+   */
+  class Chunk implements Callable<Chunk> {
+    static final int ESCAPED_QUOTES = 1;
+    static final int CARRIAGE_RETURNS = 2;
+
+    byte[] data;
+    int start, stop;
+    int rows;
+    int firstRow;
+    boolean header;
+
+    // Column titles, if this chunk has the header
+    String[] titles;
+
+    int[] types;
+    Object[] columns;
+    Table.HashMapBlows[] categories;
+    int columnCount;
+
+    // Number types that hold the values of the inferred columns, a type
+    // that didn't is widened and the chunk parsed again
+    int[] masks = new int[0];
+    boolean widened;
+
+    // Only finding the types that hold the values, for infer()
+    boolean sampling;
+    int[] counts = new int[0];
+
+    // Fields that need to be unescaped are copied here first
+    byte[] scratch = new byte[64];
+    NumberScan scan = new NumberScan();
+
+
+    Chunk(byte[] data, int start, int stop, int records,
+          boolean header, int firstRow) {
+      this.data = data;
+      this.start = start;
+      this.stop = stop;
+      this.firstRow = firstRow;
+      this.header = header && 0 < records;
+      rows = this.header ? records - 1 : records;
+      types = TableParser.this.types.clone();
+    }
+
+
+    @Override
+    public Chunk call() {
+      parse();
+      return this;
+    }
+
+
+    void parse() {
+      do {
+        widened = false;
+        columns = new Object[0];
+        categories = new Table.HashMapBlows[0];
+        columnCount = 0;
+
+        int pos = start;
+        int row = 0;
+        try {
+          if (header) {
+            titles = new String[0];
+            pos = nextRecord(data, pos, stop, true, this, -1);
+          }
+          for (; row < rows; row++) {
+            pos = nextRecord(data, pos, stop, true, this, row);
+          }
+        } catch (IOException | RuntimeException e) {
+          throw new RuntimeException("Error reading table on line " +
+                                     (firstRow + row), e);
+        }
+      } while (widened);
+
+      if (inferRows == 0) {
+        // the bytes are needed by settle() otherwise
+        data = null;
+        scratch = null;
+      }
+    }
+
+
+    // Sets the field at col of the row, or of the titles for row -1.
+    void field(int row, int col, int fieldStart, int fieldStop, int flags) {
+      byte[] bytes = data;
+      int offset = fieldStart;
+      int length = fieldStop - fieldStart;
+      if (flags != 0) {
+        length = unescape(fieldStart, fieldStop, flags);
+        bytes = scratch;
+        offset = 0;
+      }
+
+      if (row == -1) {
+        titles = Arrays.copyOf(titles, col + 1);
+        titles[col] = new String(bytes, offset, length, charset);
+        return;
+      }
+
+      if (col >= columnCount) addColumn(col);
+      int type = types[col];
+      if (sampling) {
+        if (length != 0) {
+          masks[col] &= classify(bytes, offset, length);
+          categories[col].index(new String(bytes, offset, length, charset));
+          counts[col]++;
+        }
+        return;
+      }
+      if (0 < inferRows && inferFrom <= col && isNumber(type)) {
+        masks[col] &= classify(bytes, offset, length);
+        if ((masks[col] & 1 << type) == 0) {
+          types[col] = pick(masks[col]);
+          widened = true;
+        }
+      }
+      if (widened) return;  // parsed again with the new types
+
+      switch (type) {
+        case Table.STRING: {
+          String[] stringData = (String[]) columns[col];
+          stringData[row] = new String(bytes, offset, length, charset);
+          break;
+        }
+        case Table.INT: {
+          int[] intData = (int[]) columns[col];
+          long value = parseLong(bytes, offset, length, true);
+          if (Integer.MIN_VALUE <= value && value <= Integer.MAX_VALUE) {
+            intData[row] = (int) value;
+          } else {
+            String s = new String(bytes, offset, length, charset);
+            intData[row] = PApplet.parseInt(s, table.missingInt);
+          }
+          break;
+        }
+        case Table.LONG: {
+          long[] longData = (long[]) columns[col];
+          long value = parseLong(bytes, offset, length, false);
+          if (value != NOT_SIMPLE) {
+            longData[row] = value;
+          } else {
+            String s = new String(bytes, offset, length, charset);
+            try {
+              longData[row] = Long.parseLong(s);
+            } catch (NumberFormatException nfe) {
+              longData[row] = table.missingLong;
+            }
+          }
+          break;
+        }
+        case Table.FLOAT: {
+          float[] floatData = (float[]) columns[col];
+          if (scan.scan(bytes, offset, length) && scan.isFloat()) {
+            floatData[row] = scan.floatValue();
+          } else {
+            String s = new String(bytes, offset, length, charset);
+            floatData[row] = PApplet.parseFloat(s, table.missingFloat);
+          }
+          break;
+        }
+        case Table.DOUBLE: {
+          double[] doubleData = (double[]) columns[col];
+          if (scan.scan(bytes, offset, length) && scan.isDouble()) {
+            doubleData[row] = scan.doubleValue();
+          } else {
+            String s = new String(bytes, offset, length, charset);
+            try {
+              doubleData[row] = Double.parseDouble(s);
+            } catch (NumberFormatException nfe) {
+              doubleData[row] = table.missingDouble;
+            }
+          }
+          break;
+        }
+        case Table.CATEGORY: {
+          int[] indexData = (int[]) columns[col];
+          String s = new String(bytes, offset, length, charset);
+          if (s.equals(table.missingString)) {
+            indexData[row] = table.missingCategory;
+          } else {
+            indexData[row] = categories[col].index(s);
+          }
+          break;
+        }
+      }
+    }
+
+
+    int classify(byte[] bytes, int offset, int length) {
+      if (table.missingString != null &&
+          table.missingString.equals(new String(bytes, offset, length, charset))) {
+        return NUMBERS;
+      }
+      return scan.classify(bytes, offset, length);
+    }
+
+
+    void addColumn(int col) {
+      if (types.length <= col) {
+        // columns not in the table or the rows looked at are STRING
+        types = Arrays.copyOf(types, col + 1);
+      }
+      if (masks.length <= col) {
+        int length = masks.length;
+        masks = Arrays.copyOf(masks, col + 1);
+        counts = Arrays.copyOf(counts, col + 1);
+        Arrays.fill(masks, length, col + 1, NUMBERS);
+      }
+      columns = Arrays.copyOf(columns, col + 1);
+      categories = Arrays.copyOf(categories, col + 1);
+      for (int c = columnCount; c <= col; c++) {
+        if (sampling) {
+          categories[c] = new Table.HashMapBlows();
+        } else {
+          columns[c] = newColumn(types[c], rows);
+          if (types[c] == Table.CATEGORY) {
+            categories[c] = new Table.HashMapBlows();
+          }
+        }
+      }
+      columnCount = col + 1;
+    }
+
+
+    // Copies the field to scratch, removing the quotes that escape others
+    // and turning the line breaks into \n. Returns its length.
+    int unescape(int fieldStart, int fieldStop, int flags) {
+      if (scratch.length < fieldStop - fieldStart) {
+        scratch = new byte[2 * (fieldStop - fieldStart)];
+      }
+      int length = 0;
+      for (int i = fieldStart; i < fieldStop; i++) {
+        byte b = data[i];
+        if (b == '\"' && (flags & ESCAPED_QUOTES) != 0) {
+          // step over the quote
+          if (++i == fieldStop) break;
+          b = data[i];
+        } else if (b == '\r') {
+          if (i + 1 < fieldStop && data[i + 1] == '\n') i++;
+          b = '\n';
+        }
+        scratch[length++] = b;
+      }
+      return length;
+    }
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /**
+   * Decimal number read from bytes, as in 12, -0.5 or 1.5e-3, without
+   * making a String of it.
+   */
+  static class NumberScan {
+    // Powers of ten that are exact as doubles and floats
+    static final double[] POWERS = {
+      1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+      1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+    static final float[] FLOAT_POWERS = {
+      1e0f, 1e1f, 1e2f, 1e3f, 1e4f, 1e5f, 1e6f, 1e7f, 1e8f, 1e9f, 1e10f
+    };
+
+    boolean negative;
+    // Significant digits, as many as fit in a long, and the power of ten
+    // that they are multiplied by
+    long mantissa;
+    int exponent;
+    // Whether the mantissa has all the significant digits
+    boolean exact;
+    int digits;
+    // No period or exponent
+    boolean integral;
+    // Leading zeros before other digits, as in 007
+    boolean padded;
+
+
+    /** Returns false if the bytes are not just a number. */
+    boolean scan(byte[] bytes, int offset, int length) {
+      negative = false;
+      mantissa = 0;
+      exponent = 0;
+      exact = true;
+      digits = 0;
+      integral = true;
+
+      int i = offset;
+      int stop = offset + length;
+      if (i < stop && (bytes[i] == '-' || bytes[i] == '+')) {
+        negative = bytes[i] == '-';
+        i++;
+      }
+      int intStart = i;
+      for (; i < stop; i++) {
+        int digit = bytes[i] - '0';
+        if (digit < 0 || 9 < digit) break;
+        digit(digit, false);
+      }
+      int intDigits = i - intStart;
+      padded = 1 < intDigits && bytes[intStart] == '0';
+      int fracDigits = 0;
+      if (i < stop && bytes[i] == '.') {
+        integral = false;
+        int fracStart = ++i;
+        for (; i < stop; i++) {
+          int digit = bytes[i] - '0';
+          if (digit < 0 || 9 < digit) break;
+          digit(digit, true);
+        }
+        fracDigits = i - fracStart;
+      }
+      if (intDigits == 0 && fracDigits == 0) return false;
+
+      if (i < stop && (bytes[i] == 'e' || bytes[i] == 'E')) {
+        integral = false;
+        i++;
+        boolean negativePower = false;
+        if (i < stop && (bytes[i] == '-' || bytes[i] == '+')) {
+          negativePower = bytes[i] == '-';
+          i++;
+        }
+        int powerStart = i;
+        int power = 0;
+        for (; i < stop; i++) {
+          int digit = bytes[i] - '0';
+          if (digit < 0 || 9 < digit) break;
+          if (power < 100000) power = 10 * power + digit;
+        }
+        if (i == powerStart) return false;
+        exponent += negativePower ? -power : power;
+      }
+      return i == stop;
+    }
+
+
+    void digit(int digit, boolean fraction) {
+      if (digits == 0 && digit == 0) {
+        // a leading zero
+        if (fraction) exponent--;
+      } else if (exact && mantissa <= (Long.MAX_VALUE - digit) / 10) {
+        mantissa = 10 * mantissa + digit;
+        digits++;
+        if (fraction) exponent--;
+      } else {
+        exact = false;
+        // only counted, the value is read from a String
+        digits++;
+        if (!fraction) exponent++;
+      }
+    }
+
+
+    // Whether the mantissa and the power of ten are exact as doubles, so
+    // that their product or quotient is correctly rounded. The others are
+    // read from a String.
+    boolean isDouble() {
+      return exact && mantissa <= 1L << 53 && -22 <= exponent && exponent <= 22;
+    }
+
+
+    double doubleValue() {
+      double value = exponent < 0 ?
+        mantissa / POWERS[-exponent] : mantissa * POWERS[exponent];
+      return negative ? -value : value;
+    }
+
+
+    boolean isFloat() {
+      return exact && mantissa <= 1 << 24 && -10 <= exponent && exponent <= 10;
+    }
+
+
+    float floatValue() {
+      float value = exponent < 0 ?
+        mantissa / FLOAT_POWERS[-exponent] : mantissa * FLOAT_POWERS[exponent];
+      return negative ? -value : value;
+    }
+
+
+    /**
+     * Returns the number types that hold the value exactly as bits 1 << type,
+     * all of them for empty values, none for values that are not numbers.
+     * Integers with leading zeros are kept as text, and so are decimals
+     * with more digits than a double has, while FLOAT is only for those
+     * with up to 6, which a float always gives back.
+     */
+    int classify(byte[] bytes, int offset, int length) {
+      if (length == 0) return NUMBERS;
+      if (!scan(bytes, offset, length) || padded) return 0;
+
+      if (integral) {
+        if (!exact) return 0;
+        long value = negative ? -mantissa : mantissa;
+        int mask = 1 << Table.LONG;
+        if (Integer.MIN_VALUE <= value && value <= Integer.MAX_VALUE) {
+          mask |= 1 << Table.INT;
+        }
+        if (digits <= 7) mask |= 1 << Table.FLOAT;
+        if (digits <= 15) mask |= 1 << Table.DOUBLE;
+        return mask;
+      }
+
+      if (17 < digits) return 0;
+      // the value is below 10^magnitude
+      int magnitude = exponent + digits;
+      int mask = 0;
+      if (digits == 0 || (-300 < magnitude && magnitude < 308)) {
+        mask |= 1 << Table.DOUBLE;
+      }
+      if (digits == 0 || (digits <= 6 && -37 < magnitude && magnitude < 38)) {
+        mask |= 1 << Table.FLOAT;
+      }
+      return mask;
+    }
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  static final long NOT_SIMPLE = Long.MIN_VALUE;
+
+  /**
+   * Parses an optional sign and decimal digits, ignoring whatever follows a
+   * period if truncate is set, as PApplet.parseInt() does. Returns
+   * NOT_SIMPLE for anything else, or if the value doesn't fit in a long,
+   * so that the field is parsed from a String instead.
+   */
+  static long parseLong(byte[] bytes, int offset, int length,
+                        boolean truncate) {
+    int i = offset;
+    int stop = offset + length;
+    if (truncate) {
+      for (int j = offset; j < stop; j++) {
+        if (bytes[j] == '.') {
+          stop = j;
+          break;
+        }
+      }
+    }
+    boolean negative = false;
+    if (i < stop && (bytes[i] == '-' || bytes[i] == '+')) {
+      negative = bytes[i] == '-';
+      i++;
+    }
+    // Up to 18 digits always fit
+    if (i == stop || stop - i > 18) return NOT_SIMPLE;
+    long value = 0;
+    for (; i < stop; i++) {
+      int digit = bytes[i] - '0';
+      if (digit < 0 || digit > 9) return NOT_SIMPLE;
+      value = value * 10 + digit;
+    }
+    return negative ? -value : value;
+  }
+}
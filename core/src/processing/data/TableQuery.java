@@ -0,0 +1,1043 @@
+/* -*- mode: java; c-basic-offset: 2; indent-tabs-mode: nil -*- */
+
+/*
+  Part of the Processing project - http://processing.org
+
+  Copyright (c) 2011-13 Ben Fry and Casey Reas
+  Copyright (c) 2006-11 Ben Fry
+
+  This library is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License version 2.1 as published by the Free Software Foundation.
+
+  This library is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General
+  Public License along with this library; if not, write to the
+  Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+  Boston, MA  02111-1307  USA
+ */
+
+package processing.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
+
+
+/**
+ * Filters, groups and summarizes the rows of a Table, and returns the result
+ * as a new Table. For instance, the mean age and the number of people in each
+ * country, only counting the adults:
+ * <pre>
+ * Table summary = table.query()
+ *   .where("age", "&gt;=", 18)
+ *   .groupBy("country")
+ *   .mean("age")
+ *   .count()
+ *   .table();
+ * </pre>
+ * The work is done a column at a time on the arrays of the table, instead of
+ * a row at a time through TableRow. The rows that pass all the where() tests
+ * are kept as bits in an array of longs. Tables with many rows are split
+ * across the pool of threads that Table shares with the "parallel" loads. A
+ * query can be run again with table() after the table changes, so it can be
+ * set up once and used every frame.
+ *
+ * Without groupBy() or aggregates, the result has the matching rows, with
+ * only the columns passed to select() if it was used. Otherwise, it has one
+ * row for each distinct combination of values in the groupBy() columns (in
+ * the order that they first appear), with those columns followed by one for
+ * each aggregate, titled like "mean(age)" or "count".
+ */
+public class TableQuery {
+  /** Tables with fewer rows are done on a single thread. */
+  static final int PARALLEL_ROWS = 1 << 16;
+  /** Rows read from a column at a time, a multiple of 64. */
+  static final int BLOCK = 4096;
+
+  // tests for where()
+  static final int EQUAL = 0;
+  static final int NOT_EQUAL = 1;
+  static final int LESS = 2;
+  static final int LESS_EQUAL = 3;
+  static final int GREATER = 4;
+  static final int GREATER_EQUAL = 5;
+  static final int TEXT = 6;
+  static final int MATCH = 7;
+
+  // aggregates
+  static final int COUNT = 0;
+  static final int SUM = 1;
+  static final int MEAN = 2;
+  static final int MIN = 3;
+  static final int MAX = 4;
+
+  Table table;
+  ArrayList<Filter> filters = new ArrayList<>();
+  int[] groupColumns = new int[0];
+  ArrayList<Aggregate> aggregates = new ArrayList<>();
+  int[] selectColumns;  // null for all of them
+
+
+  public TableQuery(Table table) {
+    this.table = table;
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /**
+   * Only keep rows where a column compares to a number. The comparison is
+   * one of ==, !=, &lt;, &lt;=, &gt; or &gt;=, and is done with the values
+   * as doubles. Missing (NaN) values only pass !=.
+   * @param column ID number of the column to test
+   * @param comparison how to compare, such as "&lt;" or "=="
+   * @param value the number to compare with
+   */
+  public TableQuery where(int column, String comparison, double value) {
+    table.checkColumn(column);
+    filters.add(new Filter(column, comparison(comparison), value, null));
+    return this;
+  }
+
+
+  /**
+   * @param columnName title of the column to test
+   */
+  public TableQuery where(String columnName, String comparison, double value) {
+    return where(table.getColumnIndex(columnName), comparison, value);
+  }
+
+
+  /**
+   * Only keep rows where a column has this value, the same as
+   * findRowIndices() would match.
+   * @param value the String to match (may be null)
+   */
+  public TableQuery where(int column, String value) {
+    table.checkColumn(column);
+    filters.add(new Filter(column, TEXT, 0, value));
+    return this;
+  }
+
+
+  public TableQuery where(String columnName, String value) {
+    return where(table.getColumnIndex(columnName), value);
+  }
+
+
+  /**
+   * Only keep rows where a column matches a regular expression, the same as
+   * matchRowIndices() would match.
+   */
+  public TableQuery match(int column, String regexp) {
+    table.checkColumn(column);
+    filters.add(new Filter(column, MATCH, 0, regexp));
+    return this;
+  }
+
+
+  public TableQuery match(String columnName, String regexp) {
+    return match(table.getColumnIndex(columnName), regexp);
+  }
+
+
+  /**
+   * Summarize the rows for each distinct combination of values in these
+   * columns, instead of all the rows together.
+   */
+  public TableQuery groupBy(int... columns) {
+    for (int column : columns) {
+      table.checkColumn(column);
+    }
+    groupColumns = columns.clone();
+    return this;
+  }
+
+
+  public TableQuery groupBy(String... columnNames) {
+    return groupBy(columnIndices(columnNames));
+  }
+
+
+  /**
+   * Pick the columns (and their order) of the matching rows in the result.
+   * Not used when grouping or summarizing.
+   */
+  public TableQuery select(int... columns) {
+    for (int column : columns) {
+      table.checkColumn(column);
+    }
+    selectColumns = columns.clone();
+    return this;
+  }
+
+
+  public TableQuery select(String... columnNames) {
+    return select(columnIndices(columnNames));
+  }
+
+
+  /** Add a column with the number of rows. */
+  public TableQuery count() {
+    aggregates.add(new Aggregate(COUNT, -1));
+    return this;
+  }
+
+
+  /**
+   * Add a column with the sum of a column. The sum of an int or long column
+   * is a long, and otherwise a double. Missing (NaN) values are skipped.
+   */
+  public TableQuery sum(int column) {
+    return aggregate(SUM, column);
+  }
+
+
+  public TableQuery sum(String columnName) {
+    return sum(table.getColumnIndex(columnName));
+  }
+
+
+  /** Add a column with the mean of a column, skipping missing values. */
+  public TableQuery mean(int column) {
+    return aggregate(MEAN, column);
+  }
+
+
+  public TableQuery mean(String columnName) {
+    return mean(table.getColumnIndex(columnName));
+  }
+
+
+  /**
+   * Add a column with the lowest value of a column, which has the same type
+   * for int, long, float and double columns, and is a double otherwise.
+   */
+  public TableQuery min(int column) {
+    return aggregate(MIN, column);
+  }
+
+
+  public TableQuery min(String columnName) {
+    return min(table.getColumnIndex(columnName));
+  }
+
+
+  /** Add a column with the highest value of a column. */
+  public TableQuery max(int column) {
+    return aggregate(MAX, column);
+  }
+
+
+  public TableQuery max(String columnName) {
+    return max(table.getColumnIndex(columnName));
+  }
+
+
+  protected TableQuery aggregate(int op, int column) {
+    table.checkColumn(column);
+    aggregates.add(new Aggregate(op, column));
+    return this;
+  }
+
+
+  protected int[] columnIndices(String[] columnNames) {
+    int[] outgoing = new int[columnNames.length];
+    for (int i = 0; i < columnNames.length; i++) {
+      outgoing[i] = table.getColumnIndex(columnNames[i]);
+    }
+    return outgoing;
+  }
+
+
+  static int comparison(String comparison) {
+    switch (comparison) {
+      case "==": case "=": return EQUAL;
+      case "!=": return NOT_EQUAL;
+      case "<": return LESS;
+      case "<=": return LESS_EQUAL;
+      case ">": return GREATER;
+      case ">=": return GREATER_EQUAL;
+    }
+    throw new IllegalArgumentException("'" + comparison + "' is not a " +
+                                       "comparison, use ==, !=, <, <=, > or >=");
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /** The rows that pass all the where() and match() tests, in order. */
+  public int[] rowIndices() {
+    return rowIndices(filter(getPool()));
+  }
+
+
+  /** Run the query, and return the result as a new Table. */
+  public Table table() {
+    ExecutorService pool = getPool();
+    int[] rows = rowIndices(filter(pool));
+    if (groupColumns.length == 0 && aggregates.isEmpty()) {
+      int[] columns = selectColumns;
+      if (columns == null) {
+        columns = new int[table.getColumnCount()];
+        for (int col = 0; col < columns.length; col++) {
+          columns[col] = col;
+        }
+      }
+      Table outgoing = new Table();
+      for (int column : columns) {
+        copyColumn(outgoing, column, rows);
+      }
+      outgoing.rowCount = rows.length;
+      return outgoing;
+    }
+    return summarize(rows, pool);
+  }
+
+
+  /** The shared pool, or null when the table is small enough for one thread. */
+  protected ExecutorService getPool() {
+    if (table.getRowCount() < PARALLEL_ROWS) {
+      return null;
+    }
+    return Table.getSharedPool();
+  }
+
+
+  /** Run the parts on the pool, or one after another when there's none. */
+  static <T> void run(List<? extends Callable<T>> parts, ExecutorService pool) {
+    try {
+      if (pool == null) {
+        for (Callable<T> part : parts) {
+          part.call();
+        }
+      } else {
+        for (Future<T> result : pool.invokeAll(parts)) {
+          result.get();
+        }
+      }
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+      throw new RuntimeException(cause);
+    } catch (RuntimeException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+
+  /** Start of each part when splitting count, at multiples of 64. */
+  static int[] split(int count, ExecutorService pool) {
+    int parts = (pool == null) ? 1 : Runtime.getRuntime().availableProcessors();
+    int step = Math.max(BLOCK, ((count / parts) + 63) & ~63);
+    int[] outgoing = new int[Math.max(1, (count + step - 1) / step) + 1];
+    for (int i = 0; i < outgoing.length - 1; i++) {
+      outgoing[i] = i * step;
+    }
+    outgoing[outgoing.length - 1] = count;
+    return outgoing;
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /** Bits of the rows that pass the tests. */
+  protected long[] filter(ExecutorService pool) {
+    final int rowCount = table.getRowCount();
+    final long[] bits = new long[(rowCount + 63) >> 6];
+    Arrays.fill(bits, -1L);
+    if ((rowCount & 63) != 0) {
+      bits[bits.length - 1] = (1L << rowCount) - 1;
+    }
+    if (filters.isEmpty() || rowCount == 0) {
+      return bits;
+    }
+    for (Filter filter : filters) {
+      filter.prepare();
+    }
+    int[] starts = split(rowCount, pool);
+    ArrayList<Callable<Object>> parts = new ArrayList<>();
+    for (int i = 0; i < starts.length - 1; i++) {
+      final int start = starts[i];
+      final int stop = starts[i + 1];
+      parts.add(new Callable<Object>() {
+        public Object call() {
+          double[] scratch = new double[BLOCK];
+          for (int from = start; from < stop; from += BLOCK) {
+            int to = Math.min(from + BLOCK, stop);
+            for (Filter filter : filters) {
+              filter.apply(bits, from, to, scratch);
+            }
+          }
+          return null;
+        }
+      });
+    }
+    run(parts, pool);
+    return bits;
+  }
+
+
+  static int[] rowIndices(long[] bits) {
+    int count = 0;
+    for (long word : bits) {
+      count += Long.bitCount(word);
+    }
+    int[] outgoing = new int[count];
+    int index = 0;
+    for (int i = 0; i < bits.length; i++) {
+      long word = bits[i];
+      while (word != 0) {
+        outgoing[index++] = (i << 6) + Long.numberOfTrailingZeros(word);
+        word &= word - 1;
+      }
+    }
+    return outgoing;
+  }
+
+
+  class Filter {
+    int column;
+    int op;
+    double value;
+    String text;
+    Pattern pattern;
+    boolean[] categories;  // whether each category passes
+
+
+    Filter(int column, int op, double value, String text) {
+      this.column = column;
+      this.op = op;
+      this.value = value;
+      this.text = text;
+      if (op == MATCH) {
+        // same flags as PApplet.match()
+        pattern = Pattern.compile(text, Pattern.MULTILINE | Pattern.DOTALL);
+      }
+    }
+
+
+    /** Test each category once, since they may have changed. */
+    void prepare() {
+      categories = null;
+      if ((op == TEXT || op == MATCH) &&
+          table.columnTypes[column] == Table.CATEGORY) {
+        Table.HashMapBlows map = table.columnCategories[column];
+        categories = new boolean[map.size() + 1];
+        categories[0] = passes(table.missingString);
+        for (int i = 0; i < map.size(); i++) {
+          categories[i + 1] = passes(map.key(i));
+        }
+      }
+    }
+
+
+    boolean passes(String s) {
+      if (op == MATCH) {
+        return s != null && pattern.matcher(s).find();
+      }
+      return (text == null) ? s == null : text.equals(s);
+    }
+
+
+    /** Clear the bits of the rows from start to stop that don't pass. */
+    void apply(long[] bits, int start, int stop, double[] scratch) {
+      if (op == TEXT || op == MATCH) {
+        Object data = table.columns[column];
+        if (categories != null) {
+          for (int row = start; row < stop; row++) {
+            int index = (data instanceof int[]) ?
+              ((int[]) data)[row] : table.getInt(row, column);
+            index = (index == table.missingCategory) ? 0 : index + 1;
+            if (index >= categories.length || !categories[index]) {
+              bits[row >> 6] &= ~(1L << row);
+            }
+          }
+        } else if (data instanceof String[]) {
+          String[] stringData = (String[]) data;
+          for (int row = start; row < stop; row++) {
+            if (!passes(stringData[row])) {
+              bits[row >> 6] &= ~(1L << row);
+            }
+          }
+        } else {  // conversion as necessary
+          for (int row = start; row < stop; row++) {
+            if (!passes(table.getString(row, column))) {
+              bits[row >> 6] &= ~(1L << row);
+            }
+          }
+        }
+        return;
+      }
+
+      read(column, null, start, stop, scratch);
+      int n = stop - start;
+      switch (op) {
+        case EQUAL:
+          for (int i = 0; i < n; i++) if (!(scratch[i] == value)) clear(bits, start + i);
+          break;
+        case NOT_EQUAL:
+          for (int i = 0; i < n; i++) if (!(scratch[i] != value)) clear(bits, start + i);
+          break;
+        case LESS:
+          for (int i = 0; i < n; i++) if (!(scratch[i] < value)) clear(bits, start + i);
+          break;
+        case LESS_EQUAL:
+          for (int i = 0; i < n; i++) if (!(scratch[i] <= value)) clear(bits, start + i);
+          break;
+        case GREATER:
+          for (int i = 0; i < n; i++) if (!(scratch[i] > value)) clear(bits, start + i);
+          break;
+        case GREATER_EQUAL:
+          for (int i = 0; i < n; i++) if (!(scratch[i] >= value)) clear(bits, start + i);
+          break;
+      }
+    }
+  }
+
+
+  static void clear(long[] bits, int row) {
+    bits[row >> 6] &= ~(1L << row);
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /**
+   * Read the values of a column as doubles, for the rows from..to in the
+   * list of rows, or the rows from..to themselves if rows is null.
+   */
+  void read(int column, int[] rows, int from, int to, double[] out) {
+    Object data = table.columns[column];
+    int type = table.columnTypes[column];
+    int n = to - from;
+    if (type == Table.INT && data instanceof int[]) {
+      int[] intData = (int[]) data;
+      for (int i = 0; i < n; i++) {
+        out[i] = intData[rows == null ? from + i : rows[from + i]];
+      }
+    } else if (data instanceof long[]) {
+      long[] longData = (long[]) data;
+      for (int i = 0; i < n; i++) {
+        out[i] = longData[rows == null ? from + i : rows[from + i]];
+      }
+    } else if (data instanceof float[]) {
+      float[] floatData = (float[]) data;
+      for (int i = 0; i < n; i++) {
+        out[i] = floatData[rows == null ? from + i : rows[from + i]];
+      }
+    } else if (data instanceof double[]) {
+      double[] doubleData = (double[]) data;
+      for (int i = 0; i < n; i++) {
+        out[i] = doubleData[rows == null ? from + i : rows[from + i]];
+      }
+    } else if (data instanceof TableColumnFile.Column &&
+               type != Table.STRING && type != Table.CATEGORY) {
+      TableColumnFile.Column mapped = (TableColumnFile.Column) data;
+      for (int i = 0; i < n; i++) {
+        int row = (rows == null) ? from + i : rows[from + i];
+        switch (type) {
+          case Table.INT: out[i] = mapped.getInt(row); break;
+          case Table.LONG: out[i] = mapped.getLong(row); break;
+          case Table.FLOAT: out[i] = mapped.getFloat(row); break;
+          default: out[i] = mapped.getDouble(row); break;
+        }
+      }
+    } else {  // parsed from the text
+      for (int i = 0; i < n; i++) {
+        out[i] = table.getDouble(rows == null ? from + i : rows[from + i], column);
+      }
+    }
+  }
+
+
+  /**
+   * Read the values of an int, long or category column at the rows
+   * from..to in the list of rows.
+   */
+  void read(int column, int[] rows, int from, int to, long[] out) {
+    Object data = table.columns[column];
+    int n = to - from;
+    if (data instanceof int[]) {
+      int[] intData = (int[]) data;
+      for (int i = 0; i < n; i++) {
+        out[i] = intData[rows[from + i]];
+      }
+    } else if (data instanceof long[]) {
+      long[] longData = (long[]) data;
+      for (int i = 0; i < n; i++) {
+        out[i] = longData[rows[from + i]];
+      }
+    } else if (data instanceof TableColumnFile.Column) {
+      TableColumnFile.Column mapped = (TableColumnFile.Column) data;
+      boolean longs = (table.columnTypes[column] == Table.LONG);
+      for (int i = 0; i < n; i++) {
+        int row = rows[from + i];
+        out[i] = longs ? mapped.getLong(row) : mapped.getInt(row);
+      }
+    } else {
+      for (int i = 0; i < n; i++) {
+        out[i] = table.getLong(rows[from + i], column);
+      }
+    }
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  class Aggregate {
+    int op;
+    int column;
+    int type;  // of the result
+    boolean integral;  // done with longs
+
+
+    Aggregate(int op, int column) {
+      this.op = op;
+      this.column = column;
+    }
+
+
+    void prepare() {
+      int sourceType = (column == -1) ? Table.INT : table.columnTypes[column];
+      integral = (sourceType == Table.INT || sourceType == Table.LONG);
+      switch (op) {
+        case COUNT: type = Table.INT; break;
+        case SUM: type = integral ? Table.LONG : Table.DOUBLE; break;
+        case MEAN: type = Table.DOUBLE; break;
+        default:
+          type = (sourceType == Table.STRING || sourceType == Table.CATEGORY) ?
+            Table.DOUBLE : sourceType;
+      }
+    }
+
+
+    String title() {
+      if (op == COUNT) {
+        return "count";
+      }
+      String name = table.getColumnTitle(column);
+      if (name == null) {
+        name = String.valueOf(column);
+      }
+      String[] names = { "count", "sum", "mean", "min", "max" };
+      return names[op] + "(" + name + ")";
+    }
+  }
+
+
+  /** Totals of each group for part of the rows. */
+  class Totals implements Callable<Totals> {
+    int[] rows;
+    int[] groups;
+    int start, stop;
+
+    int[] rowCounts;  // [group]
+    long[][] counts;  // [aggregate][group] values that weren't missing
+    long[][] longs;  // [aggregate][group] for integral aggregates
+    double[][] doubles;  // [aggregate][group] for the others
+
+
+    Totals(int[] rows, int[] groups, int groupCount, int start, int stop) {
+      this.rows = rows;
+      this.groups = groups;
+      this.start = start;
+      this.stop = stop;
+      rowCounts = new int[groupCount];
+      int count = aggregates.size();
+      counts = new long[count][];
+      longs = new long[count][];
+      doubles = new double[count][];
+      for (int a = 0; a < count; a++) {
+        Aggregate agg = aggregates.get(a);
+        if (agg.op != COUNT) {
+          counts[a] = new long[groupCount];
+          if (agg.integral) {
+            longs[a] = new long[groupCount];
+            if (agg.op == MIN) Arrays.fill(longs[a], Long.MAX_VALUE);
+            if (agg.op == MAX) Arrays.fill(longs[a], Long.MIN_VALUE);
+          } else {
+            doubles[a] = new double[groupCount];
+            if (agg.op == MIN) Arrays.fill(doubles[a], Double.POSITIVE_INFINITY);
+            if (agg.op == MAX) Arrays.fill(doubles[a], Double.NEGATIVE_INFINITY);
+          }
+        }
+      }
+    }
+
+
+    public Totals call() {
+      for (int i = start; i < stop; i++) {
+        rowCounts[groups[i]]++;
+      }
+      long[] longBlock = null;
+      double[] doubleBlock = null;
+      for (int a = 0; a < aggregates.size(); a++) {
+        Aggregate agg = aggregates.get(a);
+        if (agg.op == COUNT) continue;
+
+        long[] count = counts[a];
+        for (int from = start; from < stop; from += BLOCK) {
+          int to = Math.min(from + BLOCK, stop);
+          int n = to - from;
+          if (agg.integral) {
+            if (longBlock == null) longBlock = new long[BLOCK];
+            read(agg.column, rows, from, to, longBlock);
+            long[] acc = longs[a];
+            for (int i = 0; i < n; i++) {
+              int g = groups[from + i];
+              long v = longBlock[i];
+              count[g]++;
+              if (agg.op == MIN) {
+                if (v < acc[g]) acc[g] = v;
+              } else if (agg.op == MAX) {
+                if (v > acc[g]) acc[g] = v;
+              } else {
+                acc[g] += v;
+              }
+            }
+          } else {
+            if (doubleBlock == null) doubleBlock = new double[BLOCK];
+            read(agg.column, rows, from, to, doubleBlock);
+            double[] acc = doubles[a];
+            for (int i = 0; i < n; i++) {
+              double v = doubleBlock[i];
+              if (v == v) {  // skip NaN
+                int g = groups[from + i];
+                count[g]++;
+                if (agg.op == MIN) {
+                  if (v < acc[g]) acc[g] = v;
+                } else if (agg.op == MAX) {
+                  if (v > acc[g]) acc[g] = v;
+                } else {
+                  acc[g] += v;
+                }
+              }
+            }
+          }
+        }
+      }
+      return this;
+    }
+
+
+    void add(Totals other) {
+      for (int g = 0; g < rowCounts.length; g++) {
+        rowCounts[g] += other.rowCounts[g];
+      }
+      for (int a = 0; a < aggregates.size(); a++) {
+        Aggregate agg = aggregates.get(a);
+        if (agg.op == COUNT) continue;
+        for (int g = 0; g < rowCounts.length; g++) {
+          counts[a][g] += other.counts[a][g];
+          if (agg.integral) {
+            long v = other.longs[a][g];
+            if (agg.op == MIN) longs[a][g] = Math.min(longs[a][g], v);
+            else if (agg.op == MAX) longs[a][g] = Math.max(longs[a][g], v);
+            else longs[a][g] += v;
+          } else {
+            double v = other.doubles[a][g];
+            if (agg.op == MIN) doubles[a][g] = Math.min(doubles[a][g], v);
+            else if (agg.op == MAX) doubles[a][g] = Math.max(doubles[a][g], v);
+            else doubles[a][g] += v;
+          }
+        }
+      }
+    }
+  }
+
+
+  protected Table summarize(int[] rows, ExecutorService pool) {
+    for (Aggregate agg : aggregates) {
+      agg.prepare();
+    }
+    int[] groups = new int[rows.length];
+    int groupCount = group(rows, groups);
+    if (groupColumns.length == 0) {
+      groupCount = 1;  // even with no rows
+    }
+
+    int[] starts = split(rows.length, pool);
+    ArrayList<Totals> parts = new ArrayList<>();
+    for (int i = 0; i < starts.length - 1; i++) {
+      parts.add(new Totals(rows, groups, groupCount, starts[i], starts[i + 1]));
+    }
+    run(parts, pool);
+    Totals totals = parts.get(0);
+    for (int i = 1; i < parts.size(); i++) {
+      totals.add(parts.get(i));
+    }
+
+    Table outgoing = new Table();
+    if (groupColumns.length != 0) {
+      // the first row of each group has its values
+      int[] firstRows = new int[groupCount];
+      Arrays.fill(firstRows, -1);
+      for (int i = 0; i < rows.length; i++) {
+        if (firstRows[groups[i]] == -1) {
+          firstRows[groups[i]] = rows[i];
+        }
+      }
+      for (int column : groupColumns) {
+        copyColumn(outgoing, column, firstRows);
+      }
+    }
+    for (int a = 0; a < aggregates.size(); a++) {
+      Aggregate agg = aggregates.get(a);
+      Object data;
+      if (agg.op == COUNT) {
+        data = totals.rowCounts;
+      } else {
+        long[] count = totals.counts[a];
+        long[] longData = totals.longs[a];
+        double[] doubleData = totals.doubles[a];
+        switch (agg.type) {
+          case Table.INT: {  // min or max of an int column
+            int[] intData = new int[groupCount];
+            for (int g = 0; g < groupCount; g++) {
+              intData[g] = (count[g] == 0) ? table.missingInt : (int) longData[g];
+            }
+            data = intData;
+            break;
+          }
+          case Table.LONG: {
+            if (agg.op != SUM) {
+              for (int g = 0; g < groupCount; g++) {
+                if (count[g] == 0) longData[g] = table.missingLong;
+              }
+            }
+            data = longData;
+            break;
+          }
+          case Table.FLOAT: {
+            float[] floatData = new float[groupCount];
+            for (int g = 0; g < groupCount; g++) {
+              floatData[g] = (count[g] == 0) ? Float.NaN : (float) doubleData[g];
+            }
+            data = floatData;
+            break;
+          }
+          default: {
+            if (doubleData == null) {  // mean of an int or long column
+              doubleData = new double[groupCount];
+              for (int g = 0; g < groupCount; g++) {
+                doubleData[g] = longData[g];
+              }
+            }
+            for (int g = 0; g < groupCount; g++) {
+              if (agg.op == MEAN) {
+                doubleData[g] = (count[g] == 0) ? Double.NaN : doubleData[g] / count[g];
+              } else if (agg.op != SUM && count[g] == 0) {
+                doubleData[g] = Double.NaN;
+              }
+            }
+            data = doubleData;
+          }
+        }
+      }
+      outgoing.addColumn(agg.title(), agg.type);
+      outgoing.columns[outgoing.getColumnCount() - 1] = data;
+    }
+    outgoing.rowCount = groupCount;
+    return outgoing;
+  }
+
+
+  /**
+   * Number each row by the distinct values of the groupBy() columns, in the
+   * order they first appear, and return the number of groups.
+   */
+  protected int group(int[] rows, int[] groups) {
+    // after the first column, each row's group so far and its value in the
+    // next column are numbered together, using the count of the groups so
+    // far (which isn't changed until the column is done) to keep them apart
+    int groupCount = 0;
+    for (int c = 0; c < groupColumns.length; c++) {
+      int column = groupColumns[c];
+      int type = table.columnTypes[column];
+      Object data = table.columns[column];
+      Ids ids = new Ids();
+
+      if (type == Table.STRING) {
+        HashMap<String, Integer> map = new HashMap<>();
+        String[] stringData = (data instanceof String[]) ? (String[]) data : null;
+        for (int i = 0; i < rows.length; i++) {
+          String key = (stringData != null) ?
+            stringData[rows[i]] : table.getString(rows[i], column);
+          Integer id = map.get(key);
+          if (id == null) {
+            id = map.size();
+            map.put(key, id);
+          }
+          groups[i] = (c == 0) ? id : ids.id((long) id * groupCount + groups[i]);
+        }
+        groupCount = (c == 0) ? map.size() : ids.count;
+
+      } else {
+        double[] doubleBlock = new double[BLOCK];
+        long[] longBlock = new long[BLOCK];
+        Ids values = new Ids();
+        int[] valueIds = new int[BLOCK];
+        for (int from = 0; from < rows.length; from += BLOCK) {
+          int to = Math.min(from + BLOCK, rows.length);
+          int n = to - from;
+          if (type == Table.INT || type == Table.LONG || type == Table.CATEGORY) {
+            read(column, rows, from, to, longBlock);
+            for (int i = 0; i < n; i++) {
+              valueIds[i] = values.id(longBlock[i]);
+            }
+          } else {
+            read(column, rows, from, to, doubleBlock);
+            for (int i = 0; i < n; i++) {
+              // one NaN, and -0.0 apart from 0.0, same as their text
+              valueIds[i] = values.id(Double.doubleToLongBits(doubleBlock[i]));
+            }
+          }
+          for (int i = 0; i < n; i++) {
+            groups[from + i] = (c == 0) ? valueIds[i] :
+              ids.id((long) valueIds[i] * groupCount + groups[from + i]);
+          }
+        }
+        groupCount = (c == 0) ? values.count : ids.count;
+      }
+    }
+    return groupCount;
+  }
+
+
+  /** Dense numbers for long keys, in the order they're first seen. */
+  static class Ids {
+    long[] keys = new long[16];
+    int[] ids = new int[16];  // id + 1, or 0 for an empty slot
+    int count;
+
+
+    int id(long key) {
+      int mask = keys.length - 1;
+      int slot = hash(key) & mask;
+      while (ids[slot] != 0) {
+        if (keys[slot] == key) {
+          return ids[slot] - 1;
+        }
+        slot = (slot + 1) & mask;
+      }
+      keys[slot] = key;
+      ids[slot] = ++count;
+      if (count * 2 > keys.length) {
+        grow();
+      }
+      return count - 1;
+    }
+
+
+    protected void grow() {
+      long[] oldKeys = keys;
+      int[] oldIds = ids;
+      keys = new long[oldKeys.length * 2];
+      ids = new int[oldIds.length * 2];
+      int mask = keys.length - 1;
+      for (int i = 0; i < oldKeys.length; i++) {
+        if (oldIds[i] != 0) {
+          int slot = hash(oldKeys[i]) & mask;
+          while (ids[slot] != 0) {
+            slot = (slot + 1) & mask;
+          }
+          keys[slot] = oldKeys[i];
+          ids[slot] = oldIds[i];
+        }
+      }
+    }
+
+
+    static int hash(long key) {
+      long h = key * 0x9E3779B97F4A7C15L;
+      return (int) (h ^ (h >>> 32));
+    }
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /** Add a column of outgoing with the values of column at these rows. */
+  protected void copyColumn(Table outgoing, int column, int[] rows) {
+    int type = table.columnTypes[column];
+    outgoing.addColumn(table.getColumnTitle(column), type);
+    int count = rows.length;
+    Object data = table.columns[column];
+    Object copy;
+    switch (type) {
+      case Table.INT:
+      case Table.CATEGORY: {
+        int[] intData = new int[count];
+        for (int i = 0; i < count; i++) {
+          intData[i] = (data instanceof int[]) ?
+            ((int[]) data)[rows[i]] : table.getInt(rows[i], column);
+        }
+        copy = intData;
+        break;
+      }
+      case Table.LONG: {
+        long[] longData = new long[count];
+        for (int i = 0; i < count; i++) {
+          longData[i] = (data instanceof long[]) ?
+            ((long[]) data)[rows[i]] : table.getLong(rows[i], column);
+        }
+        copy = longData;
+        break;
+      }
+      case Table.FLOAT: {
+        float[] floatData = new float[count];
+        for (int i = 0; i < count; i++) {
+          floatData[i] = (data instanceof float[]) ?
+            ((float[]) data)[rows[i]] : table.getFloat(rows[i], column);
+        }
+        copy = floatData;
+        break;
+      }
+      case Table.DOUBLE: {
+        double[] doubleData = new double[count];
+        for (int i = 0; i < count; i++) {
+          doubleData[i] = (data instanceof double[]) ?
+            ((double[]) data)[rows[i]] : table.getDouble(rows[i], column);
+        }
+        copy = doubleData;
+        break;
+      }
+      default: {
+        String[] stringData = new String[count];
+        for (int i = 0; i < count; i++) {
+          stringData[i] = (data instanceof String[]) ?
+            ((String[]) data)[rows[i]] : table.getString(rows[i], column);
+        }
+        copy = stringData;
+      }
+    }
+    int col = outgoing.getColumnCount() - 1;
+    outgoing.columns[col] = copy;
+    if (type == Table.CATEGORY) {
+      Table.HashMapBlows categories = table.columnCategories[column];
+      for (int i = 0; i < categories.size(); i++) {
+        outgoing.columnCategories[col].setCategory(i, categories.key(i));
+      }
+    }
+  }
+}
@@ -0,0 +1,295 @@
+/* -*- mode: java; c-basic-offset: 2; indent-tabs-mode: nil -*- */
+
+/*
+  Part of the Processing project - http://processing.org
+
+  Copyright (c) 2012-16 The Processing Foundation
+
+  This library is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License as published by the Free Software Foundation, version 2.1.
+
+  This library is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General
+  Public License along with this library; if not, write to the
+  Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+  Boston, MA  02111-1307  USA
+*/
+
+package processing.opengl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import processing.core.PFont;
+import processing.opengl.PGraphicsOpenGL.Tessellator;
+
+/**
+ * Signed distance fields of the glyphs of a font, which FontTexture stores
+ * instead of the glyph bitmaps after hint(ENABLE_DISTANCE_FIELD_TEXT), so
+ * that text of any size can be drawn from the same texture.
+ *
+ * The field of a glyph extends spread pixels around its bitmap. Each value
+ * is the distance to the outline of the glyph, mapped from [spread, -spread]
+ * (outside to inside) to [0, 255], so the outline is at the middle of the
+ * range. The distances are computed with the exact Euclidean distance
+ * transform of Felzenszwalb and Huttenlocher, from the pixels more and less
+ * than half covered, and the pixels partially covered are refined with
+ * their coverage.
+ *
+ * When given a file, the fields are read from it on creation and written
+ * back by save(), so they are computed once per font.
+ */
+class DistanceField {
+  static final int FILE_VERSION = 1;
+  static final float INF = 1E20f;
+
+  protected int spread;
+  protected String fontKey;
+  protected File file;
+  protected ConcurrentHashMap<Integer, byte[]> fields;
+  protected volatile boolean modified;
+
+
+  DistanceField(PFont font, int spread, File file) {
+    this.spread = spread;
+    this.file = file;
+    fontKey = font.getName() + " " + font.getSize() + " " + font.isSmooth();
+    fields = new ConcurrentHashMap<Integer, byte[]>();
+    if (file != null && file.exists()) load();
+  }
+
+
+  /**
+   * Returns the field of the glyph, computing it if needed. Its width and
+   * height are those of the glyph plus 2 * spread.
+   */
+  byte[] get(PFont.Glyph glyph) {
+    byte[] field = fields.get(glyph.value);
+    if (field == null || field.length != fieldLength(glyph)) {
+      field = compute(glyph, spread);
+      fields.put(glyph.value, field);
+      modified = true;
+    }
+    return field;
+  }
+
+
+  /**
+   * Computes the fields of the first count glyphs that are missing, spread
+   * among the threads of the parallel tessellator.
+   */
+  void generate(PFont.Glyph[] glyphs, int count) {
+    final ArrayList<PFont.Glyph> missing = new ArrayList<PFont.Glyph>();
+    for (int i = 0; i < count; i++) {
+      byte[] field = fields.get(glyphs[i].value);
+      if (field == null || field.length != fieldLength(glyphs[i])) {
+        missing.add(glyphs[i]);
+      }
+    }
+    if (missing.isEmpty()) return;
+
+    int n = Math.min(Tessellator.PARALLEL_TESS_COUNT, missing.size());
+    ExecutorService executor = 1 < n ? Tessellator.getParallelExecutor() : null;
+    ArrayList<Future<?>> results = new ArrayList<Future<?>>();
+    for (int w = 1; w < n; w++) {
+      final int first = (int)((long)missing.size() * w / n);
+      final int last = (int)((long)missing.size() * (w + 1) / n);
+      results.add(executor.submit(new Runnable() {
+        @Override
+        public void run() {
+          for (int i = first; i < last; i++) get(missing.get(i));
+        }
+      }));
+    }
+    for (int i = 0; i < missing.size() / n; i++) get(missing.get(i));
+    try {
+      for (Future<?> res: results) res.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
+    } catch (ExecutionException e) {
+      throw new RuntimeException(e.getCause());
+    }
+  }
+
+
+  protected int fieldLength(PFont.Glyph glyph) {
+    return (glyph.width + 2 * spread) * (glyph.height + 2 * spread);
+  }
+
+
+  static protected byte[] compute(PFont.Glyph glyph, int spread) {
+    int w = glyph.width + 2 * spread;
+    int h = glyph.height + 2 * spread;
+
+    // Coverage of each pixel of the field, and squared distances to the
+    // nearest pixel inside (for the pixels outside) and outside (for the
+    // pixels inside).
+    float[] coverage = new float[w * h];
+    float[] toInside = new float[w * h];
+    float[] toOutside = new float[w * h];
+    int[] pixels = glyph.image != null ? glyph.image.pixels : null;
+    for (int y = 0; y < glyph.height && pixels != null; y++) {
+      for (int x = 0; x < glyph.width; x++) {
+        coverage[(y + spread) * w + x + spread] =
+          (pixels[y * glyph.width + x] & 0xFF) / 255f;
+      }
+    }
+    for (int i = 0; i < w * h; i++) {
+      boolean inside = 0.5f <= coverage[i];
+      toInside[i] = inside ? 0 : INF;
+      toOutside[i] = inside ? INF : 0;
+    }
+    transform(toInside, w, h);
+    transform(toOutside, w, h);
+
+    byte[] field = new byte[w * h];
+    for (int i = 0; i < w * h; i++) {
+      float a = coverage[i];
+      float d; // positive outside
+      if (0 < a && a < 1) {
+        d = 0.5f - a;
+      } else if (a < 0.5f) {
+        d = (float)Math.sqrt(toInside[i]) - 0.5f;
+      } else {
+        d = 0.5f - (float)Math.sqrt(toOutside[i]);
+      }
+      float v = 0.5f - d / (2 * spread);
+      field[i] = (byte)Math.round(255 * Math.max(0, Math.min(1, v)));
+    }
+    return field;
+  }
+
+
+  // Squared Euclidean distance transform of the w x h image f, where the
+  // pixels of the features are 0 and the rest INF, by columns and then rows.
+  static protected void transform(float[] f, int w, int h) {
+    int n = Math.max(w, h);
+    float[] line = new float[n];
+    float[] dist = new float[n];
+    int[] v = new int[n];
+    float[] z = new float[n + 1];
+    for (int x = 0; x < w; x++) {
+      for (int y = 0; y < h; y++) line[y] = f[y * w + x];
+      transform(line, h, dist, v, z);
+      for (int y = 0; y < h; y++) f[y * w + x] = dist[y];
+    }
+    for (int y = 0; y < h; y++) {
+      System.arraycopy(f, y * w, line, 0, w);
+      transform(line, w, dist, v, z);
+      System.arraycopy(dist, 0, f, y * w, w);
+    }
+  }
+
+
+  // One-dimensional transform: lower envelope of the parabolas rooted at
+  // each sample.
+  static protected void transform(float[] f, int n, float[] d,
+                                  int[] v, float[] z) {
+    int k = 0;
+    v[0] = 0;
+    z[0] = -INF;
+    z[1] = INF;
+    for (int q = 1; q < n; q++) {
+      float s = intersection(f, q, v[k]);
+      while (s <= z[k]) {
+        k--;
+        s = intersection(f, q, v[k]);
+      }
+      k++;
+      v[k] = q;
+      z[k] = s;
+      z[k + 1] = INF;
+    }
+    k = 0;
+    for (int q = 0; q < n; q++) {
+      while (z[k + 1] < q) k++;
+      int dq = q - v[k];
+      d[q] = dq * dq + f[v[k]];
+    }
+  }
+
+
+  static protected float intersection(float[] f, int q, int p) {
+    return ((f[q] + q * q) - (f[p] + p * p)) / (2 * q - 2 * p);
+  }
+
+
+  protected void load() {
+    DataInputStream input = null;
+    try {
+      input = new DataInputStream(new BufferedInputStream(
+        new FileInputStream(file)));
+      if (input.readInt() != FILE_VERSION ||
+          !input.readUTF().equals(fontKey) ||
+          input.readInt() != spread) {
+        return;
+      }
+      int count = input.readInt();
+      for (int i = 0; i < count; i++) {
+        int value = input.readInt();
+        byte[] field = new byte[input.readInt()];
+        input.readFully(field);
+        fields.put(value, field);
+      }
+    } catch (IOException e) {
+      // The fields that could not be read are computed again
+    } finally {
+      if (input != null) {
+        try { input.close(); } catch (IOException e) { }
+      }
+    }
+  }
+
+
+  /**
+   * Writes the fields to the file, if any has been computed since the file
+   * was read or written.
+   */
+  synchronized void save() {
+    if (file == null || !modified) return;
+    modified = false;
+
+    DataOutputStream output = null;
+    try {
+      output = new DataOutputStream(new BufferedOutputStream(
+        new FileOutputStream(file)));
+      output.writeInt(FILE_VERSION);
+      output.writeUTF(fontKey);
+      output.writeInt(spread);
+      // Taking a snapshot first, other threads can keep adding fields
+      ArrayList<Map.Entry<Integer, byte[]>> entries =
+        new ArrayList<Map.Entry<Integer, byte[]>>(fields.entrySet());
+      output.writeInt(entries.size());
+      for (Map.Entry<Integer, byte[]> entry: entries) {
+        output.writeInt(entry.getKey());
+        output.writeInt(entry.getValue().length);
+        output.write(entry.getValue());
+      }
+    } catch (IOException e) {
+      // The cache is optional, the fields will be computed again
+      file.delete();
+    } finally {
+      if (output != null) {
+        try { output.close(); } catch (IOException e) { }
+      }
+    }
+  }
+}
@@ -0,0 +1,617 @@
+/* -*- mode: java; c-basic-offset: 2; indent-tabs-mode: nil -*- */
+
+/*
+  Part of the Processing project - http://processing.org
+
+  Copyright (c) 2012-16 The Processing Foundation
+  Copyright (c) 2004-12 Ben Fry and Casey Reas
+  Copyright (c) 2001-04 Massachusetts Institute of Technology
+
+  This library is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License as published by the Free Software Foundation, version 2.1.
+
+  This library is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General
+  Public License along with this library; if not, write to the
+  Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+  Boston, MA  02111-1307  USA
+*/
+
+package processing.opengl;
+
+import java.util.Arrays;
+
+import processing.opengl.tess.PGLU;
+
+/**
+ * Tessellator that triangulates polygons made of a single simple contour by
+ * ear clipping, and passes any other polygon (several contours, crossing
+ * or touching edges, winding rules other than odd and non-zero) to the GLU
+ * tessellator it wraps. Both produce the same filled area for a simple
+ * contour, but ear clipping avoids building the mesh of the GLU sweep,
+ * which makes it faster for polygons of up to a few hundred vertices (see
+ * PGL.MAX_EAR_CLIPPING_VERTICES).
+ *
+ * The vertices of the polygon are kept until endPolygon(), and projected
+ * on the coordinate plane closest to the plane of the polygon. The ear
+ * clipping follows the one in earcut (https://github.com/mapbox/earcut):
+ * only the reflex vertices are tested against each candidate ear, and in
+ * large polygons they are found through a z-order curve. The triangles are
+ * passed to the callback as one TRIANGLES primitive once the whole polygon has
+ * been triangulated, so if clipping gets stuck because of rounding, the
+ * polygon can still go to GLU.
+ */
+class EarClippingTessellator implements PGL.Tessellator {
+  // Polygons with more vertices than this use the z-order curve
+  static final int MIN_HASHED_VERTICES = 80;
+
+  protected PGL.Tessellator glu;
+  protected PGL.TessellatorCallback callback;
+
+  protected int windingRule = PGL.TESS_WINDING_ODD;
+  // Boundary only or a tolerance change the output of GLU in ways that ear
+  // clipping does not reproduce, so while either is set, GLU does it all
+  protected boolean boundaryOnly;
+  protected int tolerance;
+
+  // Polygon as received
+  protected Object polygonData;
+  protected int vertexCount;
+  protected double[] coords = new double[3 * 64];
+  protected Object[] data = new Object[64];
+  protected int contourStart;
+  protected int contourCount;
+  protected int[] contourEnds = new int[4];
+
+  // Vertices projected on the plane of the polygon, counter-clockwise
+  protected double[] px = new double[64];
+  protected double[] py = new double[64];
+
+  // Remaining vertices, as a circular list
+  protected int[] prev = new int[64];
+  protected int[] next = new int[64];
+  protected boolean[] reflex = new boolean[64];
+
+  // Bounding box and scale of the z-order curve
+  protected double minX, minY, maxX, maxY, invSize;
+
+  // Reflex vertices sorted by z-order, as (z << 32 | vertex), and the
+  // position of each vertex in them. A position that is no longer reflex
+  // points to the next one in skip, so they are skipped in near constant
+  // time.
+  protected boolean hashed;
+  protected long[] order = new long[64];
+  protected int orderCount;
+  protected int[] orderPos = new int[64];
+  protected int[] skip = new int[65];
+
+  // Grid of the edges, cellEdges[cellStart[c - 1]..cellStart[c]) being the
+  // edges that cross cell c
+  protected int gridSize;
+  protected double cellSize;
+  protected int[] cellStart = new int[65];
+  protected int[] cellEdges = new int[256];
+
+  protected int[] triangles = new int[3 * 64];
+  protected int triangleCount;
+
+
+  EarClippingTessellator(PGL.Tessellator glu, PGL.TessellatorCallback callback) {
+    this.glu = glu;
+    this.callback = callback;
+  }
+
+
+  @Override
+  public void setCallback(int flag) {
+    glu.setCallback(flag);
+  }
+
+
+  @Override
+  public void setWindingRule(int rule) {
+    windingRule = rule;
+    glu.setWindingRule(rule);
+  }
+
+
+  @Override
+  public void setProperty(int property, int value) {
+    if (property == PGLU.GLU_TESS_WINDING_RULE) {
+      windingRule = value;
+    } else if (property == PGLU.GLU_TESS_BOUNDARY_ONLY) {
+      boundaryOnly = value != 0;
+    } else if (property == PGLU.GLU_TESS_TOLERANCE) {
+      tolerance = value;
+    }
+    glu.setProperty(property, value);
+  }
+
+
+  @Override
+  public void beginPolygon() {
+    beginPolygon(null);
+  }
+
+
+  @Override
+  public void beginPolygon(Object data) {
+    polygonData = data;
+    vertexCount = 0;
+    contourCount = 0;
+  }
+
+
+  @Override
+  public void endPolygon() {
+    boolean simple = contourCount == 1 && !boundaryOnly && tolerance == 0 &&
+                     vertexCount <= PGL.MAX_EAR_CLIPPING_VERTICES &&
+                     (windingRule == PGL.TESS_WINDING_ODD ||
+                      windingRule == PGL.TESS_WINDING_NONZERO);
+    if (simple && triangulate()) {
+      emitTriangles();
+    } else {
+      replay();
+    }
+    polygonData = null;
+    Arrays.fill(data, 0, vertexCount, null);
+  }
+
+
+  @Override
+  public void beginContour() {
+    contourStart = vertexCount;
+  }
+
+
+  @Override
+  public void endContour() {
+    if (contourStart < vertexCount) {
+      if (contourCount == contourEnds.length) {
+        contourEnds = Arrays.copyOf(contourEnds, 2 * contourCount);
+      }
+      contourEnds[contourCount++] = vertexCount;
+    }
+  }
+
+
+  @Override
+  public void addVertex(double[] v) {
+    addVertex(v, 0, v);
+  }
+
+
+  @Override
+  public void addVertex(double[] v, int n, Object data) {
+    if (vertexCount == this.data.length) expand(2 * vertexCount);
+    coords[3 * vertexCount + 0] = v[n + 0];
+    coords[3 * vertexCount + 1] = v[n + 1];
+    coords[3 * vertexCount + 2] = v[n + 2];
+    this.data[vertexCount] = data;
+    vertexCount++;
+  }
+
+
+  protected void expand(int n) {
+    coords = Arrays.copyOf(coords, 3 * n);
+    data = Arrays.copyOf(data, n);
+    px = new double[n];
+    py = new double[n];
+    prev = new int[n];
+    next = new int[n];
+    reflex = new boolean[n];
+    order = new long[n];
+    orderPos = new int[n];
+    skip = new int[n + 1];
+  }
+
+
+  // Passes the polygon, as received, to GLU.
+  protected void replay() {
+    glu.beginPolygon(polygonData);
+    int start = 0;
+    for (int c = 0; c < contourCount; c++) {
+      glu.beginContour();
+      for (int i = start; i < contourEnds[c]; i++) {
+        glu.addVertex(coords, 3 * i, data[i]);
+      }
+      glu.endContour();
+      start = contourEnds[c];
+    }
+    glu.endPolygon();
+  }
+
+
+  protected void emitTriangles() {
+    // At most MAX_EAR_CLIPPING_VERTICES - 2 triangles, so one primitive
+    callback.begin(PGL.TRIANGLES);
+    for (int i = 0; i < 3 * triangleCount; i++) {
+      callback.vertex(data[triangles[i]]);
+    }
+    callback.end();
+  }
+
+
+  ///////////////////////////////////////////////////////////
+
+  // Triangulation
+
+
+  // Fills the triangles, or returns false if the polygon has to go to GLU.
+  protected boolean triangulate() {
+    triangleCount = 0;
+    if (vertexCount < 3) return false;
+    if (!project()) return false;
+    if (!isSimple()) return false;
+    return clipEars();
+  }
+
+
+  // Projects the vertices on the coordinate plane the normal of the polygon
+  // is closest to, in counter-clockwise order. Returns false if the polygon
+  // has no area.
+  protected boolean project() {
+    int n = vertexCount;
+
+    // Newell's normal
+    double nx = 0, ny = 0, nz = 0;
+    for (int i = 0; i < n; i++) {
+      int j = i + 1 < n ? i + 1 : 0;
+      double xi = coords[3 * i + 0], yi = coords[3 * i + 1], zi = coords[3 * i + 2];
+      double xj = coords[3 * j + 0], yj = coords[3 * j + 1], zj = coords[3 * j + 2];
+      nx += (yi - yj) * (zi + zj);
+      ny += (zi - zj) * (xi + xj);
+      nz += (xi - xj) * (yi + yj);
+    }
+    double ax = Math.abs(nx), ay = Math.abs(ny), az = Math.abs(nz);
+    int u, v;
+    if (ax <= az && ay <= az) {
+      u = 0; v = 1;
+    } else if (ay <= ax) {
+      u = 1; v = 2;
+    } else {
+      u = 2; v = 0;
+    }
+
+    double area = 0;
+    for (int i = 0; i < n; i++) {
+      int j = i + 1 < n ? i + 1 : 0;
+      area += coords[3 * i + u] * coords[3 * j + v] -
+              coords[3 * j + u] * coords[3 * i + v];
+    }
+    // Also catches NaN coordinates
+    if (!(0 < Math.abs(area))) return false;
+    double sign = 0 < area ? 1 : -1;
+
+    minX = Double.MAX_VALUE;
+    minY = Double.MAX_VALUE;
+    maxX = -Double.MAX_VALUE;
+    maxY = -Double.MAX_VALUE;
+    for (int i = 0; i < n; i++) {
+      double x = coords[3 * i + u];
+      double y = sign * coords[3 * i + v];
+      px[i] = x;
+      py[i] = y;
+      minX = Math.min(minX, x);
+      minY = Math.min(minY, y);
+      maxX = Math.max(maxX, x);
+      maxY = Math.max(maxY, y);
+    }
+    // Scale of the z-order curve, 15 bits per coordinate
+    double size = Math.max(maxX - minX, maxY - minY);
+    invSize = 0 < size ? 32767 / size : 0;
+    return true;
+  }
+
+
+  // Returns true if no two edges of the polygon touch, other than the
+  // consecutive ones at their shared vertex, and these do not fold back on
+  // each other. The edges are placed in a grid with about as many cells as
+  // edges, and only the ones in the same cell are compared.
+  protected boolean isSimple() {
+    int n = vertexCount;
+    for (int i = 0; i < n; i++) {
+      int a = i == 0 ? n - 1 : i - 1;
+      int c = i + 1 < n ? i + 1 : 0;
+      if (px[i] == px[c] && py[i] == py[c]) return false;
+      if (cross(a, i, c) == 0 && 0 < dot(a, i, c)) return false;
+    }
+    if (n == 3) return true;
+
+    gridSize = Math.max(1, (int) Math.sqrt(n));
+    cellSize = Math.max(maxX - minX, maxY - minY) / gridSize;
+    int cells = gridSize * gridSize;
+    if (cellStart.length < cells + 1) cellStart = new int[cells + 1];
+    Arrays.fill(cellStart, 0, cells + 1, 0);
+    for (int i = 0; i < n; i++) {
+      addToCells(i, false);
+    }
+    for (int c = 0; c < cells; c++) {
+      cellStart[c + 1] += cellStart[c];
+    }
+    if (cellEdges.length < cellStart[cells]) {
+      cellEdges = new int[cellStart[cells]];
+    }
+    for (int i = 0; i < n; i++) {
+      addToCells(i, true);
+    }
+
+    for (int c = 0; c < cells; c++) {
+      int end = cellStart[c];
+      for (int k = c == 0 ? 0 : cellStart[c - 1]; k < end; k++) {
+        int i = cellEdges[k];
+        int i1 = i + 1 < n ? i + 1 : 0;
+        double loY = Math.min(py[i], py[i1]);
+        double hiY = Math.max(py[i], py[i1]);
+        double loX = Math.min(px[i], px[i1]);
+        double hiX = Math.max(px[i], px[i1]);
+        for (int l = k + 1; l < end; l++) {
+          int j = cellEdges[l];
+          int j1 = j + 1 < n ? j + 1 : 0;
+          if (j == i1 || j1 == i) continue;
+          if (Math.max(py[j], py[j1]) < loY || hiY < Math.min(py[j], py[j1]) ||
+              Math.max(px[j], px[j1]) < loX || hiX < Math.min(px[j], px[j1])) {
+            continue;
+          }
+          if (intersects(i, i1, j, j1)) return false;
+        }
+      }
+    }
+    return true;
+  }
+
+
+  // Counts edge i in the cells it crosses, or adds it to them once the
+  // counts have been turned into positions. The cells of each row come from
+  // the part of the edge inside the row, slightly enlarged so that rounding
+  // can only add cells.
+  protected void addToCells(int i, boolean add) {
+    int j = i + 1 < vertexCount ? i + 1 : 0;
+    double x0 = px[i], y0 = py[i];
+    double x1 = px[j], y1 = py[j];
+    if (y1 < y0) {
+      double t = x0; x0 = x1; x1 = t;
+      t = y0; y0 = y1; y1 = t;
+    }
+    double eps = 1e-6 * cellSize;
+    int r0 = cell(y0 - minY - eps);
+    int r1 = cell(y1 - minY + eps);
+    for (int r = r0; r <= r1; r++) {
+      double xa = x0, xb = x1;
+      if (y0 < y1) {
+        double ya = Math.max(y0, minY + r * cellSize);
+        double yb = Math.min(y1, minY + (r + 1) * cellSize);
+        xa = x0 + (x1 - x0) * (ya - y0) / (y1 - y0);
+        xb = x0 + (x1 - x0) * (yb - y0) / (y1 - y0);
+      }
+      int c0 = r * gridSize + cell(Math.min(xa, xb) - minX - eps);
+      int c1 = r * gridSize + cell(Math.max(xa, xb) - minX + eps);
+      for (int c = c0; c <= c1; c++) {
+        if (add) {
+          cellEdges[cellStart[c]++] = i;
+        } else {
+          cellStart[c + 1]++;
+        }
+      }
+    }
+  }
+
+
+  protected int cell(double d) {
+    int c = (int) (d / cellSize);
+    return c < 0 ? 0 : gridSize <= c ? gridSize - 1 : c;
+  }
+
+
+  protected boolean clipEars() {
+    int n = vertexCount;
+    if (triangles.length < 3 * (n - 2)) triangles = new int[3 * (n - 2)];
+    for (int i = 0; i < n; i++) {
+      prev[i] = i == 0 ? n - 1 : i - 1;
+      next[i] = i + 1 < n ? i + 1 : 0;
+    }
+    // Collinear vertices count as reflex, since they can also block ears
+    for (int i = 0; i < n; i++) {
+      reflex[i] = cross(prev[i], i, next[i]) <= 0;
+    }
+    hashed = MIN_HASHED_VERTICES < n && 0 < invSize;
+    if (hashed) indexCurve();
+
+    int ear = 0;
+    int stop = 0;
+    while (prev[ear] != next[ear]) {
+      int a = prev[ear];
+      int c = next[ear];
+      if (isEar(ear)) {
+        triangles[3 * triangleCount + 0] = a;
+        triangles[3 * triangleCount + 1] = ear;
+        triangles[3 * triangleCount + 2] = c;
+        triangleCount++;
+        remove(ear);
+
+        // Skipping the next vertex leaves less sliver triangles
+        ear = next[c];
+        stop = ear;
+        continue;
+      }
+      ear = c;
+      if (ear == stop) {
+        // No ear left, which only happens due to rounding errors
+        return false;
+      }
+    }
+    return true;
+  }
+
+
+  // Only the reflex vertices need to be tested against the triangle,
+  // since if any vertex is inside of it, so is a reflex one.
+  protected boolean isEar(int ear) {
+    int a = prev[ear];
+    int c = next[ear];
+    double area = cross(a, ear, c);
+    if (area < 0) return false;
+    if (area == 0) return dot(a, ear, c) < 0;
+
+    if (hashed) {
+      // Only the vertices whose z-order is within the range of the bounding
+      // box of the triangle can be inside of it
+      double x0 = Math.min(px[a], Math.min(px[ear], px[c]));
+      double y0 = Math.min(py[a], Math.min(py[ear], py[c]));
+      double x1 = Math.max(px[a], Math.max(px[ear], px[c]));
+      double y1 = Math.max(py[a], Math.max(py[ear], py[c]));
+      long maxKey = (long) zOrder(x1, y1) << 32 | 0xFFFFFFFFL;
+      int k = findReflex(lowerBound((long) zOrder(x0, y0) << 32));
+      while (k < orderCount && order[k] <= maxKey) {
+        int p = (int) order[k];
+        if (p != a && p != c && inTriangle(a, ear, c, p)) return false;
+        k = findReflex(k + 1);
+      }
+    } else {
+      for (int p = next[c]; p != a; p = next[p]) {
+        if (reflex[p] && inTriangle(a, ear, c, p)) return false;
+      }
+    }
+    return true;
+  }
+
+
+  // Removes an ear, whose neighbors may stop being reflex. Clipping an ear
+  // never makes a vertex reflex.
+  protected void remove(int i) {
+    int a = prev[i];
+    int c = next[i];
+    next[a] = c;
+    prev[c] = a;
+    clearReflex(i);
+    if (reflex[a] && 0 < cross(prev[a], a, c)) clearReflex(a);
+    if (reflex[c] && 0 < cross(a, c, next[c])) clearReflex(c);
+  }
+
+
+  protected void clearReflex(int i) {
+    if (reflex[i]) {
+      reflex[i] = false;
+      if (hashed) skip[orderPos[i]] = orderPos[i] + 1;
+    }
+  }
+
+
+  // Sorts the reflex vertices by their position along the z-order curve.
+  protected void indexCurve() {
+    int n = vertexCount;
+    orderCount = 0;
+    for (int i = 0; i < n; i++) {
+      if (reflex[i]) {
+        order[orderCount++] = (long) zOrder(px[i], py[i]) << 32 | i;
+      }
+    }
+    Arrays.sort(order, 0, orderCount);
+    for (int k = 0; k < orderCount; k++) {
+      orderPos[(int) order[k]] = k;
+    }
+    for (int k = 0; k <= orderCount; k++) {
+      skip[k] = k;
+    }
+  }
+
+
+  // First position in order with a key not less than the given one.
+  protected int lowerBound(long key) {
+    int lo = 0, hi = orderCount;
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      if (order[mid] < key) lo = mid + 1;
+      else hi = mid;
+    }
+    return lo;
+  }
+
+
+  // First position from k on whose vertex is still reflex, shortening the
+  // chain of skipped positions along the way.
+  protected int findReflex(int k) {
+    int r = k;
+    while (skip[r] != r) r = skip[r];
+    while (skip[k] != r) {
+      int t = skip[k];
+      skip[k] = r;
+      k = t;
+    }
+    return r;
+  }
+
+
+  protected int zOrder(double x, double y) {
+    int ix = (int) ((x - minX) * invSize);
+    int iy = (int) ((y - minY) * invSize);
+    return spread(ix) | (spread(iy) << 1);
+  }
+
+
+  // Interleaves the lower 16 bits of x with zeros.
+  static protected int spread(int x) {
+    x = (x | (x << 8)) & 0x00FF00FF;
+    x = (x | (x << 4)) & 0x0F0F0F0F;
+    x = (x | (x << 2)) & 0x33333333;
+    x = (x | (x << 1)) & 0x55555555;
+    return x;
+  }
+
+
+  ///////////////////////////////////////////////////////////
+
+  // Geometric predicates
+
+
+  // Twice the signed area of the triangle, positive if counter-clockwise.
+  protected double cross(int a, int b, int c) {
+    return (px[b] - px[a]) * (py[c] - py[a]) -
+           (py[b] - py[a]) * (px[c] - px[a]);
+  }
+
+
+  // Dot product of the vectors from b to a and from b to c.
+  protected double dot(int a, int b, int c) {
+    return (px[a] - px[b]) * (px[c] - px[b]) +
+           (py[a] - py[b]) * (py[c] - py[b]);
+  }
+
+
+  // Whether p is inside or on the border of the counter-clockwise triangle.
+  protected boolean inTriangle(int a, int b, int c, int p) {
+    return 0 <= cross(a, b, p) && 0 <= cross(b, c, p) && 0 <= cross(c, a, p);
+  }
+
+
+  // Whether segments p1-p2 and q1-q2 cross or touch.
+  protected boolean intersects(int p1, int p2, int q1, int q2) {
+    int o1 = sign(cross(p1, p2, q1));
+    int o2 = sign(cross(p1, p2, q2));
+    int o3 = sign(cross(q1, q2, p1));
+    int o4 = sign(cross(q1, q2, p2));
+    if (o1 != o2 && o3 != o4) return true;
+    if (o1 == 0 && onSegment(p1, q1, p2)) return true;
+    if (o2 == 0 && onSegment(p1, q2, p2)) return true;
+    if (o3 == 0 && onSegment(q1, p1, q2)) return true;
+    if (o4 == 0 && onSegment(q1, p2, q2)) return true;
+    return false;
+  }
+
+
+  // Whether q, collinear with p and r, lies between them.
+  protected boolean onSegment(int p, int q, int r) {
+    return Math.min(px[p], px[r]) <= px[q] && px[q] <= Math.max(px[p], px[r]) &&
+           Math.min(py[p], py[r]) <= py[q] && py[q] <= Math.max(py[p], py[r]);
+  }
+
+
+  static protected int sign(double x) {
+    return 0 < x ? 1 : x < 0 ? -1 : 0;
+  }
+}
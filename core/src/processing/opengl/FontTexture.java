@@ -30,7 +30,10 @@ import processing.core.PFont;
 import processing.core.PGraphics;
 import processing.core.PImage;
 
+import java.nio.IntBuffer;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 /**
  * All the infrastructure needed for optimized font rendering
@@ -46,26 +49,63 @@ import java.util.HashMap;
  * OpenGL texture might not be enough to store all the glyphs,
  * so PFontTexture also takes care of spreading a single font
  * over several textures.
+ * The glyphs are placed on the skyline of the last texture, i.e.: at the
+ * lowest spot where they fit above the glyphs already placed, and written
+ * into a copy of its pixels. The glyphs added since the last draw are
+ * uploaded together by updateTexture().
+ * After hint(ENABLE_DISTANCE_FIELD_TEXT), the textures hold the distance
+ * fields of the glyphs instead of their bitmaps, with a margin of padding
+ * pixels around them (see DistanceField).
  * @author Andres Colubri
  */
 class FontTexture implements PConstants {
   protected PGL pgl;
+  protected PFont font;
   protected boolean is3D;
 
+  // Distance fields of the glyphs, if the texture holds them
+  protected DistanceField distanceField;
+  protected int padding;
+
   protected int minSize;
   protected int maxSize;
-  protected int offsetX;
-  protected int offsetY;
-  protected int lineHeight;
   protected Texture[] textures = null;
   protected PImage[] images = null;
   protected int lastTex;
   protected TextureInfo[] glyphTexinfos;
+  protected int texinfoCount;
   protected HashMap<PFont.Glyph, TextureInfo> texinfoMap;
 
+  // Skyline of the last texture: the i-th segment starts at skylineX[i],
+  // it is skylineWidth[i] pixels wide, and all the rows above skylineY[i]
+  // are taken.
+  protected int[] skylineX = new int[16];
+  protected int[] skylineY = new int[16];
+  protected int[] skylineWidth = new int[16];
+  protected int skylineCount;
+
+  // Copy of the pixels of the last texture, and the rectangle of it holding
+  // the glyphs that have not been uploaded yet.
+  protected int[] staging;
+  protected int dirtyX0, dirtyY0, dirtyX1, dirtyY1;
+  protected IntBuffer uploadBuffer;
+
+  // Glyphs rasterized by prewarm() waiting to be added to the texture
+  protected ConcurrentLinkedQueue<PFont.Glyph> prewarmed =
+    new ConcurrentLinkedQueue<PFont.Glyph>();
+
   public FontTexture(PGraphicsOpenGL pg, PFont font, boolean is3D) {
+    this(pg, font, is3D, null);
+  }
+
+
+  public FontTexture(PGraphicsOpenGL pg, PFont font, boolean is3D,
+                     DistanceField distanceField) {
     pgl = pg.pgl;
+    this.font = font;
     this.is3D = is3D;
+    this.distanceField = distanceField;
+    if (distanceField != null) padding = distanceField.spread;
 
     initTexture(pg, font);
   }
@@ -100,12 +140,9 @@ class FontTexture implements PConstants {
 
     addTexture(pg);
 
-    offsetX = 0;
-    offsetY = 0;
-    lineHeight = 0;
-
     texinfoMap = new HashMap<PFont.Glyph, TextureInfo>();
-    glyphTexinfos = new TextureInfo[font.getGlyphCount()];
+    glyphTexinfos = new TextureInfo[PApplet.max(1, font.getGlyphCount())];
+    texinfoCount = 0;
     addAllGlyphsToTexture(pg, font);
   }
 
@@ -114,6 +151,10 @@ class FontTexture implements PConstants {
     int w, h;
     boolean resize;
 
+    // The glyphs waiting for upload go to the current texture before it is
+    // copied into a larger one, or left behind.
+    updateTexture();
+
     w = maxSize;
     if (-1 < lastTex && textures[lastTex].glHeight < maxSize) {
       // The height of the current texture is less than the maximum, this
@@ -126,9 +167,10 @@ class FontTexture implements PConstants {
     }
 
     Texture tex;
-    if (is3D) {
+    if (is3D || distanceField != null) {
       // Bilinear sampling ensures that the texture doesn't look pixelated
-      // either when it is magnified or minified...
+      // either when it is magnified or minified, and distance fields need
+      // it regardless...
       tex = new Texture(pg, w, h,
                         new Texture.Parameters(ARGB, Texture.BILINEAR, false));
     } else {
@@ -139,6 +181,7 @@ class FontTexture implements PConstants {
       tex = new Texture(pg, w, h,
                         new Texture.Parameters(ARGB, Texture.LINEAR, false));
     }
+    tex.distanceField = distanceField != null;
 
     if (textures == null) {
       textures = new Texture[1];
@@ -171,6 +214,23 @@ class FontTexture implements PConstants {
       images = tempImg;
     }
 
+    // The skyline is still valid in the larger texture, since it has the
+    // same width. Otherwise the new texture is empty.
+    int size = tex.glWidth * tex.glHeight;
+    if (resize) {
+      int[] temp = new int[size];
+      PApplet.arrayCopy(staging, temp, staging.length);
+      Arrays.fill(temp, staging.length, size, blankPixel());
+      staging = temp;
+    } else {
+      if (staging == null || staging.length != size) staging = new int[size];
+      Arrays.fill(staging, blankPixel());
+      skylineX[0] = 0;
+      skylineY[0] = 0;
+      skylineWidth[0] = tex.glWidth;
+      skylineCount = 1;
+    }
+
     // Make sure that the current texture is bound.
     tex.bind();
 
@@ -178,7 +238,11 @@ class FontTexture implements PConstants {
   }
 
 
-  public void begin() {
+  public void begin(PGraphicsOpenGL pg) {
+    PFont.Glyph glyph;
+    while ((glyph = prewarmed.poll()) != null) {
+      if (!texinfoMap.containsKey(glyph)) addToTexture(pg, glyph);
+    }
   }
 
 
@@ -196,6 +260,13 @@ class FontTexture implements PConstants {
 
   // Add all the current glyphs to opengl texture.
   public void addAllGlyphsToTexture(PGraphicsOpenGL pg, PFont font) {
+    if (distanceField != null) {
+      PFont.Glyph[] glyphs = new PFont.Glyph[font.getGlyphCount()];
+      for (int i = 0; i < glyphs.length; i++) glyphs[i] = font.getGlyph(i);
+      distanceField.generate(glyphs, glyphs.length);
+      distanceField.save();
+    }
+
     // loop over current glyphs.
     for (int i = 0; i < font.getGlyphCount(); i++) {
       addToTexture(pg, i, font.getGlyph(i));
@@ -205,7 +276,7 @@ class FontTexture implements PConstants {
 
   public void updateGlyphsTexCoords() {
     // loop over current glyphs.
-    for (int i = 0; i < glyphTexinfos.length; i++) {
+    for (int i = 0; i < texinfoCount; i++) {
       TextureInfo tinfo = glyphTexinfos[i];
       if (tinfo != null && tinfo.texIndex == lastTex) {
         tinfo.updateUV();
@@ -221,15 +292,64 @@ class FontTexture implements PConstants {
 
 
   public TextureInfo addToTexture(PGraphicsOpenGL pg, PFont.Glyph glyph) {
-    int n = glyphTexinfos.length;
-    if (n == 0) {
-      glyphTexinfos = new TextureInfo[1];
-    }
+    int n = texinfoCount;
     addToTexture(pg, n, glyph);
     return glyphTexinfos[n];
   }
 
 
+  /**
+   * Rasterizes the glyphs of the characters in charset on a background
+   * thread, along with their distance fields if needed. They are added to
+   * the texture the next time text is drawn with this font, instead of one
+   * by one as they first appear in the text.
+   */
+  public void prewarm(final String charset) {
+    Thread thread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        PFont.Glyph[] glyphs = new PFont.Glyph[charset.length()];
+        int count = 0;
+        for (int i = 0; i < charset.length(); i++) {
+          PFont.Glyph glyph = font.getGlyph(charset.charAt(i));
+          if (glyph != null) glyphs[count++] = glyph;
+        }
+        if (distanceField != null) {
+          distanceField.generate(glyphs, count);
+          distanceField.save();
+        }
+        for (int i = 0; i < count; i++) prewarmed.add(glyphs[i]);
+      }
+    }, "Processing font prewarm");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+
+  /**
+   * Uploads the glyphs added since the last call, as a single rectangle of
+   * the last texture. Needs to be called before drawing them.
+   */
+  public void updateTexture() {
+    if (dirtyX1 <= dirtyX0) return;
+
+    Texture tex = textures[lastTex];
+    int w = dirtyX1 - dirtyX0;
+    int h = dirtyY1 - dirtyY0;
+    if (uploadBuffer == null || uploadBuffer.capacity() < w * h) {
+      uploadBuffer = PGL.allocateDirectIntBuffer(w * h);
+    }
+    uploadBuffer.clear();
+    for (int y = dirtyY0; y < dirtyY1; y++) {
+      uploadBuffer.put(staging, y * tex.glWidth + dirtyX0, w);
+    }
+    uploadBuffer.rewind();
+    tex.setNative(uploadBuffer, dirtyX0, dirtyY0, w, h);
+
+    dirtyX0 = dirtyY0 = dirtyX1 = dirtyY1 = 0;
+  }
+
+
   public boolean contextIsOutdated() {
     boolean outdated = false;
     for (int i = 0; i < textures.length; i++) {
@@ -241,6 +361,7 @@ class FontTexture implements PConstants {
       for (int i = 0; i < textures.length; i++) {
         textures[i].dispose();
       }
+      dirtyX0 = dirtyY0 = dirtyX1 = dirtyY1 = 0;
     }
     return outdated;
   }
@@ -263,74 +384,170 @@ class FontTexture implements PConstants {
     // doesn't, this would result in a shaded pixel when the correct output is
     // blank. This is a consequence of putting all the glyphs in a common
     // texture with bilinear sampling.
-    int w = 1 + glyph.width + 1;
-    int h = 1 + glyph.height + 1;
-
-    // Converting the pixels array from the PImage into a valid RGBA array for
-    // OpenGL.
-    int[] rgba = new int[w * h];
-    int t = 0;
-    int p = 0;
-    if (PGL.BIG_ENDIAN)  {
-      java.util.Arrays.fill(rgba, 0, w, 0xFFFFFF00); // Set the first row to blank pixels.
-      t = w;
-      for (int y = 0; y < glyph.height; y++) {
-        rgba[t++] = 0xFFFFFF00; // Set the leftmost pixel in this row as blank
-        for (int x = 0; x < glyph.width; x++) {
-          rgba[t++] = 0xFFFFFF00 | glyph.image.pixels[p++];
+    // Glyphs larger than the texture are cropped (see the warning in
+    // initTexture()).
+    int fieldWidth = glyph.width + 2 * padding;
+    int fieldHeight = glyph.height + 2 * padding;
+    int w = PApplet.min(1 + fieldWidth + 1, maxSize);
+    int h = PApplet.min(1 + fieldHeight + 1, maxSize);
+
+    int pos = place(w, h);
+    while (pos == -1) {
+      // We run out of space in the current texture, so we add a new texture:
+      boolean resized = addTexture(pg);
+      if (resized) {
+        // Because the current texture has been resized, we need to
+        // update the UV coordinates of all the glyphs associated to it.
+        updateGlyphsTexCoords();
+      }
+      pos = place(w, h);
+    }
+    int texWidth = textures[lastTex].glWidth;
+    int x0 = pos % texWidth;
+    int y0 = pos / texWidth;
+
+    // Converting the pixels from the PImage, or the distance field, into
+    // valid RGBA values for OpenGL. The border around the glyph is already
+    // blank.
+    if (distanceField != null) {
+      byte[] field = distanceField.get(glyph);
+      for (int y = 0; y < h - 2; y++) {
+        int t = pos + (y + 1) * texWidth + 1;
+        int p = y * fieldWidth;
+        if (PGL.BIG_ENDIAN) {
+          for (int x = 0; x < w - 2; x++) {
+            staging[t++] = 0xFFFFFF00 | (field[p++] & 0xFF);
+          }
+        } else {
+          for (int x = 0; x < w - 2; x++) {
+            staging[t++] = (field[p++] << 24) | 0x00FFFFFF;
+          }
         }
-        rgba[t++] = 0xFFFFFF00; // Set the rightmost pixel in this row as blank
       }
-      java.util.Arrays.fill(rgba, (h - 1) * w, h * w, 0xFFFFFF00); // Set the last row to blank pixels.
     } else {
-      java.util.Arrays.fill(rgba, 0, w, 0x00FFFFFF); // Set the first row to blank pixels.
-      t = w;
-      for (int y = 0; y < glyph.height; y++) {
-        rgba[t++] = 0x00FFFFFF; // Set the leftmost pixel in this row as blank
-        for (int x = 0; x < glyph.width; x++) {
-          rgba[t++] = (glyph.image.pixels[p++] << 24) | 0x00FFFFFF;
+      int[] pixels = glyph.image.pixels;
+      for (int y = 0; y < h - 2; y++) {
+        int t = pos + (y + 1) * texWidth + 1;
+        int p = y * glyph.width;
+        if (PGL.BIG_ENDIAN) {
+          for (int x = 0; x < w - 2; x++) {
+            staging[t++] = 0xFFFFFF00 | pixels[p++];
+          }
+        } else {
+          for (int x = 0; x < w - 2; x++) {
+            staging[t++] = (pixels[p++] << 24) | 0x00FFFFFF;
+          }
         }
-        rgba[t++] = 0x00FFFFFF; // Set the rightmost pixel in this row as blank
       }
-      java.util.Arrays.fill(rgba, (h - 1) * w, h * w, 0x00FFFFFF); // Set the last row to blank pixels.
     }
 
-    // Is there room for this glyph in the current line?
-    if (offsetX + w > textures[lastTex].glWidth) {
-      // No room, go to the next line:
-      offsetX = 0;
-      offsetY += lineHeight;
+    if (dirtyX1 <= dirtyX0) {
+      dirtyX0 = x0;
+      dirtyY0 = y0;
+      dirtyX1 = x0 + w;
+      dirtyY1 = y0 + h;
+    } else {
+      dirtyX0 = PApplet.min(dirtyX0, x0);
+      dirtyY0 = PApplet.min(dirtyY0, y0);
+      dirtyX1 = PApplet.max(dirtyX1, x0 + w);
+      dirtyY1 = PApplet.max(dirtyY1, y0 + h);
     }
-    lineHeight = Math.max(lineHeight, h);
 
-    boolean resized = false;
-    if (offsetY + lineHeight > textures[lastTex].glHeight) {
-      // We run out of space in the current texture, so we add a new texture:
-      resized = addTexture(pg);
-      if (resized) {
-        // Because the current texture has been resized, we need to
-        // update the UV coordinates of all the glyphs associated to it:
-        updateGlyphsTexCoords();
+    TextureInfo tinfo = new TextureInfo(lastTex, x0, y0, w, h);
+
+    if (idx == glyphTexinfos.length) {
+      glyphTexinfos = (TextureInfo[]) PApplet.expand(glyphTexinfos);
+    }
+
+    glyphTexinfos[idx] = tinfo;
+    texinfoCount = PApplet.max(texinfoCount, idx + 1);
+    texinfoMap.put(glyph, tinfo);
+  }
+
+
+  // Finds the lowest position on the skyline where a w x h rectangle fits
+  // in the last texture, and raises the skyline over it. Returns the
+  // top-left corner of the rectangle as x + y * glWidth, or -1 if there is
+  // no room for it.
+  protected int place(int w, int h) {
+    int texWidth = textures[lastTex].glWidth;
+    int texHeight = textures[lastTex].glHeight;
+
+    int best = -1;
+    int bestY = 0;
+    for (int i = 0; i < skylineCount && skylineX[i] + w <= texWidth; i++) {
+      // The rectangle rests on the highest segment under it
+      int y = 0;
+      for (int j = i, left = w; 0 < left; j++) {
+        y = PApplet.max(y, skylineY[j]);
+        left -= skylineWidth[j];
+      }
+      if (y + h <= texHeight && (best == -1 || y < bestY)) {
+        best = i;
+        bestY = y;
+      }
+    }
+    if (best == -1) return -1;
+
+    int x = skylineX[best];
+    insertSegment(best, x, bestY + h, w);
+
+    // Removing or shortening the segments now under the new one
+    int i = best + 1;
+    while (i < skylineCount && skylineX[i] < x + w) {
+      int end = skylineX[i] + skylineWidth[i];
+      if (end <= x + w) {
+        removeSegment(i);
       } else {
-        // A new texture has been created. Reseting texture coordinates
-        // and line.
-        offsetX = 0;
-        offsetY = 0;
-        lineHeight = 0;
+        skylineX[i] = x + w;
+        skylineWidth[i] = end - (x + w);
+        break;
       }
     }
 
-    TextureInfo tinfo = new TextureInfo(lastTex, offsetX, offsetY, w, h, rgba);
-    offsetX += w;
+    // Merging neighbors at the same height
+    for (i = PApplet.max(0, best - 1); i < skylineCount - 1 && i <= best;) {
+      if (skylineY[i] == skylineY[i + 1]) {
+        skylineWidth[i] += skylineWidth[i + 1];
+        removeSegment(i + 1);
+      } else {
+        i++;
+      }
+    }
 
-    if (idx == glyphTexinfos.length) {
-      TextureInfo[] temp = new TextureInfo[glyphTexinfos.length + 1];
-      System.arraycopy(glyphTexinfos, 0, temp, 0, glyphTexinfos.length);
-      glyphTexinfos = temp;
+    return x + bestY * texWidth;
+  }
+
+
+  protected void insertSegment(int i, int x, int y, int width) {
+    if (skylineCount == skylineX.length) {
+      skylineX = PApplet.expand(skylineX);
+      skylineY = PApplet.expand(skylineY);
+      skylineWidth = PApplet.expand(skylineWidth);
     }
+    int n = skylineCount - i;
+    System.arraycopy(skylineX, i, skylineX, i + 1, n);
+    System.arraycopy(skylineY, i, skylineY, i + 1, n);
+    System.arraycopy(skylineWidth, i, skylineWidth, i + 1, n);
+    skylineX[i] = x;
+    skylineY[i] = y;
+    skylineWidth[i] = width;
+    skylineCount++;
+  }
 
-    glyphTexinfos[idx] = tinfo;
-    texinfoMap.put(glyph, tinfo);
+
+  protected void removeSegment(int i) {
+    int n = skylineCount - i - 1;
+    System.arraycopy(skylineX, i + 1, skylineX, i, n);
+    System.arraycopy(skylineY, i + 1, skylineY, i, n);
+    System.arraycopy(skylineWidth, i + 1, skylineWidth, i, n);
+    skylineCount--;
+  }
+
+
+  // Transparent white, in the byte order of the texture
+  static protected int blankPixel() {
+    return PGL.BIG_ENDIAN ? 0xFFFFFF00 : 0x00FFFFFF;
   }
 
 
@@ -341,10 +558,8 @@ class FontTexture implements PConstants {
     int[] crop;
     float u0, u1;
     float v0, v1;
-    int[] pixels;
 
-    TextureInfo(int tidx, int cropX, int cropY, int cropW, int cropH,
-                int[] pix) {
+    TextureInfo(int tidx, int cropX, int cropY, int cropW, int cropH) {
       texIndex = tidx;
       crop = new int[4];
       // The region of the texture corresponding to the glyph is surrounded by a
@@ -354,9 +569,7 @@ class FontTexture implements PConstants {
       crop[1] = cropY + 1 + cropH - 2;
       crop[2] = cropW - 2;
       crop[3] = -cropH + 2;
-      pixels = pix;
       updateUV();
-      updateTex();
     }
 
 
@@ -369,11 +582,5 @@ class FontTexture implements PConstants {
       v0 = (float)(crop[1] + crop[3]) / (float)height;
       v1 = v0 - (float)crop[3] / (float)height;
     }
-
-
-    void updateTex() {
-      textures[texIndex].setNative(pixels, crop[0] - 1, crop[1] + crop[3] - 1,
-                                           crop[2] + 2, -crop[3] + 2);
-    }
   }
 }
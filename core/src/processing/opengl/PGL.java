@@ -127,6 +127,71 @@ public abstract class PGL {
    * order to make sure the lines are always on top of the fill geometry */
   protected static float STROKE_DISPLACEMENT = 0.999f;
 
+  /** Stride, in bytes, of the interleaved polygon vertices. It can be
+   * increased to pad each vertex to the size preferred by the GPU, but is
+   * never smaller than the size of the packed attributes (48 bytes). */
+  protected static int INTERLEAVED_VERTEX_STRIDE = 48;
+
+  /** Minimum number of input vertices in an immediate-mode batch for its
+   * triangles, quads or 3D lines to be tessellated in parallel, when enabled
+   * with hint(ENABLE_PARALLEL_TESSELLATION). */
+  protected static int MIN_PARALLEL_TESS_VERTICES = 16384;
+
+  /** Minimum number of triangles for the depth sorter to split its work
+   * among several threads. */
+  protected static int MIN_PARALLEL_SORT_TRIANGLES = 16384;
+
+  /** Number of triangles after each one that the depth sorter checks for
+   * overlaps, or 0 to check all of them. Limiting it makes sorting large
+   * transparent scenes faster, at the cost of occasional ordering errors. */
+  protected static int DEPTH_SORT_NEIGHBORHOOD = 0;
+
+  /** Number of frames whose statistics are kept after
+   * hint(ENABLE_RENDER_STATS), and saved by saveRenderStats(). */
+  protected static int RENDER_STATS_FRAMES = 600;
+
+  /** Largest width and height, in pixels, of the images packed into the
+   * texture atlas after hint(ENABLE_TEXTURE_ATLAS). */
+  protected static int MAX_ATLAS_IMAGE_SIZE = 256;
+
+  /** Size of the textures the atlas packs the images into, if the device
+   * supports textures that large. */
+  protected static int ATLAS_TEXTURE_SIZE = 2048;
+
+  /** Number of textures the atlas creates before it starts evicting the
+   * images that have not been drawn recently. */
+  protected static int MAX_ATLAS_TEXTURES = 4;
+
+  /** Frames that a texture of the atlas must go undrawn before its images
+   * can be evicted to make room for new ones. */
+  protected static int ATLAS_EVICTION_FRAMES = 60;
+
+  /** Number of full batches of vertices that fit in the buffer where the
+   * P2DX renderer streams its geometry. Once the buffer is full its storage
+   * is orphaned, so the driver does not wait for the pending draws. */
+  protected static int P2DX_STREAM_BATCHES = 4;
+
+  /** Polygons with a single simple contour and up to this many vertices are
+   * triangulated by ear clipping, instead of going through the GLU
+   * tessellator. Larger ones are usually faster with GLU, and 0 disables
+   * ear clipping altogether. */
+  protected static int MAX_EAR_CLIPPING_VERTICES = 256;
+
+  /** Bytes that the triangulations kept after
+   * hint(ENABLE_TESSELLATION_CACHE) can take. Once exceeded, the ones used
+   * least recently are dropped. */
+  protected static int TESS_CACHE_BYTES = 4 * 1024 * 1024;
+
+  /** Pixels around each glyph covered by its distance field after
+   * hint(ENABLE_DISTANCE_FIELD_TEXT), at the size of the font. Larger
+   * values keep the outlines smooth when the text is much smaller than the
+   * font. */
+  protected static int DISTANCE_FIELD_SPREAD = 6;
+
+  /** Strings whose layout is kept after hint(ENABLE_TEXT_LAYOUT_CACHE).
+   * Once exceeded, the ones drawn least recently are dropped. */
+  protected static int TEXT_LAYOUT_CACHE_SIZE = 256;
+
   // ........................................................
 
   // Variables to handle single-buffered situations (i.e.: Android)
@@ -242,6 +307,21 @@ public abstract class PGL {
 
   // ........................................................
 
+  // State shadowing
+
+  /** Last values of the GL state set through the wrappers below, so calls
+   * that would leave it unchanged can be skipped. All the PGL objects of a
+   * sketch render with the same context, so they share the one held by the
+   * primary PGL. */
+  protected GLState glState;
+
+  /** Shadowed state changes issued to, and skipped before reaching, the
+   * driver. */
+  protected int stateChangeCount;
+  protected int elidedStateChangeCount;
+
+  // ........................................................
+
   // Framerate handling
 
   protected float targetFps = 60;
@@ -268,6 +348,9 @@ public abstract class PGL {
   protected int geomCount = 0;
   protected int pgeomCount;
 
+  /** Draw calls issued since the renderer last collected them. */
+  protected int drawCallCount;
+
   /** Used to register calls to background. */
   protected boolean clearColor = false;
   protected boolean pclearColor;
@@ -526,6 +609,8 @@ public abstract class PGL {
 
 
   protected boolean getDepthTest() {
+    int test = getGLState().getCap(DEPTH_TEST);
+    if (test != GLState.UNKNOWN) return test == 1;
     intBuffer.rewind();
     getBooleanv(DEPTH_TEST, intBuffer);
     return intBuffer.get(0) == 0 ? false : true;
@@ -533,6 +618,8 @@ public abstract class PGL {
 
 
   protected boolean getDepthWriteMask() {
+    int mask = getGLState().depthMask;
+    if (mask != GLState.UNKNOWN) return mask == 1;
     intBuffer.rewind();
     getBooleanv(DEPTH_WRITEMASK, intBuffer);
     return intBuffer.get(0) == 0 ? false : true;
@@ -1170,6 +1257,149 @@ public abstract class PGL {
   }
 
 
+  protected GLState getGLState() {
+    PGL ppgl = primaryPGL || graphics == null ? this : graphics.getPrimaryPGL();
+    if (ppgl.glState == null) {
+      ppgl.glState = new GLState();
+    }
+    if (ppgl.glState.context != ppgl.glContext) {
+      // New context, nothing is known about its state
+      ppgl.glState.reset();
+      ppgl.glState.context = ppgl.glContext;
+    }
+    return ppgl.glState;
+  }
+
+
+  /**
+   * Forgets the shadowed state, so the next calls reach the driver. Needed
+   * whenever the GL state might have been changed without going through
+   * this PGL, for instance by native calls between beginPGL() and endPGL(),
+   * or by libraries that call GLES20 directly.
+   */
+  public void resetGLState() {
+    getGLState().reset();
+  }
+
+
+  protected boolean stateChanged(boolean changed) {
+    if (changed) {
+      stateChangeCount++;
+    } else {
+      elidedStateChangeCount++;
+    }
+    return changed;
+  }
+
+
+  protected void setViewport(int x, int y, int w, int h) {
+    int[] viewport = getGLState().viewport;
+    if (stateChanged(viewport[0] != x || viewport[1] != y ||
+                     viewport[2] != w || viewport[3] != h)) {
+      viewport[0] = x;
+      viewport[1] = y;
+      viewport[2] = w;
+      viewport[3] = h;
+      viewportImpl(x, y, w, h);
+    }
+  }
+
+
+  /**
+   * Shadow copy of the parts of the GL state that are set often while
+   * rendering. UNKNOWN marks the values that have to be set unconditionally
+   * the next time.
+   */
+  protected static class GLState {
+    static final int UNKNOWN = -1;
+
+    int context;
+    int program;
+    int arrayBuffer;
+    int elementBuffer;
+    int activeTexture;
+    int[] textures = new int[0]; // 2D and rectangle targets of each unit
+    int[] attribArrays = new int[0];
+    int[] caps = new int[8];
+    int[] viewport = new int[4];
+    int blendEquationRGB, blendEquationAlpha;
+    int blendSrcRGB, blendDstRGB, blendSrcAlpha, blendDstAlpha;
+    int depthFunc;
+    int depthMask;
+
+    GLState() {
+      reset();
+    }
+
+    void reset() {
+      context = UNKNOWN;
+      program = arrayBuffer = elementBuffer = activeTexture = UNKNOWN;
+      Arrays.fill(textures, UNKNOWN);
+      Arrays.fill(attribArrays, UNKNOWN);
+      Arrays.fill(caps, UNKNOWN);
+      Arrays.fill(viewport, UNKNOWN);
+      blendEquationRGB = blendEquationAlpha = UNKNOWN;
+      blendSrcRGB = blendDstRGB = blendSrcAlpha = blendDstAlpha = UNKNOWN;
+      depthFunc = depthMask = UNKNOWN;
+    }
+
+    int capIndex(int value) {
+      if (value < 0) return -1;
+      if (value == BLEND) return 0;
+      if (value == DEPTH_TEST) return 1;
+      if (value == CULL_FACE) return 2;
+      if (value == SCISSOR_TEST) return 3;
+      if (value == STENCIL_TEST) return 4;
+      if (value == POLYGON_OFFSET_FILL) return 5;
+      if (value == MULTISAMPLE) return 6;
+      if (value == POLYGON_SMOOTH) return 7;
+      return -1;
+    }
+
+    int getCap(int value) {
+      int cap = capIndex(value);
+      return cap == -1 ? UNKNOWN : caps[cap];
+    }
+
+    // Index of the binding of target in the active unit, or -1 when it is
+    // not shadowed.
+    int textureSlot(int target) {
+      if (target < 0 || activeTexture == UNKNOWN) return -1;
+      int slot;
+      if (target == TEXTURE_2D) {
+        slot = 2 * (activeTexture - TEXTURE0);
+      } else if (target == TEXTURE_RECTANGLE) {
+        slot = 2 * (activeTexture - TEXTURE0) + 1;
+      } else {
+        return -1;
+      }
+      if (slot < 0) return -1;
+      if (textures.length <= slot) {
+        int size = textures.length;
+        textures = PApplet.expand(textures, PApplet.max(2 * size, slot + 2));
+        Arrays.fill(textures, size, textures.length, UNKNOWN);
+      }
+      return slot;
+    }
+
+    int getAttribArray(int index) {
+      return 0 <= index && index < attribArrays.length ?
+             attribArrays[index] : UNKNOWN;
+    }
+
+    void setAttribArray(int index, int value) {
+      if (index < 0) return;
+      if (attribArrays.length <= index) {
+        int size = attribArrays.length;
+        attribArrays = PApplet.expand(attribArrays,
+                                      PApplet.max(2 * size, index + 1));
+        Arrays.fill(attribArrays, size, attribArrays.length, UNKNOWN);
+      }
+      attribArrays[index] = value;
+    }
+  }
+
+
   protected void enableTexturing(int target) {
     if (target == TEXTURE_2D) {
       texturingTargets[0] = true;
@@ -1360,7 +1590,7 @@ public abstract class PGL {
       // Making sure that the viewport matches the provided screen dimensions
       viewBuffer.rewind();
       getIntegerv(VIEWPORT, viewBuffer);
-      viewportImpl(viewF * viewX, viewF * viewY, viewF * viewW, viewF * viewH);
+      setViewport(viewF * viewX, viewF * viewY, viewF * viewW, viewF * viewH);
 
       useProgram(ppgl.tex2DShaderProgram);
 
@@ -1430,8 +1660,8 @@ public abstract class PGL {
       }
       depthMask(depthMask);
 
-      viewportImpl(viewBuffer.get(0), viewBuffer.get(1),
-                   viewBuffer.get(2), viewBuffer.get(3));
+      setViewport(viewBuffer.get(0), viewBuffer.get(1),
+                  viewBuffer.get(2), viewBuffer.get(3));
     }
   }
 
@@ -1493,7 +1723,7 @@ public abstract class PGL {
       // Making sure that the viewport matches the provided screen dimensions
       viewBuffer.rewind();
       getIntegerv(VIEWPORT, viewBuffer);
-      viewportImpl(viewF * viewX, viewF * viewY, viewF * viewW, viewF * viewH);
+      setViewport(viewF * viewX, viewF * viewY, viewF * viewW, viewF * viewH);
 
       useProgram(ppgl.texRectShaderProgram);
 
@@ -1563,8 +1793,8 @@ public abstract class PGL {
       }
       depthMask(depthMask);
 
-      viewportImpl(viewBuffer.get(0), viewBuffer.get(1),
-                   viewBuffer.get(2), viewBuffer.get(3));
+      setViewport(viewBuffer.get(0), viewBuffer.get(1),
+                  viewBuffer.get(2), viewBuffer.get(3));
     }
   }
 
@@ -2252,6 +2482,15 @@ public abstract class PGL {
   }
 
 
+  protected boolean hasInstancing() {
+    int[] version = getGLVersion();
+    if (isES()) {
+      return version[0] >= 3;
+    }
+    return (version[0] > 3) || (version[0] == 3 && version[1] >= 3);
+  }
+
+
   protected boolean hasReadBuffer() {
     int[] version = getGLVersion();
     if (isES()) {
@@ -2907,6 +3146,7 @@ public abstract class PGL {
   public static int VALIDATE_STATUS;
   public static int SHADER_TYPE;
   public static int DELETE_STATUS;
+  public static int ACTIVE_UNIFORMS;
 
   public static int FLOAT_VEC2;
   public static int FLOAT_VEC3;
@@ -3063,8 +3303,30 @@ public abstract class PGL {
 
   // State and State Requests
 
-  public abstract void enable(int value);
-  public abstract void disable(int value);
+  public void enable(int value) {
+    GLState state = getGLState();
+    int cap = state.capIndex(value);
+    if (cap == -1) {
+      enableImpl(value);
+    } else if (stateChanged(state.caps[cap] != 1)) {
+      state.caps[cap] = 1;
+      enableImpl(value);
+    }
+  }
+
+  public void disable(int value) {
+    GLState state = getGLState();
+    int cap = state.capIndex(value);
+    if (cap == -1) {
+      disableImpl(value);
+    } else if (stateChanged(state.caps[cap] != 0)) {
+      state.caps[cap] = 0;
+      disableImpl(value);
+    }
+  }
+
+  protected abstract void enableImpl(int value);
+  protected abstract void disableImpl(int value);
   public abstract void getBooleanv(int value, IntBuffer data);
   public abstract void getIntegerv(int value, IntBuffer data);
   public abstract void getFloatv(int value, FloatBuffer data);
@@ -3083,8 +3345,36 @@ public abstract class PGL {
   // Buffer Objects
 
   public abstract void genBuffers(int n, IntBuffer buffers);
-  public abstract void deleteBuffers(int n, IntBuffer buffers);
-  public abstract void bindBuffer(int target, int buffer);
+  public void deleteBuffers(int n, IntBuffer buffers) {
+    GLState state = getGLState();
+    for (int i = 0; i < n; i++) {
+      // Deleting a bound buffer reverts its binding to 0
+      int id = buffers.get(buffers.position() + i);
+      if (state.arrayBuffer == id) state.arrayBuffer = 0;
+      if (state.elementBuffer == id) state.elementBuffer = 0;
+    }
+    deleteBuffersImpl(n, buffers);
+  }
+
+  public void bindBuffer(int target, int buffer) {
+    GLState state = getGLState();
+    if (target == ARRAY_BUFFER) {
+      if (stateChanged(state.arrayBuffer != buffer)) {
+        state.arrayBuffer = buffer;
+        bindBufferImpl(target, buffer);
+      }
+    } else if (target == ELEMENT_ARRAY_BUFFER) {
+      if (stateChanged(state.elementBuffer != buffer)) {
+        state.elementBuffer = buffer;
+        bindBufferImpl(target, buffer);
+      }
+    } else {
+      bindBufferImpl(target, buffer);
+    }
+  }
+
+  protected abstract void deleteBuffersImpl(int n, IntBuffer buffers);
+  protected abstract void bindBufferImpl(int target, int buffer);
   public abstract void bufferData(int target, int size, Buffer data, int usage);
   public abstract void bufferSubData(int target, int offset, int size, Buffer data);
   public abstract void isBuffer(int buffer);
@@ -3163,11 +3453,28 @@ public abstract class PGL {
   public abstract void vertexAttrib3fv(int index, FloatBuffer values);
   public abstract void vertexAttrib4fv(int index, FloatBuffer values);
   public abstract void vertexAttribPointer(int index, int size, int type, boolean normalized, int stride, int offset);
-  public abstract void enableVertexAttribArray(int index);
-  public abstract void disableVertexAttribArray(int index);
+  public void enableVertexAttribArray(int index) {
+    GLState state = getGLState();
+    if (stateChanged(state.getAttribArray(index) != 1)) {
+      state.setAttribArray(index, 1);
+      enableVertexAttribArrayImpl(index);
+    }
+  }
+
+  public void disableVertexAttribArray(int index) {
+    GLState state = getGLState();
+    if (stateChanged(state.getAttribArray(index) != 0)) {
+      state.setAttribArray(index, 0);
+      disableVertexAttribArrayImpl(index);
+    }
+  }
+
+  protected abstract void enableVertexAttribArrayImpl(int index);
+  protected abstract void disableVertexAttribArrayImpl(int index);
 
   public void drawArrays(int mode, int first, int count) {
     geomCount += count;
+    drawCallCount++;
     drawArraysImpl(mode, first, count);
   }
 
@@ -3175,11 +3482,22 @@ public abstract class PGL {
 
   public void drawElements(int mode, int count, int type, int offset) {
     geomCount += count;
+    drawCallCount++;
     drawElementsImpl(mode, count, type, offset);
   }
 
   public abstract void drawElementsImpl(int mode, int count, int type, int offset);
 
+  public void drawElementsInstanced(int mode, int count, int type, int offset,
+                                    int instanceCount) {
+    geomCount += count * instanceCount;
+    drawCallCount++;
+    drawElementsInstancedImpl(mode, count, type, offset, instanceCount);
+  }
+
+  public abstract void drawElementsInstancedImpl(int mode, int count, int type, int offset, int instanceCount);
+  public abstract void vertexAttribDivisor(int index, int divisor);
+
   //////////////////////////////////////////////////////////////////////////////
 
   // Rasterization
@@ -3211,7 +3529,19 @@ public abstract class PGL {
   public abstract void texParameterfv(int target, int pname, FloatBuffer params);
   public abstract void generateMipmap(int target);
   public abstract void genTextures(int n, IntBuffer textures);
-  public abstract void deleteTextures(int n, IntBuffer textures);
+  public void deleteTextures(int n, IntBuffer textures) {
+    GLState state = getGLState();
+    for (int i = 0; i < n; i++) {
+      // Deleting a bound texture reverts its binding to 0
+      int id = textures.get(textures.position() + i);
+      for (int t = 0; t < state.textures.length; t++) {
+        if (state.textures[t] == id) state.textures[t] = 0;
+      }
+    }
+    deleteTexturesImpl(n, textures);
+  }
+
+  protected abstract void deleteTexturesImpl(int n, IntBuffer textures);
   public abstract void getTexParameteriv(int target, int pname, IntBuffer params);
   public abstract void getTexParameterfv(int target, int pname, FloatBuffer params);
   public abstract boolean isTexture(int texture);
@@ -3221,13 +3551,24 @@ public abstract class PGL {
   // and bindTextureImpl().
   public void activeTexture(int texture) {
     activeTexUnit = texture - TEXTURE0;
-    activeTextureImpl(texture);
+    GLState state = getGLState();
+    if (stateChanged(state.activeTexture != texture)) {
+      state.activeTexture = texture;
+      activeTextureImpl(texture);
+    }
   }
 
   protected abstract void activeTextureImpl(int texture);
 
   public void bindTexture(int target, int texture) {
-    bindTextureImpl(target, texture);
+    GLState state = getGLState();
+    int slot = state.textureSlot(target);
+    if (slot == -1) {
+      bindTextureImpl(target, texture);
+    } else if (stateChanged(state.textures[slot] != texture)) {
+      state.textures[slot] = texture;
+      bindTextureImpl(target, texture);
+    }
 
     if (boundTextures == null) {
       maxTexUnits = getMaxTexUnits();
@@ -3260,8 +3601,22 @@ public abstract class PGL {
   public abstract void attachShader(int program, int shader);
   public abstract void detachShader(int program, int shader);
   public abstract void linkProgram(int program);
-  public abstract void useProgram(int program);
-  public abstract void deleteProgram(int program);
+  public void useProgram(int program) {
+    GLState state = getGLState();
+    if (stateChanged(state.program != program)) {
+      state.program = program;
+      useProgramImpl(program);
+    }
+  }
+
+  public void deleteProgram(int program) {
+    GLState state = getGLState();
+    if (state.program == program) state.program = GLState.UNKNOWN;
+    deleteProgramImpl(program);
+  }
+
+  protected abstract void useProgramImpl(int program);
+  protected abstract void deleteProgramImpl(int program);
   public abstract String getActiveAttrib(int program, int index, IntBuffer size, IntBuffer type);
   public abstract int getAttribLocation(int program, String name);
   public abstract void bindAttribLocation(int program, int index, String name);
@@ -3312,11 +3667,62 @@ public abstract class PGL {
   public abstract void stencilFuncSeparate(int face, int func, int ref, int mask);
   public abstract void stencilOp(int sfail, int dpfail, int dppass);
   public abstract void stencilOpSeparate(int face, int sfail, int dpfail, int dppass);
-  public abstract void depthFunc(int func);
-  public abstract void blendEquation(int mode);
-  public abstract void blendEquationSeparate(int modeRGB, int modeAlpha);
-  public abstract void blendFunc(int src, int dst);
-  public abstract void blendFuncSeparate(int srcRGB, int dstRGB, int srcAlpha, int dstAlpha);
+
+  public void depthFunc(int func) {
+    GLState state = getGLState();
+    if (stateChanged(state.depthFunc != func)) {
+      state.depthFunc = func;
+      depthFuncImpl(func);
+    }
+  }
+
+  public void blendEquation(int mode) {
+    GLState state = getGLState();
+    if (stateChanged(state.blendEquationRGB != mode ||
+                     state.blendEquationAlpha != mode)) {
+      state.blendEquationRGB = state.blendEquationAlpha = mode;
+      blendEquationImpl(mode);
+    }
+  }
+
+  public void blendEquationSeparate(int modeRGB, int modeAlpha) {
+    GLState state = getGLState();
+    if (stateChanged(state.blendEquationRGB != modeRGB ||
+                     state.blendEquationAlpha != modeAlpha)) {
+      state.blendEquationRGB = modeRGB;
+      state.blendEquationAlpha = modeAlpha;
+      blendEquationSeparateImpl(modeRGB, modeAlpha);
+    }
+  }
+
+  public void blendFunc(int src, int dst) {
+    GLState state = getGLState();
+    if (stateChanged(state.blendSrcRGB != src || state.blendDstRGB != dst ||
+                     state.blendSrcAlpha != src || state.blendDstAlpha != dst)) {
+      state.blendSrcRGB = state.blendSrcAlpha = src;
+      state.blendDstRGB = state.blendDstAlpha = dst;
+      blendFuncImpl(src, dst);
+    }
+  }
+
+  public void blendFuncSeparate(int srcRGB, int dstRGB, int srcAlpha, int dstAlpha) {
+    GLState state = getGLState();
+    if (stateChanged(state.blendSrcRGB != srcRGB || state.blendDstRGB != dstRGB ||
+                     state.blendSrcAlpha != srcAlpha ||
+                     state.blendDstAlpha != dstAlpha)) {
+      state.blendSrcRGB = srcRGB;
+      state.blendDstRGB = dstRGB;
+      state.blendSrcAlpha = srcAlpha;
+      state.blendDstAlpha = dstAlpha;
+      blendFuncSeparateImpl(srcRGB, dstRGB, srcAlpha, dstAlpha);
+    }
+  }
+
+  protected abstract void depthFuncImpl(int func);
+  protected abstract void blendEquationImpl(int mode);
+  protected abstract void blendEquationSeparateImpl(int modeRGB, int modeAlpha);
+  protected abstract void blendFuncImpl(int src, int dst);
+  protected abstract void blendFuncSeparateImpl(int srcRGB, int dstRGB, int srcAlpha, int dstAlpha);
   public abstract void blendColor(float red, float green, float blue, float alpha);
 
   ///////////////////////////////////////////////////////////
@@ -3324,7 +3730,17 @@ public abstract class PGL {
   // Whole Framebuffer Operations
 
   public abstract void colorMask(boolean r, boolean g, boolean b, boolean a);
-  public abstract void depthMask(boolean mask);
+
+  public void depthMask(boolean mask) {
+    GLState state = getGLState();
+    int value = mask ? 1 : 0;
+    if (stateChanged(state.depthMask != value)) {
+      state.depthMask = value;
+      depthMaskImpl(mask);
+    }
+  }
+
+  protected abstract void depthMaskImpl(boolean mask);
   public abstract void stencilMask(int mask);
   public abstract void stencilMaskSeparate(int face, int mask);
   public abstract void clearColor(float r, float g, float b, float a);
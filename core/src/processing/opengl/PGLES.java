@@ -34,8 +34,10 @@ import javax.microedition.khronos.egl.EGLContext;
 import javax.microedition.khronos.opengles.GL10;
 
 import android.opengl.GLES20;
+import android.opengl.GLES30;
 import android.opengl.GLSurfaceView;
 import android.opengl.GLU;
+import android.os.Build;
 import android.view.SurfaceView;
 import processing.opengl.tess.PGLU;
 import processing.opengl.tess.PGLUtessellator;
@@ -233,6 +235,14 @@ public class PGLES extends PGL {
   }
 
 
+  @Override
+  protected boolean hasInstancing() {
+    // The GLES30 bindings need API level 18, and the entry points are only
+    // guaranteed to work if an ES 3 context was actually requested.
+    return 3 <= version && Build.VERSION.SDK_INT >= 18 && super.hasInstancing();
+  }
+
+
   @Override
   protected void initFBOLayer() {
     if (0 < sketch.frameCount) {
@@ -271,8 +281,12 @@ public class PGLES extends PGL {
 
 
   @Override
-  protected Tessellator createTessellator(TessellatorCallback callback) {
-    return new Tessellator(callback);
+  protected PGL.Tessellator createTessellator(TessellatorCallback callback) {
+    Tessellator tess = new Tessellator(callback);
+    if (0 < MAX_EAR_CLIPPING_VERTICES) {
+      return new EarClippingTessellator(tess, callback);
+    }
+    return tess;
   }
 
 
@@ -548,6 +562,7 @@ public class PGLES extends PGL {
     VALIDATE_STATUS      = GLES20.GL_VALIDATE_STATUS;
     SHADER_TYPE          = GLES20.GL_SHADER_TYPE;
     DELETE_STATUS        = GLES20.GL_DELETE_STATUS;
+    ACTIVE_UNIFORMS      = GLES20.GL_ACTIVE_UNIFORMS;
 
     FLOAT_VEC2   = GLES20.GL_FLOAT_VEC2;
     FLOAT_VEC3   = GLES20.GL_FLOAT_VEC3;
@@ -713,14 +728,14 @@ public class PGLES extends PGL {
   // State and State Requests
 
   @Override
-  public void enable(int value) {
+  protected void enableImpl(int value) {
     if (-1 < value) {
       GLES20.glEnable(value);
     }
   }
 
   @Override
-  public void disable(int value) {
+  protected void disableImpl(int value) {
     if (-1 < value) {
       GLES20.glDisable(value);
     }
@@ -787,12 +802,12 @@ public class PGLES extends PGL {
   }
 
   @Override
-  public void deleteBuffers(int n, IntBuffer buffers) {
+  protected void deleteBuffersImpl(int n, IntBuffer buffers) {
     GLES20.glDeleteBuffers(n, buffers);
   }
 
   @Override
-  public void bindBuffer(int target, int buffer) {
+  protected void bindBufferImpl(int target, int buffer) {
     GLES20.glBindBuffer(target, buffer);
   }
 
@@ -843,7 +858,7 @@ public class PGLES extends PGL {
   @Override
   public void viewport(int x, int y, int w, int h) {
     float scale = getPixelScale();
-    viewportImpl((int)scale * x, (int)(scale * y), (int)(scale * w), (int)(scale * h));
+    setViewport((int)scale * x, (int)(scale * y), (int)(scale * w), (int)(scale * h));
   }
 
   @Override
@@ -919,12 +934,12 @@ public class PGLES extends PGL {
   }
 
   @Override
-  public void enableVertexAttribArray(int index) {
+  protected void enableVertexAttribArrayImpl(int index) {
     GLES20.glEnableVertexAttribArray(index);
   }
 
   @Override
-  public void disableVertexAttribArray(int index) {
+  protected void disableVertexAttribArrayImpl(int index) {
     GLES20.glDisableVertexAttribArray(index);
   }
 
@@ -938,6 +953,24 @@ public class PGLES extends PGL {
     GLES20.glDrawElements(mode, count, type, offset);
   }
 
+  @Override
+  public void drawElementsInstancedImpl(int mode, int count, int type, int offset, int instanceCount) {
+    if (Build.VERSION.SDK_INT >= 18) {
+      GLES30.glDrawElementsInstanced(mode, count, type, offset, instanceCount);
+    } else {
+      throw new RuntimeException(String.format(MISSING_GLFUNC_ERROR, "glDrawElementsInstanced()"));
+    }
+  }
+
+  @Override
+  public void vertexAttribDivisor(int index, int divisor) {
+    if (Build.VERSION.SDK_INT >= 18) {
+      GLES30.glVertexAttribDivisor(index, divisor);
+    } else {
+      throw new RuntimeException(String.format(MISSING_GLFUNC_ERROR, "glVertexAttribDivisor()"));
+    }
+  }
+
   //////////////////////////////////////////////////////////////////////////////
 
   // Rasterization
@@ -1036,7 +1069,7 @@ public class PGLES extends PGL {
   }
 
   @Override
-  public void deleteTextures(int n, IntBuffer textures) {
+  protected void deleteTexturesImpl(int n, IntBuffer textures) {
     GLES20.glDeleteTextures(n, textures);
   }
 
@@ -1120,12 +1153,12 @@ public class PGLES extends PGL {
   }
 
   @Override
-  public void useProgram(int program) {
+  protected void useProgramImpl(int program) {
     GLES20.glUseProgram(program);
   }
 
   @Override
-  public void deleteProgram(int program) {
+  protected void deleteProgramImpl(int program) {
     GLES20.glDeleteProgram(program);
   }
 
@@ -1374,27 +1407,27 @@ public class PGLES extends PGL {
   }
 
   @Override
-  public void depthFunc(int func) {
+  protected void depthFuncImpl(int func) {
     GLES20.glDepthFunc(func);
   }
 
   @Override
-  public void blendEquation(int mode) {
+  protected void blendEquationImpl(int mode) {
     GLES20.glBlendEquation(mode);
   }
 
   @Override
-  public void blendEquationSeparate(int modeRGB, int modeAlpha) {
+  protected void blendEquationSeparateImpl(int modeRGB, int modeAlpha) {
     GLES20.glBlendEquationSeparate(modeRGB, modeAlpha);
   }
 
   @Override
-  public void blendFunc(int src, int dst) {
+  protected void blendFuncImpl(int src, int dst) {
     GLES20.glBlendFunc(src, dst);
   }
 
   @Override
-  public void blendFuncSeparate(int srcRGB, int dstRGB, int srcAlpha, int dstAlpha) {
+  protected void blendFuncSeparateImpl(int srcRGB, int dstRGB, int srcAlpha, int dstAlpha) {
     GLES20.glBlendFuncSeparate(srcRGB, dstRGB, srcAlpha, dstAlpha);
   }
 
@@ -1413,7 +1446,7 @@ public class PGLES extends PGL {
   }
 
   @Override
-  public void depthMask(boolean mask) {
+  protected void depthMaskImpl(boolean mask) {
     GLES20.glDepthMask(mask);
   }
 
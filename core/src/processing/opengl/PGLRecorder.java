@@ -0,0 +1,2133 @@
+/* -*- mode: java; c-basic-offset: 2; indent-tabs-mode: nil -*- */
+
+/*
+  Part of the Processing project - http://processing.org
+
+  Copyright (c) 2012-16 The Processing Foundation
+  Copyright (c) 2004-12 Ben Fry and Casey Reas
+  Copyright (c) 2001-04 Massachusetts Institute of Technology
+
+  This library is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License as published by the Free Software Foundation, version 2.1.
+
+  This library is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General
+  Public License along with this library; if not, write to the
+  Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+  Boston, MA  02111-1307  USA
+*/
+
+package processing.opengl;
+
+import java.io.PrintWriter;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import processing.core.PApplet;
+
+/**
+ * PGL implementation that never touches a GPU. Every GL call is appended to
+ * an in-memory command log, as its command id, the number of arguments and
+ * the arguments themselves packed as ints (floats by their bits, booleans as
+ * 0/1, buffers by their size in bytes, strings by their length). Object
+ * names are handed out sequentially, shaders always compile, framebuffers
+ * are always complete, and the state needed to answer the queries made by
+ * the renderer is tracked, so the CPU side of PGraphicsOpenGL can run
+ * headless. To use it, assign it to the pgl field of a new renderer before
+ * the renderer is set up, since the constructor makes no GL calls.
+ *
+ * The GL constants are the ones set up by PGLES, which this class extends
+ * only to share them, its tessellator and its text support.
+ */
+public class PGLRecorder extends PGLES {
+  static public final int CMD_ACTIVE_TEXTURE = 0;
+  static public final int CMD_ATTACH_SHADER = 1;
+  static public final int CMD_BIND_ATTRIB_LOCATION = 2;
+  static public final int CMD_BIND_BUFFER = 3;
+  static public final int CMD_BIND_FRAMEBUFFER = 4;
+  static public final int CMD_BIND_RENDERBUFFER = 5;
+  static public final int CMD_BIND_TEXTURE = 6;
+  static public final int CMD_BLEND_COLOR = 7;
+  static public final int CMD_BLEND_EQUATION = 8;
+  static public final int CMD_BLEND_EQUATION_SEPARATE = 9;
+  static public final int CMD_BLEND_FUNC = 10;
+  static public final int CMD_BLEND_FUNC_SEPARATE = 11;
+  static public final int CMD_BLIT_FRAMEBUFFER = 12;
+  static public final int CMD_BUFFER_DATA = 13;
+  static public final int CMD_BUFFER_SUB_DATA = 14;
+  static public final int CMD_CHECK_FRAMEBUFFER_STATUS = 15;
+  static public final int CMD_CLEAR = 16;
+  static public final int CMD_CLEAR_COLOR = 17;
+  static public final int CMD_CLEAR_DEPTH = 18;
+  static public final int CMD_CLEAR_STENCIL = 19;
+  static public final int CMD_CLIENT_WAIT_SYNC = 20;
+  static public final int CMD_COLOR_MASK = 21;
+  static public final int CMD_COMPILE_SHADER = 22;
+  static public final int CMD_COMPRESSED_TEX_IMAGE2D = 23;
+  static public final int CMD_COMPRESSED_TEX_SUB_IMAGE2D = 24;
+  static public final int CMD_COPY_TEX_IMAGE2D = 25;
+  static public final int CMD_COPY_TEX_SUB_IMAGE2D = 26;
+  static public final int CMD_CREATE_PROGRAM = 27;
+  static public final int CMD_CREATE_SHADER = 28;
+  static public final int CMD_CULL_FACE = 29;
+  static public final int CMD_DELETE_BUFFERS = 30;
+  static public final int CMD_DELETE_FRAMEBUFFERS = 31;
+  static public final int CMD_DELETE_PROGRAM = 32;
+  static public final int CMD_DELETE_RENDERBUFFERS = 33;
+  static public final int CMD_DELETE_SHADER = 34;
+  static public final int CMD_DELETE_SYNC = 35;
+  static public final int CMD_DELETE_TEXTURES = 36;
+  static public final int CMD_DEPTH_FUNC = 37;
+  static public final int CMD_DEPTH_MASK = 38;
+  static public final int CMD_DEPTH_RANGEF = 39;
+  static public final int CMD_DETACH_SHADER = 40;
+  static public final int CMD_DISABLE = 41;
+  static public final int CMD_DISABLE_VERTEX_ATTRIB_ARRAY = 42;
+  static public final int CMD_DRAW_ARRAYS = 43;
+  static public final int CMD_DRAW_BUFFER = 44;
+  static public final int CMD_DRAW_ELEMENTS = 45;
+  static public final int CMD_DRAW_ELEMENTS_INSTANCED = 46;
+  static public final int CMD_ENABLE = 47;
+  static public final int CMD_ENABLE_VERTEX_ATTRIB_ARRAY = 48;
+  static public final int CMD_FENCE_SYNC = 49;
+  static public final int CMD_FINISH = 50;
+  static public final int CMD_FLUSH = 51;
+  static public final int CMD_FRAMEBUFFER_RENDERBUFFER = 52;
+  static public final int CMD_FRAMEBUFFER_TEXTURE2D = 53;
+  static public final int CMD_FRONT_FACE = 54;
+  static public final int CMD_GEN_BUFFERS = 55;
+  static public final int CMD_GEN_FRAMEBUFFERS = 56;
+  static public final int CMD_GEN_RENDERBUFFERS = 57;
+  static public final int CMD_GEN_TEXTURES = 58;
+  static public final int CMD_GENERATE_MIPMAP = 59;
+  static public final int CMD_GET_ACTIVE_ATTRIB = 60;
+  static public final int CMD_GET_ACTIVE_UNIFORM = 61;
+  static public final int CMD_GET_ATTACHED_SHADERS = 62;
+  static public final int CMD_GET_ATTRIB_LOCATION = 63;
+  static public final int CMD_GET_BOOLEANV = 64;
+  static public final int CMD_GET_BUFFER_PARAMETERIV = 65;
+  static public final int CMD_GET_ERROR = 66;
+  static public final int CMD_GET_FLOATV = 67;
+  static public final int CMD_GET_FRAMEBUFFER_ATTACHMENT_PARAMETERIV = 68;
+  static public final int CMD_GET_INTEGERV = 69;
+  static public final int CMD_GET_PROGRAM_INFO_LOG = 70;
+  static public final int CMD_GET_PROGRAMIV = 71;
+  static public final int CMD_GET_RENDERBUFFER_PARAMETERIV = 72;
+  static public final int CMD_GET_SHADER_INFO_LOG = 73;
+  static public final int CMD_GET_SHADER_PRECISION_FORMAT = 74;
+  static public final int CMD_GET_SHADER_SOURCE = 75;
+  static public final int CMD_GET_SHADERIV = 76;
+  static public final int CMD_GET_STRING = 77;
+  static public final int CMD_GET_TEX_PARAMETERFV = 78;
+  static public final int CMD_GET_TEX_PARAMETERIV = 79;
+  static public final int CMD_GET_UNIFORM_LOCATION = 80;
+  static public final int CMD_GET_UNIFORMFV = 81;
+  static public final int CMD_GET_UNIFORMIV = 82;
+  static public final int CMD_GET_VERTEX_ATTRIB_POINTERV = 83;
+  static public final int CMD_GET_VERTEX_ATTRIBFV = 84;
+  static public final int CMD_GET_VERTEX_ATTRIBIV = 85;
+  static public final int CMD_HINT = 86;
+  static public final int CMD_IS_BUFFER = 87;
+  static public final int CMD_IS_ENABLED = 88;
+  static public final int CMD_IS_FRAMEBUFFER = 89;
+  static public final int CMD_IS_PROGRAM = 90;
+  static public final int CMD_IS_RENDERBUFFER = 91;
+  static public final int CMD_IS_SHADER = 92;
+  static public final int CMD_IS_TEXTURE = 93;
+  static public final int CMD_LINE_WIDTH = 94;
+  static public final int CMD_LINK_PROGRAM = 95;
+  static public final int CMD_MAP_BUFFER = 96;
+  static public final int CMD_MAP_BUFFER_RANGE = 97;
+  static public final int CMD_PIXEL_STOREI = 98;
+  static public final int CMD_POLYGON_OFFSET = 99;
+  static public final int CMD_READ_BUFFER = 100;
+  static public final int CMD_READ_PIXELS = 101;
+  static public final int CMD_RELEASE_SHADER_COMPILER = 102;
+  static public final int CMD_RENDERBUFFER_STORAGE = 103;
+  static public final int CMD_RENDERBUFFER_STORAGE_MULTISAMPLE = 104;
+  static public final int CMD_SAMPLE_COVERAGE = 105;
+  static public final int CMD_SCISSOR = 106;
+  static public final int CMD_SHADER_BINARY = 107;
+  static public final int CMD_SHADER_SOURCE = 108;
+  static public final int CMD_STENCIL_FUNC = 109;
+  static public final int CMD_STENCIL_FUNC_SEPARATE = 110;
+  static public final int CMD_STENCIL_MASK = 111;
+  static public final int CMD_STENCIL_MASK_SEPARATE = 112;
+  static public final int CMD_STENCIL_OP = 113;
+  static public final int CMD_STENCIL_OP_SEPARATE = 114;
+  static public final int CMD_TEX_IMAGE2D = 115;
+  static public final int CMD_TEX_PARAMETERF = 116;
+  static public final int CMD_TEX_PARAMETERFV = 117;
+  static public final int CMD_TEX_PARAMETERI = 118;
+  static public final int CMD_TEX_PARAMETERIV = 119;
+  static public final int CMD_TEX_SUB_IMAGE2D = 120;
+  static public final int CMD_UNIFORM1F = 121;
+  static public final int CMD_UNIFORM1FV = 122;
+  static public final int CMD_UNIFORM1I = 123;
+  static public final int CMD_UNIFORM1IV = 124;
+  static public final int CMD_UNIFORM2F = 125;
+  static public final int CMD_UNIFORM2FV = 126;
+  static public final int CMD_UNIFORM2I = 127;
+  static public final int CMD_UNIFORM2IV = 128;
+  static public final int CMD_UNIFORM3F = 129;
+  static public final int CMD_UNIFORM3FV = 130;
+  static public final int CMD_UNIFORM3I = 131;
+  static public final int CMD_UNIFORM3IV = 132;
+  static public final int CMD_UNIFORM4F = 133;
+  static public final int CMD_UNIFORM4FV = 134;
+  static public final int CMD_UNIFORM4I = 135;
+  static public final int CMD_UNIFORM4IV = 136;
+  static public final int CMD_UNIFORM_MATRIX2FV = 137;
+  static public final int CMD_UNIFORM_MATRIX3FV = 138;
+  static public final int CMD_UNIFORM_MATRIX4FV = 139;
+  static public final int CMD_UNMAP_BUFFER = 140;
+  static public final int CMD_USE_PROGRAM = 141;
+  static public final int CMD_VALIDATE_PROGRAM = 142;
+  static public final int CMD_VERTEX_ATTRIB1F = 143;
+  static public final int CMD_VERTEX_ATTRIB1FV = 144;
+  static public final int CMD_VERTEX_ATTRIB2F = 145;
+  static public final int CMD_VERTEX_ATTRIB2FV = 146;
+  static public final int CMD_VERTEX_ATTRIB3F = 147;
+  static public final int CMD_VERTEX_ATTRIB3FV = 148;
+  static public final int CMD_VERTEX_ATTRIB4F = 149;
+  static public final int CMD_VERTEX_ATTRIB4FV = 150;
+  static public final int CMD_VERTEX_ATTRIB_DIVISOR = 151;
+  static public final int CMD_VERTEX_ATTRIB_POINTER = 152;
+  static public final int CMD_VIEWPORT = 153;
+
+  static protected final String[] COMMAND_NAMES = {
+    "glActiveTexture",
+    "glAttachShader",
+    "glBindAttribLocation",
+    "glBindBuffer",
+    "glBindFramebuffer",
+    "glBindRenderbuffer",
+    "glBindTexture",
+    "glBlendColor",
+    "glBlendEquation",
+    "glBlendEquationSeparate",
+    "glBlendFunc",
+    "glBlendFuncSeparate",
+    "glBlitFramebuffer",
+    "glBufferData",
+    "glBufferSubData",
+    "glCheckFramebufferStatus",
+    "glClear",
+    "glClearColor",
+    "glClearDepth",
+    "glClearStencil",
+    "glClientWaitSync",
+    "glColorMask",
+    "glCompileShader",
+    "glCompressedTexImage2D",
+    "glCompressedTexSubImage2D",
+    "glCopyTexImage2D",
+    "glCopyTexSubImage2D",
+    "glCreateProgram",
+    "glCreateShader",
+    "glCullFace",
+    "glDeleteBuffers",
+    "glDeleteFramebuffers",
+    "glDeleteProgram",
+    "glDeleteRenderbuffers",
+    "glDeleteShader",
+    "glDeleteSync",
+    "glDeleteTextures",
+    "glDepthFunc",
+    "glDepthMask",
+    "glDepthRangef",
+    "glDetachShader",
+    "glDisable",
+    "glDisableVertexAttribArray",
+    "glDrawArrays",
+    "glDrawBuffer",
+    "glDrawElements",
+    "glDrawElementsInstanced",
+    "glEnable",
+    "glEnableVertexAttribArray",
+    "glFenceSync",
+    "glFinish",
+    "glFlush",
+    "glFramebufferRenderbuffer",
+    "glFramebufferTexture2D",
+    "glFrontFace",
+    "glGenBuffers",
+    "glGenFramebuffers",
+    "glGenRenderbuffers",
+    "glGenTextures",
+    "glGenerateMipmap",
+    "glGetActiveAttrib",
+    "glGetActiveUniform",
+    "glGetAttachedShaders",
+    "glGetAttribLocation",
+    "glGetBooleanv",
+    "glGetBufferParameteriv",
+    "glGetError",
+    "glGetFloatv",
+    "glGetFramebufferAttachmentParameteriv",
+    "glGetIntegerv",
+    "glGetProgramInfoLog",
+    "glGetProgramiv",
+    "glGetRenderbufferParameteriv",
+    "glGetShaderInfoLog",
+    "glGetShaderPrecisionFormat",
+    "glGetShaderSource",
+    "glGetShaderiv",
+    "glGetString",
+    "glGetTexParameterfv",
+    "glGetTexParameteriv",
+    "glGetUniformLocation",
+    "glGetUniformfv",
+    "glGetUniformiv",
+    "glGetVertexAttribPointerv",
+    "glGetVertexAttribfv",
+    "glGetVertexAttribiv",
+    "glHint",
+    "glIsBuffer",
+    "glIsEnabled",
+    "glIsFramebuffer",
+    "glIsProgram",
+    "glIsRenderbuffer",
+    "glIsShader",
+    "glIsTexture",
+    "glLineWidth",
+    "glLinkProgram",
+    "glMapBuffer",
+    "glMapBufferRange",
+    "glPixelStorei",
+    "glPolygonOffset",
+    "glReadBuffer",
+    "glReadPixels",
+    "glReleaseShaderCompiler",
+    "glRenderbufferStorage",
+    "glRenderbufferStorageMultisample",
+    "glSampleCoverage",
+    "glScissor",
+    "glShaderBinary",
+    "glShaderSource",
+    "glStencilFunc",
+    "glStencilFuncSeparate",
+    "glStencilMask",
+    "glStencilMaskSeparate",
+    "glStencilOp",
+    "glStencilOpSeparate",
+    "glTexImage2D",
+    "glTexParameterf",
+    "glTexParameterfv",
+    "glTexParameteri",
+    "glTexParameteriv",
+    "glTexSubImage2D",
+    "glUniform1f",
+    "glUniform1fv",
+    "glUniform1i",
+    "glUniform1iv",
+    "glUniform2f",
+    "glUniform2fv",
+    "glUniform2i",
+    "glUniform2iv",
+    "glUniform3f",
+    "glUniform3fv",
+    "glUniform3i",
+    "glUniform3iv",
+    "glUniform4f",
+    "glUniform4fv",
+    "glUniform4i",
+    "glUniform4iv",
+    "glUniformMatrix2fv",
+    "glUniformMatrix3fv",
+    "glUniformMatrix4fv",
+    "glUnmapBuffer",
+    "glUseProgram",
+    "glValidateProgram",
+    "glVertexAttrib1f",
+    "glVertexAttrib1fv",
+    "glVertexAttrib2f",
+    "glVertexAttrib2fv",
+    "glVertexAttrib3f",
+    "glVertexAttrib3fv",
+    "glVertexAttrib4f",
+    "glVertexAttrib4fv",
+    "glVertexAttribDivisor",
+    "glVertexAttribPointer",
+    "glViewport"
+  };
+
+  static protected final String EXTENSION_STRING =
+    "GL_ARB_texture_non_power_of_two GL_OES_packed_depth_stencil " +
+    "GL_EXT_texture_filter_anisotropic";
+
+  /** All the recorders behave as a single context */
+  static protected final int RECORDER_CONTEXT = 1;
+
+  // Command log and per-command counters
+  protected int[] log = new int[1024];
+  protected int logSize;
+  protected boolean logging = true;
+  protected int[] commandCounts = new int[COMMAND_NAMES.length];
+  protected int commandCount;
+  protected int uploadedBytes;
+
+  // Names and state returned by the queries
+  protected int nextName = 1;
+  protected HashSet<Integer> enabledCaps = new HashSet<Integer>();
+  protected boolean depthWriteMask = true;
+  protected int[] viewport = new int[4];
+  protected HashMap<Integer, Integer> integerParams = new HashMap<Integer, Integer>();
+  // Buffers bound to each target, and data size of each buffer by name, in
+  // arrays so that binding and uploading don't box their arguments
+  protected int boundArrayBuffer;
+  protected int boundElementBuffer;
+  protected int[] bufferSizes = new int[64];
+  protected HashMap<Integer, HashMap<String, Integer>> attribLocations =
+    new HashMap<Integer, HashMap<String, Integer>>();
+  protected HashMap<Integer, HashMap<String, Integer>> uniformLocations =
+    new HashMap<Integer, HashMap<String, Integer>>();
+  // Sources of the shaders and shaders attached to each program, so that
+  // the uniforms they declare are reported as active once it's linked
+  protected HashMap<Integer, String> shaderSources =
+    new HashMap<Integer, String>();
+  protected HashMap<Integer, ArrayList<Integer>> programShaders =
+    new HashMap<Integer, ArrayList<Integer>>();
+  protected HashMap<Integer, ArrayList<String>> activeUniforms =
+    new HashMap<Integer, ArrayList<String>>();
+
+
+  // Declaration of a uniform, its name and the bracket if it's an array
+  static protected final Pattern UNIFORM_DECLARATION =
+    Pattern.compile("\\buniform\\s+(?:(?:lowp|mediump|highp)\\s+)?\\w+\\s+" +
+                    "(\\w+)\\s*(\\[)?");
+
+
+  public PGLRecorder(PGraphicsOpenGL pg) {
+    super(pg);
+    glContext = RECORDER_CONTEXT;
+    glThread = Thread.currentThread();
+
+    enabledCaps.add(DITHER);
+    integerParams.put(MAX_TEXTURE_SIZE, 4096);
+    integerParams.put(MAX_SAMPLES, 4);
+    integerParams.put(MAX_VERTEX_ATTRIBS, 16);
+    integerParams.put(MAX_TEXTURE_IMAGE_UNITS, 16);
+    integerParams.put(MAX_VERTEX_TEXTURE_IMAGE_UNITS, 16);
+    integerParams.put(MAX_COMBINED_TEXTURE_IMAGE_UNITS, 32);
+    integerParams.put(MAX_TEXTURE_MAX_ANISOTROPY, 16);
+    integerParams.put(DEPTH_BITS, 24);
+    integerParams.put(STENCIL_BITS, 8);
+    integerParams.put(SAMPLES, 1);
+  }
+
+
+  ///////////////////////////////////////////////////////////
+
+  // Command log
+
+
+  /** Enables or disables appending calls to the log. The per-command
+   * counters are updated in either case. */
+  public void setLogging(boolean logging) {
+    this.logging = logging;
+  }
+
+
+  /** Clears the log and all the counters. */
+  public void clearLog() {
+    logSize = 0;
+    commandCount = 0;
+    uploadedBytes = 0;
+    Arrays.fill(commandCounts, 0);
+  }
+
+
+  /** Number of GL calls made since the log was last cleared. */
+  public int getCommandCount() {
+    return commandCount;
+  }
+
+
+  /** Number of calls made to one of the CMD_* commands since the log was
+   * last cleared. */
+  public int getCommandCount(int command) {
+    return commandCounts[command];
+  }
+
+
+  /** Number of draw calls made since the log was last cleared. */
+  public int getDrawCount() {
+    return commandCounts[CMD_DRAW_ARRAYS] + commandCounts[CMD_DRAW_ELEMENTS] +
+           commandCounts[CMD_DRAW_ELEMENTS_INSTANCED];
+  }
+
+
+  /** Bytes passed to bufferData(), bufferSubData() and mapBufferRange()
+   * since the log was last cleared. */
+  public int getUploadedBytes() {
+    return uploadedBytes;
+  }
+
+
+  /** The log itself, of which the first getLogSize() ints are valid. */
+  public int[] getLog() {
+    return log;
+  }
+
+
+  public int getLogSize() {
+    return logSize;
+  }
+
+
+  static public String getCommandName(int command) {
+    return COMMAND_NAMES[command];
+  }
+
+
+  /** Writes the log in readable form, one call per line. */
+  public void printLog(PrintWriter writer) {
+    int i = 0;
+    while (i < logSize) {
+      int command = log[i++];
+      int count = log[i++];
+      StringBuilder line = new StringBuilder(COMMAND_NAMES[command]);
+      line.append('(');
+      for (int a = 0; a < count; a++) {
+        if (0 < a) line.append(", ");
+        line.append(log[i++]);
+      }
+      line.append(')');
+      writer.println(line);
+    }
+    writer.flush();
+  }
+
+
+  // Counts a call to command, and returns whether its count ints of
+  // arguments should be appended to the log with arg().
+  protected boolean record(int command, int count) {
+    commandCounts[command]++;
+    commandCount++;
+    if (!logging) return false;
+
+    if (log.length < logSize + count + 2) {
+      log = Arrays.copyOf(log, PApplet.max(2 * log.length, logSize + count + 2));
+    }
+    log[logSize++] = command;
+    log[logSize++] = count;
+    return 0 < count;
+  }
+
+
+  protected void arg(int value) {
+    log[logSize++] = value;
+  }
+
+
+  protected void arg(float value) {
+    log[logSize++] = Float.floatToRawIntBits(value);
+  }
+
+
+  protected void arg(boolean value) {
+    log[logSize++] = value ? 1 : 0;
+  }
+
+
+  protected void arg(long value) {
+    log[logSize++] = (int)(value >>> 32);
+    log[logSize++] = (int)value;
+  }
+
+
+  protected void arg(Buffer buffer) {
+    int size = 0;
+    if (buffer != null) {
+      size = buffer.remaining();
+      if (buffer instanceof ShortBuffer) {
+        size *= SIZEOF_SHORT;
+      } else if (buffer instanceof IntBuffer) {
+        size *= SIZEOF_INT;
+      } else if (buffer instanceof FloatBuffer) {
+        size *= SIZEOF_FLOAT;
+      }
+    }
+    log[logSize++] = size;
+  }
+
+
+  protected void arg(String value) {
+    log[logSize++] = value == null ? 0 : value.length();
+  }
+
+
+  protected void genNames(int n, IntBuffer names) {
+    for (int i = 0; i < n; i++) {
+      names.put(names.position() + i, nextName++);
+    }
+  }
+
+
+  protected int getBoundBuffer(int target) {
+    if (target == ARRAY_BUFFER) return boundArrayBuffer;
+    if (target == ELEMENT_ARRAY_BUFFER) return boundElementBuffer;
+    return 0;
+  }
+
+
+  protected int getLocation(HashMap<Integer, HashMap<String, Integer>> locations,
+                            int program, String name) {
+    HashMap<String, Integer> map = locations.get(program);
+    if (map == null) {
+      map = new HashMap<String, Integer>();
+      locations.put(program, map);
+    }
+    Integer loc = map.get(name);
+    if (loc == null) {
+      loc = map.size();
+      map.put(name, loc);
+    }
+    return loc;
+  }
+
+
+  // Adds the names of the uniforms declared in source, arrays by their first
+  // element as GL reports them
+  static protected void findUniforms(String source, ArrayList<String> names) {
+    Matcher m = UNIFORM_DECLARATION.matcher(source);
+    while (m.find()) {
+      String name = m.group(2) == null ? m.group(1) : m.group(1) + "[0]";
+      if (!names.contains(name)) names.add(name);
+    }
+  }
+
+
+  ///////////////////////////////////////////////////////////
+
+  // Surface and context
+
+
+  @Override
+  protected void initSurface(int antialias) {
+    reqNumSamples = qualityToSamples(antialias);
+  }
+
+
+  @Override
+  protected boolean hasInstancing() {
+    return 3 <= getGLVersion()[0];
+  }
+
+
+  ///////////////////////////////////////////////////////////
+
+  // Calls that return values or keep track of some state
+
+  @Override
+  protected void enableImpl(int value) {
+    if (record(CMD_ENABLE, 1)) {
+      arg(value);
+    }
+    if (-1 < value) enabledCaps.add(value);
+  }
+
+  @Override
+  protected void disableImpl(int value) {
+    if (record(CMD_DISABLE, 1)) {
+      arg(value);
+    }
+    enabledCaps.remove(value);
+  }
+
+  @Override
+  public void getBooleanv(int name, IntBuffer values) {
+    if (record(CMD_GET_BOOLEANV, 1)) {
+      arg(name);
+    }
+    boolean value = name == DEPTH_WRITEMASK ? depthWriteMask :
+                    enabledCaps.contains(name);
+    values.put(values.position(), value ? 1 : 0);
+  }
+
+  @Override
+  public void getIntegerv(int value, IntBuffer data) {
+    if (record(CMD_GET_INTEGERV, 1)) {
+      arg(value);
+    }
+    if (value == VIEWPORT) {
+      for (int i = 0; i < 4; i++) data.put(data.position() + i, viewport[i]);
+    } else {
+      Integer param = integerParams.get(value);
+      data.put(data.position(), param == null ? 0 : param);
+    }
+  }
+
+  @Override
+  public void getFloatv(int value, FloatBuffer data) {
+    if (record(CMD_GET_FLOATV, 1)) {
+      arg(value);
+    }
+    Integer param = integerParams.get(value);
+    data.put(data.position(), param == null ? 0 : param);
+  }
+
+  @Override
+  public boolean isEnabled(int value) {
+    if (record(CMD_IS_ENABLED, 1)) {
+      arg(value);
+    }
+    return enabledCaps.contains(value);
+  }
+
+  @Override
+  public String getString(int name) {
+    if (record(CMD_GET_STRING, 1)) {
+      arg(name);
+    }
+    if (name == VENDOR) {
+      return "Processing";
+    } else if (name == RENDERER) {
+      return "PGLRecorder";
+    } else if (name == VERSION) {
+      return "OpenGL ES " + version + ".0 PGLRecorder";
+    } else if (name == SHADING_LANGUAGE_VERSION) {
+      return "OpenGL ES GLSL ES 1.00";
+    } else if (name == EXTENSIONS) {
+      return EXTENSION_STRING;
+    }
+    return "";
+  }
+
+  @Override
+  public int getError() {
+    record(CMD_GET_ERROR, 0);
+    return 0;
+  }
+
+  @Override
+  public String errorString(int err) {
+    return "GL error 0x" + Integer.toHexString(err);
+  }
+
+  @Override
+  public void genBuffers(int n, IntBuffer buffers) {
+    if (record(CMD_GEN_BUFFERS, 1)) {
+      arg(n);
+    }
+    genNames(n, buffers);
+  }
+
+  @Override
+  protected void deleteBuffersImpl(int n, IntBuffer buffers) {
+    if (record(CMD_DELETE_BUFFERS, 1)) {
+      arg(n);
+    }
+    for (int i = 0; i < n; i++) {
+      int buffer = buffers.get(buffers.position() + i);
+      if (0 < buffer && buffer < bufferSizes.length) bufferSizes[buffer] = 0;
+    }
+  }
+
+  @Override
+  protected void bindBufferImpl(int target, int buffer) {
+    if (record(CMD_BIND_BUFFER, 2)) {
+      arg(target);
+      arg(buffer);
+    }
+    if (target == ARRAY_BUFFER) {
+      boundArrayBuffer = buffer;
+    } else if (target == ELEMENT_ARRAY_BUFFER) {
+      boundElementBuffer = buffer;
+    }
+  }
+
+  @Override
+  public void bufferData(int target, int size, Buffer data, int usage) {
+    if (record(CMD_BUFFER_DATA, 3)) {
+      arg(target);
+      arg(size);
+      arg(usage);
+    }
+    int buffer = getBoundBuffer(target);
+    if (0 < buffer) {
+      if (bufferSizes.length <= buffer) {
+        int length = PApplet.max(2 * bufferSizes.length, buffer + 1);
+        bufferSizes = Arrays.copyOf(bufferSizes, length);
+      }
+      bufferSizes[buffer] = size;
+    }
+    if (data != null) uploadedBytes += size;
+  }
+
+  @Override
+  public void bufferSubData(int target, int offset, int size, Buffer data) {
+    if (record(CMD_BUFFER_SUB_DATA, 3)) {
+      arg(target);
+      arg(offset);
+      arg(size);
+    }
+    uploadedBytes += size;
+  }
+
+  @Override
+  public ByteBuffer mapBuffer(int target, int access) {
+    if (record(CMD_MAP_BUFFER, 2)) {
+      arg(target);
+      arg(access);
+    }
+    int buffer = getBoundBuffer(target);
+    int size = buffer < bufferSizes.length ? bufferSizes[buffer] : 0;
+    return allocateDirectByteBuffer(size);
+  }
+
+  @Override
+  public ByteBuffer mapBufferRange(int target, int offset, int length, int access) {
+    if (record(CMD_MAP_BUFFER_RANGE, 4)) {
+      arg(target);
+      arg(offset);
+      arg(length);
+      arg(access);
+    }
+    uploadedBytes += length;
+    return allocateDirectByteBuffer(length);
+  }
+
+  @Override
+  public void unmapBuffer(int target) {
+    if (record(CMD_UNMAP_BUFFER, 1)) {
+      arg(target);
+    }
+  }
+
+  @Override
+  protected void viewportImpl(int x, int y, int w, int h) {
+    if (record(CMD_VIEWPORT, 4)) {
+      arg(x);
+      arg(y);
+      arg(w);
+      arg(h);
+    }
+    viewport[0] = x;
+    viewport[1] = y;
+    viewport[2] = w;
+    viewport[3] = h;
+  }
+
+  @Override
+  public void readPixelsImpl(int x, int y, int width, int height, int format, int type, Buffer buffer) {
+    if (record(CMD_READ_PIXELS, 7)) {
+      arg(x);
+      arg(y);
+      arg(width);
+      arg(height);
+      arg(format);
+      arg(type);
+      arg(buffer);
+    }
+  }
+
+  @Override
+  protected void readPixelsImpl(int x, int y, int width, int height, int format,
+                                int type, long offset) {
+    if (record(CMD_READ_PIXELS, 8)) {
+      arg(x);
+      arg(y);
+      arg(width);
+      arg(height);
+      arg(format);
+      arg(type);
+      arg(offset);
+    }
+  }
+
+  @Override
+  public void genTextures(int n, IntBuffer textures) {
+    if (record(CMD_GEN_TEXTURES, 1)) {
+      arg(n);
+    }
+    genNames(n, textures);
+  }
+
+  @Override
+  public void genFramebuffers(int n, IntBuffer framebuffers) {
+    if (record(CMD_GEN_FRAMEBUFFERS, 1)) {
+      arg(n);
+    }
+    genNames(n, framebuffers);
+  }
+
+  @Override
+  public void genRenderbuffers(int n, IntBuffer renderbuffers) {
+    if (record(CMD_GEN_RENDERBUFFERS, 1)) {
+      arg(n);
+    }
+    genNames(n, renderbuffers);
+  }
+
+  @Override
+  public int createShader(int type) {
+    if (record(CMD_CREATE_SHADER, 1)) {
+      arg(type);
+    }
+    return nextName++;
+  }
+
+  @Override
+  public int createProgram() {
+    record(CMD_CREATE_PROGRAM, 0);
+    return nextName++;
+  }
+
+  @Override
+  public boolean isTexture(int texture) {
+    if (record(CMD_IS_TEXTURE, 1)) {
+      arg(texture);
+    }
+    return 0 < texture;
+  }
+
+  @Override
+  public boolean isShader(int shader) {
+    if (record(CMD_IS_SHADER, 1)) {
+      arg(shader);
+    }
+    return 0 < shader;
+  }
+
+  @Override
+  public boolean isProgram(int program) {
+    if (record(CMD_IS_PROGRAM, 1)) {
+      arg(program);
+    }
+    return 0 < program;
+  }
+
+  @Override
+  public boolean isFramebuffer(int framebuffer) {
+    if (record(CMD_IS_FRAMEBUFFER, 1)) {
+      arg(framebuffer);
+    }
+    return 0 < framebuffer;
+  }
+
+  @Override
+  public boolean isRenderbuffer(int renderbuffer) {
+    if (record(CMD_IS_RENDERBUFFER, 1)) {
+      arg(renderbuffer);
+    }
+    return 0 < renderbuffer;
+  }
+
+  @Override
+  public void getShaderiv(int shader, int pname, IntBuffer params) {
+    if (record(CMD_GET_SHADERIV, 2)) {
+      arg(shader);
+      arg(pname);
+    }
+    // Shaders always compile, and have no info log
+    params.put(params.position(), pname == COMPILE_STATUS ? 1 : 0);
+  }
+
+  @Override
+  public void getProgramiv(int program, int pname, IntBuffer params) {
+    if (record(CMD_GET_PROGRAMIV, 2)) {
+      arg(program);
+      arg(pname);
+    }
+    int value = pname == LINK_STATUS || pname == VALIDATE_STATUS ? 1 : 0;
+    if (pname == ACTIVE_UNIFORMS) {
+      ArrayList<String> names = activeUniforms.get(program);
+      value = names == null ? 0 : names.size();
+    }
+    params.put(params.position(), value);
+  }
+
+  @Override
+  public String getShaderInfoLog(int shader) {
+    if (record(CMD_GET_SHADER_INFO_LOG, 1)) {
+      arg(shader);
+    }
+    return "";
+  }
+
+  @Override
+  public String getProgramInfoLog(int program) {
+    if (record(CMD_GET_PROGRAM_INFO_LOG, 1)) {
+      arg(program);
+    }
+    return "";
+  }
+
+  @Override
+  public String getShaderSource(int shader) {
+    if (record(CMD_GET_SHADER_SOURCE, 1)) {
+      arg(shader);
+    }
+    return "";
+  }
+
+  @Override
+  public int getAttribLocation(int program, String name) {
+    if (record(CMD_GET_ATTRIB_LOCATION, 2)) {
+      arg(program);
+      arg(name);
+    }
+    return getLocation(attribLocations, program, name);
+  }
+
+  @Override
+  public int getUniformLocation(int program, String name) {
+    if (record(CMD_GET_UNIFORM_LOCATION, 2)) {
+      arg(program);
+      arg(name);
+    }
+    return getLocation(uniformLocations, program, name);
+  }
+
+  @Override
+  public String getActiveAttrib(int program, int index, IntBuffer size, IntBuffer type) {
+    if (record(CMD_GET_ACTIVE_ATTRIB, 2)) {
+      arg(program);
+      arg(index);
+    }
+    return "";
+  }
+
+  @Override
+  public String getActiveUniform(int program, int index, IntBuffer size, IntBuffer type) {
+    if (record(CMD_GET_ACTIVE_UNIFORM, 2)) {
+      arg(program);
+      arg(index);
+    }
+    ArrayList<String> names = activeUniforms.get(program);
+    if (names == null || index < 0 || names.size() <= index) return "";
+    size.put(size.position(), 1);
+    type.put(type.position(), 0);
+    return names.get(index);
+  }
+
+  @Override
+  public int checkFramebufferStatus(int target) {
+    if (record(CMD_CHECK_FRAMEBUFFER_STATUS, 1)) {
+      arg(target);
+    }
+    return FRAMEBUFFER_COMPLETE;
+  }
+
+  @Override
+  protected void depthMaskImpl(boolean mask) {
+    if (record(CMD_DEPTH_MASK, 1)) {
+      arg(mask);
+    }
+    depthWriteMask = mask;
+  }
+
+  @Override
+  public long fenceSync(int condition, int flags) {
+    if (record(CMD_FENCE_SYNC, 2)) {
+      arg(condition);
+      arg(flags);
+    }
+    return nextName++;
+  }
+
+  @Override
+  public int clientWaitSync(long sync, int flags, long timeout) {
+    if (record(CMD_CLIENT_WAIT_SYNC, 5)) {
+      arg(sync);
+      arg(flags);
+      arg(timeout);
+    }
+    return ALREADY_SIGNALED;
+  }
+
+  ///////////////////////////////////////////////////////////
+
+  // Special Functions
+
+  @Override
+  public void flush() {
+    record(CMD_FLUSH, 0);
+  }
+
+  @Override
+  public void finish() {
+    record(CMD_FINISH, 0);
+  }
+
+  @Override
+  public void hint(int target, int hint) {
+    if (record(CMD_HINT, 2)) {
+      arg(target);
+      arg(hint);
+    }
+  }
+
+  ///////////////////////////////////////////////////////////
+
+  // Buffer Objects
+
+  @Override
+  public void isBuffer(int buffer) {
+    if (record(CMD_IS_BUFFER, 1)) {
+      arg(buffer);
+    }
+  }
+
+  @Override
+  public void getBufferParameteriv(int target, int value, IntBuffer data) {
+    if (record(CMD_GET_BUFFER_PARAMETERIV, 3)) {
+      arg(target);
+      arg(value);
+      arg(data);
+    }
+  }
+
+  ///////////////////////////////////////////////////////////
+
+  // Viewport and Clipping
+
+  @Override
+  public void depthRangef(float n, float f) {
+    if (record(CMD_DEPTH_RANGEF, 2)) {
+      arg(n);
+      arg(f);
+    }
+  }
+
+  ///////////////////////////////////////////////////////////
+
+  // Vertices
+
+  @Override
+  public void vertexAttrib1f(int index, float value) {
+    if (record(CMD_VERTEX_ATTRIB1F, 2)) {
+      arg(index);
+      arg(value);
+    }
+  }
+
+  @Override
+  public void vertexAttrib2f(int index, float value0, float value1) {
+    if (record(CMD_VERTEX_ATTRIB2F, 3)) {
+      arg(index);
+      arg(value0);
+      arg(value1);
+    }
+  }
+
+  @Override
+  public void vertexAttrib3f(int index, float value0, float value1, float value2) {
+    if (record(CMD_VERTEX_ATTRIB3F, 4)) {
+      arg(index);
+      arg(value0);
+      arg(value1);
+      arg(value2);
+    }
+  }
+
+  @Override
+  public void vertexAttrib4f(int index, float value0, float value1, float value2, float value3) {
+    if (record(CMD_VERTEX_ATTRIB4F, 5)) {
+      arg(index);
+      arg(value0);
+      arg(value1);
+      arg(value2);
+      arg(value3);
+    }
+  }
+
+  @Override
+  public void vertexAttrib1fv(int index, FloatBuffer values) {
+    if (record(CMD_VERTEX_ATTRIB1FV, 2)) {
+      arg(index);
+      arg(values);
+    }
+  }
+
+  @Override
+  public void vertexAttrib2fv(int index, FloatBuffer values) {
+    if (record(CMD_VERTEX_ATTRIB2FV, 2)) {
+      arg(index);
+      arg(values);
+    }
+  }
+
+  @Override
+  public void vertexAttrib3fv(int index, FloatBuffer values) {
+    if (record(CMD_VERTEX_ATTRIB3FV, 2)) {
+      arg(index);
+      arg(values);
+    }
+  }
+
+  @Override
+  public void vertexAttrib4fv(int index, FloatBuffer values) {
+    if (record(CMD_VERTEX_ATTRIB4FV, 2)) {
+      arg(index);
+      arg(values);
+    }
+  }
+
+  @Override
+  public void vertexAttribPointer(int index, int size, int type, boolean normalized, int stride, int offset) {
+    if (record(CMD_VERTEX_ATTRIB_POINTER, 6)) {
+      arg(index);
+      arg(size);
+      arg(type);
+      arg(normalized);
+      arg(stride);
+      arg(offset);
+    }
+  }
+
+  @Override
+  protected void enableVertexAttribArrayImpl(int index) {
+    if (record(CMD_ENABLE_VERTEX_ATTRIB_ARRAY, 1)) {
+      arg(index);
+    }
+  }
+
+  @Override
+  protected void disableVertexAttribArrayImpl(int index) {
+    if (record(CMD_DISABLE_VERTEX_ATTRIB_ARRAY, 1)) {
+      arg(index);
+    }
+  }
+
+  @Override
+  public void drawArraysImpl(int mode, int first, int count) {
+    if (record(CMD_DRAW_ARRAYS, 3)) {
+      arg(mode);
+      arg(first);
+      arg(count);
+    }
+  }
+
+  @Override
+  public void drawElementsImpl(int mode, int count, int type, int offset) {
+    if (record(CMD_DRAW_ELEMENTS, 4)) {
+      arg(mode);
+      arg(count);
+      arg(type);
+      arg(offset);
+    }
+  }
+
+  @Override
+  public void drawElementsInstancedImpl(int mode, int count, int type, int offset, int instanceCount) {
+    if (record(CMD_DRAW_ELEMENTS_INSTANCED, 5)) {
+      arg(mode);
+      arg(count);
+      arg(type);
+      arg(offset);
+      arg(instanceCount);
+    }
+  }
+
+  @Override
+  public void vertexAttribDivisor(int index, int divisor) {
+    if (record(CMD_VERTEX_ATTRIB_DIVISOR, 2)) {
+      arg(index);
+      arg(divisor);
+    }
+  }
+
+  ///////////////////////////////////////////////////////////
+
+  // Rasterization
+
+  @Override
+  public void lineWidth(float width) {
+    if (record(CMD_LINE_WIDTH, 1)) {
+      arg(width);
+    }
+  }
+
+  @Override
+  public void frontFace(int dir) {
+    if (record(CMD_FRONT_FACE, 1)) {
+      arg(dir);
+    }
+  }
+
+  @Override
+  public void cullFace(int mode) {
+    if (record(CMD_CULL_FACE, 1)) {
+      arg(mode);
+    }
+  }
+
+  @Override
+  public void polygonOffset(float factor, float units) {
+    if (record(CMD_POLYGON_OFFSET, 2)) {
+      arg(factor);
+      arg(units);
+    }
+  }
+
+  ///////////////////////////////////////////////////////////
+
+  // Pixel Rectangles
+
+  @Override
+  public void pixelStorei(int pname, int param) {
+    if (record(CMD_PIXEL_STOREI, 2)) {
+      arg(pname);
+      arg(param);
+    }
+  }
+
+  ///////////////////////////////////////////////////////////
+
+  // Texturing
+
+  @Override
+  public void texImage2D(int target, int level, int internalFormat, int width, int height, int border, int format, int type, Buffer data) {
+    if (record(CMD_TEX_IMAGE2D, 9)) {
+      arg(target);
+      arg(level);
+      arg(internalFormat);
+      arg(width);
+      arg(height);
+      arg(border);
+      arg(format);
+      arg(type);
+      arg(data);
+    }
+  }
+
+  @Override
+  public void copyTexImage2D(int target, int level, int internalFormat, int x, int y, int width, int height, int border) {
+    if (record(CMD_COPY_TEX_IMAGE2D, 8)) {
+      arg(target);
+      arg(level);
+      arg(internalFormat);
+      arg(x);
+      arg(y);
+      arg(width);
+      arg(height);
+      arg(border);
+    }
+  }
+
+  @Override
+  public void texSubImage2D(int target, int level, int xOffset, int yOffset, int width, int height, int format, int type, Buffer data) {
+    if (record(CMD_TEX_SUB_IMAGE2D, 9)) {
+      arg(target);
+      arg(level);
+      arg(xOffset);
+      arg(yOffset);
+      arg(width);
+      arg(height);
+      arg(format);
+      arg(type);
+      arg(data);
+    }
+  }
+
+  @Override
+  public void copyTexSubImage2D(int target, int level, int xOffset, int yOffset, int x, int y, int width, int height) {
+    if (record(CMD_COPY_TEX_SUB_IMAGE2D, 8)) {
+      arg(target);
+      arg(level);
+      arg(xOffset);
+      arg(yOffset);
+      arg(x);
+      arg(y);
+      arg(width);
+      arg(height);
+    }
+  }
+
+  @Override
+  public void compressedTexImage2D(int target, int level, int internalFormat, int width, int height, int border, int imageSize, Buffer data) {
+    if (record(CMD_COMPRESSED_TEX_IMAGE2D, 8)) {
+      arg(target);
+      arg(level);
+      arg(internalFormat);
+      arg(width);
+      arg(height);
+      arg(border);
+      arg(imageSize);
+      arg(data);
+    }
+  }
+
+  @Override
+  public void compressedTexSubImage2D(int target, int level, int xOffset, int yOffset, int width, int height, int format, int imageSize, Buffer data) {
+    if (record(CMD_COMPRESSED_TEX_SUB_IMAGE2D, 9)) {
+      arg(target);
+      arg(level);
+      arg(xOffset);
+      arg(yOffset);
+      arg(width);
+      arg(height);
+      arg(format);
+      arg(imageSize);
+      arg(data);
+    }
+  }
+
+  @Override
+  public void texParameteri(int target, int pname, int param) {
+    if (record(CMD_TEX_PARAMETERI, 3)) {
+      arg(target);
+      arg(pname);
+      arg(param);
+    }
+  }
+
+  @Override
+  public void texParameterf(int target, int pname, float param) {
+    if (record(CMD_TEX_PARAMETERF, 3)) {
+      arg(target);
+      arg(pname);
+      arg(param);
+    }
+  }
+
+  @Override
+  public void texParameteriv(int target, int pname, IntBuffer params) {
+    if (record(CMD_TEX_PARAMETERIV, 3)) {
+      arg(target);
+      arg(pname);
+      arg(params);
+    }
+  }
+
+  @Override
+  public void texParameterfv(int target, int pname, FloatBuffer params) {
+    if (record(CMD_TEX_PARAMETERFV, 3)) {
+      arg(target);
+      arg(pname);
+      arg(params);
+    }
+  }
+
+  @Override
+  public void generateMipmap(int target) {
+    if (record(CMD_GENERATE_MIPMAP, 1)) {
+      arg(target);
+    }
+  }
+
+  @Override
+  protected void deleteTexturesImpl(int n, IntBuffer textures) {
+    if (record(CMD_DELETE_TEXTURES, 2)) {
+      arg(n);
+      arg(textures);
+    }
+  }
+
+  @Override
+  public void getTexParameteriv(int target, int pname, IntBuffer params) {
+    if (record(CMD_GET_TEX_PARAMETERIV, 3)) {
+      arg(target);
+      arg(pname);
+      arg(params);
+    }
+  }
+
+  @Override
+  public void getTexParameterfv(int target, int pname, FloatBuffer params) {
+    if (record(CMD_GET_TEX_PARAMETERFV, 3)) {
+      arg(target);
+      arg(pname);
+      arg(params);
+    }
+  }
+
+  @Override
+  protected void activeTextureImpl(int texture) {
+    if (record(CMD_ACTIVE_TEXTURE, 1)) {
+      arg(texture);
+    }
+  }
+
+  @Override
+  protected void bindTextureImpl(int target, int texture) {
+    if (record(CMD_BIND_TEXTURE, 2)) {
+      arg(target);
+      arg(texture);
+    }
+  }
+
+  ///////////////////////////////////////////////////////////
+
+  // Shaders and Programs
+
+  @Override
+  public void shaderSource(int shader, String source) {
+    if (record(CMD_SHADER_SOURCE, 2)) {
+      arg(shader);
+      arg(source);
+    }
+    shaderSources.put(shader, source);
+  }
+
+  @Override
+  public void compileShader(int shader) {
+    if (record(CMD_COMPILE_SHADER, 1)) {
+      arg(shader);
+    }
+  }
+
+  @Override
+  public void releaseShaderCompiler() {
+    record(CMD_RELEASE_SHADER_COMPILER, 0);
+  }
+
+  @Override
+  public void deleteShader(int shader) {
+    if (record(CMD_DELETE_SHADER, 1)) {
+      arg(shader);
+    }
+    shaderSources.remove(shader);
+  }
+
+  @Override
+  public void shaderBinary(int count, IntBuffer shaders, int binaryFormat, Buffer binary, int length) {
+    if (record(CMD_SHADER_BINARY, 5)) {
+      arg(count);
+      arg(shaders);
+      arg(binaryFormat);
+      arg(binary);
+      arg(length);
+    }
+  }
+
+  @Override
+  public void attachShader(int program, int shader) {
+    if (record(CMD_ATTACH_SHADER, 2)) {
+      arg(program);
+      arg(shader);
+    }
+    ArrayList<Integer> shaders = programShaders.get(program);
+    if (shaders == null) {
+      shaders = new ArrayList<Integer>();
+      programShaders.put(program, shaders);
+    }
+    shaders.add(shader);
+  }
+
+  @Override
+  public void detachShader(int program, int shader) {
+    if (record(CMD_DETACH_SHADER, 2)) {
+      arg(program);
+      arg(shader);
+    }
+    ArrayList<Integer> shaders = programShaders.get(program);
+    if (shaders != null) shaders.remove(Integer.valueOf(shader));
+  }
+
+  @Override
+  public void linkProgram(int program) {
+    if (record(CMD_LINK_PROGRAM, 1)) {
+      arg(program);
+    }
+    ArrayList<String> names = new ArrayList<String>();
+    ArrayList<Integer> shaders = programShaders.get(program);
+    if (shaders != null) {
+      for (int shader: shaders) {
+        String source = shaderSources.get(shader);
+        if (source != null) findUniforms(source, names);
+      }
+    }
+    activeUniforms.put(program, names);
+  }
+
+  @Override
+  protected void useProgramImpl(int program) {
+    if (record(CMD_USE_PROGRAM, 1)) {
+      arg(program);
+    }
+  }
+
+  @Override
+  protected void deleteProgramImpl(int program) {
+    if (record(CMD_DELETE_PROGRAM, 1)) {
+      arg(program);
+    }
+    programShaders.remove(program);
+    activeUniforms.remove(program);
+  }
+
+  @Override
+  public void bindAttribLocation(int program, int index, String name) {
+    if (record(CMD_BIND_ATTRIB_LOCATION, 3)) {
+      arg(program);
+      arg(index);
+      arg(name);
+    }
+  }
+
+  @Override
+  public void uniform1i(int location, int value) {
+    if (record(CMD_UNIFORM1I, 2)) {
+      arg(location);
+      arg(value);
+    }
+  }
+
+  @Override
+  public void uniform2i(int location, int value0, int value1) {
+    if (record(CMD_UNIFORM2I, 3)) {
+      arg(location);
+      arg(value0);
+      arg(value1);
+    }
+  }
+
+  @Override
+  public void uniform3i(int location, int value0, int value1, int value2) {
+    if (record(CMD_UNIFORM3I, 4)) {
+      arg(location);
+      arg(value0);
+      arg(value1);
+      arg(value2);
+    }
+  }
+
+  @Override
+  public void uniform4i(int location, int value0, int value1, int value2, int value3) {
+    if (record(CMD_UNIFORM4I, 5)) {
+      arg(location);
+      arg(value0);
+      arg(value1);
+      arg(value2);
+      arg(value3);
+    }
+  }
+
+  @Override
+  public void uniform1f(int location, float value) {
+    if (record(CMD_UNIFORM1F, 2)) {
+      arg(location);
+      arg(value);
+    }
+  }
+
+  @Override
+  public void uniform2f(int location, float value0, float value1) {
+    if (record(CMD_UNIFORM2F, 3)) {
+      arg(location);
+      arg(value0);
+      arg(value1);
+    }
+  }
+
+  @Override
+  public void uniform3f(int location, float value0, float value1, float value2) {
+    if (record(CMD_UNIFORM3F, 4)) {
+      arg(location);
+      arg(value0);
+      arg(value1);
+      arg(value2);
+    }
+  }
+
+  @Override
+  public void uniform4f(int location, float value0, float value1, float value2, float value3) {
+    if (record(CMD_UNIFORM4F, 5)) {
+      arg(location);
+      arg(value0);
+      arg(value1);
+      arg(value2);
+      arg(value3);
+    }
+  }
+
+  @Override
+  public void uniform1iv(int location, int count, IntBuffer v) {
+    if (record(CMD_UNIFORM1IV, 3)) {
+      arg(location);
+      arg(count);
+      arg(v);
+    }
+  }
+
+  @Override
+  public void uniform2iv(int location, int count, IntBuffer v) {
+    if (record(CMD_UNIFORM2IV, 3)) {
+      arg(location);
+      arg(count);
+      arg(v);
+    }
+  }
+
+  @Override
+  public void uniform3iv(int location, int count, IntBuffer v) {
+    if (record(CMD_UNIFORM3IV, 3)) {
+      arg(location);
+      arg(count);
+      arg(v);
+    }
+  }
+
+  @Override
+  public void uniform4iv(int location, int count, IntBuffer v) {
+    if (record(CMD_UNIFORM4IV, 3)) {
+      arg(location);
+      arg(count);
+      arg(v);
+    }
+  }
+
+  @Override
+  public void uniform1fv(int location, int count, FloatBuffer v) {
+    if (record(CMD_UNIFORM1FV, 3)) {
+      arg(location);
+      arg(count);
+      arg(v);
+    }
+  }
+
+  @Override
+  public void uniform2fv(int location, int count, FloatBuffer v) {
+    if (record(CMD_UNIFORM2FV, 3)) {
+      arg(location);
+      arg(count);
+      arg(v);
+    }
+  }
+
+  @Override
+  public void uniform3fv(int location, int count, FloatBuffer v) {
+    if (record(CMD_UNIFORM3FV, 3)) {
+      arg(location);
+      arg(count);
+      arg(v);
+    }
+  }
+
+  @Override
+  public void uniform4fv(int location, int count, FloatBuffer v) {
+    if (record(CMD_UNIFORM4FV, 3)) {
+      arg(location);
+      arg(count);
+      arg(v);
+    }
+  }
+
+  @Override
+  public void uniformMatrix2fv(int location, int count, boolean transpose, FloatBuffer mat) {
+    if (record(CMD_UNIFORM_MATRIX2FV, 4)) {
+      arg(location);
+      arg(count);
+      arg(transpose);
+      arg(mat);
+    }
+  }
+
+  @Override
+  public void uniformMatrix3fv(int location, int count, boolean transpose, FloatBuffer mat) {
+    if (record(CMD_UNIFORM_MATRIX3FV, 4)) {
+      arg(location);
+      arg(count);
+      arg(transpose);
+      arg(mat);
+    }
+  }
+
+  @Override
+  public void uniformMatrix4fv(int location, int count, boolean transpose, FloatBuffer mat) {
+    if (record(CMD_UNIFORM_MATRIX4FV, 4)) {
+      arg(location);
+      arg(count);
+      arg(transpose);
+      arg(mat);
+    }
+  }
+
+  @Override
+  public void validateProgram(int program) {
+    if (record(CMD_VALIDATE_PROGRAM, 1)) {
+      arg(program);
+    }
+  }
+
+  @Override
+  public void getAttachedShaders(int program, int maxCount, IntBuffer count, IntBuffer shaders) {
+    if (record(CMD_GET_ATTACHED_SHADERS, 4)) {
+      arg(program);
+      arg(maxCount);
+      arg(count);
+      arg(shaders);
+    }
+  }
+
+  @Override
+  public void getShaderPrecisionFormat(int shaderType, int precisionType, IntBuffer range, IntBuffer precision) {
+    if (record(CMD_GET_SHADER_PRECISION_FORMAT, 4)) {
+      arg(shaderType);
+      arg(precisionType);
+      arg(range);
+      arg(precision);
+    }
+  }
+
+  @Override
+  public void getVertexAttribfv(int index, int pname, FloatBuffer params) {
+    if (record(CMD_GET_VERTEX_ATTRIBFV, 3)) {
+      arg(index);
+      arg(pname);
+      arg(params);
+    }
+  }
+
+  @Override
+  public void getVertexAttribiv(int index, int pname, IntBuffer params) {
+    if (record(CMD_GET_VERTEX_ATTRIBIV, 3)) {
+      arg(index);
+      arg(pname);
+      arg(params);
+    }
+  }
+
+  @Override
+  public void getVertexAttribPointerv(int index, int pname, ByteBuffer data) {
+    if (record(CMD_GET_VERTEX_ATTRIB_POINTERV, 3)) {
+      arg(index);
+      arg(pname);
+      arg(data);
+    }
+  }
+
+  @Override
+  public void getUniformfv(int program, int location, FloatBuffer params) {
+    if (record(CMD_GET_UNIFORMFV, 3)) {
+      arg(program);
+      arg(location);
+      arg(params);
+    }
+  }
+
+  @Override
+  public void getUniformiv(int program, int location, IntBuffer params) {
+    if (record(CMD_GET_UNIFORMIV, 3)) {
+      arg(program);
+      arg(location);
+      arg(params);
+    }
+  }
+
+  ///////////////////////////////////////////////////////////
+
+  // Per-Fragment Operations
+
+  @Override
+  public void scissor(int x, int y, int w, int h) {
+    if (record(CMD_SCISSOR, 4)) {
+      arg(x);
+      arg(y);
+      arg(w);
+      arg(h);
+    }
+  }
+
+  @Override
+  public void sampleCoverage(float value, boolean invert) {
+    if (record(CMD_SAMPLE_COVERAGE, 2)) {
+      arg(value);
+      arg(invert);
+    }
+  }
+
+  @Override
+  public void stencilFunc(int func, int ref, int mask) {
+    if (record(CMD_STENCIL_FUNC, 3)) {
+      arg(func);
+      arg(ref);
+      arg(mask);
+    }
+  }
+
+  @Override
+  public void stencilFuncSeparate(int face, int func, int ref, int mask) {
+    if (record(CMD_STENCIL_FUNC_SEPARATE, 4)) {
+      arg(face);
+      arg(func);
+      arg(ref);
+      arg(mask);
+    }
+  }
+
+  @Override
+  public void stencilOp(int sfail, int dpfail, int dppass) {
+    if (record(CMD_STENCIL_OP, 3)) {
+      arg(sfail);
+      arg(dpfail);
+      arg(dppass);
+    }
+  }
+
+  @Override
+  public void stencilOpSeparate(int face, int sfail, int dpfail, int dppass) {
+    if (record(CMD_STENCIL_OP_SEPARATE, 4)) {
+      arg(face);
+      arg(sfail);
+      arg(dpfail);
+      arg(dppass);
+    }
+  }
+
+  @Override
+  protected void depthFuncImpl(int func) {
+    if (record(CMD_DEPTH_FUNC, 1)) {
+      arg(func);
+    }
+  }
+
+  @Override
+  protected void blendEquationImpl(int mode) {
+    if (record(CMD_BLEND_EQUATION, 1)) {
+      arg(mode);
+    }
+  }
+
+  @Override
+  protected void blendEquationSeparateImpl(int modeRGB, int modeAlpha) {
+    if (record(CMD_BLEND_EQUATION_SEPARATE, 2)) {
+      arg(modeRGB);
+      arg(modeAlpha);
+    }
+  }
+
+  @Override
+  protected void blendFuncImpl(int src, int dst) {
+    if (record(CMD_BLEND_FUNC, 2)) {
+      arg(src);
+      arg(dst);
+    }
+  }
+
+  @Override
+  protected void blendFuncSeparateImpl(int srcRGB, int dstRGB, int srcAlpha, int dstAlpha) {
+    if (record(CMD_BLEND_FUNC_SEPARATE, 4)) {
+      arg(srcRGB);
+      arg(dstRGB);
+      arg(srcAlpha);
+      arg(dstAlpha);
+    }
+  }
+
+  @Override
+  public void blendColor(float red, float green, float blue, float alpha) {
+    if (record(CMD_BLEND_COLOR, 4)) {
+      arg(red);
+      arg(green);
+      arg(blue);
+      arg(alpha);
+    }
+  }
+
+  ///////////////////////////////////////////////////////////
+
+  // Whole Framebuffer Operations
+
+  @Override
+  public void colorMask(boolean r, boolean g, boolean b, boolean a) {
+    if (record(CMD_COLOR_MASK, 4)) {
+      arg(r);
+      arg(g);
+      arg(b);
+      arg(a);
+    }
+  }
+
+  @Override
+  public void stencilMask(int mask) {
+    if (record(CMD_STENCIL_MASK, 1)) {
+      arg(mask);
+    }
+  }
+
+  @Override
+  public void stencilMaskSeparate(int face, int mask) {
+    if (record(CMD_STENCIL_MASK_SEPARATE, 2)) {
+      arg(face);
+      arg(mask);
+    }
+  }
+
+  @Override
+  public void clear(int buf) {
+    if (record(CMD_CLEAR, 1)) {
+      arg(buf);
+    }
+  }
+
+  @Override
+  public void clearColor(float r, float g, float b, float a) {
+    if (record(CMD_CLEAR_COLOR, 4)) {
+      arg(r);
+      arg(g);
+      arg(b);
+      arg(a);
+    }
+  }
+
+  @Override
+  public void clearDepth(float d) {
+    if (record(CMD_CLEAR_DEPTH, 1)) {
+      arg(d);
+    }
+  }
+
+  @Override
+  public void clearStencil(int s) {
+    if (record(CMD_CLEAR_STENCIL, 1)) {
+      arg(s);
+    }
+  }
+
+  ///////////////////////////////////////////////////////////
+
+  // Framebuffers Objects
+
+  @Override
+  protected void bindFramebufferImpl(int target, int framebuffer) {
+    if (record(CMD_BIND_FRAMEBUFFER, 2)) {
+      arg(target);
+      arg(framebuffer);
+    }
+  }
+
+  @Override
+  public void deleteFramebuffers(int n, IntBuffer framebuffers) {
+    if (record(CMD_DELETE_FRAMEBUFFERS, 2)) {
+      arg(n);
+      arg(framebuffers);
+    }
+  }
+
+  @Override
+  public void bindRenderbuffer(int target, int renderbuffer) {
+    if (record(CMD_BIND_RENDERBUFFER, 2)) {
+      arg(target);
+      arg(renderbuffer);
+    }
+  }
+
+  @Override
+  public void deleteRenderbuffers(int n, IntBuffer renderbuffers) {
+    if (record(CMD_DELETE_RENDERBUFFERS, 2)) {
+      arg(n);
+      arg(renderbuffers);
+    }
+  }
+
+  @Override
+  public void renderbufferStorage(int target, int internalFormat, int width, int height) {
+    if (record(CMD_RENDERBUFFER_STORAGE, 4)) {
+      arg(target);
+      arg(internalFormat);
+      arg(width);
+      arg(height);
+    }
+  }
+
+  @Override
+  public void framebufferRenderbuffer(int target, int attachment, int rendbuferfTarget, int renderbuffer) {
+    if (record(CMD_FRAMEBUFFER_RENDERBUFFER, 4)) {
+      arg(target);
+      arg(attachment);
+      arg(rendbuferfTarget);
+      arg(renderbuffer);
+    }
+  }
+
+  @Override
+  public void framebufferTexture2D(int target, int attachment, int texTarget, int texture, int level) {
+    if (record(CMD_FRAMEBUFFER_TEXTURE2D, 5)) {
+      arg(target);
+      arg(attachment);
+      arg(texTarget);
+      arg(texture);
+      arg(level);
+    }
+  }
+
+  @Override
+  public void getFramebufferAttachmentParameteriv(int target, int attachment, int pname, IntBuffer params) {
+    if (record(CMD_GET_FRAMEBUFFER_ATTACHMENT_PARAMETERIV, 4)) {
+      arg(target);
+      arg(attachment);
+      arg(pname);
+      arg(params);
+    }
+  }
+
+  @Override
+  public void getRenderbufferParameteriv(int target, int pname, IntBuffer params) {
+    if (record(CMD_GET_RENDERBUFFER_PARAMETERIV, 3)) {
+      arg(target);
+      arg(pname);
+      arg(params);
+    }
+  }
+
+  @Override
+  public void blitFramebuffer(int srcX0, int srcY0, int srcX1, int srcY1, int dstX0, int dstY0, int dstX1, int dstY1, int mask, int filter) {
+    if (record(CMD_BLIT_FRAMEBUFFER, 10)) {
+      arg(srcX0);
+      arg(srcY0);
+      arg(srcX1);
+      arg(srcY1);
+      arg(dstX0);
+      arg(dstY0);
+      arg(dstX1);
+      arg(dstY1);
+      arg(mask);
+      arg(filter);
+    }
+  }
+
+  @Override
+  public void renderbufferStorageMultisample(int target, int samples, int format, int width, int height) {
+    if (record(CMD_RENDERBUFFER_STORAGE_MULTISAMPLE, 5)) {
+      arg(target);
+      arg(samples);
+      arg(format);
+      arg(width);
+      arg(height);
+    }
+  }
+
+  @Override
+  public void readBuffer(int buf) {
+    if (record(CMD_READ_BUFFER, 1)) {
+      arg(buf);
+    }
+  }
+
+  @Override
+  public void drawBuffer(int buf) {
+    if (record(CMD_DRAW_BUFFER, 1)) {
+      arg(buf);
+    }
+  }
+
+  ///////////////////////////////////////////////////////////
+
+  // Synchronization
+
+  @Override
+  public void deleteSync(long sync) {
+    if (record(CMD_DELETE_SYNC, 2)) {
+      arg(sync);
+    }
+  }
+}
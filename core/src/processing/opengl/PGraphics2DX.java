@@ -27,6 +27,7 @@ import static processing.core.PApplet.println;
 import java.net.URL;
 import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
+import java.util.Arrays;
 import processing.core.PApplet;
 import processing.core.PGraphics;
 import processing.core.PImage;
@@ -1074,6 +1075,14 @@ public final class PGraphics2DX extends PGraphicsOpenGL {
   // TEXT
 
 
+  // There is no 2D shader for distance fields, so the hint only applies
+  // to the base implementation
+  @Override
+  protected boolean distanceFieldText() {
+    return useParentImpl && super.distanceFieldText();
+  }
+
+
   //NOTE: a possible improvement to text rendering performance is to batch all glyphs
   //from the same texture page together instead of rendering each char strictly in sequence.
   //it remains to be seen whether this would improve performance in practice
@@ -1094,6 +1103,22 @@ public final class PGraphics2DX extends PGraphicsOpenGL {
   }
 
 
+  @Override
+  protected void textLayoutModelImpl(TextLayout layout, float x, float y) {
+    if (useParentImpl) {
+      super.textLayoutModelImpl(layout, x, y);
+      return;
+    }
+
+    float[] quads = layout.quads;
+    for (int i = 0; i < layout.count; i++) {
+      textCharModelImpl(layout.infos[i],
+                        x + quads[4 * i + 0], y + quads[4 * i + 1],
+                        x + quads[4 * i + 2], y + quads[4 * i + 3]);
+    }
+  }
+
+
   //////////////////////////////////////////////////////////////
 
   // MATRIX MORE!
@@ -1366,8 +1391,21 @@ public final class PGraphics2DX extends PGraphicsOpenGL {
   private int imageTex;
   private int tex;
   private int vbo;
+  private int vboContext;
   private int texWidth, texHeight;
 
+  // Vertices are copied to a direct buffer and appended to the vbo, which
+  // holds PGL.P2DX_STREAM_BATCHES full batches
+  private FloatBuffer vertexBuffer;
+  private int vboSize;
+  private int vboOffset;
+
+  // Shader and program the attribute and uniform locations were loaded for
+  private PShader locShader;
+  private int locProgram;
+
+  private FloatBuffer identityBuffer;
+
   // Determination of the smallest increments and largest-greater-than-minus-one
   // https://en.wikipedia.org/wiki/Half-precision_floating-point_format
 
@@ -1465,25 +1503,40 @@ public final class PGraphics2DX extends PGraphicsOpenGL {
       return;
     }
 
-    if (vbo == 0) {
+    if (textTex != null) textTex.updateTexture();
+
+    if (vbo == 0 || !pgl.contextIsCurrent(vboContext)) {
       // Generate vbo
       IntBuffer vboBuff = IntBuffer.allocate(1);
       pgl.genBuffers(1, vboBuff);
       vbo = vboBuff.get(0);
+      vboContext = pgl.getCurrentContext();
+      vboSize = PApplet.max(1, PGL.P2DX_STREAM_BATCHES) * maxVerts * vertSize;
+      vboOffset = vboSize;
+      vertexBuffer = PGL.allocateDirectFloatBuffer(maxVerts * 7);
     }
 
     // Upload vertex data
+    int bytes = usedVerts * vertSize;
     pgl.bindBuffer(PGL.ARRAY_BUFFER, vbo);
-    pgl.bufferData(PGL.ARRAY_BUFFER, usedVerts * vertSize,
-        FloatBuffer.wrap(vertexData), PGL.DYNAMIC_DRAW);
+    if (vboSize < vboOffset + bytes) {
+      // Orphaning the storage, since the previous draws may still use it
+      pgl.bufferData(PGL.ARRAY_BUFFER, vboSize, null, PGL.STREAM_DRAW);
+      vboOffset = 0;
+    }
+    vertexBuffer.position(0);
+    vertexBuffer.put(vertexData, 0, usedVerts * 7);
+    vertexBuffer.rewind();
+    pgl.bufferSubData(PGL.ARRAY_BUFFER, vboOffset, bytes, vertexBuffer);
 
     PShader shader = getShader();
     shader.bind();
-    setAttribs();
+    setAttribs(vboOffset);
     loadUniforms();
 
     pgl.drawArrays(PGL.TRIANGLES, 0, usedVerts);
 
+    vboOffset += bytes;
     usedVerts = 0;
     shader.unbind();
 
@@ -1551,9 +1604,14 @@ public final class PGraphics2DX extends PGraphicsOpenGL {
     } else {
       shader = twoShader;
     }
-//    if (shader != defTwoShader) {
-    loadShaderLocs(shader);
-//    }
+    // Only querying the locations again when the shader changes, or its
+    // program is rebuilt after losing the context
+    shader.init();
+    if (shader != locShader || shader.glProgram != locProgram) {
+      loadShaderLocs(shader);
+      locShader = shader;
+      locProgram = shader.glProgram;
+    }
     return shader;
   }
 
@@ -1562,17 +1620,17 @@ public final class PGraphics2DX extends PGraphicsOpenGL {
     return super.getPolyShader(lit, tex);
   }
 
-  private void setAttribs() {
-    pgl.vertexAttribPointer(positionLoc, 3, PGL.FLOAT, false, vertSize, 0);
+  private void setAttribs(int offset) {
+    pgl.vertexAttribPointer(positionLoc, 3, PGL.FLOAT, false, vertSize, offset);
     pgl.enableVertexAttribArray(positionLoc);
     if (-1 < texCoordLoc) {
-      pgl.vertexAttribPointer(texCoordLoc, 2, PGL.FLOAT, false, vertSize, 3*Float.BYTES);
+      pgl.vertexAttribPointer(texCoordLoc, 2, PGL.FLOAT, false, vertSize, offset + 3*Float.BYTES);
       pgl.enableVertexAttribArray(texCoordLoc);
     }
-    pgl.vertexAttribPointer(colorLoc, 4, PGL.UNSIGNED_BYTE, true, vertSize, 5*Float.BYTES);
+    pgl.vertexAttribPointer(colorLoc, 4, PGL.UNSIGNED_BYTE, true, vertSize, offset + 5*Float.BYTES);
     pgl.enableVertexAttribArray(colorLoc);
     if (-1 < texFactorLoc) {
-      pgl.vertexAttribPointer(texFactorLoc, 1, PGL.FLOAT, false, vertSize, 6*Float.BYTES);
+      pgl.vertexAttribPointer(texFactorLoc, 1, PGL.FLOAT, false, vertSize, offset + 6*Float.BYTES);
       pgl.enableVertexAttribArray(texFactorLoc);
     }
   }
@@ -1580,7 +1638,12 @@ public final class PGraphics2DX extends PGraphicsOpenGL {
 
   private void loadUniforms() {
     //set matrix uniform
-    pgl.uniformMatrix4fv(transformLoc, 1, true, FloatBuffer.wrap(new PMatrix3D().get(null)));
+    if (identityBuffer == null) {
+      identityBuffer = PGL.allocateDirectFloatBuffer(16);
+      identityBuffer.put(new PMatrix3D().get(null));
+      identityBuffer.rewind();
+    }
+    pgl.uniformMatrix4fv(transformLoc, 1, true, identityBuffer);
 
     //set texture info
     pgl.activeTexture(PGL.TEXTURE0);
@@ -1663,16 +1726,35 @@ public final class PGraphics2DX extends PGraphicsOpenGL {
   //once we start integrating PGraphics4D into the rest of the codebase.
   private boolean knownConvexPolygon = false;
 
+  //open addressing hash of the positions in shapeVerts, used to find duplicates
+  //without comparing each new vertex against all the previous ones. A slot is
+  //only in use if its stamp is the one of the current shape, so the hash does
+  //not need to be cleared for every shape
+  private int[] vertHash = new int[32]; //size must be a power of two
+  private int[] vertHashStamps = new int[32];
+  private int vertHashStamp;
+
 
   private void shapeVertex(float x, float y, float u, float v, int c, float f) {
     //avoid adding a duplicate because it will cause the GLU tess to fail spectacularly
     //by spitting out-of-memory errors and passing null parameters to the combine() callback
     //TODO: figure out why that happens and how to stop it
     //(P2D renderer doesn't appear to have such a problem, so presumably there must be a way)
-    for (int i = 0; i < vertCount; ++i) {
-      if (shapeVerts[i].x == x && shapeVerts[i].y == y) {
+    if (vertCount == 0) {
+      //start a new shape by invalidating all the entries of the hash
+      vertHashStamp += 1;
+      if (vertHashStamp == 0) {
+        Arrays.fill(vertHashStamps, 0);
+        vertHashStamp = 1;
+      }
+    }
+    int slot = vertHashSlot(x, y);
+    while (vertHashStamps[slot] == vertHashStamp) {
+      TessVertex vert = shapeVerts[vertHash[slot]];
+      if (vert.x == x && vert.y == y) {
         return;
       }
+      slot = (slot + 1) & (vertHash.length - 1);
     }
 
     //dynamically expand input vertex array as needed
@@ -1686,7 +1768,36 @@ public final class PGraphics2DX extends PGraphicsOpenGL {
     }
 
     shapeVerts[vertCount].set(x, y, u, v, c, f);
+    vertHash[slot] = vertCount;
+    vertHashStamps[slot] = vertHashStamp;
     vertCount += 1;
+
+    //keep the hash at most half full, so probe sequences stay short
+    if (vertHash.length < 2 * vertCount) {
+      expandVertHash();
+    }
+  }
+
+
+  private int vertHashSlot(float x, float y) {
+    //adding zero turns -0 into 0, since both compare as equal
+    int h = 31 * Float.floatToIntBits(x + 0.0f) + Float.floatToIntBits(y + 0.0f);
+    h *= 0x9E3779B9;
+    return (h ^ (h >>> 16)) & (vertHash.length - 1);
+  }
+
+
+  private void expandVertHash() {
+    vertHash = new int[vertHash.length * 2];
+    vertHashStamps = new int[vertHash.length];
+    for (int i = 0; i < vertCount; ++i) {
+      int slot = vertHashSlot(shapeVerts[i].x, shapeVerts[i].y);
+      while (vertHashStamps[slot] == vertHashStamp) {
+        slot = (slot + 1) & (vertHash.length - 1);
+      }
+      vertHash[slot] = i;
+      vertHashStamps[slot] = vertHashStamp;
+    }
   }
 
 
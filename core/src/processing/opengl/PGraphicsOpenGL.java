@@ -32,11 +32,17 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.io.PrintWriter;
 import java.lang.ref.ReferenceQueue;
 import java.lang.ref.WeakReference;
 import java.net.URL;
 import java.nio.*;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import android.content.Context;
 import android.os.Environment;
@@ -57,6 +63,9 @@ public class PGraphicsOpenGL extends PGraphics {
   /** Font cache for texture objects. */
   protected WeakHashMap<PFont, FontTexture> fontMap;
 
+  /** Atlas of the small images, shared by all the renderers. */
+  protected TextureAtlas textureAtlas;
+
   // ........................................................
 
   // Disposal of native resources
@@ -153,6 +162,43 @@ public class PGraphicsOpenGL extends PGraphics {
   static protected final int INIT_VERTEX_BUFFER_SIZE  = 256;
   static protected final int INIT_INDEX_BUFFER_SIZE   = 512;
 
+  /** Whether the immediate-mode VBOs are used as streaming ring buffers. */
+  protected boolean isBufferStreamingEnabled;
+
+  /** Bytes uploaded to the immediate-mode VBOs during the last frame. */
+  public int uploadedBytes;
+
+  /** Number of times the storage of the immediate-mode VBOs was (re)allocated
+   * during the last frame. */
+  public int bufferReallocations;
+
+  /** Time, in nanoseconds, spent depth sorting the transparent triangles of
+   * the last sorted flush, and how much of it went into ordering them by
+   * depth and into resolving their overlaps. */
+  public long depthSortTime;
+  public long depthSortOrderTime;
+  public long depthSortOverlapTime;
+
+  /** GL state changes issued to the driver during the last frame, and those
+   * skipped because they would have left the state unchanged. */
+  public int stateChanges;
+  public int elidedStateChanges;
+
+  /** Whether per-frame statistics are recorded, see getRenderStats(). */
+  protected boolean isRenderStatsEnabled;
+
+  /** Statistics of the last frames, in a ring buffer, and the ones of the
+   * frame being drawn. */
+  protected RenderStats[] statsHistory;
+  protected int statsFrameCount;
+  protected RenderStats stats;
+
+  /** What caused the next flush, for the statistics. */
+  protected int flushCause = RenderStats.FLUSH_STATE;
+
+  protected int uploadedBytesCount;
+  protected int bufferReallocationsCount;
+
   // ........................................................
 
   // GL parameters
@@ -168,6 +214,7 @@ public class PGraphicsOpenGL extends PGraphics {
   static public boolean blendEqSupported;
   static public boolean readBufferSupported;
   static public boolean drawBufferSupported;
+  static public boolean instancingSupported;
 
   /** Some hardware limits */
   static public int maxTextureSize;
@@ -203,6 +250,10 @@ public class PGraphicsOpenGL extends PGraphics {
     PGraphicsOpenGL.class.getResource("/assets/shaders/LightFrag.glsl");
   static protected URL defTexlightShaderFragURL =
     PGraphicsOpenGL.class.getResource("/assets/shaders/TexLightFrag.glsl");
+  static protected URL defInstColorShaderVertURL =
+    PGraphicsOpenGL.class.getResource("/assets/shaders/InstColorVert.glsl");
+  static protected URL defInstTextureShaderVertURL =
+    PGraphicsOpenGL.class.getResource("/assets/shaders/InstTexVert.glsl");
 
   static protected URL defLineShaderVertURL =
     PGraphicsOpenGL.class.getResource("/assets/shaders/LineVert.glsl");
@@ -214,14 +265,22 @@ public class PGraphicsOpenGL extends PGraphics {
     PGraphicsOpenGL.class.getResource("/assets/shaders/PointFrag.glsl");
   static protected URL maskShaderFragURL =
     PGraphicsOpenGL.class.getResource("/assets/shaders/MaskFrag.glsl");
+  static protected URL distanceFieldShaderFragURL =
+    PGraphicsOpenGL.class.getResource("/assets/shaders/DistanceFieldFrag.glsl");
 
   protected PShader defColorShader;
   protected PShader defTextureShader;
   protected PShader defLightShader;
   protected PShader defTexlightShader;
+  protected PShader defInstColorShader;
+  protected PShader defInstTextureShader;
   protected PShader defLineShader;
   protected PShader defPointShader;
   protected PShader maskShader;
+  protected PShader distanceFieldShader;
+
+  // Smoothing of the distance field text waiting to be flushed
+  protected float distanceFieldSmoothing;
 
   protected PShader polyShader;
   protected PShader lineShader;
@@ -424,6 +483,11 @@ public class PGraphicsOpenGL extends PGraphics {
   /** Font texture of currently selected font. */
   FontTexture textTex;
 
+  /** Layouts of the strings drawn after hint(ENABLE_TEXT_LAYOUT_CACHE),
+   * and the one being recorded, if any. */
+  protected TextLayout.Cache textLayouts;
+  protected TextLayout textLayout;
+
   // .......................................................
 
   // Framebuffer stack:
@@ -1180,6 +1244,15 @@ public class PGraphicsOpenGL extends PGraphics {
   }
 
 
+  protected TextureAtlas getTextureAtlas() {
+    PGraphicsOpenGL ppg = getPrimaryPG();
+    if (ppg.textureAtlas == null) {
+      ppg.textureAtlas = new TextureAtlas(ppg);
+    }
+    return ppg.textureAtlas;
+  }
+
+
   //////////////////////////////////////////////////////////////
 
 
@@ -1537,6 +1610,7 @@ public class PGraphicsOpenGL extends PGraphics {
 
   protected void updatePolyBuffers(boolean lit, boolean tex,
                                    boolean needNormals, boolean needTexCoords) {
+    long startTime = isRenderStatsEnabled ? System.nanoTime() : 0;
     createPolyBuffers();
 
     int size = tessGeo.polyVertexCount;
@@ -1544,64 +1618,58 @@ public class PGraphicsOpenGL extends PGraphics {
     int sizei = size * PGL.SIZEOF_INT;
 
     tessGeo.updatePolyVerticesBuffer();
-    pgl.bindBuffer(PGL.ARRAY_BUFFER, bufPolyVertex.glId);
-    pgl.bufferData(PGL.ARRAY_BUFFER, 4 * sizef,
-                   tessGeo.polyVerticesBuffer, PGL.STATIC_DRAW);
+    updateBuffer(bufPolyVertex, 4 * sizef, tessGeo.polyVerticesBuffer);
 
     tessGeo.updatePolyColorsBuffer();
-    pgl.bindBuffer(PGL.ARRAY_BUFFER, bufPolyColor.glId);
-    pgl.bufferData(PGL.ARRAY_BUFFER, sizei,
-                   tessGeo.polyColorsBuffer, PGL.STATIC_DRAW);
+    updateBuffer(bufPolyColor, sizei, tessGeo.polyColorsBuffer);
 
     if (lit) {
       tessGeo.updatePolyAmbientBuffer();
-      pgl.bindBuffer(PGL.ARRAY_BUFFER, bufPolyAmbient.glId);
-      pgl.bufferData(PGL.ARRAY_BUFFER, sizei,
-                     tessGeo.polyAmbientBuffer, PGL.STATIC_DRAW);
+      updateBuffer(bufPolyAmbient, sizei, tessGeo.polyAmbientBuffer);
 
       tessGeo.updatePolySpecularBuffer();
-      pgl.bindBuffer(PGL.ARRAY_BUFFER, bufPolySpecular.glId);
-      pgl.bufferData(PGL.ARRAY_BUFFER, sizei,
-                     tessGeo.polySpecularBuffer, PGL.STATIC_DRAW);
+      updateBuffer(bufPolySpecular, sizei, tessGeo.polySpecularBuffer);
 
       tessGeo.updatePolyEmissiveBuffer();
-      pgl.bindBuffer(PGL.ARRAY_BUFFER, bufPolyEmissive.glId);
-      pgl.bufferData(PGL.ARRAY_BUFFER, sizei,
-                     tessGeo.polyEmissiveBuffer, PGL.STATIC_DRAW);
+      updateBuffer(bufPolyEmissive, sizei, tessGeo.polyEmissiveBuffer);
 
       tessGeo.updatePolyShininessBuffer();
-      pgl.bindBuffer(PGL.ARRAY_BUFFER, bufPolyShininess.glId);
-      pgl.bufferData(PGL.ARRAY_BUFFER, sizef,
-                     tessGeo.polyShininessBuffer, PGL.STATIC_DRAW);
+      updateBuffer(bufPolyShininess, sizef, tessGeo.polyShininessBuffer);
     }
 
     if (lit || needNormals) {
       tessGeo.updatePolyNormalsBuffer();
-      pgl.bindBuffer(PGL.ARRAY_BUFFER, bufPolyNormal.glId);
-      pgl.bufferData(PGL.ARRAY_BUFFER, 3 * sizef,
-                     tessGeo.polyNormalsBuffer, PGL.STATIC_DRAW);
+      updateBuffer(bufPolyNormal, 3 * sizef, tessGeo.polyNormalsBuffer);
     }
 
     if (tex || needTexCoords) {
       tessGeo.updatePolyTexCoordsBuffer();
-      pgl.bindBuffer(PGL.ARRAY_BUFFER, bufPolyTexcoord.glId);
-      pgl.bufferData(PGL.ARRAY_BUFFER, 2 * sizef,
-                     tessGeo.polyTexCoordsBuffer, PGL.STATIC_DRAW);
+      updateBuffer(bufPolyTexcoord, 2 * sizef, tessGeo.polyTexCoordsBuffer);
     }
 
     for (String name: polyAttribs.keySet()) {
       VertexAttribute attrib = polyAttribs.get(name);
       tessGeo.updateAttribBuffer(name);
-      pgl.bindBuffer(PGL.ARRAY_BUFFER, attrib.buf.glId);
-      pgl.bufferData(PGL.ARRAY_BUFFER, attrib.sizeInBytes(size),
-                     tessGeo.polyAttribBuffers.get(name), PGL.STATIC_DRAW);
+      updateBuffer(attrib.buf, attrib.sizeInBytes(size),
+                   tessGeo.polyAttribBuffers.get(name));
     }
 
     tessGeo.updatePolyIndicesBuffer();
-    pgl.bindBuffer(PGL.ELEMENT_ARRAY_BUFFER, bufPolyIndex.glId);
-    pgl.bufferData(PGL.ELEMENT_ARRAY_BUFFER,
-      tessGeo.polyIndexCount * PGL.SIZEOF_INDEX, tessGeo.polyIndicesBuffer,
-      PGL.STATIC_DRAW);
+    updateBuffer(bufPolyIndex, tessGeo.polyIndexCount * PGL.SIZEOF_INDEX,
+                 tessGeo.polyIndicesBuffer);
+    if (isRenderStatsEnabled) stats.uploadTime += System.nanoTime() - startTime;
+  }
+
+
+  protected void updateBuffer(VertexBuffer buf, int size, Buffer data) {
+    pgl.bindBuffer(buf.target, buf.glId);
+    if (isBufferStreamingEnabled) {
+      if (buf.streamData(size, data)) bufferReallocationsCount++;
+    } else {
+      buf.setData(size, data);
+      bufferReallocationsCount++;
+    }
+    uploadedBytesCount += size;
   }
 
 
@@ -1633,34 +1701,26 @@ public class PGraphicsOpenGL extends PGraphics {
 
 
   protected void updateLineBuffers() {
+    long startTime = isRenderStatsEnabled ? System.nanoTime() : 0;
     createLineBuffers();
 
     int size = tessGeo.lineVertexCount;
     int sizef = size * PGL.SIZEOF_FLOAT;
     int sizei = size * PGL.SIZEOF_INT;
 
-
-
     tessGeo.updateLineVerticesBuffer();
-    pgl.bindBuffer(PGL.ARRAY_BUFFER, bufLineVertex.glId);
-    pgl.bufferData(PGL.ARRAY_BUFFER, 4 * sizef, tessGeo.lineVerticesBuffer,
-                   PGL.STATIC_DRAW);
+    updateBuffer(bufLineVertex, 4 * sizef, tessGeo.lineVerticesBuffer);
 
     tessGeo.updateLineColorsBuffer();
-    pgl.bindBuffer(PGL.ARRAY_BUFFER, bufLineColor.glId);
-    pgl.bufferData(PGL.ARRAY_BUFFER, sizei,
-                   tessGeo.lineColorsBuffer, PGL.STATIC_DRAW);
+    updateBuffer(bufLineColor, sizei, tessGeo.lineColorsBuffer);
 
     tessGeo.updateLineDirectionsBuffer();
-    pgl.bindBuffer(PGL.ARRAY_BUFFER, bufLineAttrib.glId);
-    pgl.bufferData(PGL.ARRAY_BUFFER, 4 * sizef,
-                   tessGeo.lineDirectionsBuffer, PGL.STATIC_DRAW);
+    updateBuffer(bufLineAttrib, 4 * sizef, tessGeo.lineDirectionsBuffer);
 
     tessGeo.updateLineIndicesBuffer();
-    pgl.bindBuffer(PGL.ELEMENT_ARRAY_BUFFER, bufLineIndex.glId);
-    pgl.bufferData(PGL.ELEMENT_ARRAY_BUFFER,
-                   tessGeo.lineIndexCount * PGL.SIZEOF_INDEX,
-                   tessGeo.lineIndicesBuffer, PGL.STATIC_DRAW);
+    updateBuffer(bufLineIndex, tessGeo.lineIndexCount * PGL.SIZEOF_INDEX,
+                 tessGeo.lineIndicesBuffer);
+    if (isRenderStatsEnabled) stats.uploadTime += System.nanoTime() - startTime;
   }
 
 
@@ -1692,6 +1752,7 @@ public class PGraphicsOpenGL extends PGraphics {
 
 
   protected void updatePointBuffers() {
+    long startTime = isRenderStatsEnabled ? System.nanoTime() : 0;
     createPointBuffers();
 
     int size = tessGeo.pointVertexCount;
@@ -1699,25 +1760,18 @@ public class PGraphicsOpenGL extends PGraphics {
     int sizei = size * PGL.SIZEOF_INT;
 
     tessGeo.updatePointVerticesBuffer();
-    pgl.bindBuffer(PGL.ARRAY_BUFFER, bufPointVertex.glId);
-    pgl.bufferData(PGL.ARRAY_BUFFER, 4 * sizef,
-                   tessGeo.pointVerticesBuffer, PGL.STATIC_DRAW);
+    updateBuffer(bufPointVertex, 4 * sizef, tessGeo.pointVerticesBuffer);
 
     tessGeo.updatePointColorsBuffer();
-    pgl.bindBuffer(PGL.ARRAY_BUFFER, bufPointColor.glId);
-    pgl.bufferData(PGL.ARRAY_BUFFER, sizei,
-                   tessGeo.pointColorsBuffer, PGL.STATIC_DRAW);
+    updateBuffer(bufPointColor, sizei, tessGeo.pointColorsBuffer);
 
     tessGeo.updatePointOffsetsBuffer();
-    pgl.bindBuffer(PGL.ARRAY_BUFFER, bufPointAttrib.glId);
-    pgl.bufferData(PGL.ARRAY_BUFFER, 2 * sizef,
-                   tessGeo.pointOffsetsBuffer, PGL.STATIC_DRAW);
+    updateBuffer(bufPointAttrib, 2 * sizef, tessGeo.pointOffsetsBuffer);
 
     tessGeo.updatePointIndicesBuffer();
-    pgl.bindBuffer(PGL.ELEMENT_ARRAY_BUFFER, bufPointIndex.glId);
-    pgl.bufferData(PGL.ELEMENT_ARRAY_BUFFER,
-      tessGeo.pointIndexCount * PGL.SIZEOF_INDEX,
-      tessGeo.pointIndicesBuffer, PGL.STATIC_DRAW);
+    updateBuffer(bufPointIndex, tessGeo.pointIndexCount * PGL.SIZEOF_INDEX,
+                 tessGeo.pointIndicesBuffer);
+    if (isRenderStatsEnabled) stats.uploadTime += System.nanoTime() - startTime;
   }
 
 
@@ -1793,7 +1847,25 @@ public class PGraphicsOpenGL extends PGraphics {
     }
 
     // Flushing any remaining geometry.
-    flush();
+    flush(RenderStats.FLUSH_FRAME);
+
+    if (isRenderStatsEnabled) {
+      stats.frame = parent.frameCount;
+      stats.drawCalls = pgl.drawCallCount;
+      stats.uploadedBytes = uploadedBytesCount;
+      statsFrameCount++;
+      stats = statsHistory[statsFrameCount % statsHistory.length];
+      stats.reset();
+    }
+    pgl.drawCallCount = 0;
+
+    uploadedBytes = uploadedBytesCount;
+    bufferReallocations = bufferReallocationsCount;
+    uploadedBytesCount = bufferReallocationsCount = 0;
+
+    stateChanges = pgl.stateChangeCount;
+    elidedStateChanges = pgl.elidedStateChangeCount;
+    pgl.stateChangeCount = pgl.elidedStateChangeCount = 0;
 
     if (primaryGraphics) {
       endOnscreenDraw();
@@ -1852,6 +1924,8 @@ public class PGraphicsOpenGL extends PGraphics {
   @Override
   public void endPGL() {
     pgl.endGL();
+    // The native calls made since beginPGL() bypassed the state shadowing
+    pgl.resetGLState();
     restoreGL();
   }
 
@@ -2212,6 +2286,31 @@ public class PGraphicsOpenGL extends PGraphics {
       restartPGL();
     } else if (which == DISABLE_BUFFER_READING) {
       restartPGL();
+    } else if (which == ENABLE_BUFFER_STREAMING) {
+      flush();
+      isBufferStreamingEnabled = true;
+    } else if (which == DISABLE_BUFFER_STREAMING) {
+      flush();
+      isBufferStreamingEnabled = false;
+    } else if (which == ENABLE_RENDER_STATS) {
+      if (statsHistory == null) {
+        statsHistory = new RenderStats[PGL.RENDER_STATS_FRAMES];
+        for (int i = 0; i < statsHistory.length; i++) {
+          statsHistory[i] = new RenderStats();
+        }
+      }
+      statsFrameCount = 0;
+      stats = statsHistory[0];
+      stats.reset();
+      isRenderStatsEnabled = true;
+    } else if (which == DISABLE_RENDER_STATS) {
+      isRenderStatsEnabled = false;
+    } else if (which == DISABLE_TESSELLATION_CACHE) {
+      if (tessellator != null && tessellator.tessCache != null) {
+        tessellator.tessCache.clear();
+      }
+    } else if (which == DISABLE_TEXT_LAYOUT_CACHE) {
+      if (textLayouts != null) textLayouts.clear();
     }
   }
 
@@ -2225,6 +2324,35 @@ public class PGraphicsOpenGL extends PGraphics {
   }
 
 
+  /**
+   * Returns the statistics of the last frame drawn since
+   * hint(ENABLE_RENDER_STATS), or null if there are none yet. The object
+   * is reused once PGL.RENDER_STATS_FRAMES more frames have been recorded.
+   */
+  public RenderStats getRenderStats() {
+    if (statsHistory == null || statsFrameCount == 0) return null;
+    return statsHistory[(statsFrameCount - 1) % statsHistory.length];
+  }
+
+
+  /**
+   * Saves the statistics of the last frames recorded, up to
+   * PGL.RENDER_STATS_FRAMES of them, as a CSV file with one row per frame.
+   */
+  public void saveRenderStats(String filename) {
+    if (statsHistory == null) return;
+
+    PrintWriter writer = parent.createWriter(filename);
+    writer.println(RenderStats.CSV_HEADER);
+    int n = statsHistory.length;
+    for (int f = PApplet.max(0, statsFrameCount - n); f < statsFrameCount; f++) {
+      statsHistory[f % n].writeCSV(writer);
+    }
+    writer.flush();
+    writer.close();
+  }
+
+
   //////////////////////////////////////////////////////////////
 
   // CREATE SHAPE
@@ -2274,11 +2402,16 @@ public class PGraphicsOpenGL extends PGraphics {
 
   @Override
   public void endShape(int mode) {
+    long startTime = isRenderStatsEnabled ? System.nanoTime() : 0;
     tessellate(mode);
+    if (isRenderStatsEnabled) {
+      stats.tessellationTime += System.nanoTime() - startTime;
+    }
 
     if ((flushMode == FLUSH_CONTINUOUSLY) ||
         (flushMode == FLUSH_WHEN_FULL && tessGeo.isFull())) {
-      flush();
+      flush(flushMode == FLUSH_CONTINUOUSLY ?
+            RenderStats.FLUSH_CONTINUOUS : RenderStats.FLUSH_FULL);
     } else {
       // pixels array is not up-to-date anymore
       loaded = false;
@@ -2292,11 +2425,16 @@ public class PGraphicsOpenGL extends PGraphics {
                                  "TRIANGLE shapes");
     }
 
+    long startTime = isRenderStatsEnabled ? System.nanoTime() : 0;
     tessellate(indices);
+    if (isRenderStatsEnabled) {
+      stats.tessellationTime += System.nanoTime() - startTime;
+    }
 
     if (flushMode == FLUSH_CONTINUOUSLY ||
         (flushMode == FLUSH_WHEN_FULL && tessGeo.isFull())) {
-      flush();
+      flush(flushMode == FLUSH_CONTINUOUSLY ?
+            RenderStats.FLUSH_CONTINUOUS : RenderStats.FLUSH_FULL);
     } else {
       // pixels array is not up-to-date anymore
       loaded = false;
@@ -2522,7 +2660,7 @@ public class PGraphicsOpenGL extends PGraphics {
     tessellator.setInGeometry(inGeo);
     tessellator.setTessGeometry(tessGeo);
     tessellator.setFill(fill || textureImage != null);
-    tessellator.setTexCache(texCache, textureImage);
+    tessellator.setTexCache(texCache, tessTextureImage());
     tessellator.setStroke(stroke);
     tessellator.setStrokeColor(strokeColor);
     tessellator.setStrokeWeight(strokeWeight);
@@ -2576,7 +2714,7 @@ public class PGraphicsOpenGL extends PGraphics {
     tessellator.setStrokeWeight(strokeWeight);
     tessellator.setStrokeCap(strokeCap);
     tessellator.setStrokeJoin(strokeJoin);
-    tessellator.setTexCache(texCache, textureImage);
+    tessellator.setTexCache(texCache, tessTextureImage());
     tessellator.setTransform(modelview);
     tessellator.set3D(is3D());
 
@@ -2586,8 +2724,25 @@ public class PGraphicsOpenGL extends PGraphics {
   }
 
 
+  // The image the shape in inGeo is tessellated with: the texture image, or
+  // the page of the atlas where it was packed, in which case the texture
+  // coordinates are remapped to the page.
+  protected PImage tessTextureImage() {
+    if (textureImage != null && hints[ENABLE_TEXTURE_ATLAS] &&
+        textureWrap == CLAMP && !cameraUp && raw == null) {
+      return getTextureAtlas().remap(textureImage, inGeo);
+    }
+    return textureImage;
+  }
+
+
   @Override
   public void flush() {
+    int cause = flushCause;
+    flushCause = RenderStats.FLUSH_STATE;
+
+    if (textTex != null) textTex.updateTexture();
+
     boolean hasPolys = 0 < tessGeo.polyVertexCount &&
                        0 < tessGeo.polyIndexCount;
     boolean hasLines = 0 < tessGeo.lineVertexCount &&
@@ -2605,6 +2760,13 @@ public class PGraphicsOpenGL extends PGraphics {
     }
 
     if (hasPoints || hasLines || hasPolys) {
+      long startTime = 0, uploadTime0 = 0, sortTime0 = 0;
+      if (isRenderStatsEnabled) {
+        startTime = System.nanoTime();
+        uploadTime0 = stats.uploadTime;
+        sortTime0 = stats.sortTime;
+      }
+
       PMatrix3D modelview0 = null;
       PMatrix3D modelviewInv0 = null;
       if (flushMode == FLUSH_WHEN_FULL) {
@@ -2658,6 +2820,18 @@ public class PGraphicsOpenGL extends PGraphics {
         updateProjmodelview();
       }
 
+      if (isRenderStatsEnabled) {
+        stats.addFlush(cause);
+        stats.vertices += tessGeo.polyVertexCount + tessGeo.lineVertexCount +
+                          tessGeo.pointVertexCount;
+        stats.indices += tessGeo.polyIndexCount + tessGeo.lineIndexCount +
+                         tessGeo.pointIndexCount;
+        if (1 < texCache.size) stats.texCacheBreaks += texCache.size - 1;
+        stats.drawTime += System.nanoTime() - startTime -
+                          (stats.uploadTime - uploadTime0) -
+                          (stats.sortTime - sortTime0);
+      }
+
       loaded = false;
     }
 
@@ -2666,6 +2840,12 @@ public class PGraphicsOpenGL extends PGraphics {
   }
 
 
+  protected void flush(int cause) {
+    flushCause = cause;
+    flush();
+  }
+
+
   protected void flushPixels() {
     drawPixels(mx1, my1, mx2 - mx1, my2 - my1);
     modified = false;
@@ -2684,7 +2864,9 @@ public class PGraphicsOpenGL extends PGraphics {
 
       // If the renderer is 2D, then lights should always be false,
       // so no need to worry about that.
-      PShader shader = getPolyShader(lights, tex != null);
+      PShader shader = tex != null && tex.distanceField ?
+                       getDistanceFieldShader() :
+                       getPolyShader(lights, tex != null);
       shader.bind();
 
       int first = texCache.firstCache[i];
@@ -2698,30 +2880,39 @@ public class PGraphicsOpenGL extends PGraphics {
         int voffset = cache.vertexOffset[n];
 
         shader.setVertexAttribute(bufPolyVertex.glId, 4, PGL.FLOAT, 0,
+                                  bufPolyVertex.offset +
                                   4 * voffset * PGL.SIZEOF_FLOAT);
         shader.setColorAttribute(bufPolyColor.glId, 4, PGL.UNSIGNED_BYTE, 0,
+                                 bufPolyColor.offset +
                                  4 * voffset * PGL.SIZEOF_BYTE);
 
         if (lights) {
           shader.setNormalAttribute(bufPolyNormal.glId, 3, PGL.FLOAT, 0,
+                                    bufPolyNormal.offset +
                                     3 * voffset * PGL.SIZEOF_FLOAT);
           shader.setAmbientAttribute(bufPolyAmbient.glId, 4, PGL.UNSIGNED_BYTE, 0,
+                                     bufPolyAmbient.offset +
                                      4 * voffset * PGL.SIZEOF_BYTE);
           shader.setSpecularAttribute(bufPolySpecular.glId, 4, PGL.UNSIGNED_BYTE, 0,
+                                      bufPolySpecular.offset +
                                       4 * voffset * PGL.SIZEOF_BYTE);
           shader.setEmissiveAttribute(bufPolyEmissive.glId, 4, PGL.UNSIGNED_BYTE, 0,
+                                      bufPolyEmissive.offset +
                                       4 * voffset * PGL.SIZEOF_BYTE);
           shader.setShininessAttribute(bufPolyShininess.glId, 1, PGL.FLOAT, 0,
+                                       bufPolyShininess.offset +
                                        voffset * PGL.SIZEOF_FLOAT);
         }
 
         if (lights || needNormals) {
           shader.setNormalAttribute(bufPolyNormal.glId, 3, PGL.FLOAT, 0,
+                                    bufPolyNormal.offset +
                                     3 * voffset * PGL.SIZEOF_FLOAT);
         }
 
         if (tex != null || needTexCoords) {
           shader.setTexcoordAttribute(bufPolyTexcoord.glId, 2, PGL.FLOAT, 0,
+                                      bufPolyTexcoord.offset +
                                       2 * voffset * PGL.SIZEOF_FLOAT);
           shader.setTexture(tex);
         }
@@ -2731,10 +2922,12 @@ public class PGraphicsOpenGL extends PGraphics {
           attrib.bind(pgl);
           shader.setAttributeVBO(attrib.glLoc, attrib.buf.glId,
                                  attrib.tessSize, attrib.type,
-                                 attrib.isColor(), 0, attrib.sizeInBytes(voffset));
+                                 attrib.isColor(), 0, attrib.buf.offset +
+                                 attrib.sizeInBytes(voffset));
         }
 
-        shader.draw(bufPolyIndex.glId, icount, ioffset);
+        shader.draw(bufPolyIndex.glId, icount,
+                    bufPolyIndex.offset / PGL.SIZEOF_INDEX + ioffset);
       }
 
       for (VertexAttribute attrib: polyAttribs.values()) {
@@ -2785,34 +2978,45 @@ public class PGraphicsOpenGL extends PGraphics {
 
       // If the renderer is 2D, then lights should always be false,
       // so no need to worry about that.
-      PShader shader = getPolyShader(lights, tex != null);
+      PShader shader = tex != null && tex.distanceField ?
+                       getDistanceFieldShader() :
+                       getPolyShader(lights, tex != null);
       shader.bind();
 
       shader.setVertexAttribute(bufPolyVertex.glId, 4, PGL.FLOAT, 0,
+                                bufPolyVertex.offset +
                                 4 * voffset * PGL.SIZEOF_FLOAT);
       shader.setColorAttribute(bufPolyColor.glId, 4, PGL.UNSIGNED_BYTE, 0,
+                               bufPolyColor.offset +
                                4 * voffset * PGL.SIZEOF_BYTE);
 
       if (lights) {
         shader.setNormalAttribute(bufPolyNormal.glId, 3, PGL.FLOAT, 0,
+                                  bufPolyNormal.offset +
                                   3 * voffset * PGL.SIZEOF_FLOAT);
         shader.setAmbientAttribute(bufPolyAmbient.glId, 4, PGL.UNSIGNED_BYTE, 0,
+                                   bufPolyAmbient.offset +
                                    4 * voffset * PGL.SIZEOF_BYTE);
         shader.setSpecularAttribute(bufPolySpecular.glId, 4, PGL.UNSIGNED_BYTE, 0,
+                                    bufPolySpecular.offset +
                                     4 * voffset * PGL.SIZEOF_BYTE);
         shader.setEmissiveAttribute(bufPolyEmissive.glId, 4, PGL.UNSIGNED_BYTE, 0,
+                                    bufPolyEmissive.offset +
                                     4 * voffset * PGL.SIZEOF_BYTE);
         shader.setShininessAttribute(bufPolyShininess.glId, 1, PGL.FLOAT, 0,
+                                     bufPolyShininess.offset +
                                      voffset * PGL.SIZEOF_FLOAT);
       }
 
       if (lights || needNormals) {
         shader.setNormalAttribute(bufPolyNormal.glId, 3, PGL.FLOAT, 0,
+                                  bufPolyNormal.offset +
                                   3 * voffset * PGL.SIZEOF_FLOAT);
       }
 
       if (tex != null || needTexCoords) {
         shader.setTexcoordAttribute(bufPolyTexcoord.glId, 2, PGL.FLOAT, 0,
+                                    bufPolyTexcoord.offset +
                                     2 * voffset * PGL.SIZEOF_FLOAT);
         shader.setTexture(tex);
       }
@@ -2822,10 +3026,12 @@ public class PGraphicsOpenGL extends PGraphics {
         attrib.bind(pgl);
         shader.setAttributeVBO(attrib.glLoc, attrib.buf.glId,
                                attrib.tessSize, attrib.type,
-                               attrib.isColor(), 0, attrib.sizeInBytes(voffset));
+                               attrib.isColor(), 0, attrib.buf.offset +
+                               attrib.sizeInBytes(voffset));
       }
 
-      shader.draw(bufPolyIndex.glId, icount, ioffset);
+      shader.draw(bufPolyIndex.glId, icount,
+                  bufPolyIndex.offset / PGL.SIZEOF_INDEX + ioffset);
 
       for (VertexAttribute attrib: polyAttribs.values()) {
         if (attrib.active(shader)) attrib.unbind(pgl);
@@ -3057,13 +3263,17 @@ public class PGraphicsOpenGL extends PGraphics {
       int voffset = cache.vertexOffset[n];
 
       shader.setVertexAttribute(bufLineVertex.glId, 4, PGL.FLOAT, 0,
+                                bufLineVertex.offset +
                                 4 * voffset * PGL.SIZEOF_FLOAT);
       shader.setColorAttribute(bufLineColor.glId, 4, PGL.UNSIGNED_BYTE, 0,
+                               bufLineColor.offset +
                                4 * voffset * PGL.SIZEOF_BYTE);
       shader.setLineAttribute(bufLineAttrib.glId, 4, PGL.FLOAT, 0,
+                              bufLineAttrib.offset +
                               4 * voffset * PGL.SIZEOF_FLOAT);
 
-      shader.draw(bufLineIndex.glId, icount, ioffset);
+      shader.draw(bufLineIndex.glId, icount,
+                  bufLineIndex.offset / PGL.SIZEOF_INDEX + ioffset);
     }
 
     shader.unbind();
@@ -3158,13 +3368,17 @@ public class PGraphicsOpenGL extends PGraphics {
       int voffset = cache.vertexOffset[n];
 
       shader.setVertexAttribute(bufPointVertex.glId, 4, PGL.FLOAT, 0,
+                                bufPointVertex.offset +
                                 4 * voffset * PGL.SIZEOF_FLOAT);
       shader.setColorAttribute(bufPointColor.glId, 4, PGL.UNSIGNED_BYTE, 0,
+                               bufPointColor.offset +
                                4 * voffset * PGL.SIZEOF_BYTE);
       shader.setPointAttribute(bufPointAttrib.glId, 2, PGL.FLOAT, 0,
+                               bufPointAttrib.offset +
                                2 * voffset * PGL.SIZEOF_FLOAT);
 
-      shader.draw(bufPointIndex.glId, icount, ioffset);
+      shader.draw(bufPointIndex.glId, icount,
+                  bufPointIndex.offset / PGL.SIZEOF_INDEX + ioffset);
     }
 
     shader.unbind();
@@ -3713,6 +3927,31 @@ public class PGraphicsOpenGL extends PGraphics {
   }
 
 
+  @Override
+  public void shape(PShape shape, int count) {
+    if (shape.isVisible() && 0 < count) {
+      flush();
+
+      if (shapeMode == CENTER) {
+        pushMatrix();
+        translate(-shape.getWidth() / 2, -shape.getHeight() / 2);
+      }
+
+      if (shape instanceof PShapeOpenGL) {
+        ((PShapeOpenGL) shape).drawInstances(this, count);
+      } else {
+        for (int i = 0; i < count; i++) {
+          shape.draw(this);
+        }
+      }
+
+      if (shapeMode == CENTER) {
+        popMatrix();
+      }
+    }
+  }
+
+
   //////////////////////////////////////////////////////////////
 
   // SHAPE I/O
@@ -3757,6 +3996,15 @@ public class PGraphicsOpenGL extends PGraphics {
     return mode == MODEL || (mode == SHAPE && PGL.SHAPE_TEXT_SUPPORTED);
   }
 
+  /**
+   * Rasterizes the glyphs of all the characters in charset on a background
+   * thread, so drawing text with font in MODEL mode does not stall the
+   * first time they appear. Useful with large character sets, such as CJK.
+   */
+  public void textPrewarm(PFont font, String charset) {
+    loadFontTexture(font).prewarm(charset);
+  }
+
   // public void textSize(float size)
 
   // public float textWidth(char c)
@@ -3800,6 +4048,12 @@ public class PGraphicsOpenGL extends PGraphics {
       defaultFontOrDeath("text");
     }
 
+    if (textMode == MODEL && textLayout == null &&
+        getHint(ENABLE_TEXT_LAYOUT_CACHE)) {
+      textLayoutImpl(str, x, y);
+      return;
+    }
+
     int sign = cameraUp ? -1 : +1;
 
     int length = str.length();
@@ -3846,6 +4100,29 @@ public class PGraphicsOpenGL extends PGraphics {
   }
 
 
+  // Draws the layout of str from the cache, or draws str while recording
+  // its layout.
+  protected void textLayoutImpl(String str, float x, float y) {
+    if (textLayouts == null) textLayouts = new TextLayout.Cache();
+    FontTexture fontTex = loadFontTexture(textFont);
+    TextLayout layout = textLayouts.get(this, str, fontTex);
+    if (layout != null) {
+      if (isRenderStatsEnabled) stats.textLayoutHits++;
+      textModelImpl(null, 0, 0, x, y, layout);
+      return;
+    }
+
+    if (isRenderStatsEnabled) stats.textLayoutMisses++;
+    textLayout = new TextLayout(fontTex, x, y);
+    try {
+      text(str, x, y);
+      textLayouts.put(this, str, textLayout);
+    } finally {
+      textLayout = null;
+    }
+  }
+
+
   @Override
   public void text(String str, float x1, float y1, float x2, float y2) {
     if (textFont == null) {
@@ -4004,57 +4281,84 @@ public class PGraphicsOpenGL extends PGraphics {
   protected void textLineImpl(char buffer[], int start, int stop,
                               float x, float y) {
     if (textMode == MODEL) {
-      textTex = getFontTexture(textFont);
+      textModelImpl(buffer, start, stop, x, y, null);
+    } else if (textMode == SHAPE) {
+      super.textLineImpl(buffer, start, stop, x, y);
+    }
+  }
 
-      if (textTex == null || textTex.contextIsOutdated()) {
-        textTex = new FontTexture(this, textFont, is3D());
-        setFontTexture(textFont, textTex);
-      }
 
-      textTex.begin();
+  // Draws the chars [start, stop) of buffer at x, y in MODEL mode, or the
+  // quads of layout if not null.
+  protected void textModelImpl(char buffer[], int start, int stop,
+                               float x, float y, TextLayout layout) {
+    FontTexture fontTex = loadFontTexture(textFont);
 
-      // Saving style parameters modified by text rendering.
-      int savedTextureMode = textureMode;
-      boolean savedStroke = stroke;
-      float savedNormalX = normalX;
-      float savedNormalY = normalY;
-      float savedNormalZ = normalZ;
-      boolean savedTint = tint;
-      int savedTintColor = tintColor;
-      int savedBlendMode = blendMode;
+    if (textTex != null && textTex != fontTex) {
+      // The glyphs added with the previous font are in the buffers
+      textTex.updateTexture();
+    }
+    textTex = fontTex;
 
-      // Setting style used in text rendering.
-      textureMode = NORMAL;
-      stroke = false;
-      normalX = 0;
-      normalY = 0;
-      normalZ = 1;
-      tint = true;
-      tintColor = fillColor;
+    textTex.begin(this);
 
-      blendMode(BLEND);
+    // Saving style parameters modified by text rendering.
+    int savedTextureMode = textureMode;
+    boolean savedStroke = stroke;
+    float savedNormalX = normalX;
+    float savedNormalY = normalY;
+    float savedNormalZ = normalZ;
+    boolean savedTint = tint;
+    int savedTintColor = tintColor;
+    int savedBlendMode = blendMode;
 
-      super.textLineImpl(buffer, start, stop, x, y);
+    // Setting style used in text rendering.
+    textureMode = NORMAL;
+    stroke = false;
+    normalX = 0;
+    normalY = 0;
+    normalZ = 1;
+    tint = true;
+    tintColor = fillColor;
+
+    blendMode(BLEND);
+
+    if (textTex.distanceField != null) {
+      // The outline is smoothed over one pixel on the screen. The distance
+      // field shader is picked when the text is flushed, so the lines are
+      // batched together while they have the same smoothing.
+      float scale = textSize / textFont.getSize() *
+        PApplet.sqrt(PApplet.abs(modelview.m00 * modelview.m11 -
+                                 modelview.m01 * modelview.m10));
+      float smoothing = PApplet.min(0.5f, 0.25f / (textTex.padding * scale));
+      if (smoothing != distanceFieldSmoothing) {
+        flush();
+        distanceFieldSmoothing = smoothing;
+      }
+    }
 
-      // Restoring original style.
-      textureMode  = savedTextureMode;
-      stroke = savedStroke;
-      normalX = savedNormalX;
-      normalY = savedNormalY;
-      normalZ = savedNormalZ;
-      tint = savedTint;
-      tintColor = savedTintColor;
-
-      // Note that if the user is using a blending mode different from
-      // BLEND, and has a bunch of continuous text rendering, the performance
-      // won't be optimal because at the end of each text() call the geometry
-      // will be flushed when restoring the user's blend.
-      blendMode(savedBlendMode);
-
-      textTex.end();
-    } else if (textMode == SHAPE) {
+    if (layout == null) {
       super.textLineImpl(buffer, start, stop, x, y);
+    } else {
+      textLayoutModelImpl(layout, x, y);
     }
+
+    // Restoring original style.
+    textureMode  = savedTextureMode;
+    stroke = savedStroke;
+    normalX = savedNormalX;
+    normalY = savedNormalY;
+    normalZ = savedNormalZ;
+    tint = savedTint;
+    tintColor = savedTintColor;
+
+    // Note that if the user is using a blending mode different from
+    // BLEND, and has a bunch of continuous text rendering, the performance
+    // won't be optimal because at the end of each text() call the geometry
+    // will be flushed when restoring the user's blend.
+    blendMode(savedBlendMode);
+
+    textTex.end();
   }
 
 
@@ -4070,10 +4374,12 @@ public class PGraphicsOpenGL extends PGraphics {
           tinfo = textTex.addToTexture(this, glyph);
         }
 
-        float high    = glyph.height     / (float) textFont.getSize();
-        float bwidth  = glyph.width      / (float) textFont.getSize();
-        float lextent = glyph.leftExtent / (float) textFont.getSize();
-        float textent = glyph.topExtent  / (float) textFont.getSize();
+        // Distance fields extend beyond the glyph
+        int pad = textTex.padding;
+        float high    = (glyph.height + 2 * pad) / (float) textFont.getSize();
+        float bwidth  = (glyph.width + 2 * pad)  / (float) textFont.getSize();
+        float lextent = (glyph.leftExtent - pad) / (float) textFont.getSize();
+        float textent = (glyph.topExtent + pad)  / (float) textFont.getSize();
 
         // The default text setting assumes an Y axis pointing down, so
         // inverting in the the case Y points up
@@ -4084,6 +4390,7 @@ public class PGraphicsOpenGL extends PGraphics {
         float x2 = x1 + bwidth * textSize;
         float y2 = y1 + sign * high * textSize;
 
+        if (textLayout != null) textLayout.add(tinfo, x1, y1, x2, y2);
         textCharModelImpl(tinfo, x1, y1, x2, y2);
       } else if (textMode == SHAPE) {
         textCharShapeImpl(ch, x, y);
@@ -4092,6 +4399,56 @@ public class PGraphicsOpenGL extends PGraphics {
   }
 
 
+  // Returns the texture of font, which is created again if the context was
+  // lost or if it doesn't match hint(ENABLE_DISTANCE_FIELD_TEXT).
+  protected FontTexture loadFontTexture(PFont font) {
+    boolean fields = distanceFieldText();
+    FontTexture fontTex = getFontTexture(font);
+    if (fontTex == null || fontTex.contextIsOutdated() ||
+        (fontTex.distanceField != null) != fields) {
+      DistanceField field = null;
+      if (fields) {
+        field = new DistanceField(font, PGL.DISTANCE_FIELD_SPREAD,
+                                  distanceFieldFile(font));
+      }
+      fontTex = new FontTexture(this, font, is3D(), field);
+      setFontTexture(font, fontTex);
+    }
+    return fontTex;
+  }
+
+
+  protected boolean distanceFieldText() {
+    return getHint(ENABLE_DISTANCE_FIELD_TEXT);
+  }
+
+
+  // File in the cache folder of the app where the distance fields of font
+  // are kept between runs, or null if there is no app context.
+  protected File distanceFieldFile(PFont font) {
+    if (parent == null || parent.getSurface() == null) return null;
+    Context context = parent.getContext();
+    if (context == null) return null;
+    String name = font.getName() + "-" + font.getSize() + ".sdf";
+    return new File(context.getCacheDir(), name.replaceAll("[^\\w.-]", "_"));
+  }
+
+
+  // Shader of the distance field text being flushed, used instead of the
+  // polygon shader for the geometry textured with distance fields.
+  protected PShader getDistanceFieldShader() {
+    PGraphicsOpenGL ppg = getPrimaryPG();
+    if (ppg.distanceFieldShader == null) {
+      ppg.distanceFieldShader = loadShaderFromURL(distanceFieldShaderFragURL,
+                                                  defTextureShaderVertURL);
+    }
+    PShader shader = ppg.distanceFieldShader;
+    updateShader(shader);
+    shader.set("smoothing", distanceFieldSmoothing);
+    return shader;
+  }
+
+
   protected void textCharModelImpl(FontTexture.TextureInfo info,
                                    float x0, float y0,
                                    float x1, float y1) {
@@ -4105,6 +4462,36 @@ public class PGraphicsOpenGL extends PGraphics {
   }
 
 
+  // Draws the quads of layout at x, y, in one shape for each run of glyphs
+  // in the same texture.
+  protected void textLayoutModelImpl(TextLayout layout, float x, float y) {
+    FontTexture.TextureInfo[] infos = layout.infos;
+    float[] quads = layout.quads;
+    int first = 0;
+    while (first < layout.count) {
+      int last = first + 1;
+      while (last < layout.count &&
+             infos[last].texIndex == infos[first].texIndex) last++;
+
+      beginShape(QUADS);
+      texture(textTex.getTexture(infos[first]));
+      for (int i = first; i < last; i++) {
+        FontTexture.TextureInfo info = infos[i];
+        float x0 = x + quads[4 * i + 0];
+        float y0 = y + quads[4 * i + 1];
+        float x1 = x + quads[4 * i + 2];
+        float y1 = y + quads[4 * i + 3];
+        vertex(x0, y0, info.u0, info.v0);
+        vertex(x1, y0, info.u1, info.v0);
+        vertex(x1, y1, info.u1, info.v1);
+        vertex(x0, y1, info.u0, info.v1);
+      }
+      endShape();
+      first = last;
+    }
+  }
+
+
   /**
    * Ported from the implementation of textCharShapeImpl() in 1.5.1
    *
@@ -7479,6 +7866,7 @@ public class PGraphicsOpenGL extends PGraphics {
     anisoSamplingSupported = pgl.hasAnisoSamplingSupport();
     readBufferSupported = pgl.hasReadBuffer();
     drawBufferSupported = pgl.hasDrawBuffer();
+    instancingSupported = pgl.hasInstancing();
 
     try {
       pgl.blendEquation(PGL.FUNC_ADD);
@@ -7689,6 +8077,45 @@ public class PGraphicsOpenGL extends PGraphics {
   }
 
 
+  // Returns true if instanced draw calls can be used to render polygons with
+  // the current shader and lighting setup, otherwise the instances need to be
+  // replicated on the CPU.
+  protected boolean canDrawInstanced() {
+    if (!instancingSupported) return false;
+    if (polyShader != null) {
+      // A custom shader without instance attributes can't be swapped for the
+      // default instanced one, so it draws the replicated instances instead
+      updateShader(polyShader);
+      return polyShader.accessInstanceAttribs();
+    }
+    // There are no default instanced shaders with lighting
+    return !lights;
+  }
+
+
+  protected PShader getInstancedPolyShader(boolean tex) {
+    PShader shader;
+    PGraphicsOpenGL ppg = getPrimaryPG();
+    if (polyShader != null && polyShader.accessInstanceAttribs()) {
+      shader = polyShader;
+    } else if (tex) {
+      if (ppg.defInstTextureShader == null) {
+        ppg.defInstTextureShader = loadShaderFromURL(defTextureShaderFragURL,
+                                                     defInstTextureShaderVertURL);
+      }
+      shader = ppg.defInstTextureShader;
+    } else {
+      if (ppg.defInstColorShader == null) {
+        ppg.defInstColorShader = loadShaderFromURL(defColorShaderFragURL,
+                                                   defInstColorShaderVertURL);
+      }
+      shader = ppg.defInstColorShader;
+    }
+    updateShader(shader);
+    return shader;
+  }
+
+
   protected void updateShader(PShader shader) {
     shader.setRenderer(this);
     shader.loadAttributes();
@@ -9733,6 +10160,20 @@ public class PGraphicsOpenGL extends PGraphics {
 
   // Holds tessellated data for polygon, line and point geometry.
   static protected class TessGeometry {
+    // Byte offsets of the polygon attributes in the interleaved layout:
+    // position (4 floats), color, normal (3 normalized bytes plus padding),
+    // texture coordinates (2 floats), ambient, specular, emissive colors,
+    // and shininess (1 float).
+    static final int POLY_VERTEX_OFFSET    = 0;
+    static final int POLY_COLOR_OFFSET     = 16;
+    static final int POLY_NORMAL_OFFSET    = 20;
+    static final int POLY_TEXCOORD_OFFSET  = 24;
+    static final int POLY_AMBIENT_OFFSET   = 32;
+    static final int POLY_SPECULAR_OFFSET  = 36;
+    static final int POLY_EMISSIVE_OFFSET  = 40;
+    static final int POLY_SHININESS_OFFSET = 44;
+    static final int POLY_PACKED_SIZE      = 48;
+
     int renderMode;
     PGraphicsOpenGL pg;
     AttributeMap polyAttribs;
@@ -9756,6 +10197,10 @@ public class PGraphicsOpenGL extends PGraphics {
     // Generic attributes
     HashMap<String, Buffer> polyAttribBuffers = new HashMap<String, Buffer>();
 
+    // Polygon data interleaved in a single buffer
+    int polyStride;
+    ByteBuffer polyInterleavedBuffer;
+
     int polyIndexCount;
     int firstPolyIndex;
     int lastPolyIndex;
@@ -10210,6 +10655,57 @@ public class PGraphicsOpenGL extends PGraphics {
       }
     }
 
+    protected void updatePolyInterleavedBuffer() {
+      polyStride = PApplet.max(POLY_PACKED_SIZE,
+                               (PGL.INTERLEAVED_VERTEX_STRIDE + 3) & ~3);
+      updatePolyInterleavedBuffer(0, polyVertexCount);
+    }
+
+    // Packs all the per-vertex polygon attributes, except for the custom
+    // ones, into consecutive structures of polyStride bytes.
+    protected void updatePolyInterleavedBuffer(int offset, int size) {
+      if (polyStride == 0) polyStride = POLY_PACKED_SIZE;
+      int bytes = polyStride * polyVertices.length / 4;
+      if (polyInterleavedBuffer == null ||
+          polyInterleavedBuffer.capacity() < bytes) {
+        polyInterleavedBuffer = PGL.allocateByteBuffer(bytes);
+        polyInterleavedBuffer.order(ByteOrder.nativeOrder());
+      }
+
+      ByteBuffer buf = polyInterleavedBuffer;
+      for (int i = offset; i < offset + size; i++) {
+        int pos = i * polyStride;
+        int vert = 4 * i;
+        int norm = 3 * i;
+        int tex = 2 * i;
+        buf.putFloat(pos + POLY_VERTEX_OFFSET,      polyVertices[vert++]);
+        buf.putFloat(pos + POLY_VERTEX_OFFSET + 4,  polyVertices[vert++]);
+        buf.putFloat(pos + POLY_VERTEX_OFFSET + 8,  polyVertices[vert++]);
+        buf.putFloat(pos + POLY_VERTEX_OFFSET + 12, polyVertices[vert  ]);
+        buf.putInt(pos + POLY_COLOR_OFFSET, polyColors[i]);
+        packNormal(buf, pos + POLY_NORMAL_OFFSET, polyNormals[norm++],
+                   polyNormals[norm++], polyNormals[norm]);
+        buf.putFloat(pos + POLY_TEXCOORD_OFFSET,     polyTexCoords[tex++]);
+        buf.putFloat(pos + POLY_TEXCOORD_OFFSET + 4, polyTexCoords[tex  ]);
+        buf.putInt(pos + POLY_AMBIENT_OFFSET, polyAmbient[i]);
+        buf.putInt(pos + POLY_SPECULAR_OFFSET, polySpecular[i]);
+        buf.putInt(pos + POLY_EMISSIVE_OFFSET, polyEmissive[i]);
+        buf.putFloat(pos + POLY_SHININESS_OFFSET, polyShininess[i]);
+      }
+    }
+
+    // Stores the normal as three signed bytes, the shaders normalize it anyways
+    // so only its direction needs to be preserved.
+    static protected void packNormal(ByteBuffer buf, int pos,
+                                     float nx, float ny, float nz) {
+      float len = PApplet.sqrt(nx * nx + ny * ny + nz * nz);
+      float s = 0 < len ? 127 / len : 0;
+      buf.put(pos,     (byte) PApplet.round(nx * s));
+      buf.put(pos + 1, (byte) PApplet.round(ny * s));
+      buf.put(pos + 2, (byte) PApplet.round(nz * s));
+      buf.put(pos + 3, (byte) 0);
+    }
+
     protected void updatePolyIndicesBuffer() {
       updatePolyIndicesBuffer(0, polyIndexCount);
     }
@@ -11532,6 +12028,162 @@ public class PGraphicsOpenGL extends PGraphics {
         }
       }
     }
+
+    // -----------------------------------------------------------------
+    //
+    // Instance replication
+
+    // Appends a copy of the poly geometry stored in the index cache block n
+    // of src, transformed by tr (if not null) and with its colors multiplied
+    // by tint (in native order). Returns the index cache block the copy went
+    // into.
+    int addPolyCopy(TessGeometry src, int n, PMatrix3D tr, int tint) {
+      IndexCache srcCache = src.polyIndexCache;
+      int icount = srcCache.indexCount[n];
+      int vcount = srcCache.vertexCount[n];
+      int ioffset = srcCache.indexOffset[n];
+      int voffset = srcCache.vertexOffset[n];
+
+      int index = polyIndexCache.getLast();
+      if (PGL.MAX_VERTEX_INDEX1 <= polyIndexCache.vertexCount[index] + vcount) {
+        index = polyIndexCache.addNew();
+      }
+      int base = polyIndexCache.vertexCount[index];
+
+      polyVertexCheck(vcount);
+      int first = firstPolyVertex;
+      PApplet.arrayCopy(src.polyVertices, 4 * voffset,
+                        polyVertices, 4 * first, 4 * vcount);
+      PApplet.arrayCopy(src.polyNormals, 3 * voffset,
+                        polyNormals, 3 * first, 3 * vcount);
+      PApplet.arrayCopy(src.polyTexCoords, 2 * voffset,
+                        polyTexCoords, 2 * first, 2 * vcount);
+      PApplet.arrayCopy(src.polyAmbient, voffset,
+                        polyAmbient, first, vcount);
+      PApplet.arrayCopy(src.polySpecular, voffset,
+                        polySpecular, first, vcount);
+      PApplet.arrayCopy(src.polyEmissive, voffset,
+                        polyEmissive, first, vcount);
+      PApplet.arrayCopy(src.polyShininess, voffset,
+                        polyShininess, first, vcount);
+      for (int i = 0; i < vcount; i++) {
+        polyColors[first + i] = multiplyColor(src.polyColors[voffset + i], tint);
+      }
+      copyPolyAttribs(src, voffset, first, vcount);
+      if (tr != null) applyMatrixOnPolyGeometry(tr, first, lastPolyVertex);
+
+      polyIndexCheck(icount);
+      for (int i = 0; i < icount; i++) {
+        polyIndices[firstPolyIndex + i] =
+          (short)(base + src.polyIndices[ioffset + i]);
+      }
+      polyIndexCache.incCounts(index, icount, vcount);
+
+      return index;
+    }
+
+    int addLineCopy(TessGeometry src, int n, PMatrix3D tr, int tint) {
+      IndexCache srcCache = src.lineIndexCache;
+      int icount = srcCache.indexCount[n];
+      int vcount = srcCache.vertexCount[n];
+      int ioffset = srcCache.indexOffset[n];
+      int voffset = srcCache.vertexOffset[n];
+
+      int index = lineIndexCache.getLast();
+      if (PGL.MAX_VERTEX_INDEX1 <= lineIndexCache.vertexCount[index] + vcount) {
+        index = lineIndexCache.addNew();
+      }
+      int base = lineIndexCache.vertexCount[index];
+
+      lineVertexCheck(vcount);
+      int first = firstLineVertex;
+      PApplet.arrayCopy(src.lineVertices, 4 * voffset,
+                        lineVertices, 4 * first, 4 * vcount);
+      PApplet.arrayCopy(src.lineDirections, 4 * voffset,
+                        lineDirections, 4 * first, 4 * vcount);
+      for (int i = 0; i < vcount; i++) {
+        lineColors[first + i] = multiplyColor(src.lineColors[voffset + i], tint);
+      }
+      if (tr != null) applyMatrixOnLineGeometry(tr, first, lastLineVertex);
+
+      lineIndexCheck(icount);
+      for (int i = 0; i < icount; i++) {
+        lineIndices[firstLineIndex + i] =
+          (short)(base + src.lineIndices[ioffset + i]);
+      }
+      lineIndexCache.incCounts(index, icount, vcount);
+
+      return index;
+    }
+
+    int addPointCopy(TessGeometry src, int n, PMatrix3D tr, int tint) {
+      IndexCache srcCache = src.pointIndexCache;
+      int icount = srcCache.indexCount[n];
+      int vcount = srcCache.vertexCount[n];
+      int ioffset = srcCache.indexOffset[n];
+      int voffset = srcCache.vertexOffset[n];
+
+      int index = pointIndexCache.getLast();
+      if (PGL.MAX_VERTEX_INDEX1 <= pointIndexCache.vertexCount[index] + vcount) {
+        index = pointIndexCache.addNew();
+      }
+      int base = pointIndexCache.vertexCount[index];
+
+      pointVertexCheck(vcount);
+      int first = firstPointVertex;
+      PApplet.arrayCopy(src.pointVertices, 4 * voffset,
+                        pointVertices, 4 * first, 4 * vcount);
+      PApplet.arrayCopy(src.pointOffsets, 2 * voffset,
+                        pointOffsets, 2 * first, 2 * vcount);
+      for (int i = 0; i < vcount; i++) {
+        pointColors[first + i] = multiplyColor(src.pointColors[voffset + i], tint);
+      }
+      if (tr != null) applyMatrixOnPointGeometry(tr, first, lastPointVertex);
+
+      pointIndexCheck(icount);
+      for (int i = 0; i < icount; i++) {
+        pointIndices[firstPointIndex + i] =
+          (short)(base + src.pointIndices[ioffset + i]);
+      }
+      pointIndexCache.incCounts(index, icount, vcount);
+
+      return index;
+    }
+
+    // Copies the custom attributes that this geometry shares with src.
+    void copyPolyAttribs(TessGeometry src, int srcOffset, int dstOffset,
+                         int count) {
+      for (VertexAttribute attrib: polyAttribs.values()) {
+        int size = attrib.tessSize;
+        Object srcValues, dstValues;
+        if (attrib.type == PGL.FLOAT) {
+          srcValues = src.fpolyAttribs.get(attrib.name);
+          dstValues = fpolyAttribs.get(attrib.name);
+        } else if (attrib.type == PGL.INT) {
+          srcValues = src.ipolyAttribs.get(attrib.name);
+          dstValues = ipolyAttribs.get(attrib.name);
+        } else {
+          srcValues = src.bpolyAttribs.get(attrib.name);
+          dstValues = bpolyAttribs.get(attrib.name);
+        }
+        if (srcValues != null && dstValues != null) {
+          PApplet.arrayCopy(srcValues, size * srcOffset,
+                            dstValues, size * dstOffset, size * count);
+        }
+      }
+    }
+
+    // Component-wise product of two colors, independent of the byte order.
+    static int multiplyColor(int c0, int c1) {
+      if (c1 == 0xFFFFFFFF) return c0;
+      int res = 0;
+      for (int shift = 0; shift < 32; shift += 8) {
+        int a = (c0 >>> shift) & 0xFF;
+        int b = (c1 >>> shift) & 0xFF;
+        res |= ((a * b + 127) / 255) << shift;
+      }
+      return res;
+    }
   }
 
   // Generates tessellated geometry given a batch of input vertices.
@@ -11547,6 +12199,11 @@ public class PGraphicsOpenGL extends PGraphics {
     PGL.Tessellator gluTess;
     TessellatorCallback callback;
 
+    // Tessellator of the polygon fills, which is gluTess or, after
+    // hint(ENABLE_TESSELLATION_CACHE), tessCache.
+    PGL.Tessellator polyTess;
+    TessellationCache tessCache;
+
     boolean fill;
     boolean stroke;
     int strokeColor;
@@ -11673,6 +12330,147 @@ public class PGraphicsOpenGL extends PGraphics {
       pg.curveVertexCount = 0;
     }
 
+    // -----------------------------------------------------------------
+    //
+    // Parallel tessellation
+
+    static final int PARALLEL_TRIANGLES = 0;
+    static final int PARALLEL_QUADS     = 1;
+    static final int PARALLEL_LINES3D   = 2;
+
+    static final int PARALLEL_TESS_COUNT =
+      PApplet.max(1, Runtime.getRuntime().availableProcessors());
+    static ExecutorService parallelExecutor;
+
+    // Worker tessellators, and the geometry slices they write into.
+    Tessellator[] workers;
+    TessGeometry[] slices;
+
+    boolean parallelBatch(int nInVert) {
+      return 1 < PARALLEL_TESS_COUNT && in.renderMode == IMMEDIATE &&
+             PGL.MIN_PARALLEL_TESS_VERTICES <= nInVert &&
+             pg != null && pg.getHint(ENABLE_PARALLEL_TESSELLATION);
+    }
+
+    static synchronized ExecutorService getParallelExecutor() {
+      if (parallelExecutor == null) {
+        // The calling thread tessellates one of the ranges itself, so the
+        // pool only needs the remaining cores.
+        parallelExecutor = Executors.newFixedThreadPool(PARALLEL_TESS_COUNT - 1,
+                                                        new ThreadFactory() {
+          @Override
+          public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "Processing tessellator");
+            t.setDaemon(true);
+            return t;
+          }
+        });
+      }
+      return parallelExecutor;
+    }
+
+    // Splits the count primitives of the given kind in contiguous ranges,
+    // which are tessellated concurrently into separate slices. The slices
+    // are then appended to tess in range order, so the result does not
+    // depend on how the ranges were scheduled.
+    void tessellateParallel(final int kind, int count, final boolean clamp) {
+      int n = PARALLEL_TESS_COUNT;
+      initWorkers(n);
+
+      ExecutorService executor = getParallelExecutor();
+      ArrayList<Future<?>> results = new ArrayList<Future<?>>();
+      for (int w = 1; w < n; w++) {
+        final Tessellator worker = workers[w];
+        final int first = (int)((long)count * w / n);
+        final int last = (int)((long)count * (w + 1) / n);
+        results.add(executor.submit(new Runnable() {
+          @Override
+          public void run() {
+            worker.tessellateRange(kind, first, last, clamp);
+          }
+        }));
+      }
+      workers[0].tessellateRange(kind, 0, (int)((long)count / n), clamp);
+      try {
+        for (Future<?> res: results) res.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new RuntimeException(e);
+      } catch (ExecutionException e) {
+        throw new RuntimeException(e.getCause());
+      }
+
+      for (int w = 0; w < n; w++) {
+        TessGeometry slice = slices[w];
+        if (kind == PARALLEL_LINES3D) {
+          IndexCache cache = slice.lineIndexCache;
+          for (int b = 0; b < cache.size; b++) {
+            if (cache.vertexCount[b] == 0) continue;
+            int index = tess.addLineCopy(slice, b, null, 0xFFFFFFFF);
+            if (firstLineIndexCache == -1) firstLineIndexCache = index;
+            lastLineIndexCache = index;
+          }
+        } else {
+          IndexCache cache = slice.polyIndexCache;
+          for (int b = 0; b < cache.size; b++) {
+            if (cache.vertexCount[b] == 0) continue;
+            int index = tess.addPolyCopy(slice, b, null, 0xFFFFFFFF);
+            if (firstPolyIndexCache == -1) firstPolyIndexCache = index;
+            lastPolyIndexCache = index;
+          }
+        }
+      }
+    }
+
+    void tessellateRange(int kind, int first, int last, boolean clamp) {
+      if (kind == PARALLEL_TRIANGLES) {
+        addTriangles(first, last, clamp);
+      } else if (kind == PARALLEL_QUADS) {
+        addQuads(first, last, clamp);
+      } else if (kind == PARALLEL_LINES3D) {
+        addLines3D(first, last);
+      }
+    }
+
+    // Sets up n worker tessellators with the same state as this one, each
+    // writing into an empty slice.
+    void initWorkers(int n) {
+      if (workers == null || workers.length < n) {
+        workers = new Tessellator[n];
+        slices = new TessGeometry[n];
+        for (int w = 0; w < n; w++) {
+          workers[w] = new Tessellator();
+          slices[w] = new TessGeometry(pg, tess.polyAttribs, IMMEDIATE);
+        }
+      }
+      for (int w = 0; w < n; w++) {
+        TessGeometry slice = slices[w];
+        slice.clear();
+        for (VertexAttribute attrib: tess.polyAttribs.values()) {
+          slice.initAttrib(attrib);
+        }
+
+        Tessellator worker = workers[w];
+        worker.setInGeometry(in);
+        worker.setTessGeometry(slice);
+        worker.setRenderer(pg);
+        worker.setTexCache(null, null);
+        worker.fill = fill;
+        worker.stroke = stroke;
+        worker.strokeColor = strokeColor;
+        worker.strokeWeight = strokeWeight;
+        worker.strokeCap = strokeCap;
+        worker.strokeJoin = strokeJoin;
+        worker.accurate2DStrokes = accurate2DStrokes;
+        worker.is2D = is2D;
+        worker.is3D = is3D;
+        worker.setTransform(transform);
+        worker.strokeVertices = strokeVertices;
+        worker.strokeColors = strokeColors;
+        worker.strokeWeights = strokeWeights;
+      }
+    }
+
     // -----------------------------------------------------------------
     //
     // Point tessellation
@@ -11981,6 +12779,16 @@ public class PGraphicsOpenGL extends PGraphics {
     }
 
     void tessellateLines3D(int lineCount) {
+      if (parallelBatch(2 * lineCount)) {
+        tessellateParallel(PARALLEL_LINES3D, lineCount, false);
+      } else {
+        addLines3D(0, lineCount);
+      }
+    }
+
+    // Tessellates the lines in the range [ln0, ln1)
+    void addLines3D(int ln0, int ln1) {
+      int lineCount = ln1 - ln0;
       // Lines are made up of 4 vertices defining the quad.
       int nvert = lineCount * 4;
       // Each stroke line has 4 vertices, defining 2 triangles, which
@@ -11996,7 +12804,7 @@ public class PGraphicsOpenGL extends PGraphics {
       firstLineIndexCache = index;
       int[] tmp = {0, 0};
       tess.lineIndexCache.setCounter(tmp);
-      for (int ln = 0; ln < lineCount; ln++) {
+      for (int ln = ln0; ln < ln1; ln++) {
         int i0 = 2 * ln + 0;
         int i1 = 2 * ln + 1;
         index = addLineSegment3D(i0, i1, i0 - 2, i1 - 1, index, null, false);
@@ -12691,19 +13499,28 @@ public class PGraphicsOpenGL extends PGraphics {
       beginTex();
       int nTri = in.vertexCount / 3;
       if (fill && 1 <= nTri) {
-        int nInInd = 3 * nTri;
-        setRawSize(nInInd);
-        int idx = 0;
         boolean clamp = clampTriangles();
-        for (int i = 0; i < 3 * nTri; i++) {
-          rawIndices[idx++] = i;
+        if (parallelBatch(3 * nTri)) {
+          tessellateParallel(PARALLEL_TRIANGLES, nTri, clamp);
+        } else {
+          addTriangles(0, nTri, clamp);
         }
-        splitRawIndices(clamp);
       }
       endTex();
       tessellateEdges();
     }
 
+    // Tessellates the triangles in the range [tr0, tr1)
+    void addTriangles(int tr0, int tr1, boolean clamp) {
+      int nInInd = 3 * (tr1 - tr0);
+      setRawSize(nInInd);
+      int idx = 0;
+      for (int i = 3 * tr0; i < 3 * tr1; i++) {
+        rawIndices[idx++] = i;
+      }
+      splitRawIndices(clamp, 3 * tr0);
+    }
+
     boolean clampTriangles() {
       boolean res = clamp2D();
       if (res) {
@@ -12845,30 +13662,39 @@ public class PGraphicsOpenGL extends PGraphics {
       beginTex();
       int quadCount = in.vertexCount / 4;
       if (fill && 1 <= quadCount) {
-        int nInInd = 6 * quadCount;
-        setRawSize(nInInd);
-        int idx = 0;
         boolean clamp = clampQuads(quadCount);
-        for (int qd = 0; qd < quadCount; qd++) {
-          int i0 = 4 * qd + 0;
-          int i1 = 4 * qd + 1;
-          int i2 = 4 * qd + 2;
-          int i3 = 4 * qd + 3;
-
-          rawIndices[idx++] = i0;
-          rawIndices[idx++] = i1;
-          rawIndices[idx++] = i2;
-
-          rawIndices[idx++] = i2;
-          rawIndices[idx++] = i3;
-          rawIndices[idx++] = i0;
+        if (parallelBatch(4 * quadCount)) {
+          tessellateParallel(PARALLEL_QUADS, quadCount, clamp);
+        } else {
+          addQuads(0, quadCount, clamp);
         }
-        splitRawIndices(clamp);
       }
       endTex();
       tessellateEdges();
     }
 
+    // Tessellates the quads in the range [qd0, qd1)
+    void addQuads(int qd0, int qd1, boolean clamp) {
+      int nInInd = 6 * (qd1 - qd0);
+      setRawSize(nInInd);
+      int idx = 0;
+      for (int qd = qd0; qd < qd1; qd++) {
+        int i0 = 4 * qd + 0;
+        int i1 = 4 * qd + 1;
+        int i2 = 4 * qd + 2;
+        int i3 = 4 * qd + 3;
+
+        rawIndices[idx++] = i0;
+        rawIndices[idx++] = i1;
+        rawIndices[idx++] = i2;
+
+        rawIndices[idx++] = i2;
+        rawIndices[idx++] = i3;
+        rawIndices[idx++] = i0;
+      }
+      splitRawIndices(clamp, 4 * qd0);
+    }
+
     boolean clampQuads(int quadCount) {
       boolean res = clamp2D();
       if (res) {
@@ -12948,12 +13774,18 @@ public class PGraphicsOpenGL extends PGraphics {
     // http://home.comcast.net/~tom_forsyth/papers/fast_vert_cache_opt.html
     // http://www.ludicon.com/castano/blog/2009/02/optimal-grid-rendering/
     void splitRawIndices(boolean clamp) {
+      splitRawIndices(clamp, 0);
+    }
+
+    // The raw indices should not reference any input vertex before
+    // inFirstVert.
+    void splitRawIndices(boolean clamp, int inFirstVert) {
       tess.polyIndexCheck(rawSize);
       int offset = tess.firstPolyIndex;
 
       // Current index and vertex ranges
       int inInd0 = 0, inInd1 = 0;
-      int inMaxVert0 = 0, inMaxVert1 = 0;
+      int inMaxVert0 = inFirstVert, inMaxVert1 = inFirstVert;
 
       int inMaxVertRef = inMaxVert0; // Reference vertex where last break split occurred
       int inMaxVertRel = -1;         // Position of vertices from last range relative to
@@ -13173,16 +14005,26 @@ public class PGraphicsOpenGL extends PGraphics {
         boolean clamp = clampPolygon();
         callback.init(in.renderMode == RETAINED, false, calcNormals, clamp);
 
+        polyTess = gluTess;
+        if (pg != null && pg.getHint(ENABLE_TESSELLATION_CACHE)) {
+          if (tessCache == null) {
+            tessCache = new TessellationCache(pg.pgl, callback);
+          }
+          polyTess = tessCache;
+        }
+        int cacheHits = tessCache != null ? tessCache.hits : 0;
+        int cacheMisses = tessCache != null ? tessCache.misses : 0;
+
         if (fill) {
-          gluTess.beginPolygon();
+          polyTess.beginPolygon();
           if (solid) {
             // Using NONZERO winding rule for solid polygons.
-            gluTess.setWindingRule(PGL.TESS_WINDING_NONZERO);
+            polyTess.setWindingRule(PGL.TESS_WINDING_NONZERO);
           } else {
             // Using ODD winding rule to generate polygon with holes.
-            gluTess.setWindingRule(PGL.TESS_WINDING_ODD);
+            polyTess.setWindingRule(PGL.TESS_WINDING_ODD);
           }
-          gluTess.beginContour();
+          polyTess.beginContour();
         }
 
         if (stroke) {
@@ -13209,8 +14051,8 @@ public class PGraphicsOpenGL extends PGraphics {
               beginStrokePath();
             }
             if (fill) {
-              gluTess.endContour();
-              gluTess.beginContour();
+              polyTess.endContour();
+              polyTess.beginContour();
             }
           }
 
@@ -13233,8 +14075,13 @@ public class PGraphicsOpenGL extends PGraphics {
           endPolygonStroke();
         }
         if (fill) {
-          gluTess.endContour();
-          gluTess.endPolygon();
+          polyTess.endContour();
+          polyTess.endPolygon();
+        }
+
+        if (polyTess == tessCache && pg.isRenderStatsEnabled) {
+          pg.stats.tessCacheHits += tessCache.hits - cacheHits;
+          pg.stats.tessCacheMisses += tessCache.misses - cacheMisses;
         }
       }
       endTex();
@@ -13294,7 +14141,7 @@ public class PGraphicsOpenGL extends PGraphics {
           vertex[0] = x1;
           vertex[1] = y1;
           vertex[2] = z1;
-          gluTess.addVertex(vertex);
+          polyTess.addVertex(vertex);
         }
         if (stroke) addStrokeVertex(x1, y1, z1, strokeColor, strokeWeight);
       }
@@ -13359,7 +14206,7 @@ public class PGraphicsOpenGL extends PGraphics {
           vertex[0] = x1;
           vertex[1] = y1;
           vertex[2] = z1;
-          gluTess.addVertex(vertex);
+          polyTess.addVertex(vertex);
         }
         if (stroke) addStrokeVertex(x1, y1, z1, strokeColor, strokeWeight);
       }
@@ -13397,7 +14244,7 @@ public class PGraphicsOpenGL extends PGraphics {
         vertex0[0] = x;
         vertex0[1] = y;
         vertex0[2] = z;
-        gluTess.addVertex(vertex0);
+        polyTess.addVertex(vertex0);
       }
       if (stroke) {
         addStrokeVertex(x, y, z, in.strokeColors[i], strokeWeight);
@@ -13444,7 +14291,7 @@ public class PGraphicsOpenGL extends PGraphics {
           vertex1[0] = x;
           vertex1[1] = y;
           vertex1[2] = z;
-          gluTess.addVertex(vertex1);
+          polyTess.addVertex(vertex1);
         }
         if (stroke) addStrokeVertex(x, y, z, strokeColor, strokeWeight);
       }
@@ -13462,7 +14309,7 @@ public class PGraphicsOpenGL extends PGraphics {
         vertex[0] = x;
         vertex[1] = y;
         vertex[2] = z;
-        gluTess.addVertex(vertex);
+        polyTess.addVertex(vertex);
       }
       if (stroke) {
         addStrokeVertex(x, y, z, in.strokeColors[i], in.strokeWeights[i]);
@@ -13917,6 +14764,22 @@ public class PGraphicsOpenGL extends PGraphics {
     static final int Y2 = 7;
     static final int Z2 = 8;
 
+    // Stages of the sort that can be split in ranges
+    static final int PROJECT_VERTICES = 0;
+    static final int TRIANGLE_BOUNDS  = 1;
+    static final int RADIX_HISTOGRAM  = 2;
+    static final int RADIX_SCATTER    = 3;
+
+    static final int RADIX_BITS = 8;
+    static final int RADIX_SIZE = 1 << RADIX_BITS;
+    static final int RADIX_MASK = RADIX_SIZE - 1;
+    static final int KEY_BITS = 24;
+    static final float KEY_RANGE = (1 << KEY_BITS) - 1;
+
+    // Element moves allowed per triangle in the insertion passes, before
+    // falling back to a full sort.
+    static final int MAX_INSERTION_MOVES = 8;
+
     int[] triangleIndices = new int[0];
     int[] texMap = new int[0];
     int[] voffsetMap = new int[0];
@@ -13930,6 +14793,26 @@ public class PGraphicsOpenGL extends PGraphics {
 
     float[] screenVertices = new float[0];
 
+    // Quantized min Z of each triangle, and scratch order for the radix sort
+    int[] sortKeys = new int[0];
+    int[] sortTemp = new int[0];
+    int[][] histograms = new int[0][];
+
+    // Orders computed in the previous frame, one per sort, used as the
+    // starting point of the sorts in the current frame.
+    ArrayList<int[]> savedOrders = new ArrayList<int[]>();
+    int[] savedCounts = new int[0];
+    int sortFrame = -1;
+    int sortSlot;
+
+    // State of the stage being run in ranges
+    TessGeometry tessGeo;
+    int[] radixSrc;
+    int[] radixDst;
+    int radixShift;
+    float keyMinZ;
+    float keyScale;
+
     float[] triA = new float[9];
     float[] triB = new float[9];
 
@@ -13954,6 +14837,8 @@ public class PGraphicsOpenGL extends PGraphics {
         maxXBuffer      = new float[newSize];
         maxYBuffer      = new float[newSize];
         maxZBuffer      = new float[newSize];
+        sortKeys        = new int[newSize];
+        sortTemp        = new int[newSize];
       }
     }
 
@@ -13968,6 +14853,7 @@ public class PGraphicsOpenGL extends PGraphics {
     // Sorting --------------------------------------------
 
     void sort(TessGeometry tessGeo) {
+      long startTime = System.nanoTime();
 
       int triangleCount = tessGeo.polyIndexCount / 3;
       checkIndexBuffers(triangleCount);
@@ -13975,12 +14861,6 @@ public class PGraphicsOpenGL extends PGraphics {
       int[] texMap = this.texMap;
       int[] voffsetMap = this.voffsetMap;
 
-      { // Initialize triangle indices
-        for (int i = 0; i < triangleCount; i++) {
-          triangleIndices[i] = i;
-        }
-      }
-
       { // Map caches to triangles
         TexCache texCache = pg.texCache;
         IndexCache indexCache = tessGeo.polyIndexCache;
@@ -14003,39 +14883,16 @@ public class PGraphicsOpenGL extends PGraphics {
         }
       }
 
-      { // Map vertices to screen
-        int polyVertexCount = tessGeo.polyVertexCount;
-        checkVertexBuffer(polyVertexCount);
-        float[] screenVertices = this.screenVertices;
-
-        float[] polyVertices = tessGeo.polyVertices;
-
-        PMatrix3D projection = pg.projection;
+      // Map vertices to screen and get the bounds of the triangles
+      this.tessGeo = tessGeo;
+      checkVertexBuffer(tessGeo.polyVertexCount);
+      int ranges = rangeCount(triangleCount);
+      runRanges(PROJECT_VERTICES, ranges, tessGeo.polyVertexCount);
+      runRanges(TRIANGLE_BOUNDS, ranges, triangleCount);
 
-        for (int i = 0; i < polyVertexCount; i++) {
-          float x = polyVertices[4*i+X];
-          float y = polyVertices[4*i+Y];
-          float z = polyVertices[4*i+Z];
-          float w = polyVertices[4*i+W];
+      long orderTime = System.nanoTime();
+      orderByMinZ(triangleCount, ranges);
 
-          float ox = projection.m00 * x + projection.m01 * y +
-              projection.m02 * z + projection.m03 * w;
-          float oy = projection.m10 * x + projection.m11 * y +
-              projection.m12 * z + projection.m13 * w;
-          float oz = projection.m20 * x + projection.m21 * y +
-              projection.m22 * z + projection.m23 * w;
-          float ow = projection.m30 * x + projection.m31 * y +
-              projection.m32 * z + projection.m33 * w;
-          if (nonZero(ow)) {
-            ox /= ow;
-            oy /= ow;
-            oz /= ow;
-          }
-          screenVertices[3*i+X] = ox;
-          screenVertices[3*i+Y] = oy;
-          screenVertices[3*i+Z] = -oz;
-        }
-      }
       float[] screenVertices = this.screenVertices;
 
       int[] vertexOffset = tessGeo.polyIndexCache.vertexOffset;
@@ -14044,17 +14901,8 @@ public class PGraphicsOpenGL extends PGraphics {
       float[] triA = this.triA;
       float[] triB = this.triB;
 
-      for (int i = 0; i < triangleCount; i++) {
-        fetchTriCoords(triA, i, vertexOffset, voffsetMap, screenVertices, polyIndices);
-        minXBuffer[i] = PApplet.min(triA[X0], triA[X1], triA[X2]);
-        maxXBuffer[i] = PApplet.max(triA[X0], triA[X1], triA[X2]);
-        minYBuffer[i] = PApplet.min(triA[Y0], triA[Y1], triA[Y2]);
-        maxYBuffer[i] = PApplet.max(triA[Y0], triA[Y1], triA[Y2]);
-        minZBuffer[i] = PApplet.min(triA[Z0], triA[Z1], triA[Z2]);
-        maxZBuffer[i] = PApplet.max(triA[Z0], triA[Z1], triA[Z2]);
-      }
-
-      sortByMinZ(0, triangleCount - 1, triangleIndices, minZBuffer);
+      long overlapTime = System.nanoTime();
+      int neighborhood = PGL.DEPTH_SORT_NEIGHBORHOOD;
 
       int activeTid = 0;
 
@@ -14078,7 +14926,10 @@ public class PGraphicsOpenGL extends PGraphics {
 
         fetchTriCoords(triA, ati, vertexOffset, voffsetMap, screenVertices, polyIndices);
 
-        while (!draw && testTid < triangleCount) {
+        int testEnd = 0 < neighborhood ?
+            PApplet.min(triangleCount, activeTid + 1 + neighborhood) :
+            triangleCount;
+        while (!draw && testTid < testEnd) {
           int tti = triangleIndices[testTid];
 
           // TEST 1 // Z overlap
@@ -14128,6 +14979,9 @@ public class PGraphicsOpenGL extends PGraphics {
         activeTid++;
       }
 
+      long reorderTime = System.nanoTime();
+      saveOrder(triangleCount);
+
       { // Reorder the buffers
         for (int id = 0; id < triangleCount; id++) {
           int mappedId = triangleIndices[id];
@@ -14166,6 +15020,250 @@ public class PGraphicsOpenGL extends PGraphics {
         }
       }
 
+      this.tessGeo = null;
+      long endTime = System.nanoTime();
+      pg.depthSortTime = endTime - startTime;
+      pg.depthSortOrderTime = overlapTime - orderTime;
+      pg.depthSortOverlapTime = reorderTime - overlapTime;
+      if (pg.isRenderStatsEnabled) pg.stats.sortTime += endTime - startTime;
+    }
+
+    int rangeCount(int triangleCount) {
+      return PGL.MIN_PARALLEL_SORT_TRIANGLES <= triangleCount ?
+             Tessellator.PARALLEL_TESS_COUNT : 1;
+    }
+
+    // Splits the count elements of the stage in contiguous ranges, which are
+    // processed concurrently when there is more than one.
+    void runRanges(final int stage, final int n, final int count) {
+      if (n == 1) {
+        runRange(stage, 0, 0, count);
+        return;
+      }
+
+      ExecutorService executor = Tessellator.getParallelExecutor();
+      ArrayList<Future<?>> results = new ArrayList<Future<?>>();
+      for (int r = 1; r < n; r++) {
+        final int range = r;
+        final int first = (int)((long)count * r / n);
+        final int last = (int)((long)count * (r + 1) / n);
+        results.add(executor.submit(new Runnable() {
+          @Override
+          public void run() {
+            runRange(stage, range, first, last);
+          }
+        }));
+      }
+      runRange(stage, 0, 0, (int)((long)count / n));
+      try {
+        for (Future<?> res: results) res.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new RuntimeException(e);
+      } catch (ExecutionException e) {
+        throw new RuntimeException(e.getCause());
+      }
+    }
+
+    void runRange(int stage, int range, int first, int last) {
+      if (stage == PROJECT_VERTICES) {
+        projectVertices(first, last);
+      } else if (stage == TRIANGLE_BOUNDS) {
+        triangleBounds(first, last);
+      } else if (stage == RADIX_HISTOGRAM) {
+        int[] hist = histograms[range];
+        Arrays.fill(hist, 0);
+        for (int i = first; i < last; i++) {
+          hist[(sortKeys[radixSrc[i]] >>> radixShift) & RADIX_MASK]++;
+        }
+      } else if (stage == RADIX_SCATTER) {
+        int[] hist = histograms[range];
+        for (int i = first; i < last; i++) {
+          int tid = radixSrc[i];
+          radixDst[hist[(sortKeys[tid] >>> radixShift) & RADIX_MASK]++] = tid;
+        }
+      }
+    }
+
+    void projectVertices(int first, int last) {
+      float[] screenVertices = this.screenVertices;
+      float[] polyVertices = tessGeo.polyVertices;
+
+      PMatrix3D projection = pg.projection;
+
+      for (int i = first; i < last; i++) {
+        float x = polyVertices[4*i+X];
+        float y = polyVertices[4*i+Y];
+        float z = polyVertices[4*i+Z];
+        float w = polyVertices[4*i+W];
+
+        float ox = projection.m00 * x + projection.m01 * y +
+            projection.m02 * z + projection.m03 * w;
+        float oy = projection.m10 * x + projection.m11 * y +
+            projection.m12 * z + projection.m13 * w;
+        float oz = projection.m20 * x + projection.m21 * y +
+            projection.m22 * z + projection.m23 * w;
+        float ow = projection.m30 * x + projection.m31 * y +
+            projection.m32 * z + projection.m33 * w;
+        if (nonZero(ow)) {
+          ox /= ow;
+          oy /= ow;
+          oz /= ow;
+        }
+        screenVertices[3*i+X] = ox;
+        screenVertices[3*i+Y] = oy;
+        screenVertices[3*i+Z] = -oz;
+      }
+    }
+
+    void triangleBounds(int first, int last) {
+      int[] vertexOffset = tessGeo.polyIndexCache.vertexOffset;
+      short[] polyIndices = tessGeo.polyIndices;
+      float[] tri = new float[9];
+
+      for (int i = first; i < last; i++) {
+        fetchTriCoords(tri, i, vertexOffset, voffsetMap, screenVertices, polyIndices);
+        minXBuffer[i] = PApplet.min(tri[X0], tri[X1], tri[X2]);
+        maxXBuffer[i] = PApplet.max(tri[X0], tri[X1], tri[X2]);
+        minYBuffer[i] = PApplet.min(tri[Y0], tri[Y1], tri[Y2]);
+        maxYBuffer[i] = PApplet.max(tri[Y0], tri[Y1], tri[Y2]);
+        minZBuffer[i] = PApplet.min(tri[Z0], tri[Z1], tri[Z2]);
+        maxZBuffer[i] = PApplet.max(tri[Z0], tri[Z1], tri[Z2]);
+      }
+    }
+
+    // Orders the triangles by min Z. When the previous frame sorted the same
+    // number of triangles at this point, its order is usually close to the
+    // current one and an insertion pass is enough to fix it up.
+    void orderByMinZ(int triangleCount, int ranges) {
+      int[] triangleIndices = this.triangleIndices;
+      long maxMoves = (long)MAX_INSERTION_MOVES * triangleCount;
+
+      int[] prevOrder = previousOrder(triangleCount);
+      if (prevOrder != null) {
+        System.arraycopy(prevOrder, 0, triangleIndices, 0, triangleCount);
+        if (insertionSort(triangleIndices, triangleCount, minZBuffer,
+                          maxMoves)) {
+          return;
+        }
+      } else {
+        for (int i = 0; i < triangleCount; i++) {
+          triangleIndices[i] = i;
+        }
+      }
+
+      radixSort(triangleCount, ranges);
+
+      // The keys are quantized, so triangles with very close min Z might
+      // still be out of order.
+      if (!insertionSort(triangleIndices, triangleCount, minZBuffer,
+                         maxMoves)) {
+        sortByMinZ(0, triangleCount - 1, triangleIndices, minZBuffer);
+      }
+    }
+
+    // Stable LSD radix sort of triangleIndices on the min Z of the triangles,
+    // quantized over the Z range of the current geometry.
+    void radixSort(int triangleCount, int ranges) {
+      if (triangleCount < 2) return;
+
+      float minZ = Float.POSITIVE_INFINITY;
+      float maxZ = Float.NEGATIVE_INFINITY;
+      for (int i = 0; i < triangleCount; i++) {
+        float z = minZBuffer[i];
+        if (z < minZ) minZ = z;
+        if (maxZ < z) maxZ = z;
+      }
+      float scale = minZ < maxZ && maxZ - minZ < Float.POSITIVE_INFINITY ?
+                    KEY_RANGE / (maxZ - minZ) : 0;
+      for (int i = 0; i < triangleCount; i++) {
+        // NaN and out of range values end up at the ends
+        float key = (minZBuffer[i] - minZ) * scale;
+        sortKeys[i] = key < KEY_RANGE ? (int)key : (int)KEY_RANGE;
+      }
+
+      if (histograms.length < ranges) {
+        histograms = new int[ranges][RADIX_SIZE];
+      }
+
+      radixSrc = triangleIndices;
+      radixDst = sortTemp;
+      for (radixShift = 0; radixShift < KEY_BITS; radixShift += RADIX_BITS) {
+        runRanges(RADIX_HISTOGRAM, ranges, triangleCount);
+
+        // Turn the counts into the offsets where each range writes its
+        // elements, keeping the ranges in order so the sort stays stable
+        int offset = 0;
+        for (int d = 0; d < RADIX_SIZE; d++) {
+          for (int r = 0; r < ranges; r++) {
+            int count = histograms[r][d];
+            histograms[r][d] = offset;
+            offset += count;
+          }
+        }
+
+        runRanges(RADIX_SCATTER, ranges, triangleCount);
+
+        int[] tmp = radixSrc;
+        radixSrc = radixDst;
+        radixDst = tmp;
+      }
+      if (radixSrc != triangleIndices) {
+        System.arraycopy(radixSrc, 0, triangleIndices, 0, triangleCount);
+      }
+      radixSrc = radixDst = null;
+    }
+
+    // Insertion sort of the indices on their keys, giving up once more than
+    // maxMoves moves were needed. The indices are always left as a valid
+    // permutation.
+    static boolean insertionSort(int[] indices, int count, float[] keys,
+                                 long maxMoves) {
+      long moves = 0;
+      for (int i = 1; i < count; i++) {
+        int tid = indices[i];
+        float key = keys[tid];
+        int j = i - 1;
+        while (0 <= j && key < keys[indices[j]]) {
+          indices[j + 1] = indices[j];
+          j--;
+          moves++;
+          if (maxMoves < moves) {
+            indices[j + 1] = tid;
+            return false;
+          }
+        }
+        indices[j + 1] = tid;
+      }
+      return true;
+    }
+
+    int[] previousOrder(int triangleCount) {
+      int frame = pg.parent != null ? pg.parent.frameCount : 0;
+      if (frame != sortFrame) {
+        sortFrame = frame;
+        sortSlot = 0;
+      }
+      if (sortSlot < savedOrders.size() &&
+          savedCounts[sortSlot] == triangleCount) {
+        return savedOrders.get(sortSlot);
+      }
+      return null;
+    }
+
+    void saveOrder(int triangleCount) {
+      if (savedOrders.size() <= sortSlot) {
+        savedOrders.add(new int[0]);
+        savedCounts = PApplet.expand(savedCounts, savedOrders.size());
+      }
+      int[] order = savedOrders.get(sortSlot);
+      if (order.length < triangleCount) {
+        order = new int[(triangleCount / 4 + 1) * 5];
+        savedOrders.set(sortSlot, order);
+      }
+      System.arraycopy(triangleIndices, 0, order, 0, triangleCount);
+      savedCounts[sortSlot] = triangleCount;
+      sortSlot++;
     }
 
     static void fetchTriCoords(float[] tri, int ti, int[] vertexOffset,
@@ -25,11 +25,13 @@
 package processing.opengl;
 
 import processing.core.*;
+import processing.data.IntList;
 import processing.opengl.PGraphicsOpenGL.GLResourceShader;
 
 import java.net.URL;
 import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
+import java.util.Arrays;
 import java.util.HashMap;
 
 /**
@@ -107,7 +109,13 @@ public class PShader implements PConstants {
 
   protected boolean bound;
 
-  protected HashMap<Integer, UniformValue> uniformValues = null;
+  // Active uniforms of the program, found after linking, the values set by
+  // the user at the same index, and the ones set since they were last sent
+  // to GL, which happens on bind()
+  protected String[] uniformNames = null;
+  protected UniformValue[] uniformValues = null;
+  protected UniformValue[] dirtyUniforms = null;
+  protected int dirtyCount;
 
   protected HashMap<Integer, Texture> textures;
   protected HashMap<Integer, Integer> texUnits;
@@ -163,6 +171,12 @@ public class PShader implements PConstants {
   protected int emissiveLoc;
   protected int shininessLoc;
 
+  // Per-instance attributes
+  protected int instanceTransformLoc;
+  protected int instanceColorLoc;
+  // Locations currently set up with a non-zero divisor
+  protected IntList instanceLocs;
+
   public PShader() {
     parent = null;
     pgl = null;
@@ -364,6 +378,9 @@ public class PShader implements PConstants {
    * Unbinds the shader program.
    */
   public void unbind() {
+    if (instanceLocs != null && 0 < instanceLocs.size()) {
+      unsetInstanceAttributes();
+    }
     if (hasType()) unbindTyped();
 
     if (bound) {
@@ -388,79 +405,95 @@ public class PShader implements PConstants {
    * @param x first component of the variable to modify
    */
   public void set(String name, int x) {
-    setUniformImpl(name, UniformValue.INT1, new int[] { x });
+    int[] v = intUniform(name, UniformValue.INT1, 1);
+    if (v != null) v[0] = x;
   }
 
   /**
    * @param y second component of the variable to modify. The variable has to be declared with an array/vector type in the shader (i.e.: int[2], vec2)
    */
   public void set(String name, int x, int y) {
-    setUniformImpl(name, UniformValue.INT2, new int[] { x, y });
+    int[] v = intUniform(name, UniformValue.INT2, 2);
+    if (v != null) {
+      v[0] = x; v[1] = y;
+    }
   }
 
   /**
    * @param z third component of the variable to modify. The variable has to be declared with an array/vector type in the shader (i.e.: int[3], vec3)
    */
   public void set(String name, int x, int y, int z) {
-    setUniformImpl(name, UniformValue.INT3, new int[] { x, y, z });
+    int[] v = intUniform(name, UniformValue.INT3, 3);
+    if (v != null) {
+      v[0] = x; v[1] = y; v[2] = z;
+    }
   }
 
   /**
    * @param w fourth component of the variable to modify. The variable has to be declared with an array/vector type in the shader (i.e.: int[4], vec4)
    */
   public void set(String name, int x, int y, int z, int w) {
-    setUniformImpl(name, UniformValue.INT4, new int[] { x, y, z, w });
+    int[] v = intUniform(name, UniformValue.INT4, 4);
+    if (v != null) {
+      v[0] = x; v[1] = y; v[2] = z; v[3] = w;
+    }
   }
 
 
   public void set(String name, float x) {
-    setUniformImpl(name, UniformValue.FLOAT1, new float[] { x });
+    float[] v = floatUniform(name, UniformValue.FLOAT1, 1);
+    if (v != null) v[0] = x;
   }
 
 
   public void set(String name, float x, float y) {
-    setUniformImpl(name, UniformValue.FLOAT2, new float[] { x, y });
+    float[] v = floatUniform(name, UniformValue.FLOAT2, 2);
+    if (v != null) {
+      v[0] = x; v[1] = y;
+    }
   }
 
 
   public void set(String name, float x, float y, float z) {
-    setUniformImpl(name, UniformValue.FLOAT3, new float[] { x, y, z });
+    float[] v = floatUniform(name, UniformValue.FLOAT3, 3);
+    if (v != null) {
+      v[0] = x; v[1] = y; v[2] = z;
+    }
   }
 
 
   public void set(String name, float x, float y, float z, float w) {
-    setUniformImpl(name, UniformValue.FLOAT4, new float[] { x, y, z, w });
+    float[] v = floatUniform(name, UniformValue.FLOAT4, 4);
+    if (v != null) {
+      v[0] = x; v[1] = y; v[2] = z; v[3] = w;
+    }
   }
 
   /**
    * @param vec modifies all the components of an array/vector uniform variable. PVector can only be used if the type of the variable is vec3.
    */
   public void set(String name, PVector vec) {
-    setUniformImpl(name, UniformValue.FLOAT3,
-                   new float[] { vec.x, vec.y, vec.z });
+    set(name, vec.x, vec.y, vec.z);
   }
 
 
   public void set(String name, boolean x) {
-    setUniformImpl(name, UniformValue.INT1, new int[] { (x)?1:0 });
+    set(name, (x)?1:0);
   }
 
 
   public void set(String name, boolean x, boolean y) {
-    setUniformImpl(name, UniformValue.INT2,
-                   new int[] { (x)?1:0, (y)?1:0 });
+    set(name, (x)?1:0, (y)?1:0);
   }
 
 
   public void set(String name, boolean x, boolean y, boolean z) {
-    setUniformImpl(name, UniformValue.INT3,
-                   new int[] { (x)?1:0, (y)?1:0, (z)?1:0 });
+    set(name, (x)?1:0, (y)?1:0, (z)?1:0);
   }
 
 
   public void set(String name, boolean x, boolean y, boolean z, boolean w) {
-    setUniformImpl(name, UniformValue.INT4,
-                   new int[] { (x)?1:0, (y)?1:0, (z)?1:0, (w)?1:0 });
+    set(name, (x)?1:0, (y)?1:0, (z)?1:0, (w)?1:0);
   }
 
 
@@ -473,20 +506,9 @@ public class PShader implements PConstants {
    * @param ncoords number of coordinates per element, max 4
    */
   public void set(String name, int[] vec, int ncoords) {
-    if (ncoords == 1) {
-      setUniformImpl(name, UniformValue.INT1VEC, vec);
-    } else if (ncoords == 2) {
-      setUniformImpl(name, UniformValue.INT2VEC, vec);
-    } else if (ncoords == 3) {
-      setUniformImpl(name, UniformValue.INT3VEC, vec);
-    } else if (ncoords == 4) {
-      setUniformImpl(name, UniformValue.INT4VEC, vec);
-    } else if (4 < ncoords) {
-      PGraphics.showWarning("Only up to 4 coordinates per element are " +
-                            "supported.");
-    } else {
-      PGraphics.showWarning("Wrong number of coordinates: it is negative!");
-    }
+    int type = vectorType(UniformValue.INT1VEC, ncoords);
+    int[] v = intUniform(name, type, vec.length);
+    if (v != null) System.arraycopy(vec, 0, v, 0, vec.length);
   }
 
 
@@ -496,20 +518,9 @@ public class PShader implements PConstants {
 
 
   public void set(String name, float[] vec, int ncoords) {
-    if (ncoords == 1) {
-      setUniformImpl(name, UniformValue.FLOAT1VEC, vec);
-    } else if (ncoords == 2) {
-      setUniformImpl(name, UniformValue.FLOAT2VEC, vec);
-    } else if (ncoords == 3) {
-      setUniformImpl(name, UniformValue.FLOAT3VEC, vec);
-    } else if (ncoords == 4) {
-      setUniformImpl(name, UniformValue.FLOAT4VEC, vec);
-    } else if (4 < ncoords) {
-      PGraphics.showWarning("Only up to 4 coordinates per element are " +
-                            "supported.");
-    } else {
-      PGraphics.showWarning("Wrong number of coordinates: it is negative!");
-    }
+    int type = vectorType(UniformValue.FLOAT1VEC, ncoords);
+    float[] v = floatUniform(name, type, vec.length);
+    if (v != null) System.arraycopy(vec, 0, v, 0, vec.length);
   }
 
 
@@ -519,11 +530,13 @@ public class PShader implements PConstants {
 
 
   public void set(String name, boolean[] boolvec, int ncoords) {
-    int[] vec = new int[boolvec.length];
-    for (int i = 0; i < boolvec.length; i++) {
-      vec[i] = (boolvec[i])?1:0;
+    int type = vectorType(UniformValue.INT1VEC, ncoords);
+    int[] v = intUniform(name, type, boolvec.length);
+    if (v != null) {
+      for (int i = 0; i < boolvec.length; i++) {
+        v[i] = (boolvec[i])?1:0;
+      }
     }
-    set(name, vec, ncoords);
   }
 
 
@@ -531,9 +544,11 @@ public class PShader implements PConstants {
    * @param mat matrix of values
    */
   public void set(String name, PMatrix2D mat) {
-    float[] matv = { mat.m00, mat.m01,
-                     mat.m10, mat.m11 };
-    setUniformImpl(name, UniformValue.MAT2, matv);
+    float[] v = floatUniform(name, UniformValue.MAT2, 4);
+    if (v != null) {
+      v[0] = mat.m00; v[1] = mat.m01;
+      v[2] = mat.m10; v[3] = mat.m11;
+    }
   }
 
 
@@ -546,16 +561,20 @@ public class PShader implements PConstants {
    */
   public void set(String name, PMatrix3D mat, boolean use3x3) {
     if (use3x3) {
-      float[] matv = { mat.m00, mat.m01, mat.m02,
-                       mat.m10, mat.m11, mat.m12,
-                       mat.m20, mat.m21, mat.m22 };
-      setUniformImpl(name, UniformValue.MAT3, matv);
+      float[] v = floatUniform(name, UniformValue.MAT3, 9);
+      if (v != null) {
+        v[0] = mat.m00; v[1] = mat.m01; v[2] = mat.m02;
+        v[3] = mat.m10; v[4] = mat.m11; v[5] = mat.m12;
+        v[6] = mat.m20; v[7] = mat.m21; v[8] = mat.m22;
+      }
     } else {
-      float[] matv = { mat.m00, mat.m01, mat.m02, mat.m03,
-                       mat.m10, mat.m11, mat.m12, mat.m13,
-                       mat.m20, mat.m21, mat.m22, mat.m23,
-                       mat.m30, mat.m31, mat.m32, mat.m33 };
-      setUniformImpl(name, UniformValue.MAT4, matv);
+      float[] v = floatUniform(name, UniformValue.MAT4, 16);
+      if (v != null) {
+        v[ 0] = mat.m00; v[ 1] = mat.m01; v[ 2] = mat.m02; v[ 3] = mat.m03;
+        v[ 4] = mat.m10; v[ 5] = mat.m11; v[ 6] = mat.m12; v[ 7] = mat.m13;
+        v[ 8] = mat.m20; v[ 9] = mat.m21; v[10] = mat.m22; v[11] = mat.m23;
+        v[12] = mat.m30; v[13] = mat.m31; v[14] = mat.m32; v[15] = mat.m33;
+      }
     }
   }
 
@@ -563,7 +582,8 @@ public class PShader implements PConstants {
    * @param tex sets the sampler uniform variable to read from this image texture
    */
   public void set(String name, PImage tex) {
-    setUniformImpl(name, UniformValue.SAMPLER2D, tex);
+    UniformValue val = setUniformImpl(name, UniformValue.SAMPLER2D);
+    if (val != null) val.image = tex;
   }
 
 
@@ -585,6 +605,15 @@ public class PShader implements PConstants {
   }
 
 
+  protected void drawInstanced(int idxId, int count, int offset,
+                               int instanceCount) {
+    pgl.bindBuffer(PGL.ELEMENT_ARRAY_BUFFER, idxId);
+    pgl.drawElementsInstanced(PGL.TRIANGLES, count, PGL.INDEX_TYPE,
+                              offset * PGL.SIZEOF_INDEX, instanceCount);
+    pgl.bindBuffer(PGL.ELEMENT_ARRAY_BUFFER, 0);
+  }
+
+
   /**
    * Returns the ID location of the attribute parameter given its name.
    *
@@ -734,114 +763,219 @@ public class PShader implements PConstants {
   }
 
 
-  protected void setUniformImpl(String name, int type, Object value) {
-    int loc = getUniformLoc(name);
-    if (-1 < loc) {
-      if (uniformValues == null) {
-        uniformValues = new HashMap<Integer, UniformValue>();
-      }
-      uniformValues.put(loc, new UniformValue(type, value));
-    } else {
+  // Returns the value of the uniform called name, marked to be sent to GL
+  // with the given type on the next bind(), or null if the shader doesn't
+  // have it or the type is not valid.
+  protected UniformValue setUniformImpl(String name, int type) {
+    if (type == -1) return null;
+    init();
+
+    int index = getUniformIndex(name);
+    UniformValue val = index == -1 ? null : uniformValues[index];
+    if (index != -1 && val == null) {
+      val = new UniformValue(uniformNames[index], getUniformLoc(name));
+      uniformValues[index] = val;
+    }
+    if (val == null || val.loc == -1) {
       PGraphics.showWarning("The shader doesn't have a uniform called \"" +
                             name + "\" OR the uniform was removed during " +
                             "compilation because it was unused.");
+      return null;
+    }
+
+    val.type = type;
+    if (!val.dirty) {
+      if (dirtyUniforms == null) {
+        dirtyUniforms = new UniformValue[16];
+      } else if (dirtyCount == dirtyUniforms.length) {
+        dirtyUniforms = Arrays.copyOf(dirtyUniforms, 2 * dirtyCount);
+      }
+      dirtyUniforms[dirtyCount++] = val;
+      val.dirty = true;
+    }
+    return val;
+  }
+
+
+  // Returns the array where the length int values of the uniform are
+  // written, or null if they cannot be set.
+  protected int[] intUniform(String name, int type, int length) {
+    UniformValue val = setUniformImpl(name, type);
+    if (val == null) return null;
+    if (val.ints == null || val.ints.length != length) {
+      val.ints = new int[length];
+    }
+    return val.ints;
+  }
+
+
+  // Same for float values.
+  protected float[] floatUniform(String name, int type, int length) {
+    UniformValue val = setUniformImpl(name, type);
+    if (val == null) return null;
+    if (val.floats == null || val.floats.length != length) {
+      val.floats = new float[length];
+    }
+    return val.floats;
+  }
+
+
+  // Type of the array uniform with ncoords per element, given the one with
+  // one coordinate, or -1 if ncoords is not valid.
+  static protected int vectorType(int type1, int ncoords) {
+    if (1 <= ncoords && ncoords <= 4) {
+      return type1 + ncoords - 1;
+    } else if (4 < ncoords) {
+      PGraphics.showWarning("Only up to 4 coordinates per element are " +
+                            "supported.");
+    } else {
+      PGraphics.showWarning("Wrong number of coordinates: it is negative!");
+    }
+    return -1;
+  }
+
+
+  // Index of the active uniform called name, or -1 if there is none. The
+  // names are interned and set() is mostly given literals, so they are
+  // compared by reference before their contents.
+  protected int getUniformIndex(String name) {
+    if (uniformNames == null) return -1;
+    for (int i = 0; i < uniformNames.length; i++) {
+      if (uniformNames[i] == name) return i;
+    }
+    for (int i = 0; i < uniformNames.length; i++) {
+      if (uniformNames[i].equals(name)) return i;
+    }
+    return -1;
+  }
+
+
+  // Finds the active uniforms of the new program, and sends the values set
+  // so far to it again.
+  protected void resetUniforms() {
+    UniformValue[] values = uniformValues;
+
+    pgl.getProgramiv(glProgram, PGL.ACTIVE_UNIFORMS, intBuffer);
+    int count = intBuffer.get(0);
+    uniformNames = new String[count];
+    uniformValues = new UniformValue[count];
+    IntBuffer size = PGL.allocateIntBuffer(1);
+    IntBuffer type = PGL.allocateIntBuffer(1);
+    for (int i = 0; i < count; i++) {
+      size.rewind();
+      type.rewind();
+      String name = pgl.getActiveUniform(glProgram, i, size, type);
+      // Arrays are reported by their first element
+      if (name.endsWith("[0]")) name = name.substring(0, name.length() - 3);
+      uniformNames[i] = name.intern();
+    }
+
+    if (values == null) return;
+    for (int i = 0; i < dirtyCount; i++) dirtyUniforms[i] = null;
+    dirtyCount = 0;
+    if (textures != null) textures.clear();
+    if (texUnits != null) texUnits.clear();
+    for (UniformValue val: values) {
+      if (val == null || val.type == -1) continue;
+      int index = getUniformIndex(val.name);
+      if (index == -1) continue;
+      val.loc = pgl.getUniformLocation(glProgram, val.name);
+      val.dirty = false;
+      uniformValues[index] = val;
+      if (-1 < val.loc) setUniformImpl(val.name, val.type);
     }
   }
 
 
   protected void consumeUniforms() {
-    if (uniformValues != null && 0 < uniformValues.size()) {
-      int unit = 0;
-      for (Integer loc: uniformValues.keySet()) {
-        UniformValue val = uniformValues.get(loc);
-        if (val.type == UniformValue.INT1) {
-          int[] v = ((int[])val.value);
-          pgl.uniform1i(loc, v[0]);
-        } else if (val.type == UniformValue.INT2) {
-          int[] v = ((int[])val.value);
-          pgl.uniform2i(loc, v[0], v[1]);
-        } else if (val.type == UniformValue.INT3) {
-          int[] v = ((int[])val.value);
-          pgl.uniform3i(loc, v[0], v[1], v[2]);
-        } else if (val.type == UniformValue.INT4) {
-          int[] v = ((int[])val.value);
-          pgl.uniform4i(loc, v[0], v[1], v[2], v[3]);
-        } else if (val.type == UniformValue.FLOAT1) {
-          float[] v = ((float[])val.value);
-          pgl.uniform1f(loc, v[0]);
-        } else if (val.type == UniformValue.FLOAT2) {
-          float[] v = ((float[])val.value);
-          pgl.uniform2f(loc, v[0], v[1]);
-        } else if (val.type == UniformValue.FLOAT3) {
-          float[] v = ((float[])val.value);
-          pgl.uniform3f(loc, v[0], v[1], v[2]);
-        } else if (val.type == UniformValue.FLOAT4) {
-          float[] v = ((float[])val.value);
-          pgl.uniform4f(loc, v[0], v[1], v[2], v[3]);
-        } else if (val.type == UniformValue.INT1VEC) {
-          int[] v = ((int[])val.value);
-          updateIntBuffer(v);
-          pgl.uniform1iv(loc, v.length, intBuffer);
-        } else if (val.type == UniformValue.INT2VEC) {
-          int[] v = ((int[])val.value);
-          updateIntBuffer(v);
-          pgl.uniform2iv(loc, v.length / 2, intBuffer);
-        } else if (val.type == UniformValue.INT3VEC) {
-          int[] v = ((int[])val.value);
-          updateIntBuffer(v);
-          pgl.uniform3iv(loc, v.length / 3, intBuffer);
-        } else if (val.type == UniformValue.INT4VEC) {
-          int[] v = ((int[])val.value);
-          updateIntBuffer(v);
-          pgl.uniform4iv(loc, v.length / 4, intBuffer);
-        } else if (val.type == UniformValue.FLOAT1VEC) {
-          float[] v = ((float[])val.value);
-          updateFloatBuffer(v);
-          pgl.uniform1fv(loc, v.length, floatBuffer);
-        } else if (val.type == UniformValue.FLOAT2VEC) {
-          float[] v = ((float[])val.value);
-          updateFloatBuffer(v);
-          pgl.uniform2fv(loc, v.length / 2, floatBuffer);
-        } else if (val.type == UniformValue.FLOAT3VEC) {
-          float[] v = ((float[])val.value);
-          updateFloatBuffer(v);
-          pgl.uniform3fv(loc, v.length / 3, floatBuffer);
-        } else if (val.type == UniformValue.FLOAT4VEC) {
-          float[] v = ((float[])val.value);
-          updateFloatBuffer(v);
-          pgl.uniform4fv(loc, v.length / 4, floatBuffer);
-        } else if (val.type == UniformValue.MAT2) {
-          float[] v = ((float[])val.value);
-          updateFloatBuffer(v);
-          pgl.uniformMatrix2fv(loc, 1, false, floatBuffer);
-        } else if (val.type == UniformValue.MAT3) {
-          float[] v = ((float[])val.value);
-          updateFloatBuffer(v);
-          pgl.uniformMatrix3fv(loc, 1, false, floatBuffer);
-        } else if (val.type == UniformValue.MAT4) {
-          float[] v = ((float[])val.value);
-          updateFloatBuffer(v);
-          pgl.uniformMatrix4fv(loc, 1, false, floatBuffer);
-        } else if (val.type == UniformValue.SAMPLER2D) {
-          PImage img = (PImage)val.value;
-          Texture tex = currentPG.getTexture(img);
-
-          if (textures == null) textures = new HashMap<Integer, Texture>();
-          textures.put(loc, tex);
-
-          if (texUnits == null) texUnits = new HashMap<Integer, Integer>();
-          if (texUnits.containsKey(loc)) {
-            unit = texUnits.get(loc);
-            pgl.uniform1i(loc, unit);
-          } else {
-            texUnits.put(loc, unit);
-            pgl.uniform1i(loc, unit);
-          }
-          unit++;
+    for (int i = 0; i < dirtyCount; i++) {
+      UniformValue val = dirtyUniforms[i];
+      dirtyUniforms[i] = null;
+      val.dirty = false;
+
+      int loc = val.loc;
+      if (val.type == UniformValue.INT1) {
+        int[] v = val.ints;
+        pgl.uniform1i(loc, v[0]);
+      } else if (val.type == UniformValue.INT2) {
+        int[] v = val.ints;
+        pgl.uniform2i(loc, v[0], v[1]);
+      } else if (val.type == UniformValue.INT3) {
+        int[] v = val.ints;
+        pgl.uniform3i(loc, v[0], v[1], v[2]);
+      } else if (val.type == UniformValue.INT4) {
+        int[] v = val.ints;
+        pgl.uniform4i(loc, v[0], v[1], v[2], v[3]);
+      } else if (val.type == UniformValue.FLOAT1) {
+        float[] v = val.floats;
+        pgl.uniform1f(loc, v[0]);
+      } else if (val.type == UniformValue.FLOAT2) {
+        float[] v = val.floats;
+        pgl.uniform2f(loc, v[0], v[1]);
+      } else if (val.type == UniformValue.FLOAT3) {
+        float[] v = val.floats;
+        pgl.uniform3f(loc, v[0], v[1], v[2]);
+      } else if (val.type == UniformValue.FLOAT4) {
+        float[] v = val.floats;
+        pgl.uniform4f(loc, v[0], v[1], v[2], v[3]);
+      } else if (val.type == UniformValue.INT1VEC) {
+        int[] v = val.ints;
+        updateIntBuffer(v);
+        pgl.uniform1iv(loc, v.length, intBuffer);
+      } else if (val.type == UniformValue.INT2VEC) {
+        int[] v = val.ints;
+        updateIntBuffer(v);
+        pgl.uniform2iv(loc, v.length / 2, intBuffer);
+      } else if (val.type == UniformValue.INT3VEC) {
+        int[] v = val.ints;
+        updateIntBuffer(v);
+        pgl.uniform3iv(loc, v.length / 3, intBuffer);
+      } else if (val.type == UniformValue.INT4VEC) {
+        int[] v = val.ints;
+        updateIntBuffer(v);
+        pgl.uniform4iv(loc, v.length / 4, intBuffer);
+      } else if (val.type == UniformValue.FLOAT1VEC) {
+        float[] v = val.floats;
+        updateFloatBuffer(v);
+        pgl.uniform1fv(loc, v.length, floatBuffer);
+      } else if (val.type == UniformValue.FLOAT2VEC) {
+        float[] v = val.floats;
+        updateFloatBuffer(v);
+        pgl.uniform2fv(loc, v.length / 2, floatBuffer);
+      } else if (val.type == UniformValue.FLOAT3VEC) {
+        float[] v = val.floats;
+        updateFloatBuffer(v);
+        pgl.uniform3fv(loc, v.length / 3, floatBuffer);
+      } else if (val.type == UniformValue.FLOAT4VEC) {
+        float[] v = val.floats;
+        updateFloatBuffer(v);
+        pgl.uniform4fv(loc, v.length / 4, floatBuffer);
+      } else if (val.type == UniformValue.MAT2) {
+        updateFloatBuffer(val.floats);
+        pgl.uniformMatrix2fv(loc, 1, false, floatBuffer);
+      } else if (val.type == UniformValue.MAT3) {
+        updateFloatBuffer(val.floats);
+        pgl.uniformMatrix3fv(loc, 1, false, floatBuffer);
+      } else if (val.type == UniformValue.MAT4) {
+        updateFloatBuffer(val.floats);
+        pgl.uniformMatrix4fv(loc, 1, false, floatBuffer);
+      } else if (val.type == UniformValue.SAMPLER2D) {
+        Texture tex = currentPG.getTexture(val.image);
+
+        if (textures == null) textures = new HashMap<Integer, Texture>();
+        textures.put(loc, tex);
+
+        // Each sampler keeps the unit it was given the first time
+        if (texUnits == null) texUnits = new HashMap<Integer, Integer>();
+        Integer unit = texUnits.get(loc);
+        if (unit == null) {
+          unit = texUnits.size();
+          texUnits.put(loc, unit);
         }
+        pgl.uniform1i(loc, unit);
       }
-      uniformValues.clear();
     }
+    dirtyCount = 0;
   }
 
 
@@ -900,6 +1034,11 @@ public class PShader implements PConstants {
         pgl.linkProgram(glProgram);
 
         validate();
+
+        // Finds the active uniforms, and sends the values set before the
+        // program was created again (for instance, after the context was
+        // lost) to the new one
+        resetUniforms();
       }
     }
   }
@@ -1139,6 +1278,9 @@ public class PShader implements PConstants {
     directionLoc = getAttributeLoc("direction");
     offsetLoc = getAttributeLoc("offset");
 
+    instanceTransformLoc = getAttributeLoc("instanceTransform");
+    instanceColorLoc = getAttributeLoc("instanceColor");
+
     loadedAttributes = true;
   }
 
@@ -1385,6 +1527,10 @@ public class PShader implements PConstants {
     return -1 < normalLoc;
   }
 
+  protected boolean accessInstanceAttribs() {
+    return -1 < instanceTransformLoc || -1 < instanceColorLoc;
+  }
+
   protected boolean accessLightAttribs() {
     return -1 < ambientLoc || -1 < specularLoc || -1 < emissiveLoc ||
            -1 < shininessLoc;
@@ -1402,7 +1548,9 @@ public class PShader implements PConstants {
 
   protected void setNormalAttribute(int vboId, int size, int type,
                                     int stride, int offset) {
-    setAttributeVBO(normalLoc, vboId, size, type, false, stride, offset);
+    // Packed (byte) normals need to be mapped back to the [-1, 1] range
+    setAttributeVBO(normalLoc, vboId, size, type, type == PGL.BYTE,
+                    stride, offset);
   }
 
   protected void setTexcoordAttribute(int vboId, int size, int type,
@@ -1440,11 +1588,49 @@ public class PShader implements PConstants {
     setAttributeVBO(offsetLoc, vboId, size, type, false, stride, offset);
   }
 
+  protected void setInstanceTransformAttribute(int vboId, int stride,
+                                               int offset) {
+    if (-1 < instanceTransformLoc) {
+      // A mat4 attribute takes four consecutive locations, one per column
+      for (int i = 0; i < 4; i++) {
+        setInstanceAttribute(instanceTransformLoc + i, vboId, 4, stride,
+                             offset + 4 * i * PGL.SIZEOF_FLOAT);
+      }
+    }
+  }
+
+  protected void setInstanceColorAttribute(int vboId, int stride,
+                                           int offset) {
+    setInstanceAttribute(instanceColorLoc, vboId, 4, stride, offset);
+  }
+
+  protected void setInstanceAttribute(int loc, int vboId, int size,
+                                      int stride, int offset) {
+    if (-1 < loc) {
+      if (instanceLocs == null) instanceLocs = new IntList();
+      if (!instanceLocs.hasValue(loc)) {
+        pgl.enableVertexAttribArray(loc);
+        pgl.vertexAttribDivisor(loc, 1);
+        instanceLocs.append(loc);
+      }
+      setAttributeVBO(loc, vboId, size, PGL.FLOAT, false, stride, offset);
+    }
+  }
+
+  protected void unsetInstanceAttributes() {
+    for (int i = 0; i < instanceLocs.size(); i++) {
+      int loc = instanceLocs.get(i);
+      pgl.vertexAttribDivisor(loc, 0);
+      pgl.disableVertexAttribArray(loc);
+    }
+    instanceLocs.clear();
+  }
+
 
   // ***************************************************************************
   //
   // Class to store a user-specified value for a uniform parameter
-  // in the shader
+  // in the shader, created the first time the uniform is set
   protected static class UniformValue {
     static final int INT1      = 0;
     static final int INT2      = 1;
@@ -1467,12 +1653,21 @@ public class PShader implements PConstants {
     static final int MAT4      = 18;
     static final int SAMPLER2D = 19;
 
-    int type;
-    Object value;
+    String name;
+    int loc;
+    int type = -1;
+
+    // Storage of the value, reused each time the uniform is set
+    int[] ints;
+    float[] floats;
+    PImage image;
+
+    // Whether the value has to be sent to GL
+    boolean dirty;
 
-    UniformValue(int type, Object value) {
-      this.type = type;
-      this.value = value;
+    UniformValue(String name, int loc) {
+      this.name = name;
+      this.loc = loc;
     }
   }
 }
@@ -41,8 +41,10 @@ import processing.opengl.PGraphicsOpenGL.Tessellator;
 import processing.opengl.PGraphicsOpenGL.VertexAttribute;
 
 import java.nio.Buffer;
+import java.nio.FloatBuffer;
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 
 /**
  * This class holds a 3D model composed of vertices, normals, colors
@@ -112,6 +114,10 @@ public class PShapeOpenGL extends PShape {
   protected VertexBuffer bufPolyShininess;
   protected VertexBuffer bufPolyIndex;
 
+  // All the poly attributes but the custom ones, when interleaved
+  protected VertexBuffer bufPolyInterleaved;
+  protected boolean interleavedPolys;
+
   protected VertexBuffer bufLineVertex;
   protected VertexBuffer bufLineColor;
   protected VertexBuffer bufLineAttrib;
@@ -127,6 +133,27 @@ public class PShapeOpenGL extends PShape {
 
   // ........................................................
 
+  // Per-instance data, used by shape(PShape, int)
+
+  static protected final int INSTANCE_TRANSFORM_SIZE = 16;
+  static protected final int INSTANCE_COLOR_SIZE     = 4;
+
+  protected int instanceCount;
+  // Column-major matrices, ready to be fed to a mat4 attribute
+  protected float[] instanceTransforms;
+  // Normalized RGBA colors
+  protected float[] instanceColors;
+  protected LinkedHashMap<String, InstanceAttribute> instanceAttribs;
+  protected boolean modifiedInstances;
+  // Reused by setInstanceTransform() to read 2D and 3D matrices alike
+  protected PMatrix3D instanceMatrix;
+
+  protected VertexBuffer bufInstance;
+  protected FloatBuffer instanceBuffer;
+  protected int instanceBufferCount;
+
+  // ........................................................
+
   // Offsets for geometry aggregation and update.
 
   protected int polyVertCopyOffset;
@@ -324,6 +351,7 @@ public class PShapeOpenGL extends PShape {
     bufPolyEmissive = null;
     bufPolyShininess = null;
     bufPolyIndex = null;
+    bufPolyInterleaved = null;
 
     bufLineVertex = null;
     bufLineColor = null;
@@ -3923,61 +3951,71 @@ public class PShapeOpenGL extends PShape {
     int sizef = size * PGL.SIZEOF_FLOAT;
     int sizei = size * PGL.SIZEOF_INT;
 
-    tessGeo.updatePolyVerticesBuffer();
-    if (bufPolyVertex == null)
-      bufPolyVertex = new VertexBuffer(pg, PGL.ARRAY_BUFFER, 4, PGL.SIZEOF_FLOAT);
-    pgl.bindBuffer(PGL.ARRAY_BUFFER, bufPolyVertex.glId);
-    pgl.bufferData(PGL.ARRAY_BUFFER, 4 * sizef,
-        tessGeo.polyVerticesBuffer, glUsage);
-
-    tessGeo.updatePolyColorsBuffer();
-    if (bufPolyColor == null)
-      bufPolyColor = new VertexBuffer(pg, PGL.ARRAY_BUFFER, 1, PGL.SIZEOF_INT);
-    pgl.bindBuffer(PGL.ARRAY_BUFFER, bufPolyColor.glId);
-    pgl.bufferData(PGL.ARRAY_BUFFER, sizei,
-        tessGeo.polyColorsBuffer, glUsage);
-
-    tessGeo.updatePolyNormalsBuffer();
-    if (bufPolyNormal == null)
-      bufPolyNormal = new VertexBuffer(pg, PGL.ARRAY_BUFFER, 3, PGL.SIZEOF_FLOAT);
-    pgl.bindBuffer(PGL.ARRAY_BUFFER, bufPolyNormal.glId);
-    pgl.bufferData(PGL.ARRAY_BUFFER, 3 * sizef,
-        tessGeo.polyNormalsBuffer, glUsage);
-
-    tessGeo.updatePolyTexCoordsBuffer();
-    if (bufPolyTexcoord == null)
-      bufPolyTexcoord = new VertexBuffer(pg, PGL.ARRAY_BUFFER, 2, PGL.SIZEOF_FLOAT);
-    pgl.bindBuffer(PGL.ARRAY_BUFFER, bufPolyTexcoord.glId);
-    pgl.bufferData(PGL.ARRAY_BUFFER, 2 * sizef,
-        tessGeo.polyTexCoordsBuffer, glUsage);
-
-    tessGeo.updatePolyAmbientBuffer();
-    if (bufPolyAmbient == null)
-      bufPolyAmbient = new VertexBuffer(pg, PGL.ARRAY_BUFFER, 1, PGL.SIZEOF_INT);
-    pgl.bindBuffer(PGL.ARRAY_BUFFER, bufPolyAmbient.glId);
-    pgl.bufferData(PGL.ARRAY_BUFFER, sizei,
-        tessGeo.polyAmbientBuffer, glUsage);
-
-    tessGeo.updatePolySpecularBuffer();
-    if (bufPolySpecular == null)
-      bufPolySpecular = new VertexBuffer(pg, PGL.ARRAY_BUFFER, 1, PGL.SIZEOF_INT);
-    pgl.bindBuffer(PGL.ARRAY_BUFFER, bufPolySpecular.glId);
-    pgl.bufferData(PGL.ARRAY_BUFFER, sizei,
-        tessGeo.polySpecularBuffer, glUsage);
-
-    tessGeo.updatePolyEmissiveBuffer();
-    if (bufPolyEmissive == null)
-      bufPolyEmissive = new VertexBuffer(pg, PGL.ARRAY_BUFFER, 1, PGL.SIZEOF_INT);
-    pgl.bindBuffer(PGL.ARRAY_BUFFER, bufPolyEmissive.glId);
-    pgl.bufferData(PGL.ARRAY_BUFFER, sizei,
-        tessGeo.polyEmissiveBuffer, glUsage);
-
-    tessGeo.updatePolyShininessBuffer();
-    if (bufPolyShininess == null)
-      bufPolyShininess = new VertexBuffer(pg, PGL.ARRAY_BUFFER, 1, PGL.SIZEOF_FLOAT);
-    pgl.bindBuffer(PGL.ARRAY_BUFFER, bufPolyShininess.glId);
-    pgl.bufferData(PGL.ARRAY_BUFFER, sizef,
-        tessGeo.polyShininessBuffer, glUsage);
+    interleavedPolys = pg.getHint(ENABLE_INTERLEAVED_VERTICES);
+    if (interleavedPolys) {
+      tessGeo.updatePolyInterleavedBuffer();
+      if (bufPolyInterleaved == null)
+        bufPolyInterleaved = new VertexBuffer(pg, PGL.ARRAY_BUFFER, 1, tessGeo.polyStride);
+      pgl.bindBuffer(PGL.ARRAY_BUFFER, bufPolyInterleaved.glId);
+      pgl.bufferData(PGL.ARRAY_BUFFER, size * tessGeo.polyStride,
+          tessGeo.polyInterleavedBuffer, glUsage);
+    } else {
+      tessGeo.updatePolyVerticesBuffer();
+      if (bufPolyVertex == null)
+        bufPolyVertex = new VertexBuffer(pg, PGL.ARRAY_BUFFER, 4, PGL.SIZEOF_FLOAT);
+      pgl.bindBuffer(PGL.ARRAY_BUFFER, bufPolyVertex.glId);
+      pgl.bufferData(PGL.ARRAY_BUFFER, 4 * sizef,
+          tessGeo.polyVerticesBuffer, glUsage);
+
+      tessGeo.updatePolyColorsBuffer();
+      if (bufPolyColor == null)
+        bufPolyColor = new VertexBuffer(pg, PGL.ARRAY_BUFFER, 1, PGL.SIZEOF_INT);
+      pgl.bindBuffer(PGL.ARRAY_BUFFER, bufPolyColor.glId);
+      pgl.bufferData(PGL.ARRAY_BUFFER, sizei,
+          tessGeo.polyColorsBuffer, glUsage);
+
+      tessGeo.updatePolyNormalsBuffer();
+      if (bufPolyNormal == null)
+        bufPolyNormal = new VertexBuffer(pg, PGL.ARRAY_BUFFER, 3, PGL.SIZEOF_FLOAT);
+      pgl.bindBuffer(PGL.ARRAY_BUFFER, bufPolyNormal.glId);
+      pgl.bufferData(PGL.ARRAY_BUFFER, 3 * sizef,
+          tessGeo.polyNormalsBuffer, glUsage);
+
+      tessGeo.updatePolyTexCoordsBuffer();
+      if (bufPolyTexcoord == null)
+        bufPolyTexcoord = new VertexBuffer(pg, PGL.ARRAY_BUFFER, 2, PGL.SIZEOF_FLOAT);
+      pgl.bindBuffer(PGL.ARRAY_BUFFER, bufPolyTexcoord.glId);
+      pgl.bufferData(PGL.ARRAY_BUFFER, 2 * sizef,
+          tessGeo.polyTexCoordsBuffer, glUsage);
+
+      tessGeo.updatePolyAmbientBuffer();
+      if (bufPolyAmbient == null)
+        bufPolyAmbient = new VertexBuffer(pg, PGL.ARRAY_BUFFER, 1, PGL.SIZEOF_INT);
+      pgl.bindBuffer(PGL.ARRAY_BUFFER, bufPolyAmbient.glId);
+      pgl.bufferData(PGL.ARRAY_BUFFER, sizei,
+          tessGeo.polyAmbientBuffer, glUsage);
+
+      tessGeo.updatePolySpecularBuffer();
+      if (bufPolySpecular == null)
+        bufPolySpecular = new VertexBuffer(pg, PGL.ARRAY_BUFFER, 1, PGL.SIZEOF_INT);
+      pgl.bindBuffer(PGL.ARRAY_BUFFER, bufPolySpecular.glId);
+      pgl.bufferData(PGL.ARRAY_BUFFER, sizei,
+          tessGeo.polySpecularBuffer, glUsage);
+
+      tessGeo.updatePolyEmissiveBuffer();
+      if (bufPolyEmissive == null)
+        bufPolyEmissive = new VertexBuffer(pg, PGL.ARRAY_BUFFER, 1, PGL.SIZEOF_INT);
+      pgl.bindBuffer(PGL.ARRAY_BUFFER, bufPolyEmissive.glId);
+      pgl.bufferData(PGL.ARRAY_BUFFER, sizei,
+          tessGeo.polyEmissiveBuffer, glUsage);
+
+      tessGeo.updatePolyShininessBuffer();
+      if (bufPolyShininess == null)
+        bufPolyShininess = new VertexBuffer(pg, PGL.ARRAY_BUFFER, 1, PGL.SIZEOF_FLOAT);
+      pgl.bindBuffer(PGL.ARRAY_BUFFER, bufPolyShininess.glId);
+      pgl.bufferData(PGL.ARRAY_BUFFER, sizef,
+          tessGeo.polyShininessBuffer, glUsage);
+    }
 
     for (String name: polyAttribs.keySet()) {
       VertexAttribute attrib = polyAttribs.get(name);
@@ -4085,14 +4123,19 @@ public class PShapeOpenGL extends PShape {
   protected boolean contextIsOutdated() {
     boolean outdated = !pgl.contextIsCurrent(context);
     if (outdated) {
-      bufPolyVertex.dispose();
-      bufPolyColor.dispose();
-      bufPolyNormal.dispose();
-      bufPolyTexcoord.dispose();
-      bufPolyAmbient.dispose();
-      bufPolySpecular.dispose();
-      bufPolyEmissive.dispose();
-      bufPolyShininess.dispose();
+      if (bufPolyInterleaved != null) {
+        bufPolyInterleaved.dispose();
+      }
+      if (bufPolyVertex != null) {
+        bufPolyVertex.dispose();
+        bufPolyColor.dispose();
+        bufPolyNormal.dispose();
+        bufPolyTexcoord.dispose();
+        bufPolyAmbient.dispose();
+        bufPolySpecular.dispose();
+        bufPolyEmissive.dispose();
+        bufPolyShininess.dispose();
+      }
       for (VertexAttribute attrib: polyAttribs.values()) {
         attrib.buf.dispose();
       }
@@ -4128,6 +4171,10 @@ public class PShapeOpenGL extends PShape {
 
 
   protected void updateGeometryImpl() {
+    if (interleavedPolys) {
+      updateInterleavedGeometry();
+    }
+
     if (modifiedPolyVertices) {
       int offset = firstModifiedPolyVertex;
       int size = lastModifiedPolyVertex - offset + 1;
@@ -4258,6 +4305,85 @@ public class PShapeOpenGL extends PShape {
   }
 
 
+  // With the interleaved layout, the ranges of all the modified poly
+  // attributes are merged and packed into a single buffer update.
+  protected void updateInterleavedGeometry() {
+    int first = PConstants.MAX_INT;
+    int last = PConstants.MIN_INT;
+    if (modifiedPolyVertices) {
+      first = PApplet.min(first, firstModifiedPolyVertex);
+      last = PApplet.max(last, lastModifiedPolyVertex);
+      modifiedPolyVertices = false;
+      firstModifiedPolyVertex = PConstants.MAX_INT;
+      lastModifiedPolyVertex = PConstants.MIN_INT;
+    }
+    if (modifiedPolyColors) {
+      first = PApplet.min(first, firstModifiedPolyColor);
+      last = PApplet.max(last, lastModifiedPolyColor);
+      modifiedPolyColors = false;
+      firstModifiedPolyColor = PConstants.MAX_INT;
+      lastModifiedPolyColor = PConstants.MIN_INT;
+    }
+    if (modifiedPolyNormals) {
+      first = PApplet.min(first, firstModifiedPolyNormal);
+      last = PApplet.max(last, lastModifiedPolyNormal);
+      modifiedPolyNormals = false;
+      firstModifiedPolyNormal = PConstants.MAX_INT;
+      lastModifiedPolyNormal = PConstants.MIN_INT;
+    }
+    if (modifiedPolyTexCoords) {
+      first = PApplet.min(first, firstModifiedPolyTexcoord);
+      last = PApplet.max(last, lastModifiedPolyTexcoord);
+      modifiedPolyTexCoords = false;
+      firstModifiedPolyTexcoord = PConstants.MAX_INT;
+      lastModifiedPolyTexcoord = PConstants.MIN_INT;
+    }
+    if (modifiedPolyAmbient) {
+      first = PApplet.min(first, firstModifiedPolyAmbient);
+      last = PApplet.max(last, lastModifiedPolyAmbient);
+      modifiedPolyAmbient = false;
+      firstModifiedPolyAmbient = PConstants.MAX_INT;
+      lastModifiedPolyAmbient = PConstants.MIN_INT;
+    }
+    if (modifiedPolySpecular) {
+      first = PApplet.min(first, firstModifiedPolySpecular);
+      last = PApplet.max(last, lastModifiedPolySpecular);
+      modifiedPolySpecular = false;
+      firstModifiedPolySpecular = PConstants.MAX_INT;
+      lastModifiedPolySpecular = PConstants.MIN_INT;
+    }
+    if (modifiedPolyEmissive) {
+      first = PApplet.min(first, firstModifiedPolyEmissive);
+      last = PApplet.max(last, lastModifiedPolyEmissive);
+      modifiedPolyEmissive = false;
+      firstModifiedPolyEmissive = PConstants.MAX_INT;
+      lastModifiedPolyEmissive = PConstants.MIN_INT;
+    }
+    if (modifiedPolyShininess) {
+      first = PApplet.min(first, firstModifiedPolyShininess);
+      last = PApplet.max(last, lastModifiedPolyShininess);
+      modifiedPolyShininess = false;
+      firstModifiedPolyShininess = PConstants.MAX_INT;
+      lastModifiedPolyShininess = PConstants.MIN_INT;
+    }
+    if (first <= last) {
+      copyPolyInterleaved(first, last - first + 1);
+    }
+  }
+
+
+  protected void copyPolyInterleaved(int offset, int size) {
+    int stride = tessGeo.polyStride;
+    tessGeo.updatePolyInterleavedBuffer(offset, size);
+    pgl.bindBuffer(PGL.ARRAY_BUFFER, bufPolyInterleaved.glId);
+    tessGeo.polyInterleavedBuffer.position(stride * offset);
+    pgl.bufferSubData(PGL.ARRAY_BUFFER, stride * offset, stride * size,
+        tessGeo.polyInterleavedBuffer);
+    tessGeo.polyInterleavedBuffer.rewind();
+    pgl.bindBuffer(PGL.ARRAY_BUFFER, 0);
+  }
+
+
   protected void copyPolyVertices(int offset, int size) {
     tessGeo.updatePolyVerticesBuffer(offset, size);
     pgl.bindBuffer(PGL.ARRAY_BUFFER, bufPolyVertex.glId);
@@ -4544,6 +4670,230 @@ public class PShapeOpenGL extends PShape {
   }
 
 
+  ///////////////////////////////////////////////////////////
+
+  //
+
+  // Instance data
+
+
+  @Override
+  public void setInstanceTransform(int index, PMatrix matrix) {
+    instanceCheck(index);
+    if (instanceMatrix == null) instanceMatrix = new PMatrix3D();
+    PMatrix3D m = instanceMatrix;
+    m.set(matrix);
+    int i = INSTANCE_TRANSFORM_SIZE * index;
+    instanceTransforms[i++] = m.m00;
+    instanceTransforms[i++] = m.m10;
+    instanceTransforms[i++] = m.m20;
+    instanceTransforms[i++] = m.m30;
+    instanceTransforms[i++] = m.m01;
+    instanceTransforms[i++] = m.m11;
+    instanceTransforms[i++] = m.m21;
+    instanceTransforms[i++] = m.m31;
+    instanceTransforms[i++] = m.m02;
+    instanceTransforms[i++] = m.m12;
+    instanceTransforms[i++] = m.m22;
+    instanceTransforms[i++] = m.m32;
+    instanceTransforms[i++] = m.m03;
+    instanceTransforms[i++] = m.m13;
+    instanceTransforms[i++] = m.m23;
+    instanceTransforms[i  ] = m.m33;
+    modifiedInstances = true;
+  }
+
+
+  @Override
+  public void setInstanceColor(int index, int color) {
+    instanceCheck(index);
+    int i = INSTANCE_COLOR_SIZE * index;
+    instanceColors[i++] = ((color >> 16) & 0xFF) / 255.0f;
+    instanceColors[i++] = ((color >>  8) & 0xFF) / 255.0f;
+    instanceColors[i++] = ((color >>  0) & 0xFF) / 255.0f;
+    instanceColors[i  ] = ((color >> 24) & 0xFF) / 255.0f;
+    modifiedInstances = true;
+  }
+
+
+  @Override
+  public void setInstanceAttrib(String name, int index, float... values) {
+    if (values.length < 1 || 4 < values.length) {
+      PGraphics.showWarning("Instance attributes must have between 1 and 4 components");
+      return;
+    }
+    if (instanceAttribs == null) {
+      instanceAttribs = new LinkedHashMap<String, InstanceAttribute>();
+    }
+    InstanceAttribute attrib = instanceAttribs.get(name);
+    if (attrib == null) {
+      attrib = new InstanceAttribute(name, values.length);
+      instanceAttribs.put(name, attrib);
+    } else if (attrib.size != values.length) {
+      PGraphics.showWarning("Instance attribute " + name +
+                            " was defined with " + attrib.size + " components");
+      return;
+    }
+    instanceCheck(index);
+    PApplet.arrayCopy(values, 0, attrib.values, attrib.size * index,
+                      attrib.size);
+    modifiedInstances = true;
+  }
+
+
+  // Makes sure that there is data for the instance with the given index,
+  // initializing new instances to the identity transform and white color.
+  // Custom attributes default to zero.
+  protected void instanceCheck(int index) {
+    if (instanceCount <= index) {
+      int capacity = instanceColors == null ? 0 :
+                     instanceColors.length / INSTANCE_COLOR_SIZE;
+      if (capacity <= index) {
+        int newSize = PApplet.max(2 * capacity, index + 1);
+        instanceTransforms = expandInstanceData(instanceTransforms,
+                                                INSTANCE_TRANSFORM_SIZE,
+                                                newSize);
+        instanceColors = expandInstanceData(instanceColors,
+                                            INSTANCE_COLOR_SIZE, newSize);
+      }
+
+      for (int n = instanceCount; n <= index; n++) {
+        int i = INSTANCE_TRANSFORM_SIZE * n;
+        Arrays.fill(instanceTransforms, i, i + INSTANCE_TRANSFORM_SIZE, 0);
+        instanceTransforms[i +  0] = 1;
+        instanceTransforms[i +  5] = 1;
+        instanceTransforms[i + 10] = 1;
+        instanceTransforms[i + 15] = 1;
+        i = INSTANCE_COLOR_SIZE * n;
+        Arrays.fill(instanceColors, i, i + INSTANCE_COLOR_SIZE, 1);
+      }
+      instanceCount = index + 1;
+    }
+
+    if (instanceAttribs != null) {
+      int capacity = instanceColors.length / INSTANCE_COLOR_SIZE;
+      for (InstanceAttribute attrib: instanceAttribs.values()) {
+        if (attrib.values.length < attrib.size * capacity) {
+          attrib.values = expandInstanceData(attrib.values, attrib.size,
+                                             capacity);
+        }
+      }
+    }
+  }
+
+
+  static protected float[] expandInstanceData(float[] data, int size,
+                                              int count) {
+    float[] temp = new float[size * count];
+    if (data != null) {
+      PApplet.arrayCopy(data, 0, temp, 0, PApplet.min(data.length, temp.length));
+    }
+    return temp;
+  }
+
+
+  // Uploads the data of the first count instances (transform, color and
+  // then the custom attributes, interleaved) to the instance VBO.
+  protected void updateInstanceBuffer(int count) {
+    if (bufInstance == null || !pgl.contextIsCurrent(bufInstance.context)) {
+      bufInstance = new VertexBuffer(pg, PGL.ARRAY_BUFFER, 1, PGL.SIZEOF_FLOAT);
+      modifiedInstances = true;
+    }
+    if (!modifiedInstances && count == instanceBufferCount) return;
+
+    instanceCheck(count - 1);
+    int stride = instanceStride();
+    if (instanceBuffer == null || instanceBuffer.capacity() < stride * count) {
+      instanceBuffer = PGL.allocateFloatBuffer(stride * count);
+    }
+    instanceBuffer.rewind();
+    instanceBuffer.limit(stride * count);
+    for (int n = 0; n < count; n++) {
+      instanceBuffer.put(instanceTransforms, INSTANCE_TRANSFORM_SIZE * n,
+                         INSTANCE_TRANSFORM_SIZE);
+      instanceBuffer.put(instanceColors, INSTANCE_COLOR_SIZE * n,
+                         INSTANCE_COLOR_SIZE);
+      if (instanceAttribs != null) {
+        for (InstanceAttribute attrib: instanceAttribs.values()) {
+          instanceBuffer.put(attrib.values, attrib.size * n, attrib.size);
+        }
+      }
+    }
+    instanceBuffer.rewind();
+
+    pgl.bindBuffer(PGL.ARRAY_BUFFER, bufInstance.glId);
+    pgl.bufferData(PGL.ARRAY_BUFFER, stride * count * PGL.SIZEOF_FLOAT,
+                   instanceBuffer, PGL.DYNAMIC_DRAW);
+    pgl.bindBuffer(PGL.ARRAY_BUFFER, 0);
+
+    modifiedInstances = false;
+    instanceBufferCount = count;
+  }
+
+
+  // Number of floats per instance in the instance VBO.
+  protected int instanceStride() {
+    int stride = INSTANCE_TRANSFORM_SIZE + INSTANCE_COLOR_SIZE;
+    if (instanceAttribs != null) {
+      for (InstanceAttribute attrib: instanceAttribs.values()) {
+        stride += attrib.size;
+      }
+    }
+    return stride;
+  }
+
+
+  protected void setInstanceAttributes(PShader shader) {
+    int glId = bufInstance.glId;
+    int stride = instanceStride() * PGL.SIZEOF_FLOAT;
+    int offset = 0;
+    shader.setInstanceTransformAttribute(glId, stride, offset);
+    offset += INSTANCE_TRANSFORM_SIZE * PGL.SIZEOF_FLOAT;
+    shader.setInstanceColorAttribute(glId, stride, offset);
+    offset += INSTANCE_COLOR_SIZE * PGL.SIZEOF_FLOAT;
+    if (instanceAttribs != null) {
+      for (InstanceAttribute attrib: instanceAttribs.values()) {
+        int loc = shader.getAttributeLoc(attrib.name);
+        shader.setInstanceAttribute(loc, glId, attrib.size, stride, offset);
+        offset += attrib.size * PGL.SIZEOF_FLOAT;
+      }
+    }
+  }
+
+
+  protected void getInstanceTransform(int n, PMatrix3D m) {
+    float[] t = instanceTransforms;
+    int i = INSTANCE_TRANSFORM_SIZE * n;
+    m.set(t[i + 0], t[i + 4], t[i +  8], t[i + 12],
+          t[i + 1], t[i + 5], t[i +  9], t[i + 13],
+          t[i + 2], t[i + 6], t[i + 10], t[i + 14],
+          t[i + 3], t[i + 7], t[i + 11], t[i + 15]);
+  }
+
+
+  protected int getInstanceColor(int n) {
+    int i = INSTANCE_COLOR_SIZE * n;
+    int r = (int)(instanceColors[i + 0] * 255 + 0.5f);
+    int g = (int)(instanceColors[i + 1] * 255 + 0.5f);
+    int b = (int)(instanceColors[i + 2] * 255 + 0.5f);
+    int a = (int)(instanceColors[i + 3] * 255 + 0.5f);
+    return PGL.javaToNativeARGB((a << 24) | (r << 16) | (g << 8) | b);
+  }
+
+
+  static protected class InstanceAttribute {
+    String name;
+    int size;
+    float[] values;
+
+    InstanceAttribute(String name, int size) {
+      this.name = name;
+      this.size = size;
+      this.values = new float[0];
+    }
+  }
+
+
   ///////////////////////////////////////////////////////////
 
   //
@@ -4706,6 +5056,74 @@ public class PShapeOpenGL extends PShape {
   }
 
 
+  // Draws count instances of this shape, using the transform, color and
+  // custom attributes set with setInstanceTransform(), setInstanceColor()
+  // and setInstanceAttrib(). The polygons are rendered with one instanced
+  // draw call per index block when the hardware and the current shader allow
+  // it. Otherwise, and always for the lines and points of 3D shapes, the
+  // instances are replicated on the CPU into the immediate-mode buffers of
+  // the renderer, so they are still drawn as a single batch.
+  protected void drawInstances(PGraphicsOpenGL g, int count) {
+    if (!visible) return;
+
+    pre(g);
+
+    updateTessellation();
+    updateGeometry();
+
+    boolean instanced = g.canDrawInstanced();
+    if (instanced) {
+      updateInstanceBuffer(count);
+    } else {
+      instanceCheck(count - 1);
+    }
+    renderInstances(g, this, count, instanced);
+
+    // The replicated geometry is flushed right away, so it doesn't get mixed
+    // with the texture state of the shapes drawn in immediate mode afterwards.
+    g.flush();
+
+    post(g);
+  }
+
+
+  protected void renderInstances(PGraphicsOpenGL g, PShapeOpenGL inst,
+                                 int count, boolean instanced) {
+    if (family == GROUP && fragmentedGroup(g)) {
+      for (int i = 0; i < childCount; i++) {
+        PShapeOpenGL child = (PShapeOpenGL) children[i];
+        if (child.visible) {
+          child.pre(g);
+          child.renderInstances(g, inst, count, instanced);
+          child.post(g);
+        }
+      }
+      return;
+    }
+
+    PImage tex = image;
+    if (family == GROUP) {
+      tex = null;
+      if (textures != null && textures.size() == 1) {
+        tex = (PImage)textures.toArray()[0];
+      }
+    }
+
+    if (hasPolys) {
+      if (instanced) {
+        renderPolys(g, tex, inst, count);
+      } else {
+        replicatePolys(g, tex, inst, count);
+      }
+    }
+
+    if (is3D()) {
+      if (hasLines) replicateLines(g, inst, count);
+      if (hasPoints) replicatePoints(g, inst, count);
+    }
+  }
+
+
   private void inGeoToVertices() {
     vertexCount = 0;
     vertexCodeCount = 0;
@@ -4876,6 +5294,15 @@ public class PShapeOpenGL extends PShape {
 
 
   protected void renderPolys(PGraphicsOpenGL g, PImage textureImage) {
+    renderPolys(g, textureImage, null, 0);
+  }
+
+
+  // Renders the polys with instanced draw calls when instanceCount is
+  // positive, taking the per-instance attributes from the shape inst.
+  protected void renderPolys(PGraphicsOpenGL g, PImage textureImage,
+                             PShapeOpenGL inst, int instanceCount) {
+    boolean instanced = 0 < instanceCount;
     boolean customShader = g.polyShader != null;
     boolean needNormals = customShader ? g.polyShader.accessNormals() : false;
     boolean needTexCoords = customShader ? g.polyShader.accessTexCoords() : false;
@@ -4892,7 +5319,8 @@ public class PShapeOpenGL extends PShape {
               n < firstPointIndexCache))) {
         // Rendering fill triangles, which can be lit and textured.
         if (!renderingFill) {
-          shader = g.getPolyShader(g.lights, tex != null);
+          shader = instanced ? g.getInstancedPolyShader(tex != null) :
+                               g.getPolyShader(g.lights, tex != null);
           shader.bind();
           renderingFill = true;
         }
@@ -4910,7 +5338,8 @@ public class PShapeOpenGL extends PShape {
 
           // If the renderer is 2D, then g.lights should always be false,
           // so no need to worry about that.
-          shader = g.getPolyShader(g.lights, false);
+          shader = instanced ? g.getInstancedPolyShader(false) :
+                               g.getPolyShader(g.lights, false);
           shader.bind();
 
           renderingFill = false;
@@ -4922,32 +5351,39 @@ public class PShapeOpenGL extends PShape {
       int icount = cache.indexCount[n];
       int voffset = cache.vertexOffset[n];
 
-      shader.setVertexAttribute(root.bufPolyVertex.glId, 4, PGL.FLOAT,
-          0, 4 * voffset * PGL.SIZEOF_FLOAT);
-      shader.setColorAttribute(root.bufPolyColor.glId, 4, PGL.UNSIGNED_BYTE,
-          0, 4 * voffset * PGL.SIZEOF_BYTE);
-
-      if (g.lights) {
-        shader.setNormalAttribute(root.bufPolyNormal.glId, 3, PGL.FLOAT,
-            0, 3 * voffset * PGL.SIZEOF_FLOAT);
-        shader.setAmbientAttribute(root.bufPolyAmbient.glId, 4, PGL.UNSIGNED_BYTE,
-            0, 4 * voffset * PGL.SIZEOF_BYTE);
-        shader.setSpecularAttribute(root.bufPolySpecular.glId, 4, PGL.UNSIGNED_BYTE,
-            0, 4 * voffset * PGL.SIZEOF_BYTE);
-        shader.setEmissiveAttribute(root.bufPolyEmissive.glId, 4, PGL.UNSIGNED_BYTE,
+      if (root.interleavedPolys) {
+        setInterleavedAttributes(shader, voffset, g.lights,
+                                 g.lights || needNormals,
+                                 tex != null || needTexCoords);
+        if (tex != null || needTexCoords) shader.setTexture(tex);
+      } else {
+        shader.setVertexAttribute(root.bufPolyVertex.glId, 4, PGL.FLOAT,
+            0, 4 * voffset * PGL.SIZEOF_FLOAT);
+        shader.setColorAttribute(root.bufPolyColor.glId, 4, PGL.UNSIGNED_BYTE,
             0, 4 * voffset * PGL.SIZEOF_BYTE);
-        shader.setShininessAttribute(root.bufPolyShininess.glId, 1, PGL.FLOAT,
-            0, voffset * PGL.SIZEOF_FLOAT);
-      }
-      if (g.lights || needNormals) {
-        shader.setNormalAttribute(root.bufPolyNormal.glId, 3, PGL.FLOAT,
-            0, 3 * voffset * PGL.SIZEOF_FLOAT);
-      }
 
-      if (tex != null || needTexCoords) {
-        shader.setTexcoordAttribute(root.bufPolyTexcoord.glId, 2, PGL.FLOAT,
-            0, 2 * voffset * PGL.SIZEOF_FLOAT);
-        shader.setTexture(tex);
+        if (g.lights) {
+          shader.setNormalAttribute(root.bufPolyNormal.glId, 3, PGL.FLOAT,
+              0, 3 * voffset * PGL.SIZEOF_FLOAT);
+          shader.setAmbientAttribute(root.bufPolyAmbient.glId, 4, PGL.UNSIGNED_BYTE,
+              0, 4 * voffset * PGL.SIZEOF_BYTE);
+          shader.setSpecularAttribute(root.bufPolySpecular.glId, 4, PGL.UNSIGNED_BYTE,
+              0, 4 * voffset * PGL.SIZEOF_BYTE);
+          shader.setEmissiveAttribute(root.bufPolyEmissive.glId, 4, PGL.UNSIGNED_BYTE,
+              0, 4 * voffset * PGL.SIZEOF_BYTE);
+          shader.setShininessAttribute(root.bufPolyShininess.glId, 1, PGL.FLOAT,
+              0, voffset * PGL.SIZEOF_FLOAT);
+        }
+        if (g.lights || needNormals) {
+          shader.setNormalAttribute(root.bufPolyNormal.glId, 3, PGL.FLOAT,
+              0, 3 * voffset * PGL.SIZEOF_FLOAT);
+        }
+
+        if (tex != null || needTexCoords) {
+          shader.setTexcoordAttribute(root.bufPolyTexcoord.glId, 2, PGL.FLOAT,
+              0, 2 * voffset * PGL.SIZEOF_FLOAT);
+          shader.setTexture(tex);
+        }
       }
 
       for (VertexAttribute attrib: polyAttribs.values()) {
@@ -4958,7 +5394,13 @@ public class PShapeOpenGL extends PShape {
             attrib.isColor(), 0, attrib.sizeInBytes(voffset));
       }
 
-      shader.draw(root.bufPolyIndex.glId, icount, ioffset);
+      if (instanced) {
+        inst.setInstanceAttributes(shader);
+        shader.drawInstanced(root.bufPolyIndex.glId, icount, ioffset,
+                             instanceCount);
+      } else {
+        shader.draw(root.bufPolyIndex.glId, icount, ioffset);
+      }
     }
 
     for (VertexAttribute attrib: polyAttribs.values()) {
@@ -4970,6 +5412,113 @@ public class PShapeOpenGL extends PShape {
   }
 
 
+  protected void setInterleavedAttributes(PShader shader, int voffset,
+                                          boolean lit, boolean normals,
+                                          boolean texcoords) {
+    int glId = root.bufPolyInterleaved.glId;
+    int stride = root.tessGeo.polyStride;
+    int offset = voffset * stride;
+
+    shader.setVertexAttribute(glId, 4, PGL.FLOAT, stride,
+        offset + TessGeometry.POLY_VERTEX_OFFSET);
+    shader.setColorAttribute(glId, 4, PGL.UNSIGNED_BYTE, stride,
+        offset + TessGeometry.POLY_COLOR_OFFSET);
+
+    if (lit) {
+      shader.setAmbientAttribute(glId, 4, PGL.UNSIGNED_BYTE, stride,
+          offset + TessGeometry.POLY_AMBIENT_OFFSET);
+      shader.setSpecularAttribute(glId, 4, PGL.UNSIGNED_BYTE, stride,
+          offset + TessGeometry.POLY_SPECULAR_OFFSET);
+      shader.setEmissiveAttribute(glId, 4, PGL.UNSIGNED_BYTE, stride,
+          offset + TessGeometry.POLY_EMISSIVE_OFFSET);
+      shader.setShininessAttribute(glId, 1, PGL.FLOAT, stride,
+          offset + TessGeometry.POLY_SHININESS_OFFSET);
+    }
+
+    if (normals) {
+      shader.setNormalAttribute(glId, 3, PGL.BYTE, stride,
+          offset + TessGeometry.POLY_NORMAL_OFFSET);
+    }
+
+    if (texcoords) {
+      shader.setTexcoordAttribute(glId, 2, PGL.FLOAT, stride,
+          offset + TessGeometry.POLY_TEXCOORD_OFFSET);
+    }
+  }
+
+
+  protected void replicatePolys(PGraphicsOpenGL g, PImage textureImage,
+                                PShapeOpenGL inst, int count) {
+    PMatrix3D tr = new PMatrix3D();
+    for (int i = 0; i < count; i++) {
+      getInstanceMatrix(g, inst, i, tr);
+      int tint = inst.getInstanceColor(i);
+      for (int n = firstPolyIndexCache; n <= lastPolyIndexCache; n++) {
+        // As in renderPolys(), only the fill triangles are textured
+        PImage img = null;
+        if (textureImage != null &&
+            (is3D() || ((firstLineIndexCache == -1 ||
+                         n < firstLineIndexCache) &&
+                        (firstPointIndexCache == -1 ||
+                         n < firstPointIndexCache)))) {
+          img = textureImage;
+        }
+
+        int firsti = g.tessGeo.polyIndexCount;
+        int index = g.tessGeo.addPolyCopy(tessGeo, n, tr, tint);
+        int lasti = g.tessGeo.polyIndexCount - 1;
+
+        PGraphicsOpenGL.TexCache texCache = g.texCache;
+        if (0 < texCache.size && texCache.textures[texCache.size - 1] == img) {
+          texCache.setLastIndex(lasti, index);
+        } else {
+          texCache.addTexture(img, firsti, index, lasti, index);
+        }
+      }
+      if (g.tessGeo.isFull()) g.flush(RenderStats.FLUSH_FULL);
+    }
+  }
+
+
+  protected void replicateLines(PGraphicsOpenGL g, PShapeOpenGL inst,
+                                int count) {
+    PMatrix3D tr = new PMatrix3D();
+    for (int i = 0; i < count; i++) {
+      getInstanceMatrix(g, inst, i, tr);
+      int tint = inst.getInstanceColor(i);
+      for (int n = firstLineIndexCache; n <= lastLineIndexCache; n++) {
+        g.tessGeo.addLineCopy(tessGeo, n, tr, tint);
+      }
+      if (g.tessGeo.isFull()) g.flush(RenderStats.FLUSH_FULL);
+    }
+  }
+
+
+  protected void replicatePoints(PGraphicsOpenGL g, PShapeOpenGL inst,
+                                 int count) {
+    PMatrix3D tr = new PMatrix3D();
+    for (int i = 0; i < count; i++) {
+      getInstanceMatrix(g, inst, i, tr);
+      int tint = inst.getInstanceColor(i);
+      for (int n = firstPointIndexCache; n <= lastPointIndexCache; n++) {
+        g.tessGeo.addPointCopy(tessGeo, n, tr, tint);
+      }
+      if (g.tessGeo.isFull()) g.flush(RenderStats.FLUSH_FULL);
+    }
+  }
+
+
+  // The immediate-mode geometry is already transformed by the modelview
+  // matrix when the renderer only flushes when full.
+  static protected void getInstanceMatrix(PGraphicsOpenGL g, PShapeOpenGL inst,
+                                          int i, PMatrix3D tr) {
+    inst.getInstanceTransform(i, tr);
+    if (g.flushMode == PGraphicsOpenGL.FLUSH_WHEN_FULL) {
+      tr.preApply(g.modelview);
+    }
+  }
+
+
   protected void rawPolys(PGraphicsOpenGL g, PImage textureImage) {
     PGraphics raw = g.getRaw();
 
@@ -0,0 +1,141 @@
+/* -*- mode: java; c-basic-offset: 2; indent-tabs-mode: nil -*- */
+
+/*
+  Part of the Processing project - http://processing.org
+
+  Copyright (c) 2012-16 The Processing Foundation
+  Copyright (c) 2004-12 Ben Fry and Casey Reas
+  Copyright (c) 2001-04 Massachusetts Institute of Technology
+
+  This library is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License as published by the Free Software Foundation, version 2.1.
+
+  This library is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General
+  Public License along with this library; if not, write to the
+  Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+  Boston, MA  02111-1307  USA
+*/
+
+package processing.opengl;
+
+import java.io.PrintWriter;
+
+/**
+ * Counters and timings of the work done by the OpenGL renderer during one
+ * frame. They are only recorded after hint(ENABLE_RENDER_STATS), and the
+ * ones of the last frame are returned by PGraphicsOpenGL.getRenderStats().
+ * Times are in nanoseconds.
+ */
+public class RenderStats {
+  // Causes of a flush
+  static protected final int FLUSH_STATE      = 0;
+  static protected final int FLUSH_FULL       = 1;
+  static protected final int FLUSH_CONTINUOUS = 2;
+  static protected final int FLUSH_FRAME      = 3;
+
+  static protected final String CSV_HEADER =
+    "frame,flushes,stateFlushes,fullFlushes,continuousFlushes,frameFlushes," +
+    "drawCalls,vertices,indices,uploadedBytes,texCacheBreaks," +
+    "tessellationTime,uploadTime,drawTime,sortTime," +
+    "tessCacheHits,tessCacheMisses,textLayoutHits,textLayoutMisses";
+
+  /** Frame the statistics belong to. */
+  public int frame;
+
+  /** Flushes that sent geometry to the GPU, and how many of them were
+   * caused by a change of the rendering state (shader, blending, projection,
+   * etc.), by the tessellated geometry buffers filling up, by the
+   * FLUSH_CONTINUOUSLY mode, and by the end of the frame. */
+  public int flushes;
+  public int stateFlushes;
+  public int fullFlushes;
+  public int continuousFlushes;
+  public int frameFlushes;
+
+  /** Draw calls issued, and vertices and indices they used. */
+  public int drawCalls;
+  public int vertices;
+  public int indices;
+
+  /** Bytes uploaded to the immediate-mode VBOs. */
+  public int uploadedBytes;
+
+  /** Extra batches the flushed triangles were split into because they
+   * use different textures. */
+  public int texCacheBreaks;
+
+  /** Time spent tessellating immediate-mode shapes, uploading their
+   * geometry, drawing it, and depth sorting transparent triangles. The draw
+   * time only measures issuing the calls, not the GPU work. */
+  public long tessellationTime;
+  public long uploadTime;
+  public long drawTime;
+  public long sortTime;
+
+  /** Polygons whose triangulation was found in the cache enabled with
+   * hint(ENABLE_TESSELLATION_CACHE), and polygons tessellated with the
+   * cache enabled. */
+  public int tessCacheHits;
+  public int tessCacheMisses;
+
+  /** Calls to text() that drew the layout found in the cache enabled with
+   * hint(ENABLE_TEXT_LAYOUT_CACHE), and calls that laid out the text. */
+  public int textLayoutHits;
+  public int textLayoutMisses;
+
+
+  protected void reset() {
+    frame = 0;
+    flushes = stateFlushes = fullFlushes = continuousFlushes = frameFlushes = 0;
+    drawCalls = vertices = indices = 0;
+    uploadedBytes = texCacheBreaks = 0;
+    tessellationTime = uploadTime = drawTime = sortTime = 0;
+    tessCacheHits = tessCacheMisses = 0;
+    textLayoutHits = textLayoutMisses = 0;
+  }
+
+
+  protected void addFlush(int cause) {
+    flushes++;
+    if (cause == FLUSH_FULL) {
+      fullFlushes++;
+    } else if (cause == FLUSH_CONTINUOUS) {
+      continuousFlushes++;
+    } else if (cause == FLUSH_FRAME) {
+      frameFlushes++;
+    } else {
+      stateFlushes++;
+    }
+  }
+
+
+  protected void writeCSV(PrintWriter writer) {
+    writer.println(frame + "," + flushes + "," + stateFlushes + "," +
+                   fullFlushes + "," + continuousFlushes + "," +
+                   frameFlushes + "," + drawCalls + "," + vertices + "," +
+                   indices + "," + uploadedBytes + "," + texCacheBreaks + "," +
+                   tessellationTime + "," + uploadTime + "," + drawTime + "," +
+                   sortTime + "," + tessCacheHits + "," + tessCacheMisses +
+                   "," + textLayoutHits + "," + textLayoutMisses);
+  }
+
+
+  @Override
+  public String toString() {
+    return "frame " + frame + ": " + flushes + " flushes, " + drawCalls +
+           " draw calls, " + vertices + " vertices, " + indices +
+           " indices, " + uploadedBytes + " bytes uploaded, " +
+           texCacheBreaks + " texture breaks, tessellation " +
+           tessellationTime / 1000 + "us, upload " + uploadTime / 1000 +
+           "us, draw " + drawTime / 1000 + "us, sort " + sortTime / 1000 +
+           "us, tessellation cache " + tessCacheHits + " hits " +
+           tessCacheMisses + " misses, text layout cache " +
+           textLayoutHits + " hits " + textLayoutMisses + " misses";
+  }
+}
@@ -0,0 +1,488 @@
+/* -*- mode: java; c-basic-offset: 2; indent-tabs-mode: nil -*- */
+
+/*
+  Part of the Processing project - http://processing.org
+
+  Copyright (c) 2012-16 The Processing Foundation
+  Copyright (c) 2004-12 Ben Fry and Casey Reas
+  Copyright (c) 2001-04 Massachusetts Institute of Technology
+
+  This library is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License as published by the Free Software Foundation, version 2.1.
+
+  This library is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General
+  Public License along with this library; if not, write to the
+  Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+  Boston, MA  02111-1307  USA
+*/
+
+package processing.opengl;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Tessellator that remembers the triangulation of the polygons it receives
+ * repeatedly, used by the fill of the polygons after
+ * hint(ENABLE_TESSELLATION_CACHE). A polygon is identified by the
+ * coordinates of its vertices, its contours and its winding rule, and not
+ * by the rest of the vertex data (colors, normals, texture coordinates).
+ * Since the vertices are tessellated before being transformed, the same
+ * outline drawn anywhere and in any color is found in the cache.
+ *
+ * A triangulation is stored as the primitives that the tessellator passed
+ * to the callback, each vertex given by its position in the polygon, and
+ * as the vertices it created with combine(), given by the vertices they
+ * combine and their weights. On a hit, these are passed to the callback
+ * again with the data of the new polygon, without tessellating it.
+ * Polygons are only stored when they are seen a second time, so shapes
+ * drawn just once do not fill the cache, and the ones used least recently
+ * are dropped when it takes more than PGL.TESS_CACHE_BYTES.
+ */
+class TessellationCache implements PGL.Tessellator, PGL.TessellatorCallback {
+  // Slots of the table of the polygons seen recently
+  static final int SEEN_SLOTS = 1024;
+
+  // Index of a missing vertex in the data of combine()
+  static final int NO_VERTEX = Integer.MIN_VALUE;
+
+  protected PGL.Tessellator tess;
+  protected PGL.TessellatorCallback callback;
+
+  // Triangulations by hash of their polygon, least recently used first
+  protected LinkedHashMap<Long, Entry> entries;
+  protected int bytes;
+
+  // Hashes of the polygons that were not found, one per slot
+  protected long[] seen = new long[SEEN_SLOTS];
+
+  // Polygons found in the cache, and polygons tessellated
+  protected int hits;
+  protected int misses;
+
+  protected int windingRule = PGL.TESS_WINDING_ODD;
+  protected boolean tessOnly;
+
+  // Polygon as received
+  protected Object polygonData;
+  protected int vertexCount;
+  protected double[] coords = new double[3 * 64];
+  protected Object[] data = new Object[64];
+  protected int contourStart;
+  protected int contourCount;
+  protected int[] contourEnds = new int[4];
+
+  // Triangulation being recorded, if any. While recording, the tessellator
+  // receives a reference instead of the data of each vertex.
+  protected Entry recording;
+  protected boolean failed;
+  protected int primitiveStart;
+  protected Ref[] refs = new Ref[64];
+  protected Ref[] combinedRefs = new Ref[16];
+
+  // Data of the combined vertices of the polygon
+  protected Object[] combined = new Object[16];
+
+  // Arguments of combine() when replaying
+  protected double[] combineCoords = new double[3];
+  protected Object[] combineData = new Object[4];
+  protected float[] combineWeight = new float[4];
+  protected Object[] combineOut = new Object[1];
+
+
+  static protected class Ref {
+    // Position of the vertex, or -1 - k for the k-th combined vertex
+    final int index;
+
+    Ref(int index) {
+      this.index = index;
+    }
+  }
+
+
+  static protected class Entry {
+    // Polygon
+    int windingRule;
+    int[] contourEnds;
+    double[] coords;
+
+    // Type and vertex count of each primitive, followed by its vertices
+    int[] primitives = new int[64];
+    int primitivesLength;
+
+    // Coordinates, vertices and weights of each combined vertex
+    int combinedCount;
+    double[] combinedCoords = new double[3 * 4];
+    int[] combinedVertices = new int[4 * 4];
+    float[] combinedWeights = new float[4 * 4];
+
+    int bytes;
+
+    void add(int value) {
+      if (primitivesLength == primitives.length) {
+        primitives = Arrays.copyOf(primitives, 2 * primitivesLength);
+      }
+      primitives[primitivesLength++] = value;
+    }
+
+    void addCombined(double[] coords, int[] vertices, float[] weights) {
+      if (3 * combinedCount == combinedCoords.length) {
+        combinedCoords = Arrays.copyOf(combinedCoords, 6 * combinedCount);
+        combinedVertices = Arrays.copyOf(combinedVertices, 8 * combinedCount);
+        combinedWeights = Arrays.copyOf(combinedWeights, 8 * combinedCount);
+      }
+      System.arraycopy(coords, 0, combinedCoords, 3 * combinedCount, 3);
+      System.arraycopy(vertices, 0, combinedVertices, 4 * combinedCount, 4);
+      System.arraycopy(weights, 0, combinedWeights, 4 * combinedCount, 4);
+      combinedCount++;
+    }
+
+    // Trims the arrays once recorded, and counts the bytes they take.
+    void trim() {
+      primitives = Arrays.copyOf(primitives, primitivesLength);
+      combinedCoords = Arrays.copyOf(combinedCoords, 3 * combinedCount);
+      combinedVertices = Arrays.copyOf(combinedVertices, 4 * combinedCount);
+      combinedWeights = Arrays.copyOf(combinedWeights, 4 * combinedCount);
+      // Arrays and objects, with 16 bytes of header each
+      bytes = 8 * 16 + 4 * contourEnds.length + 8 * coords.length +
+              4 * primitives.length + 8 * combinedCoords.length +
+              4 * combinedVertices.length + 4 * combinedWeights.length;
+    }
+  }
+
+
+  TessellationCache(PGL pgl, PGL.TessellatorCallback callback) {
+    this.callback = callback;
+    tess = pgl.createTessellator(this);
+    entries = new LinkedHashMap<Long, Entry>(16, 0.75f, true);
+  }
+
+
+  protected void clear() {
+    entries.clear();
+    bytes = 0;
+    Arrays.fill(seen, 0);
+  }
+
+
+  ///////////////////////////////////////////////////////////
+
+  // Tessellator
+
+
+  @Override
+  public void setCallback(int flag) {
+    tess.setCallback(flag);
+  }
+
+
+  @Override
+  public void setWindingRule(int rule) {
+    windingRule = rule;
+    tess.setWindingRule(rule);
+  }
+
+
+  @Override
+  public void setProperty(int property, int value) {
+    // The other properties are not part of the key
+    tessOnly = true;
+    tess.setProperty(property, value);
+  }
+
+
+  @Override
+  public void beginPolygon() {
+    beginPolygon(null);
+  }
+
+
+  @Override
+  public void beginPolygon(Object data) {
+    polygonData = data;
+    vertexCount = 0;
+    contourCount = 0;
+  }
+
+
+  @Override
+  public void endPolygon() {
+    if (tessOnly || vertexCount == 0) {
+      tessellate(false);
+    } else {
+      long key = hash();
+      Entry entry = entries.get(key);
+      if (entry != null && matches(entry)) {
+        hits++;
+        replay(entry);
+      } else {
+        misses++;
+        int slot = (int)(key ^ (key >>> 32)) & (SEEN_SLOTS - 1);
+        if (seen[slot] == key) {
+          record(key);
+        } else {
+          seen[slot] = key;
+          tessellate(false);
+        }
+      }
+    }
+    polygonData = null;
+    Arrays.fill(data, 0, vertexCount, null);
+  }
+
+
+  @Override
+  public void beginContour() {
+    contourStart = vertexCount;
+  }
+
+
+  @Override
+  public void endContour() {
+    if (contourStart < vertexCount) {
+      if (contourCount == contourEnds.length) {
+        contourEnds = Arrays.copyOf(contourEnds, 2 * contourCount);
+      }
+      contourEnds[contourCount++] = vertexCount;
+    }
+  }
+
+
+  @Override
+  public void addVertex(double[] v) {
+    addVertex(v, 0, v);
+  }
+
+
+  @Override
+  public void addVertex(double[] v, int n, Object data) {
+    if (vertexCount == this.data.length) {
+      coords = Arrays.copyOf(coords, 6 * vertexCount);
+      this.data = Arrays.copyOf(this.data, 2 * vertexCount);
+    }
+    coords[3 * vertexCount + 0] = v[n + 0];
+    coords[3 * vertexCount + 1] = v[n + 1];
+    coords[3 * vertexCount + 2] = v[n + 2];
+    this.data[vertexCount] = data;
+    vertexCount++;
+  }
+
+
+  ///////////////////////////////////////////////////////////
+
+  // Callback of the wrapped tessellator
+
+
+  @Override
+  public void begin(int type) {
+    if (recording != null) {
+      primitiveStart = recording.primitivesLength;
+      recording.add(type);
+      recording.add(0);
+    }
+    callback.begin(type);
+  }
+
+
+  @Override
+  public void end() {
+    if (recording != null) {
+      recording.primitives[primitiveStart + 1] =
+        recording.primitivesLength - primitiveStart - 2;
+    }
+    callback.end();
+  }
+
+
+  @Override
+  public void vertex(Object data) {
+    if (recording != null) {
+      int index = ((Ref) data).index;
+      recording.add(index);
+      callback.vertex(vertexData(index));
+    } else {
+      callback.vertex(data);
+    }
+  }
+
+
+  @Override
+  public void combine(double[] coords, Object[] data,
+                      float[] weight, Object[] outData) {
+    if (recording == null) {
+      callback.combine(coords, data, weight, outData);
+      return;
+    }
+
+    int[] vertices = new int[4];
+    for (int j = 0; j < 4; j++) {
+      vertices[j] = data[j] == null ? NO_VERTEX : ((Ref) data[j]).index;
+      combineData[j] = data[j] == null ? null : vertexData(vertices[j]);
+    }
+    callback.combine(coords, combineData, weight, combineOut);
+
+    int k = recording.combinedCount;
+    recording.addCombined(coords, vertices, weight);
+    setCombined(k, combineOut[0]);
+    outData[0] = combinedRefs[k];
+  }
+
+
+  @Override
+  public void error(int errnum) {
+    if (recording != null) failed = true;
+    callback.error(errnum);
+  }
+
+
+  ///////////////////////////////////////////////////////////
+
+  // Cache
+
+
+  protected long hash() {
+    long h = mix(windingRule, contourCount);
+    for (int c = 0; c < contourCount; c++) {
+      h = mix(h, contourEnds[c]);
+    }
+    for (int i = 0; i < 3 * vertexCount; i++) {
+      h = mix(h, Double.doubleToLongBits(coords[i]));
+    }
+    return h;
+  }
+
+
+  static protected long mix(long h, long v) {
+    h = (h ^ v) * 0x9E3779B97F4A7C15L;
+    return h ^ (h >>> 32);
+  }
+
+
+  protected boolean matches(Entry entry) {
+    if (entry.windingRule != windingRule ||
+        entry.contourEnds.length != contourCount ||
+        entry.coords.length != 3 * vertexCount) {
+      return false;
+    }
+    for (int c = 0; c < contourCount; c++) {
+      if (entry.contourEnds[c] != contourEnds[c]) return false;
+    }
+    for (int i = 0; i < 3 * vertexCount; i++) {
+      if (entry.coords[i] != coords[i]) return false;
+    }
+    return true;
+  }
+
+
+  // Tessellates the polygon recording the output, and stores it if the
+  // tessellator did not report any error.
+  protected void record(long key) {
+    Entry entry = new Entry();
+    entry.windingRule = windingRule;
+    entry.contourEnds = Arrays.copyOf(contourEnds, contourCount);
+    entry.coords = Arrays.copyOf(coords, 3 * vertexCount);
+
+    recording = entry;
+    failed = false;
+    try {
+      tessellate(true);
+    } finally {
+      recording = null;
+      Arrays.fill(combined, 0, entry.combinedCount, null);
+      Arrays.fill(combineData, null);
+      combineOut[0] = null;
+    }
+    if (failed) return;
+
+    entry.trim();
+    if (PGL.TESS_CACHE_BYTES < entry.bytes) return;
+
+    Entry prev = entries.put(key, entry);
+    if (prev != null) bytes -= prev.bytes;
+    bytes += entry.bytes;
+    Iterator<Entry> it = entries.values().iterator();
+    while (PGL.TESS_CACHE_BYTES < bytes) {
+      Entry lru = it.next();
+      bytes -= lru.bytes;
+      it.remove();
+    }
+  }
+
+
+  // Passes the polygon to the wrapped tessellator, with references instead
+  // of the vertex data while recording.
+  protected void tessellate(boolean withRefs) {
+    if (withRefs && refs.length < vertexCount) {
+      refs = Arrays.copyOf(refs, Math.max(vertexCount, 2 * refs.length));
+    }
+    tess.beginPolygon(polygonData);
+    int start = 0;
+    for (int c = 0; c < contourCount; c++) {
+      tess.beginContour();
+      for (int i = start; i < contourEnds[c]; i++) {
+        Object d = data[i];
+        if (withRefs) {
+          if (refs[i] == null) refs[i] = new Ref(i);
+          d = refs[i];
+        }
+        tess.addVertex(coords, 3 * i, d);
+      }
+      tess.endContour();
+      start = contourEnds[c];
+    }
+    tess.endPolygon();
+  }
+
+
+  // Passes a stored triangulation to the callback, combining the vertices
+  // of the current polygon.
+  protected void replay(Entry entry) {
+    for (int k = 0; k < entry.combinedCount; k++) {
+      for (int j = 0; j < 4; j++) {
+        int index = entry.combinedVertices[4 * k + j];
+        combineData[j] = index == NO_VERTEX ? null : vertexData(index);
+        combineWeight[j] = entry.combinedWeights[4 * k + j];
+      }
+      System.arraycopy(entry.combinedCoords, 3 * k, combineCoords, 0, 3);
+      callback.combine(combineCoords, combineData, combineWeight, combineOut);
+      setCombined(k, combineOut[0]);
+    }
+
+    int[] primitives = entry.primitives;
+    int p = 0;
+    while (p < primitives.length) {
+      callback.begin(primitives[p++]);
+      int n = primitives[p++];
+      for (int i = 0; i < n; i++) {
+        callback.vertex(vertexData(primitives[p++]));
+      }
+      callback.end();
+    }
+
+    Arrays.fill(combined, 0, entry.combinedCount, null);
+    Arrays.fill(combineData, null);
+    combineOut[0] = null;
+  }
+
+
+  protected Object vertexData(int index) {
+    return 0 <= index ? data[index] : combined[-1 - index];
+  }
+
+
+  protected void setCombined(int k, Object vertexData) {
+    if (k == combined.length) {
+      combined = Arrays.copyOf(combined, 2 * k);
+      combinedRefs = Arrays.copyOf(combinedRefs, 2 * k);
+    }
+    if (combinedRefs[k] == null) combinedRefs[k] = new Ref(-1 - k);
+    combined[k] = vertexData;
+  }
+}
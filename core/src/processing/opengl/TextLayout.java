@@ -0,0 +1,174 @@
+/* -*- mode: java; c-basic-offset: 2; indent-tabs-mode: nil -*- */
+
+/*
+  Part of the Processing project - http://processing.org
+
+  Copyright (c) 2012-16 The Processing Foundation
+
+  This library is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License as published by the Free Software Foundation, version 2.1.
+
+  This library is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General
+  Public License along with this library; if not, write to the
+  Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+  Boston, MA  02111-1307  USA
+*/
+
+package processing.opengl;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import processing.core.PFont;
+
+/**
+ * Quads of the glyphs of a string of text as laid out by text(str, x, y) in
+ * MODEL mode, recorded the first time the string is drawn after
+ * hint(ENABLE_TEXT_LAYOUT_CACHE). The corners of each quad are relative to
+ * the x, y passed to text(), so the same layout is drawn again anywhere,
+ * and in any color or transformation, without splitting the lines or
+ * measuring and looking up the glyphs.
+ *
+ * The layout only holds for the font texture it was recorded with, since
+ * the texture coordinates come from it.
+ */
+class TextLayout {
+  protected FontTexture fontTex;
+
+  // Texture coordinates of each glyph, and corners x1, y1, x2, y2 of its
+  // quad
+  protected FontTexture.TextureInfo[] infos;
+  protected float[] quads;
+  protected int count;
+
+  // Position of the text when recording
+  protected float x, y;
+
+
+  TextLayout(FontTexture fontTex, float x, float y) {
+    this.fontTex = fontTex;
+    this.x = x;
+    this.y = y;
+    infos = new FontTexture.TextureInfo[16];
+    quads = new float[4 * 16];
+  }
+
+
+  void add(FontTexture.TextureInfo info,
+           float x1, float y1, float x2, float y2) {
+    if (count == infos.length) {
+      infos = Arrays.copyOf(infos, 2 * count);
+      quads = Arrays.copyOf(quads, 8 * count);
+    }
+    infos[count] = info;
+    quads[4 * count + 0] = x1 - x;
+    quads[4 * count + 1] = y1 - y;
+    quads[4 * count + 2] = x2 - x;
+    quads[4 * count + 3] = y2 - y;
+    count++;
+  }
+
+
+  /**
+   * Layouts by text and by the style that places it (font, size, alignment
+   * and leading), the ones used least recently dropped once there are more
+   * than PGL.TEXT_LAYOUT_CACHE_SIZE.
+   */
+  static protected class Cache {
+    protected LinkedHashMap<Key, TextLayout> layouts;
+
+    // Key of the layout being looked up, copied when adding it
+    protected Key lookup = new Key();
+
+    // Layouts found and recorded
+    protected int hits;
+    protected int misses;
+
+
+    Cache() {
+      layouts = new LinkedHashMap<Key, TextLayout>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, TextLayout> e) {
+          return PGL.TEXT_LAYOUT_CACHE_SIZE < size();
+        }
+      };
+    }
+
+
+    // Returns the layout of str with the style of pg, if it was recorded
+    // with fontTex.
+    TextLayout get(PGraphicsOpenGL pg, String str, FontTexture fontTex) {
+      lookup.set(pg, str);
+      TextLayout layout = layouts.get(lookup);
+      if (layout != null && layout.fontTex == fontTex) {
+        hits++;
+        return layout;
+      }
+      misses++;
+      return null;
+    }
+
+
+    // Adds the layout of str with the style of pg, replacing the previous
+    // one if any.
+    void put(PGraphicsOpenGL pg, String str, TextLayout layout) {
+      Key key = new Key();
+      key.set(pg, str);
+      layouts.put(key, layout);
+    }
+
+
+    void clear() {
+      layouts.clear();
+    }
+  }
+
+
+  static protected class Key {
+    String str;
+    PFont font;
+    float size;
+    float leading;
+    int align;
+    int alignY;
+    boolean cameraUp;
+
+    void set(PGraphicsOpenGL pg, String str) {
+      this.str = str;
+      font = pg.textFont;
+      size = pg.textSize;
+      leading = pg.textLeading;
+      align = pg.textAlign;
+      alignY = pg.textAlignY;
+      cameraUp = pg.cameraUp;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof Key)) return false;
+      Key other = (Key) o;
+      return font == other.font && size == other.size &&
+             leading == other.leading && align == other.align &&
+             alignY == other.alignY && cameraUp == other.cameraUp &&
+             str.equals(other.str);
+    }
+
+    @Override
+    public int hashCode() {
+      int result = str.hashCode();
+      result = 31 * result + System.identityHashCode(font);
+      result = 31 * result + Float.floatToIntBits(size);
+      result = 31 * result + Float.floatToIntBits(leading);
+      result = 31 * result + align;
+      result = 31 * result + alignY;
+      return 31 * result + (cameraUp ? 1 : 0);
+    }
+  }
+}
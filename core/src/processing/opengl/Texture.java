@@ -105,6 +105,9 @@ public class Texture implements PConstants {
   protected boolean invertedX;
   protected boolean invertedY;
 
+  protected boolean distanceField;  // true if it holds the distance fields
+                                    // of the glyphs of a FontTexture.
+
   protected int[] rgbaPixels = null;
   protected IntBuffer pixelBuffer = null;
 
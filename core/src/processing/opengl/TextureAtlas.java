@@ -0,0 +1,287 @@
+/* -*- mode: java; c-basic-offset: 2; indent-tabs-mode: nil -*- */
+
+/*
+  Part of the Processing project - http://processing.org
+
+  Copyright (c) 2012-16 The Processing Foundation
+  Copyright (c) 2004-12 Ben Fry and Casey Reas
+  Copyright (c) 2001-04 Massachusetts Institute of Technology
+
+  This library is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License as published by the Free Software Foundation, version 2.1.
+
+  This library is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General
+  Public License along with this library; if not, write to the
+  Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+  Boston, MA  02111-1307  USA
+*/
+
+package processing.opengl;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import processing.core.PApplet;
+import processing.core.PConstants;
+import processing.core.PGraphics;
+import processing.core.PImage;
+import processing.opengl.PGraphicsOpenGL.InGeometry;
+
+/**
+ * Packs small images into a few large textures (the pages of the atlas), so
+ * that consecutive shapes textured with different images end up in the
+ * same block of the TexCache, and are drawn together. Used by the immediate
+ * mode after hint(ENABLE_TEXTURE_ATLAS).
+ *
+ * The images are placed in rows, with their edge pixels repeated around
+ * them to avoid bleeding from the neighbors when filtering. When all the
+ * pages are full, the one drawn least recently is emptied, as long as it
+ * was not used in the last PGL.ATLAS_EVICTION_FRAMES frames.
+ */
+class TextureAtlas implements PConstants {
+  // Pixels repeated around each image
+  static final int PADDING = 2;
+
+  protected PGraphicsOpenGL pg;
+  protected int pageSize;
+  protected ArrayList<Page> pages;
+  protected WeakHashMap<PImage, Entry> entries;
+
+  // Scratch array for the padded images
+  protected int[] padded = new int[0];
+
+
+  protected class Page {
+    Texture tex;
+    PImage image;
+
+    // Current row
+    int rowX, rowY, rowHeight;
+
+    int lastFrame;
+
+    Page() {
+      Texture.Parameters params =
+        new Texture.Parameters(ARGB, pg.textureSampling,
+                               pg.getHint(ENABLE_TEXTURE_MIPMAPS), CLAMP);
+      tex = new Texture(pg, pageSize, pageSize, params);
+      image = pg.wrapTexture(tex);
+    }
+
+    // Top-left corner of a free w x h rectangle, as x + y * pageSize,
+    // or -1 if there is none.
+    int allocate(int w, int h) {
+      if (pageSize < rowX + w) {
+        rowX = 0;
+        rowY += rowHeight;
+        rowHeight = 0;
+      }
+      if (pageSize < rowY + h) return -1;
+
+      int pos = rowX + rowY * pageSize;
+      rowX += w;
+      rowHeight = PApplet.max(rowHeight, h);
+      return pos;
+    }
+
+    void clear() {
+      rowX = rowY = rowHeight = 0;
+    }
+  }
+
+
+  protected class Entry {
+    Page page;
+    int x, y;          // corner of the image, inside the padding
+    int width, height; // size in pixels
+    float u0, v0, du, dv;
+
+    Entry(Page page, int x, int y, int width, int height) {
+      this.page = page;
+      this.x = x;
+      this.y = y;
+      this.width = width;
+      this.height = height;
+      u0 = (float) x / pageSize;
+      v0 = (float) y / pageSize;
+      du = (float) width / pageSize;
+      dv = (float) height / pageSize;
+    }
+  }
+
+
+  TextureAtlas(PGraphicsOpenGL pg) {
+    this.pg = pg;
+    pageSize = PGL.ATLAS_TEXTURE_SIZE;
+    if (0 < PGraphicsOpenGL.maxTextureSize) {
+      pageSize = PApplet.min(pageSize, PGraphicsOpenGL.maxTextureSize);
+    }
+    pages = new ArrayList<Page>();
+    entries = new WeakHashMap<PImage, Entry>();
+  }
+
+
+  /**
+   * Returns the image of the page where img is packed, and maps the texture
+   * coordinates of the vertices in the input geometry to its location in
+   * the page. If img cannot be packed, then it is returned and the texture
+   * coordinates are not modified.
+   */
+  PImage remap(PImage img, InGeometry in) {
+    if (!inUnitSquare(in)) return img;
+
+    if (0 < pages.size() && pages.get(0).tex.contextIsOutdated()) {
+      // The context was lost, so all the pages are gone.
+      pages.clear();
+      entries.clear();
+    }
+
+    Entry entry = entries.get(img);
+    if (entry != null && img.isModified()) {
+      if (entry.width == img.pixelWidth && entry.height == img.pixelHeight) {
+        upload(img, entry);
+      } else {
+        entries.remove(img);
+        entry = null;
+      }
+    }
+    if (entry == null) {
+      if (!accepts(img)) return img;
+      entry = add(img);
+      if (entry == null) return img;
+    }
+
+    entry.page.lastFrame = frame();
+
+    float[] texcoords = in.texcoords;
+    for (int i = 0; i < in.vertexCount; i++) {
+      texcoords[2 * i + 0] = entry.u0 + texcoords[2 * i + 0] * entry.du;
+      texcoords[2 * i + 1] = entry.v0 + texcoords[2 * i + 1] * entry.dv;
+    }
+    return entry.page.image;
+  }
+
+
+  protected void dispose() {
+    for (Page page: pages) {
+      page.tex.dispose();
+    }
+    pages.clear();
+    entries.clear();
+  }
+
+
+  // Images that have a texture of their own (offscreen surfaces, wrapped
+  // textures, or images drawn before enabling the atlas) keep using it.
+  protected boolean accepts(PImage img) {
+    return !(img instanceof PGraphics) &&
+           0 < img.pixelWidth && img.pixelWidth <= PGL.MAX_ATLAS_IMAGE_SIZE &&
+           0 < img.pixelHeight && img.pixelHeight <= PGL.MAX_ATLAS_IMAGE_SIZE &&
+           pg.getCache(img) == null;
+  }
+
+
+  // Texture coordinates outside the image cannot be remapped, since they
+  // would sample the neighbors in the page.
+  static protected boolean inUnitSquare(InGeometry in) {
+    float[] texcoords = in.texcoords;
+    for (int i = 0; i < 2 * in.vertexCount; i++) {
+      float t = texcoords[i];
+      if (t < 0 || 1 < t) return false;
+    }
+    return true;
+  }
+
+
+  protected Entry add(PImage img) {
+    int w = img.pixelWidth + 2 * PADDING;
+    int h = img.pixelHeight + 2 * PADDING;
+
+    Page page = null;
+    int pos = -1;
+    for (int i = 0; i < pages.size() && pos == -1; i++) {
+      page = pages.get(i);
+      pos = page.allocate(w, h);
+    }
+    if (pos == -1) {
+      page = newPage();
+      if (page == null) return null;
+      pos = page.allocate(w, h);
+    }
+
+    Entry entry = new Entry(page, pos % pageSize + PADDING,
+                            pos / pageSize + PADDING,
+                            img.pixelWidth, img.pixelHeight);
+    upload(img, entry);
+    entries.put(img, entry);
+    return entry;
+  }
+
+
+  // A new page, or the least recently used one once emptied, or null if
+  // all of them have been used recently.
+  protected Page newPage() {
+    if (pages.size() < PGL.MAX_ATLAS_TEXTURES) {
+      Page page = new Page();
+      pages.add(page);
+      return page;
+    }
+
+    Page lru = null;
+    for (Page page: pages) {
+      if (lru == null || page.lastFrame < lru.lastFrame) lru = page;
+    }
+    if (frame() - lru.lastFrame < PGL.ATLAS_EVICTION_FRAMES) return null;
+
+    Iterator<Map.Entry<PImage, Entry>> it = entries.entrySet().iterator();
+    while (it.hasNext()) {
+      if (it.next().getValue().page == lru) it.remove();
+    }
+    lru.clear();
+    return lru;
+  }
+
+
+  protected void upload(PImage img, Entry entry) {
+    boolean dispose = img.pixels == null;
+    img.loadPixels();
+
+    // Copying the image into the middle of the padded rectangle, and its
+    // edges into the padding.
+    int w = entry.width;
+    int h = entry.height;
+    int pw = w + 2 * PADDING;
+    int ph = h + 2 * PADDING;
+    if (padded.length < pw * ph) padded = new int[pw * ph];
+    int[] pixels = img.pixels;
+    for (int y = 0; y < ph; y++) {
+      int row = PApplet.constrain(y - PADDING, 0, h - 1) * w;
+      for (int x = 0; x < pw; x++) {
+        padded[y * pw + x] = pixels[row + PApplet.constrain(x - PADDING, 0, w - 1)];
+      }
+    }
+    entry.page.tex.set(padded, entry.x - PADDING, entry.y - PADDING,
+                       pw, ph, img.format);
+    img.setModified(false);
+
+    if (dispose) {
+      // Same as in PGraphicsOpenGL.initCache(), the pixels were only
+      // loaded to copy them into the texture.
+      img.pixels = null;
+      img.loaded = false;
+    }
+  }
+
+
+  protected int frame() {
+    return pg.parent != null ? pg.parent.frameCount : 0;
+  }
+}
@@ -24,6 +24,8 @@
 
 package processing.opengl;
 
+import java.nio.Buffer;
+
 import processing.opengl.PGraphicsOpenGL.GLResourceVertexBuffer;
 
 // TODO: need to combine with PGraphicsOpenGL.VertexAttribute
@@ -31,12 +33,22 @@ public class VertexBuffer {
   static protected final int INIT_VERTEX_BUFFER_SIZE  = 256;
   static protected final int INIT_INDEX_BUFFER_SIZE   = 512;
 
+  // Number of blocks of the size of the largest upload so far that fit in a
+  // streaming buffer before it wraps around and needs to be orphaned.
+  static protected final int STREAM_RING_LENGTH = 4;
+
   public int glId;
   int target;
   int elementSize;
   int ncoords;
   boolean index;
 
+  // Streaming state, all in bytes: size of the storage allocated for the ring,
+  // write position, and offset of the last block of data uploaded.
+  int capacity;
+  int cursor;
+  int offset;
+
   protected PGL pgl;                // The interface between Processing and OpenGL.
   protected int context;            // The context that created this texture.
   private GLResourceVertexBuffer glres;
@@ -69,6 +81,39 @@ public class VertexBuffer {
     pgl.bufferData(target, size, null, PGL.STATIC_DRAW);
   }
 
+  /**
+   * Replaces the entire content of the buffer, reallocating its storage.
+   */
+  protected void setData(int size, Buffer data) {
+    pgl.bufferData(target, size, data, PGL.STATIC_DRAW);
+    capacity = cursor = offset = 0;
+  }
+
+  /**
+   * Appends the data at the current write position of the ring, and stores
+   * the position where it starts in offset. The storage is only reallocated
+   * (orphaned) when the ring wraps around or when it is too small for the new
+   * data, in which case this method returns true.
+   */
+  protected boolean streamData(int size, Buffer data) {
+    boolean realloc = false;
+    if (capacity < size) {
+      capacity = STREAM_RING_LENGTH * ((size + 3) & ~3);
+      realloc = true;
+    } else if (capacity < cursor + size) {
+      realloc = true;
+    }
+    if (realloc) {
+      pgl.bufferData(target, capacity, null, PGL.STREAM_DRAW);
+      cursor = 0;
+    }
+    offset = cursor;
+    pgl.bufferSubData(target, offset, size, data);
+    // Keeping the blocks 4-byte aligned, as required by vertexAttribPointer()
+    cursor += (size + 3) & ~3;
+    return realloc;
+  }
+
   protected void dispose() {
     if (glres != null) {
       glres.dispose();
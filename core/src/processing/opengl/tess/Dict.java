@@ -54,15 +54,35 @@
 
 package processing.opengl.tess;
 
+/* The dictionary is a sorted doubly-linked list with a dummy head node,
+ * as in the original dict-list.  Once it holds MIN_TREE_SIZE nodes, they
+ * are also kept in a treap (a binary search tree in list order, balanced
+ * by random priorities), so that dictSearch() takes O(log n) comparisons
+ * instead of walking the list.  The tree only mirrors the list order, it
+ * is never reordered by comparing keys, so the keys may change in place
+ * as long as the list stays sorted, just like before.  Smaller
+ * dictionaries are searched linearly, which is faster than keeping the
+ * tree balanced.
+ */
 class Dict {
+    static final int MIN_TREE_SIZE = 64;
+
     DictNode head;
     Object frame;
     DictLeq leq;
+    MeshPool pool;    /* where the nodes come from, or null */
+    int size;        /* number of nodes, not counting the head */
+    DictNode root;    /* root of the treap, null when not in use */
+    int seed;        /* state of the priority generator */
 
     private Dict() {
     }
 
     static Dict dictNewDict(Object frame, DictLeq leq) {
+        return dictNewDict(frame, leq, null);
+    }
+
+    static Dict dictNewDict(Object frame, DictLeq leq, MeshPool pool) {
         Dict dict = new Dict();
         dict.head = new DictNode();
 
@@ -72,6 +92,10 @@ class Dict {
 
         dict.frame = frame;
         dict.leq = leq;
+        dict.pool = pool;
+        dict.size = 0;
+        dict.root = null;
+        dict.seed = 0x2545F491;
 
         return dict;
     }
@@ -80,6 +104,8 @@ class Dict {
         dict.head = null;
         dict.frame = null;
         dict.leq = null;
+        dict.pool = null;
+        dict.root = null;
     }
 
     static DictNode dictInsert(Dict dict, Object key) {
@@ -91,13 +117,20 @@ class Dict {
             node = node.prev;
         } while (node.key != null && !dict.leq.leq(dict.frame, node.key, key));
 
-        DictNode newNode = new DictNode();
+        DictNode newNode = dict.pool != null ? dict.pool.newDictNode() : new DictNode();
         newNode.key = key;
         newNode.next = node.next;
         node.next.prev = newNode;
         newNode.prev = node;
         node.next = newNode;
 
+        dict.size++;
+        if (dict.root != null) {
+            treeInsert(dict, newNode);
+        } else if (MIN_TREE_SIZE <= dict.size) {
+            treeBuild(dict);
+        }
+
         return newNode;
     }
 
@@ -124,19 +157,171 @@ class Dict {
     static void dictDelete(Dict dict, DictNode node) {
         node.next.prev = node.prev;
         node.prev.next = node.next;
+
+        dict.size--;
+        if (dict.root != null) {
+            if (2 * dict.size < MIN_TREE_SIZE) {
+                /* Back to linear search, the links are rebuilt if needed */
+                dict.root = null;
+            } else {
+                treeDelete(dict, node);
+            }
+        }
     }
 
+    /* Returns the first node in list order whose key is >= the given key,
+     * or the head if there is none.
+     */
     static DictNode dictSearch(Dict dict, Object key) {
-        DictNode node = dict.head;
+        DictNode node = dict.root;
+        DictNode found = dict.head;
 
-        do {
-            node = node.next;
-        } while (node.key != null && !(dict.leq.leq(dict.frame, key, node.key)));
+        if (node == null) {
+            do {
+                found = found.next;
+            } while (found.key != null && !(dict.leq.leq(dict.frame, key, found.key)));
+
+            return found;
+        }
 
-        return node;
+        while (node != null) {
+            if (dict.leq.leq(dict.frame, key, node.key)) {
+                found = node;
+                node = node.left;
+            } else {
+                node = node.right;
+            }
+        }
+
+        return found;
     }
 
     public interface DictLeq {
         boolean leq(Object frame, Object key1, Object key2);
     }
+
+    /************************ Treap Routines ************************/
+
+/* treeBuild( dict ) puts all the nodes in a new tree in O(n), by adding
+ * them in list order along the right spine (walked up through the parent
+ * links), so that each one takes as its left subtree the nodes of lower
+ * priority it pops from the spine.
+ */
+    static void treeBuild(Dict dict) {
+        DictNode last = null;
+
+        dict.root = null;
+        for (DictNode node = dict.head.next; node != dict.head; node = node.next) {
+            DictNode top = last;
+            DictNode popped = null;
+
+            node.priority = nextPriority(dict);
+            while (top != null && top.priority < node.priority) {
+                popped = top;
+                top = top.parent;
+            }
+            node.left = popped;
+            node.right = null;
+            if (popped != null) popped.parent = node;
+            node.parent = top;
+            if (top == null) {
+                dict.root = node;
+            } else {
+                top.right = node;
+            }
+            last = node;
+        }
+    }
+
+    /* xorshift */
+    static int nextPriority(Dict dict) {
+        int x = dict.seed;
+        x ^= x << 13;
+        x ^= x >>> 17;
+        x ^= x << 5;
+        dict.seed = x;
+        return x;
+    }
+
+/* treeInsert( dict, newNode ) adds to the tree a node that was just linked
+ * into the list.  Of two nodes adjacent in list order, one is always free
+ * on the side facing the other: either the predecessor has no right child,
+ * or the successor has no left child.  The node is attached there, and
+ * rotated up until its priority is below that of its parent.
+ */
+    static void treeInsert(Dict dict, DictNode newNode) {
+        DictNode pred = newNode.prev;
+        DictNode succ = newNode.next;
+
+        newNode.priority = nextPriority(dict);
+        newNode.left = null;
+        newNode.right = null;
+
+        if (pred.key != null && pred.right == null) {
+            pred.right = newNode;
+            newNode.parent = pred;
+        } else {
+            assert (succ.key != null && succ.left == null);
+            succ.left = newNode;
+            newNode.parent = succ;
+        }
+
+        while (newNode.parent != null && newNode.parent.priority < newNode.priority) {
+            rotateUp(dict, newNode);
+        }
+    }
+
+/* treeDelete( dict, node ) rotates the node down until it is a leaf, always
+ * lifting the child with the highest priority, and then detaches it.
+ */
+    static void treeDelete(Dict dict, DictNode node) {
+        while (node.left != null || node.right != null) {
+            DictNode child;
+            if (node.left == null) {
+                child = node.right;
+            } else if (node.right == null) {
+                child = node.left;
+            } else {
+                child = node.left.priority < node.right.priority ? node.right : node.left;
+            }
+            rotateUp(dict, child);
+        }
+
+        DictNode parent = node.parent;
+        if (parent == null) {
+            dict.root = null;
+        } else if (parent.left == node) {
+            parent.left = null;
+        } else {
+            parent.right = null;
+        }
+        node.parent = null;
+    }
+
+/* rotateUp( dict, node ) swaps a node with its parent, keeping the order.
+ */
+    static void rotateUp(Dict dict, DictNode node) {
+        DictNode parent = node.parent;
+        DictNode grand = parent.parent;
+
+        if (parent.left == node) {
+            parent.left = node.right;
+            if (node.right != null) node.right.parent = parent;
+            node.right = parent;
+        } else {
+            parent.right = node.left;
+            if (node.left != null) node.left.parent = parent;
+            node.left = parent;
+        }
+        parent.parent = node;
+        node.parent = grand;
+
+        if (grand == null) {
+            dict.root = node;
+        } else if (grand.left == parent) {
+            grand.left = node;
+        } else {
+            grand.right = node;
+        }
+    }
 }
@@ -58,4 +58,10 @@ class DictNode {
     Object key;
     DictNode next;
     DictNode prev;
+
+    /* Treap links, see Dict */
+    DictNode left;
+    DictNode right;
+    DictNode parent;
+    int priority;
 }
@@ -65,6 +65,7 @@ class GLUhalfEdge {
     public ActiveRegion activeRegion;    /* a region with this upper edge (sweep.c) */
     public int winding;    /* change in winding number when crossing */
     public boolean first;
+    public MeshPool pool;    /* where new mesh objects come from, or null */
 
     public GLUhalfEdge(boolean first) {
         this.first = first;
@@ -80,6 +80,13 @@ public class GLUtessellatorImpl implements PGLUtessellator {
     PriorityQ pq;        /* priority queue of vertex events */
     GLUvertex event;        /* current sweep event being processed */
 
+    /*** storage reused from one polygon to the next ***/
+
+    MeshPool pool = new MeshPool();    /* mesh objects, taken back after each polygon */
+    GLUvertex isect = new GLUvertex();    /* intersection found by CheckForIntersect */
+    ActiveRegion searchKey = new ActiveRegion();    /* key for dictSearch in ConnectLeftVertex */
+    private double[] clamped = new double[3];    /* coordinates passed to addVertex */
+
     /*** state needed for rendering callbacks (see render.c) ***/
 
     boolean flagBoundary;    /* mark boundary edges (use EdgeFlag) */
@@ -174,6 +181,7 @@ public class GLUtessellatorImpl implements PGLUtessellator {
         state = TessState.T_DORMANT;
         lastEdge = null;
         mesh = null;
+        pool.reset();
     }
 
     private void requireState(int newState) {
@@ -394,7 +402,7 @@ public class GLUtessellatorImpl implements PGLUtessellator {
     private boolean flushCache() {
         CachedVertex[] v = cache;
 
-        mesh = Mesh.__gl_meshNewMesh();
+        mesh = Mesh.__gl_meshNewMesh(pool);
         if (mesh == null) return false;
 
         for (int i = 0; i < cacheCount; i++) {
@@ -411,7 +419,6 @@ public class GLUtessellatorImpl implements PGLUtessellator {
         int i;
         boolean tooLarge = false;
         double x;
-        double[] clamped = new double[3];
 
         requireState(TessState.T_IN_CONTOUR);
 
@@ -575,6 +582,8 @@ public class GLUtessellatorImpl implements PGLUtessellator {
         } catch (Exception e) {
             e.printStackTrace();
             callErrorOrErrorData(PGLU.GLU_OUT_OF_MEMORY);
+        } finally {
+            pool.reset();
         }
     }
 
@@ -73,9 +73,14 @@ class Mesh {
 //        if (pair == NULL) return NULL;
 //
 //        e = &pair - > e;
-        e = new GLUhalfEdge(true);
+        if (eNext.pool != null) {
+            e = eNext.pool.newEdgePair();
 //        eSym = &pair - > eSym;
-        eSym = new GLUhalfEdge(false);
+            eSym = e.Sym;
+        } else {
+            e = new GLUhalfEdge(true);
+            eSym = new GLUhalfEdge(false);
+        }
 
 
         /* Make sure eNext points to the first edge of the edge pair */
@@ -111,6 +116,17 @@ class Mesh {
         return e;
     }
 
+/* NewVertex( e ) and NewFace( e ) take the place of memAlloc: they return
+ * a vertex or face from the pool of the mesh that e belongs to, if any.
+ */
+    static GLUvertex NewVertex(GLUhalfEdge e) {
+        return e.pool != null ? e.pool.newVertex() : new GLUvertex();
+    }
+
+    static GLUface NewFace(GLUhalfEdge e) {
+        return e.pool != null ? e.pool.newFace() : new GLUface();
+    }
+
 /* Splice( a, b ) is best described by the Guibas/Stolfi paper or the
  * CS348a notes (see mesh.h).  Basically it modifies the mesh so that
  * a->Onext and b->Onext are exchanged.  This can have various effects
@@ -266,9 +282,9 @@ class Mesh {
  * The loop consists of the two new half-edges.
  */
     public static GLUhalfEdge __gl_meshMakeEdge(GLUmesh mesh) {
-        GLUvertex newVertex1 = new GLUvertex();
-        GLUvertex newVertex2 = new GLUvertex();
-        GLUface newFace = new GLUface();
+        GLUvertex newVertex1 = NewVertex(mesh.eHead);
+        GLUvertex newVertex2 = NewVertex(mesh.eHead);
+        GLUface newFace = NewFace(mesh.eHead);
         GLUhalfEdge e;
 
         e = MakeEdge(mesh.eHead);
@@ -325,7 +341,7 @@ class Mesh {
         Splice(eDst, eOrg);
 
         if (!joiningVertices) {
-            GLUvertex newVertex = new GLUvertex();
+            GLUvertex newVertex = NewVertex(eOrg);
 
             /* We split one vertex into two -- the new vertex is eDst.Org.
              * Make sure the old vertex points to a valid half-edge.
@@ -334,7 +350,7 @@ class Mesh {
             eOrg.Org.anEdge = eOrg;
         }
         if (!joiningLoops) {
-            GLUface newFace = new GLUface();
+            GLUface newFace = NewFace(eOrg);
 
             /* We split one loop into two -- the new loop is eDst.Lface.
              * Make sure the old face points to a valid half-edge.
@@ -379,7 +395,7 @@ class Mesh {
 
             Splice(eDel, eDel.Sym.Lnext);
             if (!joiningLoops) {
-                GLUface newFace = new GLUface();
+                GLUface newFace = NewFace(eDel);
 
                 /* We are splitting one loop into two -- create a new loop for eDel. */
                 MakeFace(newFace, eDel, eDel.Lface);
@@ -429,7 +445,7 @@ class Mesh {
         /* Set the vertex and face information */
         eNew.Org = eOrg.Sym.Org;
         {
-            GLUvertex newVertex = new GLUvertex();
+            GLUvertex newVertex = NewVertex(eOrg);
 
             MakeVertex(newVertex, eNewSym, eNew.Org);
         }
@@ -500,7 +516,7 @@ class Mesh {
         eOrg.Lface.anEdge = eNewSym;
 
         if (!joiningLoops) {
-            GLUface newFace = new GLUface();
+            GLUface newFace = NewFace(eOrg);
 
             /* We split one loop into two -- the new loop is eNew.Lface */
             MakeFace(newFace, eNew, eOrg.Lface);
@@ -564,6 +580,13 @@ class Mesh {
  * and no loops (what we usually call a "face").
  */
     public static GLUmesh __gl_meshNewMesh() {
+        return __gl_meshNewMesh(null);
+    }
+
+/* __gl_meshNewMesh( pool ) is the same, but the objects added to the mesh
+ * later on are taken from the given pool, unless it is null.
+ */
+    public static GLUmesh __gl_meshNewMesh(MeshPool pool) {
         GLUvertex v;
         GLUface f;
         GLUhalfEdge e;
@@ -604,6 +627,8 @@ class Mesh {
         eSym.winding = 0;
         eSym.activeRegion = null;
 
+        e.pool = eSym.pool = pool;
+
         return mesh;
     }
 
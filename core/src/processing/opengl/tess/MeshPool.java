@@ -0,0 +1,220 @@
+/*
+* Portions Copyright (C) 2003-2006 Sun Microsystems, Inc.
+* All rights reserved.
+*/
+
+/*
+** License Applicability. Except to the extent portions of this file are
+** made subject to an alternative license as permitted in the SGI Free
+** Software License B, Version 2.0 (the "License"), the contents of this
+** file are subject only to the provisions of the License. You may not use
+** this file except in compliance with the License. You may obtain a copy
+** of the License at Silicon Graphics, Inc., attn: Legal Services, 1600
+** Amphitheatre Parkway, Mountain View, CA 94043-1351, or at:
+**
+** http://oss.sgi.com/projects/FreeB
+**
+** Note that, as provided in the License, the Software is distributed on an
+** "AS IS" basis, with ALL EXPRESS AND IMPLIED WARRANTIES AND CONDITIONS
+** DISCLAIMED, INCLUDING, WITHOUT LIMITATION, ANY IMPLIED WARRANTIES AND
+** CONDITIONS OF MERCHANTABILITY, SATISFACTORY QUALITY, FITNESS FOR A
+** PARTICULAR PURPOSE, AND NON-INFRINGEMENT.
+**
+** NOTE:  The Original Code (as defined below) has been licensed to Sun
+** Microsystems, Inc. ("Sun") under the SGI Free Software License B
+** (Version 1.1), shown above ("SGI License").   Pursuant to Section
+** 3.2(3) of the SGI License, Sun is distributing the Covered Code to
+** you under an alternative license ("Alternative License").  This
+** Alternative License includes all of the provisions of the SGI License
+** except that Section 2.2 and 11 are omitted.  Any differences between
+** the Alternative License and the SGI License are offered solely by Sun
+** and not by SGI.
+**
+** Original Code. The Original Code is: OpenGL Sample Implementation,
+** Version 1.2.1, released January 26, 2000, developed by Silicon Graphics,
+** Inc. The Original Code is Copyright (c) 1991-2000 Silicon Graphics, Inc.
+** Copyright in any portions created by third parties is as indicated
+** elsewhere herein. All Rights Reserved.
+**
+** Additional Notice Provisions: The application programming interfaces
+** established by SGI in conjunction with the Original Code are The
+** OpenGL(R) Graphics System: A Specification (Version 1.2.1), released
+** April 1, 1999; The OpenGL(R) Graphics System Utility Library (Version
+** 1.3), released November 4, 1998; and OpenGL(R) Graphics with the X
+** Window System(R) (Version 1.3), released October 19, 1998. This software
+** was created using the OpenGL(R) version 1.2.1 Sample Implementation
+** published by SGI, but has not been independently verified as being
+** compliant with the OpenGL(R) version 1.2.1 Specification.
+**
+** Author: Eric Veach, July 1994
+** Java Port: Pepijn Van Eeckhoudt, July 2003
+** Java Port: Nathan Parker Burg, August 2003
+** Processing integration: Andres Colubri, February 2012
+*/
+
+package processing.opengl.tess;
+
+import java.util.Arrays;
+
+/* MeshPool keeps the vertices, faces, edges, active regions and dictionary
+ * nodes created by one tessellator.  They are handed out as the mesh is
+ * built and swept, and all taken back by reset() once the polygon is done,
+ * so tessellating polygon after polygon does not create garbage.  Objects
+ * deleted from the mesh in the middle of a polygon are not reused until
+ * the next one.
+ */
+class MeshPool {
+    /* Objects of each kind kept between polygons, so that a single very
+     * large polygon does not hold on to its mesh forever.
+     */
+    static final int MAX_RETAINED = 4096;
+
+    private GLUvertex[] vertices = new GLUvertex[16];
+    private int vertexCount;
+
+    private GLUface[] faces = new GLUface[16];
+    private int faceCount;
+
+    /* first half of each edge pair, the second one is e.Sym */
+    private GLUhalfEdge[] edges = new GLUhalfEdge[16];
+    private int edgeCount;
+
+    private ActiveRegion[] regions = new ActiveRegion[16];
+    private int regionCount;
+
+    private DictNode[] nodes = new DictNode[16];
+    private int nodeCount;
+
+    GLUvertex newVertex() {
+        if (vertexCount == vertices.length) {
+            vertices = Arrays.copyOf(vertices, 2 * vertexCount);
+        }
+        GLUvertex v = vertices[vertexCount];
+        if (v == null) v = vertices[vertexCount] = new GLUvertex();
+        vertexCount++;
+        return v;
+    }
+
+    GLUface newFace() {
+        if (faceCount == faces.length) {
+            faces = Arrays.copyOf(faces, 2 * faceCount);
+        }
+        GLUface f = faces[faceCount];
+        if (f == null) f = faces[faceCount] = new GLUface();
+        faceCount++;
+        return f;
+    }
+
+    /* Returns the first half-edge of a pair, the other one is e.Sym.  The
+     * links are set by MakeEdge().
+     */
+    GLUhalfEdge newEdgePair() {
+        if (edgeCount == edges.length) {
+            edges = Arrays.copyOf(edges, 2 * edgeCount);
+        }
+        GLUhalfEdge e = edges[edgeCount];
+        if (e == null) {
+            e = edges[edgeCount] = new GLUhalfEdge(true);
+            e.Sym = new GLUhalfEdge(false);
+            e.pool = e.Sym.pool = this;
+        }
+        edgeCount++;
+        return e;
+    }
+
+    ActiveRegion newRegion() {
+        if (regionCount == regions.length) {
+            regions = Arrays.copyOf(regions, 2 * regionCount);
+        }
+        ActiveRegion reg = regions[regionCount];
+        if (reg == null) reg = regions[regionCount] = new ActiveRegion();
+        regionCount++;
+        return reg;
+    }
+
+    DictNode newDictNode() {
+        if (nodeCount == nodes.length) {
+            nodes = Arrays.copyOf(nodes, 2 * nodeCount);
+        }
+        DictNode node = nodes[nodeCount];
+        if (node == null) node = nodes[nodeCount] = new DictNode();
+        nodeCount++;
+        return node;
+    }
+
+/* reset() takes back everything handed out since the last call.  The
+ * objects are cleared as if just created, which also drops the references
+ * to the client's vertex data.
+ */
+    void reset() {
+        for (int i = 0; i < vertexCount; i++) {
+            GLUvertex v = vertices[i];
+            v.next = v.prev = null;
+            v.anEdge = null;
+            v.data = null;
+            v.coords[0] = v.coords[1] = v.coords[2] = 0;
+            v.s = v.t = 0;
+            v.pqHandle = 0;
+        }
+        vertices = trim(vertices, vertexCount);
+        vertexCount = 0;
+
+        for (int i = 0; i < faceCount; i++) {
+            GLUface f = faces[i];
+            f.next = f.prev = null;
+            f.anEdge = null;
+            f.data = null;
+            f.trail = null;
+            f.marked = false;
+            f.inside = false;
+        }
+        faces = trim(faces, faceCount);
+        faceCount = 0;
+
+        for (int i = 0; i < edgeCount; i++) {
+            clearEdge(edges[i]);
+            clearEdge(edges[i].Sym);
+        }
+        edges = trim(edges, edgeCount);
+        edgeCount = 0;
+
+        for (int i = 0; i < regionCount; i++) {
+            ActiveRegion reg = regions[i];
+            reg.eUp = null;
+            reg.nodeUp = null;
+            reg.windingNumber = 0;
+            reg.inside = false;
+            reg.sentinel = false;
+            reg.dirty = false;
+            reg.fixUpperEdge = false;
+        }
+        regions = trim(regions, regionCount);
+        regionCount = 0;
+
+        for (int i = 0; i < nodeCount; i++) {
+            DictNode node = nodes[i];
+            node.key = null;
+            node.next = node.prev = null;
+            node.left = node.right = node.parent = null;
+            node.priority = 0;
+        }
+        nodes = trim(nodes, nodeCount);
+        nodeCount = 0;
+    }
+
+    /* Keeps Sym, first and pool, which belong to the pair */
+    private static void clearEdge(GLUhalfEdge e) {
+        e.next = null;
+        e.Onext = null;
+        e.Lnext = null;
+        e.Org = null;
+        e.Lface = null;
+        e.activeRegion = null;
+        e.winding = 0;
+    }
+
+    private static <T> T[] trim(T[] array, int count) {
+        if (MAX_RETAINED < count) return Arrays.copyOf(array, MAX_RETAINED);
+        return array;
+    }
+}
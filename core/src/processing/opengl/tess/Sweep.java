@@ -223,7 +223,7 @@ class Sweep {
  * The upper edge of the new region will be "eNewUp".
  * Winding number and "inside" flag are not updated.
  */ {
-        ActiveRegion regNew = new ActiveRegion();
+        ActiveRegion regNew = tess.pool.newRegion();
         if (regNew == null) throw new RuntimeException();
 
         regNew.eUp = eNewUp;
@@ -618,7 +618,7 @@ class Sweep {
         GLUvertex dstUp = eUp.Sym.Org;
         GLUvertex dstLo = eLo.Sym.Org;
         double tMinUp, tMaxLo;
-        GLUvertex isect = new GLUvertex();
+        GLUvertex isect = tess.isect;
         GLUvertex orgMin;
         GLUhalfEdge e;
 
@@ -1008,7 +1008,7 @@ class Sweep {
  */ {
         ActiveRegion regUp, regLo, reg;
         GLUhalfEdge eUp, eLo, eNew;
-        ActiveRegion tmp = new ActiveRegion();
+        ActiveRegion tmp = tess.searchKey;
 
         /* assert ( vEvent.anEdge.Onext.Onext == vEvent.anEdge ); */
 
@@ -1121,7 +1121,7 @@ class Sweep {
  * to avoid special cases at the top and bottom.
  */ {
         GLUhalfEdge e;
-        ActiveRegion reg = new ActiveRegion();
+        ActiveRegion reg = tess.pool.newRegion();
         if (reg == null) throw new RuntimeException();
 
         e = Mesh.__gl_meshMakeEdge(tess.mesh);
@@ -1154,7 +1154,7 @@ class Sweep {
             public boolean leq(Object frame, Object key1, Object key2) {
                 return EdgeLeq(tess, (ActiveRegion) key1, (ActiveRegion) key2);
             }
-        });
+        }, tess.pool);
         if (tess.dict == null) throw new RuntimeException();
 
         AddSentinel(tess, -SENTINEL_COORD);
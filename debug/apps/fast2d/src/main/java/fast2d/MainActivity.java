@@ -25,6 +25,8 @@ public class MainActivity extends AppCompatActivity {
 //  private int TEST = 12; // Filter test
 //  private int TEST = 13; // Custom shader test (texture)
 //  private int TEST = 14; // Custom shader test (no texture)
+//  private int TEST = 15; // Column table save test
+//  private int TEST = 16; // Table type inference test
 
   private PApplet sketch;
 
@@ -64,6 +66,10 @@ public class MainActivity extends AppCompatActivity {
       sketch = new SketchCustomShader();
     } else if (TEST == 14) {
       sketch = new SketchShaderNoTex();
+    } else if (TEST == 15) {
+      sketch = new SketchColumnTableSave();
+    } else if (TEST == 16) {
+      sketch = new SketchInferTable();
     }
 
     PFragment fragment = new PFragment(sketch);
@@ -0,0 +1,43 @@
+package fast2d;
+
+import processing.core.PApplet;
+import processing.data.Table;
+import processing.data.TableRow;
+
+// Saving a mapped column table back to the file it was loaded from
+// has to keep all of its values.
+public class SketchColumnTableSave extends PApplet {
+  public void settings() {
+    fullScreen(P2DX);
+  }
+
+  public void setup() {
+    Table table = new Table();
+    table.addColumn("name");
+    table.addColumn("value", Table.INT);
+    for (int i = 0; i < 100; i++) {
+      TableRow row = table.addRow();
+      row.setString("name", "row " + i);
+      row.setInt("value", i);
+    }
+    saveTable(table, "test.col");
+
+    // mapped from test.col, and only the "value" column gets read into memory
+    Table mapped = loadTable("test.col");
+    mapped.setInt(0, "value", -1);
+    saveTable(mapped, "test.col");
+
+    Table check = loadTable("test.col");
+    if (check.getRowCount() == 100 &&
+        check.getInt(0, "value") == -1 &&
+        check.getString(99, "name").equals("row 99")) {
+      println("ok");
+    } else {
+      println("FAILED");
+    }
+  }
+
+  public void draw() {
+    background(0);
+  }
+}
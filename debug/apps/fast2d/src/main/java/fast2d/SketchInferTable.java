@@ -0,0 +1,32 @@
+package fast2d;
+
+import processing.core.PApplet;
+import processing.data.Table;
+
+// Decimals with more digits than a float holds are inferred as a double
+// column, which has to read back as text.
+public class SketchInferTable extends PApplet {
+  public void settings() {
+    fullScreen(P2DX);
+  }
+
+  public void setup() {
+    String[] lines = { "1.0", "2", "1.2345678", "" };
+    saveStrings("infer.csv", lines);
+    Table table = loadTable("infer.csv", "infer");
+    table.createIndex(0);
+    table.trim();
+    if (table.getColumnType(0) == Table.DOUBLE &&
+        "1.2345678".equals(table.getString(2, 0)) &&
+        table.findRowIndex("2.0", 0) == 1 &&
+        table.getRowCount() == 3) {
+      println("ok");
+    } else {
+      println("FAILED");
+    }
+  }
+
+  public void draw() {
+    background(0);
+  }
+}
@@ -128,6 +128,8 @@ public class ARGraphics extends PGraphics3D {
     // Always clear the screen and draw the background
     background(0);
     backgroundRenderer.draw(surfar.frame);
+    // The camera background is drawn with GLES20 calls that PGL doesn't see
+    pgl.resetGLState();
   }
 
   public void endDraw() {
@@ -426,6 +428,7 @@ public class ARGraphics extends PGraphics3D {
 
   protected void createBackgroundRenderer() {
     backgroundRenderer = new BackgroundRenderer(surfar.getActivity());
+    pgl.resetGLState();
   }
 
   protected void setCameraTexture() {
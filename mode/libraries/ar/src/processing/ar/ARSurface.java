@@ -212,6 +212,7 @@ public class ARSurface extends PSurfaceGLES {
     public void onSurfaceChanged(GL10 gl, int width, int height) {
       displayRotationHelper.onSurfaceChanged(width, height);
       GLES20.glViewport(0, 0, width, height);
+      pgl.resetGLState();
 
       sketch.surfaceChanged();
       graphics.surfaceChanged();